@@ -3,14 +3,16 @@ package eu.dissco.nusearch;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.boot.context.properties.ConfigurationPropertiesScan;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
 @ConfigurationPropertiesScan
+@EnableScheduling
 public class NuSearchApplication {
 
   public static void main(String[] args) {
     var context = SpringApplication.run(NuSearchApplication.class, args);
-    if (context.getEnvironment().matchesProfiles(Profiles.S3_INDEXER)) {
+    if (context.getEnvironment().matchesProfiles(Profiles.S3_INDEXER, Profiles.INDEXER)) {
       context.close();
     }
   }
@@ -5,6 +5,7 @@ public class Profiles {
   public static final String S3_INDEXER = "s3-indexer";
   public static final String S3_RESOLVER = "s3-resolver";
   public static final String STANDALONE = "standalone";
+  public static final String INDEXER = "indexer";
 
   private Profiles() {
   }
@@ -0,0 +1,183 @@
+package eu.dissco.nusearch.component;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import eu.dissco.nusearch.domain.IndexSnapshotManifest;
+import eu.dissco.nusearch.domain.IndexSnapshotManifest.SnapshotFile;
+import eu.dissco.nusearch.exception.IndexingFailedException;
+import eu.dissco.nusearch.repository.IndexManifestRepository;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.CRC32C;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.io.output.CountingOutputStream;
+import org.apache.lucene.index.SegmentInfos;
+import org.apache.lucene.store.FSDirectory;
+import org.springframework.stereotype.Component;
+
+/**
+ * Packs an index into a single snapshot archive and unpacks it again. The archive is written to and
+ * read from a stream, so it can be uploaded while it is being written and extracted while it is
+ * being downloaded. The last entry of the archive lists the checksum of every file, the extracted
+ * files are verified against it in parallel.
+ * <p>
+ * The index files are stored without compression, most Lucene files are compressed already. A
+ * stored file is a contiguous range of the archive, so it can also be read in place with ranged
+ * requests, see {@link eu.dissco.nusearch.repository.S3SnapshotDirectory}.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class IndexSnapshotArchiver {
+
+  public static final String SNAPSHOT_MANIFEST = "snapshot-manifest.json";
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  private final ObjectMapper mapper;
+
+  /**
+   * Writes the files of the last commit of the index, and the index manifest when present, to
+   * the output stream. Every file is read twice, once to compute the checksums a stored entry
+   * starts with and once to copy it.
+   */
+  public IndexSnapshotManifest write(Path indexLocation, OutputStream outputStream)
+      throws IOException {
+    var files = new TreeSet<String>();
+    try (var directory = FSDirectory.open(indexLocation)) {
+      files.addAll(SegmentInfos.readLatestCommit(directory).files(true));
+    }
+    if (Files.exists(indexLocation.resolve(IndexManifestRepository.MANIFEST_FILE))) {
+      files.add(IndexManifestRepository.MANIFEST_FILE);
+    }
+    var snapshotFiles = new ArrayList<SnapshotFile>(files.size());
+    // the archive is finished but not closed, the caller owns the output stream
+    var counter = new CountingOutputStream(new BufferedOutputStream(outputStream, BUFFER_SIZE));
+    var zip = new ZipOutputStream(counter);
+    for (var file : files) {
+      var path = indexLocation.resolve(file);
+      var crc = new CRC32();
+      var crc32c = new CRC32C();
+      try (var input = new CheckedInputStream(
+          new CheckedInputStream(Files.newInputStream(path), crc), crc32c)) {
+        input.transferTo(OutputStream.nullOutputStream());
+      }
+      var entry = new ZipEntry(file);
+      entry.setMethod(ZipEntry.STORED);
+      entry.setSize(Files.size(path));
+      entry.setCompressedSize(entry.getSize());
+      entry.setCrc(crc.getValue());
+      zip.putNextEntry(entry);
+      // the entry header has been written, the content of the file starts here
+      var offset = counter.getByteCount();
+      Files.copy(path, zip);
+      zip.closeEntry();
+      snapshotFiles.add(new SnapshotFile(file, entry.getSize(), crc32c.getValue(), offset));
+    }
+    var manifest = new IndexSnapshotManifest(snapshotFiles);
+    zip.putNextEntry(new ZipEntry(SNAPSHOT_MANIFEST));
+    zip.write(writeManifest(manifest));
+    zip.closeEntry();
+    zip.finish();
+    zip.flush();
+    log.info("Wrote snapshot of {} index files", snapshotFiles.size());
+    return manifest;
+  }
+
+  public byte[] writeManifest(IndexSnapshotManifest manifest) throws IOException {
+    return mapper.writeValueAsBytes(manifest);
+  }
+
+  public IndexSnapshotManifest readManifest(byte[] manifest) throws IOException {
+    return mapper.readValue(manifest, IndexSnapshotManifest.class);
+  }
+
+  /**
+   * Extracts the snapshot into the index location and verifies the extracted files. Fails when an
+   * entry is corrupt, when the manifest is missing or when a file does not match the manifest.
+   */
+  public IndexSnapshotManifest extract(InputStream inputStream, Path indexLocation)
+      throws IOException, IndexingFailedException {
+    Files.createDirectories(indexLocation);
+    IndexSnapshotManifest manifest = null;
+    var zip = new ZipInputStream(inputStream);
+    ZipEntry entry;
+    var buffer = new byte[BUFFER_SIZE];
+    while ((entry = zip.getNextEntry()) != null) {
+      if (SNAPSHOT_MANIFEST.equals(entry.getName())) {
+        manifest = readManifest(zip.readAllBytes());
+        continue;
+      }
+      var target = resolve(indexLocation, entry.getName());
+      try (var output = Files.newOutputStream(target)) {
+        int read;
+        while ((read = zip.read(buffer)) != -1) {
+          output.write(buffer, 0, read);
+        }
+      }
+    }
+    if (manifest == null) {
+      throw new IndexingFailedException("Index snapshot does not contain a manifest");
+    }
+    verify(indexLocation, manifest);
+    return manifest;
+  }
+
+  /**
+   * Verifies the length and checksum of every file in the manifest, each file is checked in its own
+   * virtual thread.
+   */
+  public void verify(Path indexLocation, IndexSnapshotManifest manifest)
+      throws IOException, IndexingFailedException {
+    var results = new ArrayList<Future<Boolean>>(manifest.files().size());
+    try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+      for (var file : manifest.files()) {
+        results.add(executor.submit(() -> isValid(indexLocation, file)));
+      }
+      for (int i = 0; i < results.size(); i++) {
+        if (!Boolean.TRUE.equals(results.get(i).get())) {
+          throw new IndexingFailedException(
+              "Index file does not match the snapshot: " + manifest.files().get(i).name());
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IndexingFailedException("Interrupted while verifying the index snapshot");
+    } catch (ExecutionException e) {
+      throw new IOException("Failed to verify the index snapshot", e.getCause());
+    }
+    log.info("Verified {} index files", manifest.files().size());
+  }
+
+  private static boolean isValid(Path indexLocation, SnapshotFile file) throws IOException {
+    var path = resolve(indexLocation, file.name());
+    if (Files.notExists(path) || Files.size(path) != file.length()) {
+      return false;
+    }
+    try (var input = new CheckedInputStream(Files.newInputStream(path), new CRC32C())) {
+      input.transferTo(OutputStream.nullOutputStream());
+      return input.getChecksum().getValue() == file.checksum();
+    }
+  }
+
+  private static Path resolve(Path indexLocation, String name) throws IOException {
+    var path = indexLocation.resolve(name).normalize();
+    if (!indexLocation.normalize().equals(path.getParent())) {
+      throw new IOException("Index snapshot contains an invalid file name: " + name);
+    }
+    return path;
+  }
+}
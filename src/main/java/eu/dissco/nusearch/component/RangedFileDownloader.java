@@ -0,0 +1,253 @@
+package eu.dissco.nusearch.component;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import eu.dissco.nusearch.domain.DownloadProgress;
+import eu.dissco.nusearch.domain.DownloadProgress.DownloadRange;
+import eu.dissco.nusearch.exception.ColDownloadException;
+import eu.dissco.nusearch.property.ColDownloadProperties;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import reactor.util.retry.Retry;
+
+/**
+ * Downloads a file over several connections, each requesting its own byte range. The progress of
+ * every range is kept in a sidecar file next to the target, so an interrupted download continues
+ * where it stopped instead of starting over. Servers which do not accept ranges are downloaded in
+ * a single request.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class RangedFileDownloader {
+
+  private static final String PROGRESS_SUFFIX = ".progress";
+  private static final int PROGRESS_STEPS = 20;
+
+  private final WebClient webClient;
+  private final ObjectMapper mapper;
+  private final ColDownloadProperties properties;
+
+  public static Path progressFile(Path target) {
+    return target.resolveSibling(target.getFileName() + PROGRESS_SUFFIX);
+  }
+
+  public void download(String url, Path target) throws IOException, ColDownloadException {
+    var headers = webClient.head()
+        .uri(url)
+        .retrieve()
+        .toBodilessEntity()
+        .map(response -> response.getHeaders())
+        .block();
+    var length = headers == null ? -1 : headers.getContentLength();
+    if (length <= 0 || !"bytes".equalsIgnoreCase(headers.getFirst(HttpHeaders.ACCEPT_RANGES))) {
+      log.info("Server does not accept ranges for {}, downloading in a single request", url);
+      downloadInSingleRequest(url, target);
+      return;
+    }
+    var etag = headers.getETag();
+    var progress = resume(target, url, etag, length).orElseGet(() -> start(url, etag, length));
+    if (progress.ranges().stream().anyMatch(range -> range.downloaded() > 0)) {
+      log.info("Resuming download of {} from a partial file", url);
+    } else {
+      try (var file = new RandomAccessFile(target.toFile(), "rw")) {
+        file.setLength(length);
+      }
+    }
+    var download = new RangedDownload(progress, target);
+    download.run();
+    Files.deleteIfExists(progressFile(target));
+    log.info("Downloaded {} bytes from {} over {} connections", length, url,
+        progress.ranges().size());
+  }
+
+  private void downloadInSingleRequest(String url, Path target) {
+    var flux = webClient.get()
+        .uri(url)
+        .retrieve()
+        .bodyToFlux(DataBuffer.class);
+    DataBufferUtils.write(flux, target).block();
+  }
+
+  private Optional<DownloadProgress> resume(Path target, String url, String etag, long length) {
+    var progressFile = progressFile(target);
+    if (Files.notExists(progressFile) || Files.notExists(target)) {
+      return Optional.empty();
+    }
+    try {
+      var progress = mapper.readValue(progressFile.toFile(), DownloadProgress.class);
+      var sameFile = progress.length() == length && Objects.equals(progress.etag(), etag)
+          && (etag != null || url.equals(progress.url()));
+      if (sameFile && Files.size(target) == length) {
+        return Optional.of(progress);
+      }
+      log.info("Remote file changed since the partial download, starting over");
+    } catch (IOException e) {
+      log.warn("Ignoring unreadable download progress: {}", progressFile, e);
+    }
+    return Optional.empty();
+  }
+
+  private DownloadProgress start(String url, String etag, long length) {
+    var connections = (int) Math.min(properties.getDownloadConnections(), length);
+    var ranges = new ArrayList<DownloadRange>(connections);
+    for (int i = 0; i < connections; i++) {
+      var start = length * i / connections;
+      var end = length * (i + 1) / connections - 1;
+      ranges.add(new DownloadRange(start, end, 0));
+    }
+    return new DownloadProgress(url, etag, length, ranges);
+  }
+
+  /**
+   * The state of a single download. Ranges are written by several threads, the progress file is
+   * only saved after the written bytes have been flushed to disk.
+   */
+  private final class RangedDownload {
+
+    private final DownloadProgress progress;
+    private final Path target;
+    private final AtomicLongArray downloaded;
+    private final long start = System.nanoTime();
+    private int reportedStep;
+
+    private RangedDownload(DownloadProgress progress, Path target) {
+      this.progress = progress;
+      this.target = target;
+      this.downloaded = new AtomicLongArray(progress.ranges().stream()
+          .mapToLong(DownloadRange::downloaded)
+          .toArray());
+      this.reportedStep = (int) (total() * PROGRESS_STEPS / progress.length());
+    }
+
+    private void run() throws IOException, ColDownloadException {
+      try (var channel = FileChannel.open(target, StandardOpenOption.WRITE)) {
+        try {
+          Flux.range(0, progress.ranges().size())
+              .flatMap(range -> downloadRange(channel, range), progress.ranges().size())
+              .then()
+              .block();
+        } finally {
+          // also when the download failed, only flushed bytes are saved as downloaded
+          save(channel);
+        }
+      } catch (RuntimeException e) {
+        throw new ColDownloadException("Failed to download " + progress.url(),
+            e.getCause() == null ? e : e.getCause());
+      }
+      if (total() != progress.length()) {
+        throw new ColDownloadException("Download of " + progress.url() + " is incomplete, got "
+            + total() + " of " + progress.length() + " bytes");
+      }
+    }
+
+    private Mono<Void> downloadRange(FileChannel channel, int range) {
+      var end = progress.ranges().get(range).end();
+      return Mono.defer(() -> {
+            var position = position(range);
+            if (position > end) {
+              return Mono.<Void>empty();
+            }
+            return webClient.get()
+                .uri(progress.url())
+                .header(HttpHeaders.RANGE, "bytes=" + position + "-" + end)
+                .retrieve()
+                .onStatus(status -> status.value() != HttpStatus.PARTIAL_CONTENT.value(),
+                    response -> Mono.error(new ColDownloadException(
+                        "Server did not return a partial response but: " + response.statusCode())))
+                .bodyToFlux(DataBuffer.class)
+                .publishOn(Schedulers.boundedElastic())
+                .doOnNext(buffer -> write(channel, buffer, range))
+                .then();
+          })
+          .retryWhen(Retry.backoff(properties.getDownloadRetryCount(),
+                  Duration.ofMillis(properties.getDownloadRetryTime()))
+              .filter(e -> !(e instanceof ColDownloadException))
+              .doBeforeRetry(signal -> log.warn("Retrying range {} from byte {}", range,
+                  position(range), signal.failure())));
+    }
+
+    private void write(FileChannel channel, DataBuffer buffer, int range) {
+      try (var iterator = buffer.readableByteBuffers()) {
+        var position = position(range);
+        var written = 0L;
+        while (iterator.hasNext()) {
+          var byteBuffer = iterator.next();
+          while (byteBuffer.hasRemaining()) {
+            written += channel.write(byteBuffer, position + written);
+          }
+        }
+        downloaded.addAndGet(range, written);
+        report(channel);
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      } finally {
+        DataBufferUtils.release(buffer);
+      }
+    }
+
+    private long position(int range) {
+      return progress.ranges().get(range).start() + downloaded.get(range);
+    }
+
+    private long total() {
+      var total = 0L;
+      for (int i = 0; i < downloaded.length(); i++) {
+        total += downloaded.get(i);
+      }
+      return total;
+    }
+
+    /**
+     * Logs the progress and saves the progress file every time another step of the download
+     * completes.
+     */
+    private synchronized void report(FileChannel channel) throws IOException {
+      var total = total();
+      var step = (int) (total * PROGRESS_STEPS / progress.length());
+      if (step > reportedStep) {
+        reportedStep = step;
+        var elapsed = Math.max(1, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        log.info("Downloaded {}% ({} of {} bytes) at {} KB/s", step * 100 / PROGRESS_STEPS,
+            total, progress.length(), total / elapsed);
+        save(channel);
+      }
+    }
+
+    /**
+     * Saves the progress file. The downloaded bytes are read before the channel is flushed, bytes
+     * which are written meanwhile are saved with the next flush.
+     */
+    private synchronized void save(FileChannel channel) throws IOException {
+      var ranges = new ArrayList<DownloadRange>(downloaded.length());
+      for (int i = 0; i < downloaded.length(); i++) {
+        var range = progress.ranges().get(i);
+        ranges.add(new DownloadRange(range.start(), range.end(), downloaded.get(i)));
+      }
+      channel.force(false);
+      mapper.writeValue(progressFile(target).toFile(),
+          new DownloadProgress(progress.url(), progress.etag(), progress.length(), ranges));
+    }
+  }
+}
@@ -1,19 +1,25 @@
 package eu.dissco.nusearch.configuration;
 
+import static eu.dissco.nusearch.Profiles.S3_RESOLVER;
+import static eu.dissco.nusearch.Profiles.STANDALONE;
+
 import eu.dissco.nusearch.component.ScientificNameAnalyzer;
 import eu.dissco.nusearch.property.IndexingProperties;
+import eu.dissco.nusearch.repository.FuzzyCandidateGenerator;
+import eu.dissco.nusearch.repository.IndexManifestRepository;
+import eu.dissco.nusearch.repository.NubIndex;
+import eu.dissco.nusearch.repository.NubSearcherManager;
 import java.io.IOException;
 import java.nio.file.Paths;
-import java.util.concurrent.Executors;
 import lombok.AllArgsConstructor;
-import org.apache.lucene.index.DirectoryReader;
 import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.index.IndexWriterConfig;
-import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.store.FSDirectory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.DependsOn;
+import org.springframework.context.annotation.Profile;
 
 @Configuration
 @AllArgsConstructor
@@ -21,18 +27,40 @@ public class LuceneConfiguration {
 
   private final IndexingProperties properties;
 
-  @Bean
-  public IndexWriter cofigureIndexWriter() throws IOException {
+  /**
+   * The configuration of the writer building the index, also used to build a new release of the
+   * index in the background.
+   */
+  public static IndexWriterConfig indexWriterConfig(IndexingProperties properties) {
     var indexWriterConfig = new IndexWriterConfig(new ScientificNameAnalyzer());
-    var indexDirectory = FSDirectory.open(Paths.get(properties.getIndexLocation()));
-    return new IndexWriter(indexDirectory, indexWriterConfig);
+    if (properties.isOptimizeForServing()) {
+      // sorting on the canonical name lets autocomplete stop after the first hits
+      indexWriterConfig.setRAMBufferSizeMB(properties.getServingRamBufferSizeMb());
+      indexWriterConfig.setIndexSort(NubIndex.CANONICAL_NAME_SORT);
+    }
+    return indexWriterConfig;
   }
 
+  /**
+   * The writer is the first to open the index location, the index swapped in before a restart is
+   * moved back into the index location before.
+   */
   @Bean
-  @DependsOn("colDpIndexingService")
-  public IndexSearcher configureIndexSearcher() throws IOException {
+  public IndexWriter cofigureIndexWriter(IndexManifestRepository manifestRepository)
+      throws IOException {
+    NubSearcherManager.restoreReleasedIndex(Paths.get(properties.getIndexLocation()),
+        manifestRepository::hasValidIndex);
     var indexDirectory = FSDirectory.open(Paths.get(properties.getIndexLocation()));
-    var indexReader = DirectoryReader.open(indexDirectory);
-    return new IndexSearcher(indexReader, Executors.newVirtualThreadPerTaskExecutor());
+    return new IndexWriter(indexDirectory, indexWriterConfig(properties));
+  }
+
+  @Bean
+  @Profile({STANDALONE, S3_RESOLVER})
+  @DependsOn("indexingJob")
+  @ConditionalOnProperty(prefix = "indexing", name = "stream-index", havingValue = "false",
+      matchIfMissing = true)
+  public NubSearcherManager configureSearcherManager() throws IOException {
+    return new NubSearcherManager(Paths.get(properties.getIndexLocation()),
+        properties.getWarmupQueries(), FuzzyCandidateGenerator.of(properties));
   }
 }
@@ -1,10 +1,17 @@
 package eu.dissco.nusearch.configuration;
 
 import eu.dissco.nusearch.Profiles;
+import eu.dissco.nusearch.exception.IndexingFailedException;
 import eu.dissco.nusearch.property.S3Properties;
+import eu.dissco.nusearch.repository.NubSearcherManager;
+import eu.dissco.nusearch.service.IndexStreamingService;
+import java.io.IOException;
+import java.net.URI;
 import lombok.AllArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.DependsOn;
 import org.springframework.context.annotation.Profile;
 import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
 import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
@@ -21,12 +28,16 @@ public class S3Configuration {
 
   @Bean
   public S3AsyncClient s3Client() {
-    return S3AsyncClient.crtBuilder()
+    var builder = S3AsyncClient.crtBuilder()
         .credentialsProvider(StaticCredentialsProvider.create(
             AwsBasicCredentials.create(s3Properties.getAccessKey(),
                 s3Properties.getAccessSecret())))
         .region(Region.EU_WEST_2)
-        .build();
+        .minimumPartSizeInBytes(s3Properties.getPartSizeMb() * 1024 * 1024);
+    if (s3Properties.getEndpoint() != null) {
+      builder.endpointOverride(URI.create(s3Properties.getEndpoint())).forcePathStyle(true);
+    }
+    return builder.build();
   }
 
   @Bean
@@ -34,4 +45,13 @@ public class S3Configuration {
     return S3TransferManager.builder().s3Client(s3Client()).build();
   }
 
+  @Bean
+  @Profile(Profiles.S3_RESOLVER)
+  @DependsOn("indexingJob")
+  @ConditionalOnProperty(prefix = "indexing", name = "stream-index", havingValue = "true")
+  public NubSearcherManager configureStreamingSearcherManager(
+      IndexStreamingService streamingService) throws IOException, IndexingFailedException {
+    return streamingService.openSearcherManager();
+  }
+
 }
@@ -0,0 +1,37 @@
+package eu.dissco.nusearch.domain;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+import java.util.function.BiConsumer;
+import org.gbif.api.vocabulary.TaxonomicStatus;
+
+/**
+ * The name usage tree of a ColDP dataset, used to resolve the classification of every name usage
+ * during indexing. Usages are added in any order, after {@link #complete()} the tree can only be
+ * read.
+ */
+public interface ClassificationTree extends Closeable {
+
+  void add(String id, String parentId, String rank, TaxonomicStatus status, boolean extinct,
+      String scientificName, String authorship) throws IOException;
+
+  void complete() throws IOException;
+
+  /**
+   * Returns the classification of a usage with the given parent, ordered from the root downward.
+   */
+  List<ColDpClassification> getClassification(String parentId);
+
+  /**
+   * Passes every usage with a classification to the consumer together with the id of its parent
+   * in that classification, which is null for a root.
+   */
+  void forEachHigherTaxon(BiConsumer<String, ColDpClassification> consumer);
+
+  int size();
+
+  @Override
+  default void close() throws IOException {
+  }
+}
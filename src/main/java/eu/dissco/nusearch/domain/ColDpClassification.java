@@ -1,16 +1,16 @@
 package eu.dissco.nusearch.domain;
 
-import lombok.Data;
+import lombok.Value;
 import org.gbif.api.vocabulary.TaxonomicStatus;
 
-@Data
+@Value
 public class ColDpClassification {
 
-  private String colId;
-  private String scientificName;
-  private String authorship;
-  private String rank;
-  private TaxonomicStatus status;
-  private boolean extinct;
+  String colId;
+  String scientificName;
+  String authorship;
+  String rank;
+  TaxonomicStatus status;
+  boolean extinct;
 
 }
@@ -1,5 +1,6 @@
 package eu.dissco.nusearch.domain;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import java.util.List;
 import lombok.Data;
 import lombok.EqualsAndHashCode;
@@ -15,5 +16,11 @@ public class ColDpNameUsageMatch extends ColDpNameUsage {
   private MatchType matchType;
   private String canonicalName;
   private List<ColDpNameUsageMatch> alternatives;
+  @JsonIgnore
+  private ParsedAuthorship parsedAuthorship;
+  // Only holds the fields needed to score it, see NubIndex#materialize
+  @JsonIgnore
+  @EqualsAndHashCode.Exclude
+  private boolean candidate;
 
 }
@@ -0,0 +1,22 @@
+package eu.dissco.nusearch.domain;
+
+import java.util.List;
+
+/**
+ * Progress of a ranged download, stored next to the partial file. A download is only continued
+ * when the remote file still has the same length and entity tag.
+ */
+public record DownloadProgress(
+    String url,
+    String etag,
+    long length,
+    List<DownloadRange> ranges) {
+
+  /**
+   * A range of the file, from the start position up to and including the end position, of which
+   * the first bytes have been downloaded.
+   */
+  public record DownloadRange(long start, long end, long downloaded) {
+
+  }
+}
@@ -0,0 +1,467 @@
+package eu.dissco.nusearch.domain;
+
+import eu.dissco.nusearch.domain.NameUsageTree.Lineage;
+import eu.dissco.nusearch.utils.MappedTsvFile;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.function.BiConsumer;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.io.FileUtils;
+import org.gbif.api.vocabulary.TaxonomicStatus;
+
+/**
+ * Name usage tree for datasets which do not fit in the heap. Its heap use is bounded by the
+ * memory budget, whatever the size of the dataset.
+ * <p>
+ * Every usage is written as a record keyed on its own id, together with a record keyed on its
+ * parent id which marks the parent as having children. Records are buffered until the budget is
+ * used and then spilled to disk as a sorted run. {@link #complete()} merges the memory mapped runs
+ * into a single file holding the usages which are the parent of at least one other usage, sorted on
+ * id. Classifications are resolved from that file by walking up the parent chain, the most
+ * recently used classifications are cached so the upper levels of the tree are only read once.
+ * <p>
+ * Lookups are not thread safe, the tree is read by the single thread reading the name usages.
+ */
+@Slf4j
+public class ExternalNameUsageTree implements ClassificationTree {
+
+  private static final byte NODE = 0;
+  private static final byte CHILD = 1;
+  private static final int MAX_MERGE_WIDTH = 256;
+  // estimated heap used by a buffered record and a cached classification besides their content
+  private static final int RECORD_OVERHEAD = 32;
+  private static final int LINEAGE_BYTES = 256;
+  private static final int MIN_CACHED_LINEAGES = 1024;
+  private static final int NO_STRING = -1;
+  private static final TaxonomicStatus[] STATUSES = TaxonomicStatus.values();
+  private static final Comparator<byte[]> RECORD_ORDER = ExternalNameUsageTree::compareRecords;
+
+  private final Path directory;
+  private final long memoryBudget;
+  private final Map<String, Lineage> lineages;
+  private List<byte[]> buffer = new ArrayList<>();
+  private long bufferedBytes;
+  private final List<Path> runs = new ArrayList<>();
+  private int fileCount;
+  private MappedTsvFile parents;
+  private MappedTsvFile offsets;
+  private long parentCount;
+  private int size;
+
+  /**
+   * @param directory    scratch directory for the runs and the merged parents, it is created and
+   *                     deleted when the tree is closed
+   * @param memoryBudget the number of bytes used on the heap for buffered records and cached
+   *                     classifications
+   */
+  public ExternalNameUsageTree(Path directory, long memoryBudget) throws IOException {
+    this.directory = directory;
+    this.memoryBudget = memoryBudget;
+    var maxLineages = (int) Math.min(Integer.MAX_VALUE,
+        Math.max(MIN_CACHED_LINEAGES, memoryBudget / LINEAGE_BYTES));
+    this.lineages = new LinkedHashMap<>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, Lineage> eldest) {
+        return size() > maxLineages;
+      }
+    };
+    FileUtils.deleteDirectory(directory.toFile());
+    Files.createDirectories(directory);
+  }
+
+  @Override
+  public void add(String id, String parentId, String rank, TaxonomicStatus status,
+      boolean extinct, String scientificName, String authorship) throws IOException {
+    if (buffer == null) {
+      throw new IllegalStateException("Name usage tree is already completed");
+    }
+    var bytes = new ByteArrayOutputStream();
+    var out = new DataOutputStream(bytes);
+    writeString(out, id);
+    out.writeByte(NODE);
+    writeString(out, parentId);
+    writeString(out, rank);
+    out.writeByte(status.ordinal());
+    out.writeBoolean(extinct);
+    writeString(out, scientificName);
+    writeString(out, authorship);
+    buffer(bytes.toByteArray());
+    if (parentId != null && !parentId.isEmpty()) {
+      bytes.reset();
+      writeString(out, parentId);
+      out.writeByte(CHILD);
+      buffer(bytes.toByteArray());
+    }
+  }
+
+  /**
+   * Spills the last records and merges all runs into the file of parents. The runs are merged in
+   * several passes when there are more runs than can be merged at once.
+   */
+  @Override
+  public void complete() throws IOException {
+    if (buffer == null) {
+      throw new IllegalStateException("Name usage tree is already completed");
+    }
+    spill();
+    buffer = null;
+    var pending = new ArrayList<>(runs);
+    while (pending.size() > MAX_MERGE_WIDTH) {
+      var merged = new ArrayList<Path>();
+      for (int i = 0; i < pending.size(); i += MAX_MERGE_WIDTH) {
+        var group = pending.subList(i, Math.min(i + MAX_MERGE_WIDTH, pending.size()));
+        var run = nextFile("run");
+        try (var out = output(run)) {
+          merge(group, (key, record) -> writeRecord(out, record));
+        }
+        delete(group);
+        merged.add(run);
+      }
+      pending = merged;
+    }
+    var parentFile = directory.resolve("parents");
+    var offsetFile = directory.resolve("offsets");
+    try (var parentOut = output(parentFile); var offsetOut = output(offsetFile)) {
+      mergeNodes(pending, parentOut, offsetOut);
+    }
+    delete(pending);
+    parents = MappedTsvFile.map(parentFile);
+    offsets = MappedTsvFile.map(offsetFile);
+    log.info("Merged {} name usages of which {} are a parent", size, parentCount);
+  }
+
+  @Override
+  public List<ColDpClassification> getClassification(String parentId) {
+    if (parents == null) {
+      throw new IllegalStateException("Name usage tree has not been completed");
+    }
+    if (parentId == null || parentId.isEmpty()) {
+      return List.of();
+    }
+    var lineage = resolve(parentId);
+    return lineage == null ? List.of() : lineage;
+  }
+
+  /**
+   * Reads the parents in the order of their id.
+   */
+  @Override
+  public void forEachHigherTaxon(BiConsumer<String, ColDpClassification> consumer) {
+    if (parents == null) {
+      throw new IllegalStateException("Name usage tree has not been completed");
+    }
+    for (long i = 0; i < parentCount; i++) {
+      var lineage = resolve(readId(offsets.getLong(i * Long.BYTES)));
+      if (lineage != null) {
+        consumer.accept(lineage.parent == null ? null : lineage.parent.classification.getColId(),
+            lineage.classification);
+      }
+    }
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Releases the mapped files and deletes the scratch directory.
+   */
+  @Override
+  public void close() throws IOException {
+    if (parents != null) {
+      parents.close();
+      offsets.close();
+    }
+    lineages.clear();
+    FileUtils.deleteDirectory(directory.toFile());
+  }
+
+  private void buffer(byte[] record) throws IOException {
+    buffer.add(record);
+    bufferedBytes += record.length + RECORD_OVERHEAD;
+    if (bufferedBytes >= memoryBudget) {
+      spill();
+    }
+  }
+
+  /**
+   * Writes the buffered records as a sorted run. The sort is stable, so of two usages with the same
+   * id the first one added stays first.
+   */
+  private void spill() throws IOException {
+    if (buffer.isEmpty()) {
+      return;
+    }
+    buffer.sort(RECORD_ORDER);
+    var run = nextFile("run");
+    try (var out = output(run)) {
+      for (var record : buffer) {
+        writeRecord(out, record);
+      }
+    }
+    log.debug("Spilled {} records into run: {}", buffer.size(), run);
+    runs.add(run);
+    buffer.clear();
+    bufferedBytes = 0;
+  }
+
+  /**
+   * Groups the merged records on id. A usage is counted once, the first of its duplicates is kept,
+   * and only written to the file of parents when at least one usage has it as parent. Parents which
+   * are not a usage in the dataset are dropped.
+   */
+  private void mergeNodes(List<Path> runs, DataOutputStream parentOut, DataOutputStream offsetOut)
+      throws IOException {
+    var group = new Object() {
+      String key;
+      byte[] node;
+      boolean hasChildren;
+      long position;
+
+      void flush() throws IOException {
+        if (node != null) {
+          size++;
+          if (hasChildren) {
+            offsetOut.writeLong(position);
+            writeRecord(parentOut, node);
+            position += Integer.BYTES + node.length;
+            parentCount++;
+          }
+        }
+        node = null;
+        hasChildren = false;
+      }
+    };
+    merge(runs, (key, record) -> {
+      if (!key.equals(group.key)) {
+        group.flush();
+        group.key = key;
+      }
+      if (record[Integer.BYTES + keyLength(record)] == CHILD) {
+        group.hasChildren = true;
+      } else if (group.node == null) {
+        group.node = record;
+      } else {
+        log.warn("Duplicate key: {}", key);
+      }
+    });
+    group.flush();
+  }
+
+  /**
+   * Merges the sorted runs, records with the same id are passed on in the order of the runs.
+   */
+  private void merge(List<Path> runs, RecordConsumer consumer) throws IOException {
+    var files = new ArrayList<MappedTsvFile>();
+    try {
+      var queue = new PriorityQueue<RunCursor>(Math.max(1, runs.size()),
+          Comparator.<RunCursor, byte[]>comparing(cursor -> cursor.record, RECORD_ORDER)
+              .thenComparingInt(cursor -> cursor.run));
+      for (int i = 0; i < runs.size(); i++) {
+        var file = MappedTsvFile.map(runs.get(i));
+        files.add(file);
+        var cursor = new RunCursor(file, i);
+        if (cursor.next()) {
+          queue.add(cursor);
+        }
+      }
+      while (!queue.isEmpty()) {
+        var cursor = queue.poll();
+        consumer.accept(keyOf(cursor.record), cursor.record);
+        if (cursor.next()) {
+          queue.add(cursor);
+        }
+      }
+    } finally {
+      files.forEach(MappedTsvFile::close);
+    }
+  }
+
+  /**
+   * Resolves the classification of the usage by walking up its parent chain until a cached
+   * classification, a root or a parent which is not in the dataset is found.
+   */
+  private Lineage resolve(String id) {
+    var pending = new ArrayList<ColDpClassification>();
+    var visited = new HashSet<String>();
+    Lineage base = null;
+    var current = id;
+    while (current != null) {
+      var cached = lineages.get(current);
+      if (cached != null) {
+        base = cached;
+        break;
+      }
+      if (!visited.add(current)) {
+        log.warn("Cycle in the parent chain of: {}", current);
+        break;
+      }
+      var position = find(current);
+      if (position < 0) {
+        break;
+      }
+      var record = readRecord(position);
+      var in = new DataInputStream(new ByteArrayInputStream(record));
+      try {
+        var colId = readString(in);
+        in.readByte();
+        current = readString(in);
+        var rank = readString(in);
+        var status = STATUSES[in.readByte()];
+        var extinct = in.readBoolean();
+        pending.add(new ColDpClassification(colId, readString(in), readString(in), rank, status,
+            extinct));
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+      if (current != null && current.isEmpty()) {
+        current = null;
+      }
+    }
+    for (int i = pending.size() - 1; i >= 0; i--) {
+      base = new Lineage(base, pending.get(i));
+      lineages.put(base.classification.getColId(), base);
+    }
+    return base;
+  }
+
+  /**
+   * Binary search over the sorted parents, returns the position of the record or -1.
+   */
+  private long find(String id) {
+    var key = id.getBytes(StandardCharsets.UTF_8);
+    var low = 0L;
+    var high = parentCount - 1;
+    while (low <= high) {
+      var mid = (low + high) >>> 1;
+      var position = offsets.getLong(mid * Long.BYTES);
+      var candidate = new byte[parents.getInt(position + Integer.BYTES)];
+      parents.get(position + 2 * Integer.BYTES, candidate, 0, candidate.length);
+      var comparison = Arrays.compareUnsigned(candidate, key);
+      if (comparison < 0) {
+        low = mid + 1;
+      } else if (comparison > 0) {
+        high = mid - 1;
+      } else {
+        return position;
+      }
+    }
+    return -1;
+  }
+
+  private String readId(long position) {
+    var key = new byte[parents.getInt(position + Integer.BYTES)];
+    parents.get(position + 2 * Integer.BYTES, key, 0, key.length);
+    return new String(key, StandardCharsets.UTF_8);
+  }
+
+  private byte[] readRecord(long position) {
+    var record = new byte[parents.getInt(position)];
+    parents.get(position + Integer.BYTES, record, 0, record.length);
+    return record;
+  }
+
+  private Path nextFile(String prefix) {
+    return directory.resolve(prefix + "-" + fileCount++);
+  }
+
+  private static DataOutputStream output(Path file) throws IOException {
+    return new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), 1 << 16));
+  }
+
+  private static void delete(List<Path> files) throws IOException {
+    for (var file : files) {
+      Files.deleteIfExists(file);
+    }
+  }
+
+  private static void writeRecord(DataOutputStream out, byte[] record) throws IOException {
+    out.writeInt(record.length);
+    out.write(record);
+  }
+
+  private static void writeString(DataOutputStream out, String value) throws IOException {
+    if (value == null) {
+      out.writeInt(NO_STRING);
+    } else {
+      var bytes = value.getBytes(StandardCharsets.UTF_8);
+      out.writeInt(bytes.length);
+      out.write(bytes);
+    }
+  }
+
+  private static String readString(DataInputStream in) throws IOException {
+    var length = in.readInt();
+    if (length == NO_STRING) {
+      return null;
+    }
+    return new String(in.readNBytes(length), StandardCharsets.UTF_8);
+  }
+
+  private static int keyLength(byte[] record) {
+    return (record[0] & 0xFF) << 24 | (record[1] & 0xFF) << 16 | (record[2] & 0xFF) << 8
+        | record[3] & 0xFF;
+  }
+
+  private static String keyOf(byte[] record) {
+    return new String(record, Integer.BYTES, keyLength(record), StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Orders records on the UTF-8 bytes of their key and a usage before the records of its
+   * children.
+   */
+  private static int compareRecords(byte[] left, byte[] right) {
+    var leftEnd = Integer.BYTES + keyLength(left);
+    var rightEnd = Integer.BYTES + keyLength(right);
+    var comparison = Arrays.compareUnsigned(left, Integer.BYTES, leftEnd, right, Integer.BYTES,
+        rightEnd);
+    return comparison != 0 ? comparison : Byte.compare(left[leftEnd], right[rightEnd]);
+  }
+
+  @FunctionalInterface
+  private interface RecordConsumer {
+
+    void accept(String key, byte[] record) throws IOException;
+  }
+
+  private static final class RunCursor {
+
+    private final MappedTsvFile file;
+    private final int run;
+    private long position;
+    private byte[] record;
+
+    private RunCursor(MappedTsvFile file, int run) {
+      this.file = file;
+      this.run = run;
+    }
+
+    private boolean next() {
+      if (position >= file.size()) {
+        return false;
+      }
+      record = new byte[file.getInt(position)];
+      file.get(position + Integer.BYTES, record, 0, record.length);
+      position += Integer.BYTES + record.length;
+      return true;
+    }
+  }
+}
@@ -0,0 +1,28 @@
+package eu.dissco.nusearch.domain;
+
+import java.time.Instant;
+
+/**
+ * Describes the index stored next to it: the dataset and the attempt (release) of the dataset it
+ * was built from, and a checksum of the files of its last commit. A local index is only reused when
+ * its manifest matches the configured dataset and document layout, see
+ * {@code NubIndex.SCHEMA_VERSION}, and its files still match the checksum.
+ * <p>
+ * An index built from a local ColDP archive has no attempt, it holds the SHA-256 hash of the
+ * archive instead.
+ * <p>
+ * The content digest covers the documents of the index and the settings and codecs it was built
+ * with. Unlike the checksum it is the same for every build of the same content, so an index which
+ * is already on S3 is not uploaded or downloaded again.
+ */
+public record IndexManifest(
+    int colDataset,
+    int schemaVersion,
+    int attempt,
+    boolean optimizedForServing,
+    Instant builtAt,
+    String checksum,
+    String archiveChecksum,
+    String contentDigest) {
+
+}
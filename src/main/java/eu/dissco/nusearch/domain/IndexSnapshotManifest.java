@@ -0,0 +1,32 @@
+package eu.dissco.nusearch.domain;
+
+import java.util.List;
+
+/**
+ * Lists the files of an index snapshot, it is the last entry of the snapshot archive. Every file
+ * is verified against its length and CRC32C checksum after the snapshot has been extracted.
+ * <p>
+ * The files are stored uncompressed, the offset is the position of the content of the file in the
+ * archive. Snapshots written before the files were stored uncompressed have no offsets.
+ * <p>
+ * The manifest uploaded next to the snapshot holds the ETag of the snapshot it describes, as the
+ * snapshot is replaced before its manifest. The manifest in the snapshot has no ETag.
+ */
+public record IndexSnapshotManifest(List<SnapshotFile> files, String etag) {
+
+  public IndexSnapshotManifest(List<SnapshotFile> files) {
+    this(files, null);
+  }
+
+  public IndexSnapshotManifest withEtag(String etag) {
+    return new IndexSnapshotManifest(files, etag);
+  }
+
+  public boolean hasOffsets() {
+    return files.stream().allMatch(file -> file.offset() != null);
+  }
+
+  public record SnapshotFile(String name, long length, long checksum, Long offset) {
+
+  }
+}
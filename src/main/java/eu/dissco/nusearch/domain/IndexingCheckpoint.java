@@ -0,0 +1,28 @@
+package eu.dissco.nusearch.domain;
+
+/**
+ * Progress of an index build, persisted after every completed phase so a rerun can resume where
+ * the previous run stopped. The job id ties the checkpoint to the commits the build made to the
+ * index, the attempt is the release of the dataset which was downloaded. A build from a local
+ * ColDP archive holds the hash of the archive instead.
+ */
+public record IndexingCheckpoint(
+    String jobId,
+    int colDataset,
+    int attempt,
+    IndexingPhase completedPhase,
+    String dataset,
+    String archiveChecksum) {
+
+  public IndexingCheckpoint complete(IndexingPhase phase) {
+    if (isCompleted(phase)) {
+      return this;
+    }
+    return new IndexingCheckpoint(jobId, colDataset, attempt, phase, dataset,
+        archiveChecksum);
+  }
+
+  public boolean isCompleted(IndexingPhase phase) {
+    return phase.isCompletedBy(completedPhase);
+  }
+}
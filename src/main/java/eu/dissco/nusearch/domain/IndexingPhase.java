@@ -0,0 +1,16 @@
+package eu.dissco.nusearch.domain;
+
+/**
+ * The phases of the index build, in the order in which they run.
+ */
+public enum IndexingPhase {
+  DOWNLOAD,
+  CACHE,
+  INDEX,
+  MERGE,
+  UPLOAD;
+
+  public boolean isCompletedBy(IndexingPhase completed) {
+    return completed != null && completed.compareTo(this) >= 0;
+  }
+}
@@ -0,0 +1,265 @@
+package eu.dissco.nusearch.domain;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.BiConsumer;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.BytesRefHash;
+import org.gbif.api.vocabulary.TaxonomicStatus;
+
+/**
+ * Compact in memory representation of the ColDP name usage tree, used to resolve the
+ * classification of every name usage during indexing.
+ * <p>
+ * COL identifiers are interned into dense int node ids. Parents, ranks, statuses and flags are
+ * kept in primitive arrays. Names and authorships are held for every usage while usages are
+ * added, as a usage can turn out to be a parent until the last usage has been read, so the peak
+ * heap use includes the names of all usages. Once all usages are added, {@link #complete()} builds
+ * the classification of every parent exactly once and releases the names of the other usages. Each classification shares its prefix with the
+ * classification of its own parent, so a parent with thousands of children costs a single entry.
+ * <p>
+ * The same structure serves as the higher taxon table of an opened index. That table only holds
+ * parents, so it is created to resolve the classification of every usage.
+ */
+@Slf4j
+public class NameUsageTree implements ClassificationTree {
+
+  private static final int NO_PARENT = -1;
+  private static final byte NO_RANK = -1;
+  private static final byte DEFINED = 1;
+  private static final byte EXTINCT = 1 << 1;
+  private static final byte HAS_CHILDREN = 1 << 2;
+  private static final byte VISITING = 1 << 3;
+  private static final TaxonomicStatus[] STATUSES = TaxonomicStatus.values();
+
+  private final BytesRefHash ids = new BytesRefHash();
+  private final List<String> rankVocabulary = new ArrayList<>();
+  private final Map<String, Byte> rankCodes = new HashMap<>();
+  private int[] parents = new int[0];
+  private byte[] ranks = new byte[0];
+  private byte[] statuses = new byte[0];
+  private byte[] flags = new byte[0];
+  private String[] scientificNames = new String[0];
+  private String[] authorships = new String[0];
+  private final boolean resolveAllUsages;
+  private Lineage[] lineages;
+  private int size;
+
+  public NameUsageTree() {
+    this(false);
+  }
+
+  /**
+   * @param resolveAllUsages whether to build the classification of every usage instead of only
+   *                         the usages which are the parent of another usage
+   */
+  public NameUsageTree(boolean resolveAllUsages) {
+    this.resolveAllUsages = resolveAllUsages;
+  }
+
+  @Override
+  public void add(String id, String parentId, String rank, TaxonomicStatus status,
+      boolean extinct, String scientificName, String authorship) {
+    if (lineages != null) {
+      throw new IllegalStateException("Name usage tree is already completed");
+    }
+    var node = intern(id);
+    if (isSet(node, DEFINED)) {
+      log.warn("Duplicate key: {}", id);
+      return;
+    }
+    var parent = parentId == null || parentId.isEmpty() ? NO_PARENT : intern(parentId);
+    parents[node] = parent;
+    if (parent != NO_PARENT) {
+      flags[parent] |= HAS_CHILDREN;
+    }
+    ranks[node] = rankCode(rank);
+    statuses[node] = (byte) status.ordinal();
+    flags[node] |= extinct ? DEFINED | EXTINCT : DEFINED;
+    scientificNames[node] = scientificName;
+    authorships[node] = authorship;
+    size++;
+  }
+
+  /**
+   * Builds the classification of every parent usage and releases the names of all usages which
+   * are not needed as part of a classification. No usages can be added afterward.
+   */
+  @Override
+  public void complete() {
+    lineages = new Lineage[ids.size()];
+    var pending = new int[16];
+    for (int node = 0; node < ids.size(); node++) {
+      if ((resolveAllUsages || isSet(node, HAS_CHILDREN)) && isSet(node, DEFINED)
+          && lineages[node] == null) {
+        pending = resolve(node, pending);
+      }
+    }
+    scientificNames = null;
+    authorships = null;
+  }
+
+  /**
+   * Returns the classification of a usage with the given parent, ordered from the root downward.
+   * The returned list is immutable and shared between all usages with the same parent.
+   */
+  @Override
+  public List<ColDpClassification> getClassification(String parentId) {
+    if (lineages == null) {
+      throw new IllegalStateException("Name usage tree has not been completed");
+    }
+    if (parentId == null || parentId.isEmpty()) {
+      return List.of();
+    }
+    var node = ids.find(new BytesRef(parentId));
+    if (node < 0 || lineages[node] == null) {
+      return List.of();
+    }
+    return lineages[node];
+  }
+
+  /**
+   * Passes every usage with a classification to the consumer together with the id of its parent
+   * in that classification, which is null for a root.
+   */
+  @Override
+  public void forEachHigherTaxon(BiConsumer<String, ColDpClassification> consumer) {
+    if (lineages == null) {
+      throw new IllegalStateException("Name usage tree has not been completed");
+    }
+    for (var lineage : lineages) {
+      if (lineage != null) {
+        consumer.accept(lineage.parent == null ? null : lineage.parent.classification.getColId(),
+            lineage.classification);
+      }
+    }
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  private int[] resolve(int node, int[] pending) {
+    var depth = 0;
+    var current = node;
+    Lineage base = null;
+    while (current != NO_PARENT && isSet(current, DEFINED)) {
+      if (lineages[current] != null) {
+        base = lineages[current];
+        break;
+      }
+      if (isSet(current, VISITING)) {
+        log.warn("Cycle in the parent chain of: {}", idOf(current));
+        break;
+      }
+      flags[current] |= VISITING;
+      pending = ArrayUtil.grow(pending, depth + 1);
+      pending[depth++] = current;
+      current = parents[current];
+    }
+    while (depth > 0) {
+      var ancestor = pending[--depth];
+      flags[ancestor] &= ~VISITING;
+      base = new Lineage(base, toClassification(ancestor));
+      lineages[ancestor] = base;
+    }
+    return pending;
+  }
+
+  private ColDpClassification toClassification(int node) {
+    return new ColDpClassification(idOf(node), scientificNames[node], authorships[node],
+        ranks[node] == NO_RANK ? null : rankVocabulary.get(ranks[node]), STATUSES[statuses[node]],
+        isSet(node, EXTINCT));
+  }
+
+  private int intern(String id) {
+    var node = ids.add(new BytesRef(id));
+    if (node < 0) {
+      return -node - 1;
+    }
+    if (node == parents.length) {
+      var capacity = ArrayUtil.oversize(node + 1, Integer.BYTES);
+      parents = Arrays.copyOf(parents, capacity);
+      ranks = Arrays.copyOf(ranks, capacity);
+      statuses = Arrays.copyOf(statuses, capacity);
+      flags = Arrays.copyOf(flags, capacity);
+      scientificNames = Arrays.copyOf(scientificNames, capacity);
+      authorships = Arrays.copyOf(authorships, capacity);
+    }
+    parents[node] = NO_PARENT;
+    return node;
+  }
+
+  private byte rankCode(String rank) {
+    if (rank == null) {
+      return NO_RANK;
+    }
+    return rankCodes.computeIfAbsent(rank, r -> {
+      if (rankVocabulary.size() == Byte.MAX_VALUE) {
+        throw new IllegalStateException("Too many distinct ranks, cannot add: " + r);
+      }
+      rankVocabulary.add(r);
+      return (byte) (rankVocabulary.size() - 1);
+    });
+  }
+
+  private String idOf(int node) {
+    return ids.get(node, new BytesRef()).utf8ToString();
+  }
+
+  private boolean isSet(int node, byte flag) {
+    return (flags[node] & flag) != 0;
+  }
+
+  /**
+   * Immutable classification which links to the classification of its parent instead of copying
+   * it.
+   */
+  static final class Lineage extends AbstractList<ColDpClassification> {
+
+    final Lineage parent;
+    final ColDpClassification classification;
+    private final int size;
+
+    Lineage(Lineage parent, ColDpClassification classification) {
+      this.parent = parent;
+      this.classification = classification;
+      this.size = parent == null ? 1 : parent.size + 1;
+    }
+
+    @Override
+    public ColDpClassification get(int index) {
+      Objects.checkIndex(index, size);
+      var lineage = this;
+      for (int i = size - 1; i > index; i--) {
+        lineage = lineage.parent;
+      }
+      return lineage.classification;
+    }
+
+    @Override
+    public Iterator<ColDpClassification> iterator() {
+      var classifications = new ColDpClassification[size];
+      var lineage = this;
+      for (int i = size - 1; i >= 0; i--) {
+        classifications[i] = lineage.classification;
+        lineage = lineage.parent;
+      }
+      return Arrays.asList(classifications).iterator();
+    }
+
+    @Override
+    public int size() {
+      return size;
+    }
+  }
+}
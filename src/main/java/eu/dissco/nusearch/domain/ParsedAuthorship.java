@@ -0,0 +1,13 @@
+package eu.dissco.nusearch.domain;
+
+/**
+ * Authorship of a name usage as parsed by the name parser at index time, so candidates can be
+ * compared on their authorship without parsing them again for every query.
+ */
+public record ParsedAuthorship(
+    String authorship,
+    String year,
+    String bracketAuthorship,
+    String bracketYear) {
+
+}
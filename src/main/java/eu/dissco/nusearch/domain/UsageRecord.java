@@ -0,0 +1,71 @@
+package eu.dissco.nusearch.domain;
+
+import java.util.List;
+import org.gbif.api.vocabulary.Rank;
+import org.gbif.api.vocabulary.TaxonomicStatus;
+
+/**
+ * Immutable name usage as it is stored in the index. Records are cached and shared between
+ * requests, every request gets a match of its own from {@link #toMatch()} on which the matching
+ * sets its confidence, notes and alternatives.
+ */
+public record UsageRecord(
+    String colId,
+    String colParentId,
+    String scientificName,
+    String canonicalName,
+    String authorship,
+    ParsedAuthorship parsedAuthorship,
+    Rank rank,
+    TaxonomicStatus taxonomicStatus,
+    String specificEpithet,
+    String genericName,
+    String code,
+    String nameStatus,
+    boolean extinct,
+    String kingdom,
+    String phylum,
+    String clazz,
+    String order,
+    String family,
+    String genus,
+    String subgenus,
+    String species,
+    List<ColDpClassification> classifications) {
+
+  public ColDpNameUsageMatch toMatch() {
+    var match = new ColDpNameUsageMatch();
+    match.setColId(colId);
+    match.setColParentId(colParentId);
+    match.setScientificName(scientificName);
+    match.setCanonicalName(canonicalName);
+    match.setParsedAuthorship(parsedAuthorship);
+    match.setRank(rank);
+    match.setTaxonomicStatus(taxonomicStatus);
+    match.setKingdom(kingdom);
+    match.setPhylum(phylum);
+    match.setClazz(clazz);
+    match.setOrder(order);
+    match.setFamily(family);
+    match.setGenus(genus);
+    match.setSubgenus(subgenus);
+    match.setSpecies(species);
+    match.setClassifications(classifications);
+    complete(match);
+    return match;
+  }
+
+  /**
+   * Adds the fields which are not read for a candidate, see
+   * {@link ColDpNameUsageMatch#isCandidate()}.
+   */
+  public void complete(ColDpNameUsageMatch candidate) {
+    candidate.setAuthorship(authorship);
+    candidate.setSpecificEpithet(specificEpithet);
+    candidate.setGenericName(genericName);
+    candidate.setCode(code);
+    candidate.setNameStatus(nameStatus);
+    candidate.setExtinct(extinct);
+    candidate.setCandidate(false);
+  }
+}
@@ -0,0 +1,12 @@
+package eu.dissco.nusearch.exception;
+
+public class ColDownloadException extends Exception {
+
+  public ColDownloadException(String message) {
+    super(message);
+  }
+
+  public ColDownloadException(String message, Throwable cause) {
+    super(message, cause);
+  }
+}
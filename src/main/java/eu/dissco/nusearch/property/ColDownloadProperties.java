@@ -1,6 +1,7 @@
 package eu.dissco.nusearch.property;
 
 import jakarta.validation.constraints.Positive;
+import jakarta.validation.constraints.PositiveOrZero;
 import lombok.Data;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.validation.annotation.Validated;
@@ -14,10 +15,29 @@ public class ColDownloadProperties {
 
   private boolean extended = true;
 
+  // Reuse a finished export of the same dataset attempt instead of requesting a new one
+  private boolean reuseExport = true;
+
+  // Initial interval between export status checks, doubled after every check
   @Positive
   private int exportStatusRetryTime = 500;
 
   @Positive
-  private int exportStatusRetryCount = 10;
+  private int exportStatusMaxRetryTime = 60000;
+
+  // Time after which an export which is still not finished is given up on
+  @Positive
+  private long exportStatusTimeout = 7200000;
+
+  // Number of parallel connections, each downloading its own range of the export
+  @Positive
+  private int downloadConnections = 4;
+
+  // Retries of a single range, every retry continues from the last byte received
+  @PositiveOrZero
+  private int downloadRetryCount = 5;
+
+  @Positive
+  private int downloadRetryTime = 1000;
 
 }
@@ -1,8 +1,10 @@
 package eu.dissco.nusearch.property;
 
-import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.AssertTrue;
 import jakarta.validation.constraints.Positive;
+import jakarta.validation.constraints.PositiveOrZero;
 import lombok.Data;
+import org.apache.commons.lang3.StringUtils;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.validation.annotation.Validated;
 
@@ -14,16 +16,112 @@ public class IndexingProperties {
   @Positive
   private int colDataset;
 
-  @NotBlank
   private String colUsername;
 
-  @NotBlank
   private String colPassword;
 
+  // A local ColDP archive which is indexed instead of downloading the dataset from Checklistbank
+  private String colDpArchive;
+
   @Positive
   private int maxCharsPerColumn = 196608;
 
+  @Positive
+  private int indexingThreads = Runtime.getRuntime().availableProcessors();
+
+  @Positive
+  private int indexingQueueSize = 10000;
+
+  // Name usages read between two commits, a failed build resumes from the last commit
+  @Positive
+  private int commitBatchSize = 100000;
+
   private String indexLocation = "src/main/resources/index";
 
+  // Builds a single segment, sorted, docs only index which is faster to search but slower to build
+  private boolean optimizeForServing = false;
+
+  @Positive
+  private double servingRamBufferSizeMb = 256;
+
   private String tempColDpLocation = "src/main/resources/sample.zip";
+
+  // NameUsage.tsv is inflated here once and read from a memory mapping in every pass
+  private String scratchNameUsageLocation = "src/main/resources/NameUsage.tsv";
+
+  // Resolves classifications from sorted runs on disk instead of the heap, for datasets which do not
+  // fit in the heap. The runs are written next to the scratch name usage location
+  private boolean externalMemoryIndexing = false;
+
+  // Heap used by the external memory mode to buffer usages before spilling and to cache
+  // classifications
+  @Positive
+  private int externalMemoryBudgetMb = 256;
+
+  // The phases completed by the index build are saved here, so a rerun can resume
+  private String checkpointLocation = "src/main/resources/indexing-checkpoint.json";
+
+  // Only rebuilds the documents which changed since the existing index at the index location
+  private boolean incrementalIndexing = false;
+
+  // Reuse an existing index built from the current release of the dataset instead of rebuilding
+  private boolean reuseIndex = true;
+
+  // The s3-resolver polls S3 for a new release of the index and swaps it in without a restart
+  private boolean hotSwapIndex = true;
+
+  // Milliseconds between two checks for a new release of the index on S3
+  @Positive
+  private long indexPollInterval = 600000;
+
+  // The s3-resolver searches the snapshot on S3 in place while it is downloaded in the background
+  private boolean streamIndex = false;
+
+  // The standalone profile rebuilds the index in the background when the dataset has a new release
+  private boolean rebuildIndex = true;
+
+  // Milliseconds between two checks of Checklistbank for a new release of the dataset
+  @Positive
+  private long rebuildPollInterval = 86400000;
+
+  // Threads of a background rebuild, kept low so requests are served without delay
+  @Positive
+  private int rebuildThreads = 1;
+
+  // Queries run on a swapped in index before it serves requests
+  @PositiveOrZero
+  private int warmupQueries = 1000;
+
+  // Usages kept decoded in memory for repeated lookups, 0 disables the cache
+  @PositiveOrZero
+  private int usageCacheSize = 100000;
+
+  // How the canonical names close to a name which is not matched straight are found, see
+  // FuzzyCandidateGenerator
+  private FuzzyCandidates fuzzyCandidates = FuzzyCandidates.LUCENE;
+
+  // The characters of a canonical name indexed by the sym-spell candidates, more characters
+  // need more memory but leave fewer candidates to verify
+  @Positive
+  private int symSpellPrefixLength = 7;
+
+  // Delete the index on shutdown, by default it is kept for reuse and incremental indexing
+  private boolean deleteIndex = false;
+
+  public boolean hasColDpArchive() {
+    return StringUtils.isNotBlank(colDpArchive);
+  }
+
+  @AssertTrue(message = "col-username and col-password are required without a col-dp-archive")
+  public boolean isChecklistbankConfigured() {
+    return hasColDpArchive() || (StringUtils.isNotBlank(colUsername)
+        && StringUtils.isNotBlank(colPassword));
+  }
+
+  public enum FuzzyCandidates {
+    // a FuzzyQuery per request
+    LUCENE,
+    // a symmetric delete index built when the index is opened
+    SYM_SPELL
+  }
 }
@@ -2,6 +2,7 @@ package eu.dissco.nusearch.property;
 
 import eu.dissco.nusearch.Profiles;
 import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.Positive;
 import lombok.Data;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Profile;
@@ -19,4 +20,19 @@ public class S3Properties {
   @NotBlank
   private String accessSecret;
 
+  // Optional endpoint of an S3 compatible store, buckets are then addressed by path
+  private String endpoint;
+
+  // Size of the parts in which index snapshots are uploaded and downloaded in parallel
+  @Positive
+  private long partSizeMb = 16;
+
+  // Size of the blocks in which a snapshot is fetched when it is searched in place
+  @Positive
+  private int blockSizeKb = 1024;
+
+  // Blocks of a snapshot fetched at the same time by the background download
+  @Positive
+  private int prefetchConnections = 8;
+
 }
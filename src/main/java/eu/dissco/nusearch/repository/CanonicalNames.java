@@ -0,0 +1,111 @@
+package eu.dissco.nusearch.repository;
+
+import java.io.IOException;
+import java.util.Arrays;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.PostingsEnum;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.BytesRefHash;
+
+/**
+ * Maps every analyzed canonical name in an opened index to the doc ids of the name usages with
+ * that name, so a correctly spelled name is matched by a single hash probe instead of a term
+ * query. The names are interned into a {@link BytesRefHash}, the doc ids of all names are kept in
+ * a single array with the doc ids of a name next to each other, in doc id order.
+ * <p>
+ * The map belongs to a single reader and is read concurrently by all requests using that reader.
+ */
+@Slf4j
+public final class CanonicalNames {
+
+  private static final int[] NO_DOCS = new int[0];
+
+  private final BytesRefHash names;
+  private final int[] starts;
+  private final int[] docs;
+
+  private CanonicalNames(BytesRefHash names, int[] starts, int[] docs) {
+    this.names = names;
+    this.starts = starts;
+    this.docs = docs;
+  }
+
+  /**
+   * Reads the canonical names of all live documents. The docs are collected per name in a first
+   * pass over the terms and grouped by name afterward, as a name can occur in several segments.
+   */
+  public static CanonicalNames load(IndexReader reader) throws IOException {
+    var names = new BytesRefHash();
+    var nameOfDoc = new int[0];
+    var docOfDoc = new int[0];
+    var count = 0;
+    for (var leaf : reader.leaves()) {
+      var terms = leaf.reader().terms(NubIndex.FIELD_CANONICAL_NAME);
+      if (terms == null) {
+        continue;
+      }
+      var liveDocs = leaf.reader().getLiveDocs();
+      var termsEnum = terms.iterator();
+      PostingsEnum postings = null;
+      for (var term = termsEnum.next(); term != null; term = termsEnum.next()) {
+        var name = names.add(term);
+        if (name < 0) {
+          name = -name - 1;
+        }
+        postings = termsEnum.postings(postings, PostingsEnum.NONE);
+        for (int doc = postings.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS;
+            doc = postings.nextDoc()) {
+          if (liveDocs == null || liveDocs.get(doc)) {
+            nameOfDoc = ArrayUtil.grow(nameOfDoc, count + 1);
+            docOfDoc = ArrayUtil.grow(docOfDoc, count + 1);
+            nameOfDoc[count] = name;
+            docOfDoc[count] = leaf.docBase + doc;
+            count++;
+          }
+        }
+      }
+    }
+    // counting sort on name, stable so the docs of a name stay in doc id order
+    var starts = new int[names.size() + 1];
+    for (int i = 0; i < count; i++) {
+      starts[nameOfDoc[i] + 1]++;
+    }
+    for (int name = 0; name < names.size(); name++) {
+      starts[name + 1] += starts[name];
+    }
+    var next = Arrays.copyOf(starts, names.size());
+    var docs = new int[count];
+    for (int i = 0; i < count; i++) {
+      docs[next[nameOfDoc[i]]++] = docOfDoc[i];
+    }
+    log.info("Mapped {} canonical names to {} documents", names.size(), count);
+    return new CanonicalNames(names, starts, docs);
+  }
+
+  /**
+   * Returns the doc ids of at most the given number of usages with the analyzed canonical name, in
+   * doc id order.
+   */
+  public int[] find(String analyzedName, int maxDocs) {
+    var name = names.find(new BytesRef(analyzedName));
+    if (name < 0) {
+      return NO_DOCS;
+    }
+    return Arrays.copyOfRange(docs, starts[name], Math.min(starts[name + 1],
+        starts[name] + maxDocs));
+  }
+
+  /**
+   * The analyzed canonical name with the given id, ids range from 0 to {@link #size()}.
+   */
+  String name(int id) {
+    return names.get(id, new BytesRef()).utf8ToString();
+  }
+
+  public int size() {
+    return names.size();
+  }
+}
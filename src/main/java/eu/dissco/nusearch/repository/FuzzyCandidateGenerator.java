@@ -0,0 +1,53 @@
+package eu.dissco.nusearch.repository;
+
+import eu.dissco.nusearch.property.IndexingProperties;
+import eu.dissco.nusearch.repository.NubSearcherManager.NubSearcher;
+import java.io.IOException;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Finds the canonical names in an index which are within a number of edits of a name that was not
+ * matched straight. The candidates are the analyzed canonical names, their documents are looked up
+ * in the {@link CanonicalNames} of the searcher. A generator is opened for every searcher, by the
+ * {@link NubSearcherManager} before the searcher is swapped in.
+ */
+public interface FuzzyCandidateGenerator {
+
+  /**
+   * The canonical names within the given number of edits of the analyzed name which start with
+   * the same character, closest first.
+   */
+  List<FuzzyCandidate> candidates(NubSearcher nubSearcher, String analyzedName, int maxEdits)
+      throws IOException;
+
+  /**
+   * The factory for the generator configured in the properties.
+   */
+  static Factory of(IndexingProperties properties) {
+    return switch (properties.getFuzzyCandidates()) {
+      case LUCENE -> {
+        var generator = new LuceneFuzzyCandidateGenerator();
+        yield canonicalNames -> generator;
+      }
+      case SYM_SPELL -> canonicalNames -> SymSpellCandidateGenerator.build(canonicalNames,
+          properties.getSymSpellPrefixLength());
+    };
+  }
+
+  /**
+   * Opens the generator for the canonical names of a searcher.
+   */
+  @FunctionalInterface
+  interface Factory {
+
+    FuzzyCandidateGenerator open(CanonicalNames canonicalNames);
+  }
+
+  record FuzzyCandidate(String canonicalName, int distance) {
+
+    public static final Comparator<FuzzyCandidate> CLOSEST_FIRST = Comparator
+        .comparingInt(FuzzyCandidate::distance).thenComparing(FuzzyCandidate::canonicalName);
+
+  }
+}
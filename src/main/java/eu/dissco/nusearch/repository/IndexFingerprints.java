@@ -0,0 +1,173 @@
+package eu.dissco.nusearch.repository;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.HexFormat;
+import java.util.function.Consumer;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.PostingsEnum;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.BytesRefHash;
+import org.apache.lucene.util.FixedBitSet;
+
+/**
+ * The fingerprints of all documents in an existing index, keyed by the value of their id field.
+ * Used to only rebuild the documents which changed since the previous index. Every lookup marks
+ * the id as seen, ids which have not been seen at the end of indexing are no longer in the dataset.
+ */
+public class IndexFingerprints {
+
+  private static final long NO_FINGERPRINT = 0;
+  private static final HashFunction DIGEST = Hashing.murmur3_128();
+
+  private final BytesRefHash ids = new BytesRefHash();
+  private long[] fingerprints = new long[0];
+  private FixedBitSet seen;
+
+  private IndexFingerprints() {
+  }
+
+  public static IndexFingerprints empty() {
+    var indexFingerprints = new IndexFingerprints();
+    indexFingerprints.seen = new FixedBitSet(0);
+    return indexFingerprints;
+  }
+
+  /**
+   * Reads the fingerprint of every live document with the given id field. Documents without a
+   * fingerprint are included, so they are always rebuilt or deleted.
+   */
+  public static IndexFingerprints load(IndexReader reader, String idField) throws IOException {
+    var indexFingerprints = new IndexFingerprints();
+    for (var leaf : reader.leaves()) {
+      var terms = leaf.reader().terms(idField);
+      if (terms == null) {
+        continue;
+      }
+      var liveDocs = leaf.reader().getLiveDocs();
+      var docValues = leaf.reader().getNumericDocValues(NubIndex.FIELD_FINGERPRINT);
+      var termsEnum = terms.iterator();
+      PostingsEnum postings = null;
+      BytesRef id;
+      while ((id = termsEnum.next()) != null) {
+        postings = termsEnum.postings(postings, PostingsEnum.NONE);
+        for (int doc = postings.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS;
+            doc = postings.nextDoc()) {
+          if (liveDocs == null || liveDocs.get(doc)) {
+            var fingerprint = docValues != null && docValues.advanceExact(doc)
+                ? docValues.longValue() : NO_FINGERPRINT;
+            indexFingerprints.put(id, fingerprint);
+          }
+        }
+      }
+    }
+    indexFingerprints.seen = new FixedBitSet(indexFingerprints.ids.size());
+    return indexFingerprints;
+  }
+
+  /**
+   * Returns whether the index holds a document with this id and fingerprint, and marks the id as
+   * seen.
+   */
+  public boolean isUnchanged(String id, long fingerprint) {
+    var node = ids.find(new BytesRef(id));
+    if (node < 0) {
+      return false;
+    }
+    seen.set(node);
+    return fingerprints[node] == fingerprint && fingerprint != NO_FINGERPRINT;
+  }
+
+  /**
+   * Marks the id as seen without comparing its fingerprint, for documents which were already
+   * updated by an earlier run.
+   */
+  public void markSeen(String id) {
+    var node = ids.find(new BytesRef(id));
+    if (node >= 0) {
+      seen.set(node);
+    }
+  }
+
+  public void forEachUnseen(Consumer<String> consumer) {
+    var id = new BytesRef();
+    for (int node = 0; node < ids.size(); node++) {
+      if (!seen.get(node)) {
+        consumer.accept(ids.get(node, id).utf8ToString());
+      }
+    }
+  }
+
+  public int size() {
+    return ids.size();
+  }
+
+  /**
+   * Digest of the ids and fingerprints of all live documents with one of the given id fields. The
+   * hashes of the documents are summed, so the digest does not depend on the order of the
+   * documents or on how they are spread over segments.
+   */
+  public static String digest(IndexReader reader, String... idFields) throws IOException {
+    long count = 0;
+    long sumHigh = 0;
+    long sumLow = 0;
+    for (var leaf : reader.leaves()) {
+      var liveDocs = leaf.reader().getLiveDocs();
+      // the postings of the ids are not in doc id order, so the fingerprints are read up front
+      var fingerprints = new long[leaf.reader().maxDoc()];
+      var docValues = leaf.reader().getNumericDocValues(NubIndex.FIELD_FINGERPRINT);
+      if (docValues != null) {
+        for (int doc = docValues.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS;
+            doc = docValues.nextDoc()) {
+          fingerprints[doc] = docValues.longValue();
+        }
+      }
+      for (var idField : idFields) {
+        var terms = leaf.reader().terms(idField);
+        if (terms == null) {
+          continue;
+        }
+        var termsEnum = terms.iterator();
+        PostingsEnum postings = null;
+        BytesRef id;
+        while ((id = termsEnum.next()) != null) {
+          postings = termsEnum.postings(postings, PostingsEnum.NONE);
+          for (int doc = postings.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS;
+              doc = postings.nextDoc()) {
+            if (liveDocs != null && !liveDocs.get(doc)) {
+              continue;
+            }
+            var hash = DIGEST.newHasher()
+                .putString(idField, StandardCharsets.UTF_8)
+                .putBytes(id.bytes, id.offset, id.length)
+                .putLong(fingerprints[doc])
+                .hash().asBytes();
+            var buffer = ByteBuffer.wrap(hash);
+            sumHigh += buffer.getLong();
+            sumLow += buffer.getLong();
+            count++;
+          }
+        }
+      }
+    }
+    return HexFormat.of().formatHex(ByteBuffer.allocate(3 * Long.BYTES)
+        .putLong(count).putLong(sumHigh).putLong(sumLow).array());
+  }
+
+  private void put(BytesRef id, long fingerprint) {
+    var node = ids.add(id);
+    if (node < 0) {
+      // the same id twice, keep the first so the others get replaced
+      return;
+    }
+    if (node == fingerprints.length) {
+      fingerprints = ArrayUtil.grow(fingerprints, node + 1);
+    }
+    fingerprints[node] = fingerprint;
+  }
+}
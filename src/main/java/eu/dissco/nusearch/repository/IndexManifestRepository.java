@@ -0,0 +1,204 @@
+package eu.dissco.nusearch.repository;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import eu.dissco.nusearch.domain.IndexManifest;
+import eu.dissco.nusearch.property.IndexingProperties;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.Optional;
+import java.util.TreeSet;
+import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.lucene.codecs.CodecUtil;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.SegmentInfos;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.store.IOContext;
+import org.springframework.stereotype.Repository;
+
+/**
+ * Stores the manifest of the index as a JSON file inside the index folder, so it is uploaded and
+ * downloaded together with the index. Lucene ignores the file as it does not follow its file
+ * naming.
+ * <p>
+ * The checksum covers the name, length and footer checksum of every file of the last commit. It
+ * is computed from the file footers only, which keeps validating an index at startup cheap while
+ * still catching missing, truncated or replaced files.
+ * <p>
+ * Lucene writes a random id into every segment, so the files of two builds of the same documents
+ * differ. The content digest is computed from the documents instead, which makes two builds of the
+ * same documents with the same settings, codecs and document layout comparable.
+ */
+@Slf4j
+@Repository
+@AllArgsConstructor
+public class IndexManifestRepository {
+
+  public static final String MANIFEST_FILE = "index-manifest.json";
+
+  private final ObjectMapper mapper;
+  private final IndexingProperties properties;
+
+  public Optional<IndexManifest> load() {
+    return load(indexLocation());
+  }
+
+  public Optional<IndexManifest> load(Path indexLocation) {
+    var path = indexLocation.resolve(MANIFEST_FILE);
+    if (Files.notExists(path)) {
+      return Optional.empty();
+    }
+    try {
+      return Optional.of(mapper.readValue(path.toFile(), IndexManifest.class));
+    } catch (IOException e) {
+      log.warn("Ignoring unreadable index manifest: {}", path, e);
+      return Optional.empty();
+    }
+  }
+
+  public IndexManifest save(int attempt) throws IOException {
+    return save(attempt, null);
+  }
+
+  public IndexManifest save(int attempt, String archiveChecksum) throws IOException {
+    var manifest = new IndexManifest(properties.getColDataset(), NubIndex.SCHEMA_VERSION, attempt,
+        properties.isOptimizeForServing(), Instant.now(), checksum(), archiveChecksum,
+        contentDigest(indexLocation()));
+    var path = manifestPath();
+    var temp = path.resolveSibling(path.getFileName() + ".tmp");
+    mapper.writeValue(temp.toFile(), manifest);
+    Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    log.info("Saved index manifest for dataset: {} attempt: {}", manifest.colDataset(), attempt);
+    return manifest;
+  }
+
+  public void delete() throws IOException {
+    Files.deleteIfExists(manifestPath());
+  }
+
+  /**
+   * Whether the index still consists of the files the manifest was written for.
+   */
+  public boolean isValid(IndexManifest manifest) {
+    return isValid(indexLocation(), manifest);
+  }
+
+  public boolean isValid(Path indexLocation, IndexManifest manifest) {
+    try {
+      return manifest.checksum().equals(checksum(indexLocation));
+    } catch (IOException e) {
+      log.warn("Unable to compute the checksum of index: {}", indexLocation, e);
+      return false;
+    }
+  }
+
+  /**
+   * Whether the index in the location has a manifest, has the document layout of this version and
+   * still consists of the files it was written for.
+   */
+  public boolean hasValidIndex(Path indexLocation) {
+    return load(indexLocation)
+        .filter(manifest -> hasCurrentSchema(manifest) && isValid(indexLocation, manifest))
+        .isPresent();
+  }
+
+  /**
+   * Whether the index described by the manifest has the document layout of this version, an index
+   * with another layout can not be read.
+   */
+  public static boolean hasCurrentSchema(IndexManifest manifest) {
+    return manifest.schemaVersion() == NubIndex.SCHEMA_VERSION;
+  }
+
+  /**
+   * Whether the local index is a valid copy of the index described by the given manifest file.
+   */
+  public boolean matches(byte[] manifestFile) {
+    return matches(indexLocation(), manifestFile);
+  }
+
+  public boolean matches(Path indexLocation, byte[] manifestFile) {
+    var path = indexLocation.resolve(MANIFEST_FILE);
+    try {
+      return Files.exists(path) && (Arrays.equals(Files.readAllBytes(path), manifestFile)
+          || hasSameContent(indexLocation, manifestFile))
+          && hasValidIndex(indexLocation);
+    } catch (IOException e) {
+      log.warn("Unable to read index manifest: {}", path, e);
+      return false;
+    }
+  }
+
+  /**
+   * Whether the index in the location has the same content digest as the index described by the
+   * given manifest file.
+   */
+  public boolean hasSameContent(Path indexLocation, byte[] manifestFile) {
+    var contentDigest = load(indexLocation).map(IndexManifest::contentDigest).orElse(null);
+    if (contentDigest == null) {
+      return false;
+    }
+    try {
+      return contentDigest.equals(
+          mapper.readValue(manifestFile, IndexManifest.class).contentDigest());
+    } catch (IOException e) {
+      log.warn("Ignoring unreadable index manifest", e);
+      return false;
+    }
+  }
+
+  private String checksum() throws IOException {
+    return checksum(indexLocation());
+  }
+
+  private static String checksum(Path indexLocation) throws IOException {
+    try (var directory = FSDirectory.open(indexLocation)) {
+      var commit = SegmentInfos.readLatestCommit(directory);
+      var digest = MessageDigest.getInstance("SHA-256");
+      for (var file : new TreeSet<>(commit.files(true))) {
+        try (var input = directory.openInput(file, IOContext.READONCE)) {
+          var footer = CodecUtil.retrieveChecksum(input);
+          digest.update((file + ":" + input.length() + ":" + footer + "\n")
+              .getBytes(StandardCharsets.UTF_8));
+        }
+      }
+      return HexFormat.of().formatHex(digest.digest());
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-256 is not supported by this JVM", e);
+    }
+  }
+
+  private String contentDigest(Path indexLocation) throws IOException {
+    try (var directory = FSDirectory.open(indexLocation);
+        var reader = DirectoryReader.open(directory)) {
+      var codecs = new TreeSet<String>();
+      SegmentInfos.readLatestCommit(directory)
+          .forEach(segment -> codecs.add(segment.info.getCodec().getName()));
+      var documents = IndexFingerprints.digest(reader, NubIndex.FIELD_ID,
+          NubIndex.FIELD_HIGHER_TAXON_ID);
+      var digest = MessageDigest.getInstance("SHA-256");
+      digest.update((NubIndex.SCHEMA_VERSION + ":" + codecs + ":"
+          + properties.isOptimizeForServing() + ":" + documents)
+          .getBytes(StandardCharsets.UTF_8));
+      return HexFormat.of().formatHex(digest.digest());
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-256 is not supported by this JVM", e);
+    }
+  }
+
+  private Path manifestPath() {
+    return indexLocation().resolve(MANIFEST_FILE);
+  }
+
+  private Path indexLocation() {
+    return Path.of(properties.getIndexLocation());
+  }
+}
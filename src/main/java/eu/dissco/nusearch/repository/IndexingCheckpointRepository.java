@@ -0,0 +1,51 @@
+package eu.dissco.nusearch.repository;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import eu.dissco.nusearch.domain.IndexingCheckpoint;
+import eu.dissco.nusearch.property.IndexingProperties;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Optional;
+import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Repository;
+
+/**
+ * Stores the checkpoint of the index build as a JSON file next to the index. The file is replaced
+ * atomically, so a crash while saving leaves the previous checkpoint intact.
+ */
+@Slf4j
+@Repository
+@AllArgsConstructor
+public class IndexingCheckpointRepository {
+
+  private final ObjectMapper mapper;
+  private final IndexingProperties properties;
+
+  public Optional<IndexingCheckpoint> load() {
+    var path = Path.of(properties.getCheckpointLocation());
+    if (Files.notExists(path)) {
+      return Optional.empty();
+    }
+    try {
+      return Optional.of(mapper.readValue(path.toFile(), IndexingCheckpoint.class));
+    } catch (IOException e) {
+      log.warn("Ignoring unreadable indexing checkpoint: {}", path, e);
+      return Optional.empty();
+    }
+  }
+
+  public void save(IndexingCheckpoint checkpoint) throws IOException {
+    var path = Path.of(properties.getCheckpointLocation());
+    var temp = path.resolveSibling(path.getFileName() + ".tmp");
+    mapper.writeValue(temp.toFile(), checkpoint);
+    Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    log.info("Saved indexing checkpoint, completed phase: {}", checkpoint.completedPhase());
+  }
+
+  public void delete() throws IOException {
+    Files.deleteIfExists(Path.of(properties.getCheckpointLocation()));
+  }
+}
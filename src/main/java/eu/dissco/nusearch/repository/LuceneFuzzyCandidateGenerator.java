@@ -0,0 +1,32 @@
+package eu.dissco.nusearch.repository;
+
+import eu.dissco.nusearch.repository.NubSearcherManager.NubSearcher;
+import eu.dissco.nusearch.utils.DistanceUtils;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.List;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.FuzzyQuery;
+import org.apache.lucene.search.QueryVisitor;
+
+/**
+ * Expands a {@link FuzzyQuery} into the terms it matches. The query builds a Levenshtein automaton
+ * per request and keeps the best {@value FuzzyQuery#defaultMaxExpansions} terms, an automaton
+ * which is too complex to determinize fails the request.
+ */
+public class LuceneFuzzyCandidateGenerator implements FuzzyCandidateGenerator {
+
+  @Override
+  public List<FuzzyCandidate> candidates(NubSearcher nubSearcher, String analyzedName,
+      int maxEdits) throws IOException {
+    var query = nubSearcher.searcher().rewrite(
+        new FuzzyQuery(new Term(NubIndex.FIELD_CANONICAL_NAME, analyzedName), maxEdits, 1));
+    var terms = new HashSet<Term>();
+    query.visit(QueryVisitor.termCollector(terms));
+    return terms.stream()
+        .map(term -> new FuzzyCandidate(term.text(),
+            DistanceUtils.editDistance(analyzedName, term.text())))
+        .sorted(FuzzyCandidate.CLOSEST_FIRST)
+        .toList();
+  }
+}
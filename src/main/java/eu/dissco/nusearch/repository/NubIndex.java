@@ -16,33 +16,53 @@ package eu.dissco.nusearch.repository;
 // Copied and adapted from GBIF:
 // https://github.com/gbif/checklistbank/blob/master/checklistbank-nub/src/main/java/org/gbif/nub/lookup/fuzzy/NubIndex.java
 
+import static eu.dissco.nusearch.Profiles.S3_RESOLVER;
+import static eu.dissco.nusearch.Profiles.STANDALONE;
+
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.UncheckedExecutionException;
 import eu.dissco.nusearch.component.ScientificNameAnalyzer;
-import eu.dissco.nusearch.domain.ColDpClassification;
+import eu.dissco.nusearch.domain.ClassificationTree;
 import eu.dissco.nusearch.domain.ColDpNameUsageMatch;
+import eu.dissco.nusearch.domain.NameUsageTree;
+import eu.dissco.nusearch.domain.ParsedAuthorship;
+import eu.dissco.nusearch.domain.UsageRecord;
+import eu.dissco.nusearch.property.IndexingProperties;
+import eu.dissco.nusearch.repository.NubSearcherManager.NubSearcher;
+import eu.dissco.nusearch.utils.ClassificationCodec;
 import eu.dissco.nusearch.utils.LuceneUtils;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.GuavaCacheMetrics;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
 import java.util.List;
-import lombok.AllArgsConstructor;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Supplier;
 import org.apache.lucene.document.Document;
+import org.apache.lucene.document.DocumentStoredFieldVisitor;
 import org.apache.lucene.document.StoredField;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.PostingsEnum;
+import org.apache.lucene.index.StoredFields;
 import org.apache.lucene.index.Term;
-import org.apache.lucene.search.FuzzyQuery;
-import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.DocIdSetIterator;
 import org.apache.lucene.search.PrefixQuery;
-import org.apache.lucene.search.Query;
 import org.apache.lucene.search.ScoreDoc;
 import org.apache.lucene.search.Sort;
 import org.apache.lucene.search.SortField;
 import org.apache.lucene.search.SortField.Type;
-import org.apache.lucene.search.TermQuery;
-import org.apache.lucene.search.TopDocs;
 import org.gbif.api.model.checklistbank.NameUsageMatch;
 import org.gbif.api.vocabulary.Rank;
 import org.gbif.api.vocabulary.TaxonomicStatus;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.context.annotation.Profile;
 import org.springframework.stereotype.Component;
 
 /**
@@ -57,9 +77,12 @@ import org.springframework.stereotype.Component;
  * For the entire nub with roughly 4.5 million usages this index requires 4GB of heap memory if the
  * RAMDirectory is used. The memory mapped file index uses very little heap memory and instead all
  * available memory should be given to the OS to enabling caching on the file system level.
+ * <p>
+ * Every lookup acquires the current searcher from the {@link NubSearcherManager} and releases it
+ * when done, so the index can be swapped for a new release while requests are being served.
  */
 @Component
-@AllArgsConstructor
+@Profile({STANDALONE, S3_RESOLVER})
 public class NubIndex {
 
   /**
@@ -71,10 +94,75 @@ public class NubIndex {
   public static final String FIELD_SCIENTIFIC_NAME = "sciname";
   public static final String FIELD_RANK = "rank";
   public static final String FIELD_STATUS = "status";
+  public static final String FIELD_CANONICAL_NAME_SORT = "canString";
+  public static final Sort CANONICAL_NAME_SORT = new Sort(
+      new SortField(FIELD_CANONICAL_NAME_SORT, Type.STRING));
+  public static final String FIELD_HIGHER_TAXON_ID = "htid";
+  public static final String FIELD_HIGHER_TAXON = "ht";
+  public static final String FIELD_FINGERPRINT = "fp";
+  /**
+   * The version of the layout of the documents, to be increased with every change to the fields a
+   * document is built with. It is part of the fingerprint of every document and of the content
+   * digest of the index, so an index with another layout is rebuilt and replaced.
+   */
+  public static final int SCHEMA_VERSION = 1;
   private static final Logger LOG = LoggerFactory.getLogger(NubIndex.class);
+  // the stored fields needed to score a candidate, the other fields are read once it is selected
+  private static final Set<String> CANDIDATE_FIELDS = Set.of(FIELD_ID, "pId",
+      FIELD_CANONICAL_NAME, FIELD_SCIENTIFIC_NAME, FIELD_RANK, FIELD_STATUS, "pauth", "pyear",
+      "pbauth", "pbyear", "k", "p", "c", "o", "f", "g", "sub", "s");
+  private static final String USAGE_CACHE = "nusearch.usages";
 
-  private final IndexSearcher searcher;
+  private final NubSearcherManager searcherManager;
   private final ScientificNameAnalyzer analyzer;
+  private final Cache<UsageKey, UsageRecord> usages;
+  private final Set<IndexReader.CacheKey> cachedReaders = ConcurrentHashMap.newKeySet();
+  // the searcher a matching of the current thread runs on, see withSearcher
+  private final ThreadLocal<NubSearcher> pinned = new ThreadLocal<>();
+
+  /**
+   * Decoded usages are cached by the reader and doc id they were read from, the usages of a reader
+   * are removed once the reader is closed. Its hits, misses and evictions are exposed as the
+   * {@value #USAGE_CACHE} cache metrics. Fuzzy candidates are found by the
+   * {@link FuzzyCandidateGenerator} of the current searcher.
+   */
+  public NubIndex(NubSearcherManager searcherManager, ScientificNameAnalyzer analyzer,
+      IndexingProperties properties, MeterRegistry meterRegistry) {
+    this.searcherManager = searcherManager;
+    this.analyzer = analyzer;
+    this.usages = CacheBuilder.newBuilder().maximumSize(properties.getUsageCacheSize())
+        .recordStats().build();
+    GuavaCacheMetrics.monitor(meterRegistry, usages, USAGE_CACHE);
+  }
+
+  /**
+   * Runs the matching on a single searcher, all lookups of the current thread use the searcher
+   * which is current when it starts. Candidates scored on one release of the index are then
+   * completed from the same release, also when a new release is swapped in meanwhile.
+   */
+  public <T> T withSearcher(Supplier<T> matching) {
+    if (pinned.get() != null) {
+      return matching.get();
+    }
+    NubSearcher nubSearcher;
+    try {
+      nubSearcher = searcherManager.acquire();
+    } catch (IOException e) {
+      LOG.error("Cannot acquire lucene searcher", e);
+      return matching.get();
+    }
+    pinned.set(nubSearcher);
+    try {
+      return matching.get();
+    } finally {
+      pinned.remove();
+      try {
+        searcherManager.release(nubSearcher);
+      } catch (IOException e) {
+        LOG.error("Cannot release lucene searcher", e);
+      }
+    }
+  }
 
   public static void addIfNotNull(Document doc, String key, String value) {
     if (value != null) {
@@ -82,24 +170,80 @@ public class NubIndex {
     }
   }
 
+  /**
+   * Loads the higher taxon documents of the index into a table which resolves the classification
+   * of a usage by its parent id. All usages with the same parent share the same classification.
+   */
+  public static NameUsageTree loadHigherTaxa(IndexReader reader) throws IOException {
+    var higherTaxa = new NameUsageTree(true);
+    for (var leaf : reader.leaves()) {
+      var terms = leaf.reader().terms(FIELD_HIGHER_TAXON_ID);
+      if (terms == null) {
+        continue;
+      }
+      var liveDocs = leaf.reader().getLiveDocs();
+      var storedFields = leaf.reader().storedFields();
+      var termsEnum = terms.iterator();
+      PostingsEnum postings = null;
+      while (termsEnum.next() != null) {
+        postings = termsEnum.postings(postings, PostingsEnum.NONE);
+        for (int doc = postings.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS;
+            doc = postings.nextDoc()) {
+          if (liveDocs == null || liveDocs.get(doc)) {
+            var document = storedFields.document(doc);
+            var classification = ClassificationCodec.decode(
+                document.getBinaryValue(FIELD_HIGHER_TAXON));
+            higherTaxa.add(classification.getColId(), document.get("pId"),
+                classification.getRank(), classification.getStatus(), classification.isExtinct(),
+                classification.getScientificName(), classification.getAuthorship());
+          }
+        }
+      }
+    }
+    higherTaxa.complete();
+    LOG.info("Loaded {} higher taxa from the index", higherTaxa.size());
+    return higherTaxa;
+  }
+
   private static int toInt(Document doc, String field) {
     return (int) doc.getField(field).numericValue();
   }
 
+  private static ParsedAuthorship toParsedAuthorship(Document doc) {
+    var authorship = doc.get("pauth");
+    var year = doc.get("pyear");
+    var bracketAuthorship = doc.get("pbauth");
+    var bracketYear = doc.get("pbyear");
+    if (authorship == null && year == null && bracketAuthorship == null && bracketYear == null) {
+      return null;
+    }
+    return new ParsedAuthorship(authorship, year, bracketAuthorship, bracketYear);
+  }
+
   /**
-   * Builds a NameUsageMatch instance from a lucene Document and populates all fields but the
-   * matching specifics i.e. confidence and matchType.
+   * Builds a usage record from a lucene Document, the matching specifics i.e. confidence and
+   * matchType are set on the matches created from it.
    */
-  private ColDpNameUsageMatch fromDoc(Document doc) {
+  private static UsageRecord fromDoc(Document doc, ClassificationTree higherTaxa) {
+    return new UsageRecord(doc.get(FIELD_ID), doc.get("pId"), doc.get(FIELD_SCIENTIFIC_NAME),
+        doc.get(FIELD_CANONICAL_NAME), doc.get("auth"), toParsedAuthorship(doc),
+        Rank.values()[toInt(doc, FIELD_RANK)],
+        TaxonomicStatus.values()[toInt(doc, FIELD_STATUS)], doc.get("se"), doc.get("gn"),
+        doc.get("code"), doc.get("nstatus"), Boolean.parseBoolean(doc.get("e")), doc.get("k"),
+        doc.get("p"), doc.get("c"), doc.get("o"), doc.get("f"), doc.get("g"), doc.get("sub"),
+        doc.get("s"), higherTaxa.getClassification(doc.get("pId")));
+  }
+
+  /**
+   * Builds a candidate from a document read with only the {@link #CANDIDATE_FIELDS}, holding the
+   * fields needed to score it. The classification is shared with the higher taxon table, so it
+   * costs no decoding.
+   */
+  private static ColDpNameUsageMatch toCandidate(Document doc, ClassificationTree higherTaxa) {
     ColDpNameUsageMatch match = new ColDpNameUsageMatch();
+    match.setCandidate(true);
     match.setColId(doc.get(FIELD_ID));
     match.setColParentId(doc.get("pId"));
-    match.setAuthorship(doc.get("auth"));
-    match.setSpecificEpithet(doc.get("se"));
-    match.setGenericName(doc.get("gn"));
-    match.setCode(doc.get("code"));
-    match.setNameStatus(doc.get("nstatus"));
-    match.setExtinct(Boolean.parseBoolean(doc.get("e")));
     match.setKingdom(doc.get("k"));
     match.setPhylum(doc.get("p"));
     match.setClazz(doc.get("c"));
@@ -108,27 +252,9 @@ public class NubIndex {
     match.setGenus(doc.get("g"));
     match.setSubgenus(doc.get("sub"));
     match.setSpecies(doc.get("s"));
+    match.setParsedAuthorship(toParsedAuthorship(doc));
 
-    var classification = new ArrayList<ColDpClassification>();
-    int i = 0;
-    boolean continueFlag = true;
-    while (continueFlag) {
-      var colDpClassification = new ColDpClassification();
-      var colId = doc.get("c[" + i + "].id");
-      if (colId != null) {
-        colDpClassification.setColId(colId);
-        colDpClassification.setScientificName(doc.get("c[" + i + "].sn"));
-        colDpClassification.setAuthorship(doc.get("c[" + i + "].auth"));
-        colDpClassification.setRank(doc.get("c[" + i + "].rank"));
-        colDpClassification.setStatus(TaxonomicStatus.valueOf(doc.get("c[" + i + "].status")));
-        colDpClassification.setExtinct(Boolean.parseBoolean(doc.get("c[" + i + "].e")));
-        classification.add(colDpClassification);
-        i++;
-      } else {
-        continueFlag = false;
-      }
-    }
-    match.setClassifications(classification);
+    match.setClassifications(higherTaxa.getClassification(doc.get("pId")));
 
     match.setScientificName(doc.get(FIELD_SCIENTIFIC_NAME));
     match.setCanonicalName(doc.get(FIELD_CANONICAL_NAME));
@@ -140,18 +266,24 @@ public class NubIndex {
   }
 
 
+  /**
+   * Finds the usage through the doc ids loaded with the searcher, which costs a hash probe and a
+   * stored field read. On an index snapshot on S3 the usage is found with a term query.
+   */
   public ColDpNameUsageMatch matchByUsageId(String colId) {
-    Query q = new TermQuery(new Term(NubIndex.FIELD_ID, colId));
     try {
-      var docs = searcher.search(q, 3);
-      var storedFields = searcher.storedFields();
-      if (docs.scoreDocs.length > 0) {
-        Document doc = storedFields.document(docs.scoreDocs[0].doc);
-        var match = fromDoc(doc);
-        match.setConfidence(100);
-        return match;
-      } else {
-        LOG.warn("No usage {} found in lucene index", colId);
+      var nubSearcher = acquire();
+      try {
+        var docId = nubSearcher.findUsage(colId);
+        if (docId != UsageDocIds.NOT_FOUND) {
+          var match = usage(nubSearcher, docId).toMatch();
+          match.setConfidence(100);
+          return match;
+        } else {
+          LOG.warn("No usage {} found in lucene index", colId);
+        }
+      } finally {
+        release(nubSearcher);
       }
     } catch (IOException e) {
       LOG.error("Cannot load usage {} from lucene index", colId, e);
@@ -170,66 +302,163 @@ public class NubIndex {
       return Lists.newArrayList();
     }
 
-    Term t = new Term(NubIndex.FIELD_CANONICAL_NAME, analyzedName);
-    Query q;
-    if (fuzzySearch) {
-      // allow 2 edits for names longer than 10 chars
-      q = new FuzzyQuery(t, analyzedName.length() > 10 ? 2 : 1, 1);
-    } else {
-      q = new TermQuery(t);
+    // a correctly spelled name is found by a single probe of the canonical names, lucene is only
+    // queried when fuzzy expansion is needed
+    var matches = searchExact(analyzedName, name, maxMatches);
+    if (!fuzzySearch || matches.size() >= maxMatches) {
+      return matches;
     }
 
+    // the variants of the name follow its exact matches, an exact homonym in another kingdom must
+    // not hide a variant which matches the classification
+    // allow 2 edits for names longer than 10 chars
+    var maxEdits = analyzedName.length() > 10 ? 2 : 1;
     try {
-      return search(q, name, fuzzySearch, maxMatches);
+      matches.addAll(searchFuzzy(analyzedName, name, maxEdits, maxMatches - matches.size()));
     } catch (RuntimeException e) {
       // for example TooComplexToDeterminizeException, see http://dev.gbif.org/issues/browse/POR-2725
-      LOG.warn("Lucene failed to fuzzy search for name [{}]. Try a straight match instead", name);
-      return search(new TermQuery(t), name, false, maxMatches);
+      LOG.warn("Lucene failed to fuzzy search for name [{}], only straight matches are used", name);
     }
+    return matches;
   }
 
-  private List<ColDpNameUsageMatch> search(Query q, String name, boolean fuzzySearch,
-      int maxMatches) {
-    List<ColDpNameUsageMatch> results = Lists.newArrayList();
+  /**
+   * Reads the fields which are not part of a candidate into the given candidates. Candidates are
+   * found again by their id. Outside of {@link #withSearcher(Supplier)} they are found on the
+   * current searcher, the index might have been swapped since they were read.
+   */
+  public void materialize(List<ColDpNameUsageMatch> candidates) {
     try {
-      TopDocs docs = searcher.search(q, maxMatches);
-      var storedFields = searcher.storedFields();
-      if (docs.scoreDocs.length > 0) {
-        for (ScoreDoc sdoc : docs.scoreDocs) {
-          var match = fromDoc(storedFields.document(sdoc.doc));
-          if (name.equalsIgnoreCase(match.getCanonicalName())) {
-            match.setMatchType(NameUsageMatch.MatchType.EXACT);
-            results.add(match);
+      var nubSearcher = acquire();
+      try {
+        for (var candidate : candidates) {
+          if (!candidate.isCandidate()) {
+            continue;
+          }
+          var docId = nubSearcher.findUsage(candidate.getColId());
+          if (docId != UsageDocIds.NOT_FOUND) {
+            usage(nubSearcher, docId).complete(candidate);
           } else {
-            // even though we used a term query for straight matching the lucene analyzer has already normalized
-            // the name drastically. So we include these matches here only in case of fuzzy queries
-            match.setMatchType(NameUsageMatch.MatchType.FUZZY);
-            results.add(match);
+            LOG.warn("Candidate {} is no longer in the lucene index", candidate.getColId());
           }
         }
+      } finally {
+        release(nubSearcher);
+      }
+    } catch (IOException e) {
+      LOG.error("Cannot load candidates from lucene index", e);
+    }
+  }
 
-      } else {
-        LOG.debug("No {} match for name {}", fuzzySearch ? "fuzzy" : "straight", name);
+  /**
+   * Searches the candidates for a name, they only hold the fields needed to score them unless
+   * their usage is cached. The selected candidates are completed with {@link #materialize(List)}.
+   */
+  private List<ColDpNameUsageMatch> searchExact(String analyzedName, String name, int maxMatches) {
+    List<ColDpNameUsageMatch> results = Lists.newArrayList();
+    try {
+      var nubSearcher = acquire();
+      try {
+        var docs = nubSearcher.findCanonicalName(analyzedName, maxMatches);
+        var storedFields = nubSearcher.searcher().storedFields();
+        for (int doc : docs) {
+          results.add(toMatch(nubSearcher, storedFields, doc, name));
+        }
+        if (docs.length == 0) {
+          LOG.debug("No straight match for name {}", name);
+        }
+      } finally {
+        release(nubSearcher);
       }
+    } catch (IOException e) {
+      LOG.error("lucene search error", e);
+    }
+    return results;
+  }
 
+  /**
+   * Reads the documents of the fuzzy candidates, closest first, until the given number of matches
+   * is reached. The analyzed name itself is skipped, its documents are the exact matches.
+   */
+  private List<ColDpNameUsageMatch> searchFuzzy(String analyzedName, String name, int maxEdits,
+      int maxMatches) {
+    List<ColDpNameUsageMatch> results = Lists.newArrayList();
+    try {
+      var nubSearcher = acquire();
+      try {
+        var storedFields = nubSearcher.searcher().storedFields();
+        for (var candidate : nubSearcher.fuzzyCandidates().candidates(nubSearcher, analyzedName,
+            maxEdits)) {
+          if (candidate.distance() == 0) {
+            continue;
+          }
+          var docs = nubSearcher.findCanonicalName(candidate.canonicalName(),
+              maxMatches - results.size());
+          for (int doc : docs) {
+            results.add(toMatch(nubSearcher, storedFields, doc, name));
+          }
+          if (results.size() == maxMatches) {
+            break;
+          }
+        }
+        if (results.isEmpty()) {
+          LOG.debug("No fuzzy match for name {}", name);
+        }
+      } finally {
+        release(nubSearcher);
+      }
     } catch (IOException e) {
       LOG.error("lucene search error", e);
     }
     return results;
   }
+
+  /**
+   * Reads the usage as a candidate, unless it is cached in full already.
+   */
+  private ColDpNameUsageMatch toMatch(NubSearcher nubSearcher, StoredFields storedFields, int doc,
+      String name) throws IOException {
+    var cached = usages.getIfPresent(new UsageKey(
+        nubSearcher.searcher().getIndexReader().getReaderCacheHelper().getKey(), doc));
+    ColDpNameUsageMatch match;
+    if (cached != null) {
+      match = cached.toMatch();
+    } else {
+      var visitor = new DocumentStoredFieldVisitor(CANDIDATE_FIELDS);
+      storedFields.document(doc, visitor);
+      try {
+        match = toCandidate(visitor.getDocument(), nubSearcher.higherTaxa());
+      } catch (UncheckedIOException e) {
+        // the classification of a snapshot on S3 is read on demand
+        throw e.getCause();
+      }
+    }
+    if (name.equalsIgnoreCase(match.getCanonicalName())) {
+      match.setMatchType(NameUsageMatch.MatchType.EXACT);
+    } else {
+      // even though the canonical name matched straight the lucene analyzer has already normalized
+      // the name drastically, so these matches are not exact
+      match.setMatchType(NameUsageMatch.MatchType.FUZZY);
+    }
+    return match;
+  }
+
   public List<ColDpNameUsageMatch> autocomplete(String prefix, int limit) {
     final String analyzedName = LuceneUtils.analyzeString(analyzer, prefix).get(0);
-    Sort sort = new Sort(new SortField("canString", Type.STRING));
     var prefixQuery = new PrefixQuery(new Term(FIELD_CANONICAL_NAME, analyzedName));
     var resultList = new ArrayList<ColDpNameUsageMatch>(limit);
     try {
-      var docs = searcher.search(prefixQuery, limit, sort);
-      var storedFields = searcher.storedFields();
-      for (ScoreDoc sdoc : docs.scoreDocs) {
-        Document doc = storedFields.document(sdoc.doc);
-        var match = fromDoc(doc);
-        match.setConfidence(100);
-        resultList.add(match);
+      var nubSearcher = acquire();
+      try {
+        var searcher = nubSearcher.searcher();
+        var docs = searcher.search(prefixQuery, limit, CANONICAL_NAME_SORT);
+        for (ScoreDoc sdoc : docs.scoreDocs) {
+          var match = usage(nubSearcher, sdoc.doc).toMatch();
+          match.setConfidence(100);
+          resultList.add(match);
+        }
+      } finally {
+        release(nubSearcher);
       }
     } catch (IOException e) {
       LOG.error("lucene search error", e);
@@ -237,4 +466,53 @@ public class NubIndex {
     return resultList;
   }
 
+  private NubSearcher acquire() throws IOException {
+    var nubSearcher = pinned.get();
+    return nubSearcher != null ? nubSearcher : searcherManager.acquire();
+  }
+
+  private void release(NubSearcher nubSearcher) throws IOException {
+    if (nubSearcher != pinned.get()) {
+      searcherManager.release(nubSearcher);
+    }
+  }
+
+  private UsageRecord usage(NubSearcher nubSearcher, int doc) throws IOException {
+    var searcher = nubSearcher.searcher();
+    try {
+      return usages.get(usageKey(searcher.getIndexReader(), doc),
+          () -> fromDoc(searcher.storedFields().document(doc), nubSearcher.higherTaxa()));
+    } catch (ExecutionException | UncheckedExecutionException e) {
+      Throwables.throwIfInstanceOf(e.getCause(), IOException.class);
+      if (e.getCause() instanceof UncheckedIOException unchecked) {
+        throw unchecked.getCause();
+      }
+      Throwables.throwIfUnchecked(e.getCause());
+      throw new IOException(e.getCause());
+    }
+  }
+
+  /**
+   * The key of a usage to cache. The first usage cached for a reader registers a listener which
+   * removes the usages of the reader once it is closed, also the usages cached by requests which
+   * still used the reader after a new index was swapped in.
+   */
+  private UsageKey usageKey(IndexReader reader, int doc) {
+    var cacheHelper = reader.getReaderCacheHelper();
+    if (cachedReaders.add(cacheHelper.getKey())) {
+      cacheHelper.addClosedListener(key -> {
+        cachedReaders.remove(key);
+        usages.asMap().keySet().removeIf(usage -> usage.reader() == key);
+      });
+    }
+    return new UsageKey(cacheHelper.getKey(), doc);
+  }
+
+  /**
+   * A doc id is only unique within the reader it belongs to, the key of the reader does not keep
+   * the reader from being collected.
+   */
+  private record UsageKey(IndexReader.CacheKey reader, int doc) {
+
+  }
 }
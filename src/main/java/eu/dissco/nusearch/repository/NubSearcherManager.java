@@ -0,0 +1,300 @@
+package eu.dissco.nusearch.repository;
+
+import eu.dissco.nusearch.domain.ClassificationTree;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.io.FileUtils;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.FuzzyQuery;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.ReferenceManager;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.util.IOUtils;
+
+/**
+ * Shares the searcher of the index, together with the higher taxa, the doc ids of the name
+ * usages, the canonical names loaded from it and the fuzzy candidate generator built for it,
+ * between the requests. Every request acquires the
+ * current searcher and releases it when done, so the reader is only closed once the last request
+ * using it has finished.
+ * <p>
+ * Lucene's SearcherManager only reopens the index it was created for, a new release of the index
+ * is downloaded into a directory of its own. {@link #swap(Path)} opens and warms the index in that
+ * directory before it replaces the current searcher. The directory of a replaced searcher is
+ * deleted once it is released by the last request.
+ * <p>
+ * The lookups are not loaded for an index snapshot which is searched in place on S3, loading them
+ * reads a large part of the snapshot block by block before the first request is served. Requests
+ * on the snapshot find names and usages through term queries, resolve classifications on demand
+ * and expand fuzzy names with Lucene, until the downloaded index is swapped in.
+ */
+@Slf4j
+public class NubSearcherManager extends ReferenceManager<NubSearcherManager.NubSearcher> {
+
+  private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+  private final AtomicReference<Path> pending = new AtomicReference<>();
+  private final Set<Path> replaced = ConcurrentHashMap.newKeySet();
+  private final int warmupQueries;
+  private final FuzzyCandidateGenerator.Factory fuzzyCandidates;
+
+  public NubSearcherManager(Path indexLocation, int warmupQueries,
+      FuzzyCandidateGenerator.Factory fuzzyCandidates) throws IOException {
+    this(FSDirectory.open(indexLocation), indexLocation, warmupQueries, fuzzyCandidates);
+  }
+
+  /**
+   * Searches the index in the given directory, the location holds the files of the directory and
+   * is deleted once the index has been replaced.
+   */
+  public NubSearcherManager(Directory directory, Path location, int warmupQueries,
+      FuzzyCandidateGenerator.Factory fuzzyCandidates) throws IOException {
+    this.warmupQueries = warmupQueries;
+    this.fuzzyCandidates = fuzzyCandidates;
+    current = open(directory, location);
+  }
+
+  /**
+   * Replaces the current searcher by a searcher on the index in the given location. Requests keep
+   * using the current searcher while the new index is opened, its fuzzy candidate generator is
+   * built and it is warmed.
+   */
+  public void swap(Path indexLocation) throws IOException {
+    pending.set(indexLocation);
+    maybeRefreshBlocking();
+  }
+
+  /**
+   * A new location next to the configured index location, into which a new release of the index
+   * is built or downloaded while the current index is searched.
+   */
+  public static Path nextIndexLocation(Path indexLocation) {
+    var location = indexLocation.toAbsolutePath();
+    return location.resolveSibling(location.getFileName() + "-" + System.currentTimeMillis());
+  }
+
+  /**
+   * Moves the newest index of a previous run next to the configured index location, see
+   * {@link #nextIndexLocation(Path)}, back into the configured location when it passes the given
+   * check. The configured location is deleted once a new index is swapped in, so it holds an older
+   * index or none at all. The other indexes of the previous run are removed.
+   */
+  public static void restoreReleasedIndex(Path indexLocation, Predicate<Path> isValid)
+      throws IOException {
+    var location = indexLocation.toAbsolutePath();
+    var released = Pattern.compile(Pattern.quote(location.getFileName().toString()) + "-\\d+");
+    if (Files.notExists(location.getParent())) {
+      return;
+    }
+    List<Path> siblings;
+    try (var paths = Files.list(location.getParent())) {
+      siblings = paths.filter(path -> Files.isDirectory(path)
+              && released.matcher(path.getFileName().toString()).matches())
+          .sorted(Comparator.comparingLong(NubSearcherManager::releasedAt).reversed())
+          .toList();
+    }
+    var restored = false;
+    for (var sibling : siblings) {
+      if (!restored && isValid.test(sibling)) {
+        log.info("Restoring index of a previous run: {} into: {}", sibling, location);
+        FileUtils.deleteDirectory(location.toFile());
+        Files.move(sibling, location, StandardCopyOption.ATOMIC_MOVE);
+        restored = true;
+      } else {
+        log.info("Removing index of a previous run: {}", sibling);
+        FileUtils.deleteDirectory(sibling.toFile());
+      }
+    }
+  }
+
+  private static long releasedAt(Path location) {
+    var name = location.getFileName().toString();
+    return Long.parseLong(name.substring(name.lastIndexOf('-') + 1));
+  }
+
+  /**
+   * The location of the index which is currently searched.
+   */
+  public Path getIndexLocation() throws IOException {
+    var searcher = acquire();
+    try {
+      return searcher.location();
+    } finally {
+      release(searcher);
+    }
+  }
+
+  /**
+   * Whether the current searcher reads the index snapshot on S3, the snapshot is swapped for the
+   * local index once it has been downloaded.
+   */
+  public boolean isStreaming() throws IOException {
+    var searcher = acquire();
+    try {
+      return ((DirectoryReader) searcher.searcher().getIndexReader()).directory()
+          instanceof S3SnapshotDirectory;
+    } finally {
+      release(searcher);
+    }
+  }
+
+  @Override
+  protected NubSearcher refreshIfNeeded(NubSearcher referenceToRefresh) throws IOException {
+    var location = pending.getAndSet(null);
+    if (location == null || location.equals(referenceToRefresh.location())) {
+      return null;
+    }
+    var searcher = open(FSDirectory.open(location), location);
+    try {
+      warm(searcher);
+    } catch (IOException | RuntimeException e) {
+      decRef(searcher);
+      throw e;
+    }
+    replaced.add(referenceToRefresh.location());
+    log.info("Swapping index: {} for index: {}", referenceToRefresh.location(), location);
+    return searcher;
+  }
+
+  @Override
+  protected boolean tryIncRef(NubSearcher reference) {
+    return reference.searcher().getIndexReader().tryIncRef();
+  }
+
+  @Override
+  protected void decRef(NubSearcher reference) throws IOException {
+    var reader = (DirectoryReader) reference.searcher().getIndexReader();
+    reader.decRef();
+    if (reader.getRefCount() == 0) {
+      reader.directory().close();
+      if (replaced.remove(reference.location())) {
+        log.info("Deleting replaced index: {}", reference.location());
+        FileUtils.deleteDirectory(reference.location().toFile());
+      }
+    }
+  }
+
+  @Override
+  protected int getRefCount(NubSearcher reference) {
+    return reference.searcher().getIndexReader().getRefCount();
+  }
+
+  @Override
+  protected void afterClose() {
+    executor.shutdown();
+  }
+
+  private NubSearcher open(Directory directory, Path location) throws IOException {
+    DirectoryReader reader = null;
+    try {
+      reader = DirectoryReader.open(directory);
+      var searcher = new IndexSearcher(reader, executor);
+      if (directory instanceof S3SnapshotDirectory) {
+        return new NubSearcher(searcher, new SnapshotHigherTaxa(searcher), null, null,
+            new LuceneFuzzyCandidateGenerator(), location);
+      }
+      var canonicalNames = CanonicalNames.load(reader);
+      return new NubSearcher(searcher, NubIndex.loadHigherTaxa(reader),
+          UsageDocIds.load(reader), canonicalNames, fuzzyCandidates.open(canonicalNames),
+          location);
+    } catch (IOException | RuntimeException e) {
+      IOUtils.closeWhileHandlingException(reader, directory);
+      throw e;
+    }
+  }
+
+  /**
+   * Runs exact and fuzzy queries for canonical names spread over the index, and loads their
+   * documents, so the first requests on the new index are not served from a cold page cache.
+   */
+  private void warm(NubSearcher nubSearcher) throws IOException {
+    var searcher = nubSearcher.searcher();
+    var leaves = searcher.getIndexReader().leaves();
+    var perLeaf = Math.max(1, warmupQueries / Math.max(1, leaves.size()));
+    var queries = 0;
+    for (var leaf : leaves) {
+      var terms = leaf.reader().terms(NubIndex.FIELD_CANONICAL_NAME);
+      if (terms == null) {
+        continue;
+      }
+      // the number of terms is unknown (-1) for some codecs, then the first terms are used
+      var step = Math.max(1, terms.size() / perLeaf);
+      var termsEnum = terms.iterator();
+      var position = 0L;
+      for (var term = termsEnum.next(); term != null && queries < warmupQueries;
+          term = termsEnum.next(), position++) {
+        if (position % step != 0) {
+          continue;
+        }
+        var canonicalName = new Term(NubIndex.FIELD_CANONICAL_NAME, term.utf8ToString());
+        var storedFields = searcher.storedFields();
+        for (var scoreDoc : searcher.search(new TermQuery(canonicalName), 3).scoreDocs) {
+          storedFields.document(scoreDoc.doc);
+        }
+        searcher.search(new FuzzyQuery(canonicalName, 1, 1), 3);
+        queries++;
+      }
+    }
+    log.info("Warmed index: {} with {} queries", nubSearcher.location(), queries);
+  }
+
+  /**
+   * The searcher of an index with its lookups, the usage doc ids and canonical names are null for
+   * an index snapshot on S3.
+   */
+  public record NubSearcher(IndexSearcher searcher, ClassificationTree higherTaxa,
+                            UsageDocIds usageDocIds, CanonicalNames canonicalNames,
+                            FuzzyCandidateGenerator fuzzyCandidates, Path location) {
+
+    /**
+     * Returns the doc id of the name usage, or {@link UsageDocIds#NOT_FOUND}.
+     */
+    public int findUsage(String colId) throws IOException {
+      if (usageDocIds != null) {
+        return usageDocIds.find(colId);
+      }
+      if (colId == null) {
+        return UsageDocIds.NOT_FOUND;
+      }
+      var docs = searcher.search(new TermQuery(new Term(NubIndex.FIELD_ID, colId)), 1,
+          Sort.INDEXORDER).scoreDocs;
+      return docs.length == 0 ? UsageDocIds.NOT_FOUND : docs[0].doc;
+    }
+
+    /**
+     * Returns the doc ids of at most the given number of usages with the analyzed canonical name,
+     * in doc id order.
+     */
+    public int[] findCanonicalName(String analyzedName, int maxDocs) throws IOException {
+      if (canonicalNames != null) {
+        return canonicalNames.find(analyzedName, maxDocs);
+      }
+      if (maxDocs <= 0) {
+        return new int[0];
+      }
+      var docs = searcher.search(
+          new TermQuery(new Term(NubIndex.FIELD_CANONICAL_NAME, analyzedName)), maxDocs,
+          Sort.INDEXORDER).scoreDocs;
+      var ids = new int[docs.length];
+      for (int i = 0; i < docs.length; i++) {
+        ids[i] = docs[i].doc;
+      }
+      return ids;
+    }
+  }
+}
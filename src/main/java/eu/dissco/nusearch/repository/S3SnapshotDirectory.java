@@ -0,0 +1,290 @@
+package eu.dissco.nusearch.repository;
+
+import eu.dissco.nusearch.domain.IndexSnapshotManifest;
+import eu.dissco.nusearch.domain.IndexSnapshotManifest.SnapshotFile;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.lucene.store.BaseDirectory;
+import org.apache.lucene.store.BufferedIndexInput;
+import org.apache.lucene.store.IOContext;
+import org.apache.lucene.store.IndexInput;
+import org.apache.lucene.store.IndexOutput;
+import org.apache.lucene.store.NoLockFactory;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+import software.amazon.awssdk.core.async.AsyncResponseTransformer;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
+
+/**
+ * A read only directory on an index snapshot in S3, so the index can be searched before the
+ * snapshot has been downloaded. The files are read with ranged requests at their offset in the
+ * snapshot, see {@link IndexSnapshotManifest}.
+ * <p>
+ * The snapshot is fetched in blocks, which are written to a local file at their position in the
+ * snapshot. A block is fetched once, concurrent reads of a block wait for the same request. The
+ * prefetch fetches the blocks which have not been read yet, after which the local file is a
+ * complete copy of the snapshot.
+ */
+@Slf4j
+public class S3SnapshotDirectory extends BaseDirectory {
+
+  public static final String CACHE_FILE = "index-snapshot.zip";
+  private static final int PREFETCH_RETRIES = 3;
+
+  private final S3AsyncClient s3Client;
+  private final String bucket;
+  private final String key;
+  private final String etag;
+  private final long snapshotLength;
+  private final int blockSize;
+  private final TreeMap<String, SnapshotFile> files = new TreeMap<>();
+  private final Path cacheFile;
+  private final FileChannel cache;
+  private final AtomicReferenceArray<CompletableFuture<Void>> blocks;
+  private final AtomicInteger cachedBlocks = new AtomicInteger();
+
+  public S3SnapshotDirectory(S3AsyncClient s3Client, String bucket, String key,
+      IndexSnapshotManifest manifest, Path cacheLocation, int blockSize) throws IOException {
+    super(NoLockFactory.INSTANCE);
+    if (!manifest.hasOffsets()) {
+      throw new IllegalArgumentException("Snapshot " + key + " does not support ranged reads");
+    }
+    this.s3Client = s3Client;
+    this.bucket = bucket;
+    this.key = key;
+    this.blockSize = blockSize;
+    var head = s3Client.headObject(b -> b.bucket(bucket).key(key)).join();
+    // reads are pinned to the snapshot the offsets belong to, a replaced snapshot fails them
+    this.etag = manifest.etag() != null ? manifest.etag() : head.eTag();
+    this.snapshotLength = head.contentLength();
+    manifest.files().forEach(file -> files.put(file.name(), file));
+    Files.createDirectories(cacheLocation);
+    this.cacheFile = cacheLocation.resolve(CACHE_FILE);
+    this.cache = FileChannel.open(cacheFile, StandardOpenOption.CREATE,
+        StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    this.blocks = new AtomicReferenceArray<>(Math.toIntExact(
+        (snapshotLength + blockSize - 1) / blockSize));
+  }
+
+  /**
+   * Fetches every block which has not been fetched yet, at most the given number at the same
+   * time. Completes with the local copy of the snapshot.
+   */
+  public CompletableFuture<Path> prefetch(int connections) {
+    log.info("Prefetching {} blocks of snapshot: {}", blocks.length(), key);
+    return Flux.range(0, blocks.length())
+        .flatMap(block -> Mono.defer(() -> Mono.fromFuture(fetch(block)))
+            .retryWhen(Retry.backoff(PREFETCH_RETRIES, Duration.ofSeconds(1))), connections)
+        .then(Mono.fromCallable(() -> {
+          cache.force(false);
+          log.info("Prefetched snapshot: {} into: {}", key, cacheFile);
+          return cacheFile;
+        }))
+        .toFuture();
+  }
+
+  public int getCachedBlocks() {
+    return cachedBlocks.get();
+  }
+
+  public int getBlockCount() {
+    return blocks.length();
+  }
+
+  @Override
+  public String[] listAll() {
+    ensureOpen();
+    return files.keySet().toArray(String[]::new);
+  }
+
+  @Override
+  public long fileLength(String name) throws IOException {
+    ensureOpen();
+    return file(name).length();
+  }
+
+  @Override
+  public IndexInput openInput(String name, IOContext context) throws IOException {
+    ensureOpen();
+    var file = file(name);
+    return new SnapshotIndexInput("S3SnapshotDirectory(" + key + "/" + name + ")", context,
+        file.offset(), file.length());
+  }
+
+  @Override
+  public void deleteFile(String name) throws IOException {
+    throw new AccessDeniedException(name, null, "Snapshot directory is read only");
+  }
+
+  @Override
+  public IndexOutput createOutput(String name, IOContext context) throws IOException {
+    throw new AccessDeniedException(name, null, "Snapshot directory is read only");
+  }
+
+  @Override
+  public IndexOutput createTempOutput(String prefix, String suffix, IOContext context)
+      throws IOException {
+    throw new AccessDeniedException(prefix, null, "Snapshot directory is read only");
+  }
+
+  @Override
+  public void sync(Collection<String> names) {
+    // Nothing is written to the snapshot
+  }
+
+  @Override
+  public void syncMetaData() {
+    // Nothing is written to the snapshot
+  }
+
+  @Override
+  public void rename(String source, String dest) throws IOException {
+    throw new AccessDeniedException(source, dest, "Snapshot directory is read only");
+  }
+
+  @Override
+  public Set<String> getPendingDeletions() {
+    return Set.of();
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+    isOpen = false;
+    cache.close();
+  }
+
+  private SnapshotFile file(String name) throws NoSuchFileException {
+    var file = files.get(name);
+    if (file == null) {
+      throw new NoSuchFileException(name);
+    }
+    return file;
+  }
+
+  /**
+   * Reads the range of the snapshot starting at the position into the buffer, fetching the blocks
+   * of the range which are not cached yet.
+   */
+  private void read(long position, ByteBuffer buffer) throws IOException {
+    if (!buffer.hasRemaining()) {
+      return;
+    }
+    var first = Math.toIntExact(position / blockSize);
+    var last = Math.toIntExact((position + buffer.remaining() - 1) / blockSize);
+    try {
+      if (first == last) {
+        fetch(first).join();
+      } else {
+        var fetches = new CompletableFuture<?>[last - first + 1];
+        for (int block = first; block <= last; block++) {
+          fetches[block - first] = fetch(block);
+        }
+        CompletableFuture.allOf(fetches).join();
+      }
+    } catch (CompletionException e) {
+      throw new IOException("Failed to fetch snapshot: " + key + " at: " + position, e.getCause());
+    }
+    while (buffer.hasRemaining()) {
+      var read = cache.read(buffer, position);
+      if (read < 0) {
+        throw new EOFException("Read past the end of snapshot: " + key);
+      }
+      position += read;
+    }
+  }
+
+  private CompletableFuture<Void> fetch(int block) {
+    var fetch = blocks.get(block);
+    if (fetch != null) {
+      return fetch;
+    }
+    var next = new CompletableFuture<Void>();
+    if (!blocks.compareAndSet(block, null, next)) {
+      return blocks.get(block);
+    }
+    var start = (long) block * blockSize;
+    var end = Math.min(start + blockSize, snapshotLength) - 1;
+    s3Client.getObject(b -> b.bucket(bucket).key(key).ifMatch(etag)
+                .range("bytes=" + start + "-" + end),
+            AsyncResponseTransformer.toBytes())
+        .thenAccept(bytes -> write(bytes.asByteBuffer(), start))
+        .whenComplete((result, e) -> {
+          if (e == null) {
+            cachedBlocks.incrementAndGet();
+            next.complete(null);
+          } else {
+            // a failed block is fetched again by the next read
+            blocks.compareAndSet(block, next, null);
+            next.completeExceptionally(e);
+          }
+        });
+    return next;
+  }
+
+  private void write(ByteBuffer content, long position) {
+    try {
+      while (content.hasRemaining()) {
+        position += cache.write(content, position);
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  private class SnapshotIndexInput extends BufferedIndexInput {
+
+    private final long offset;
+    private final long length;
+
+    private SnapshotIndexInput(String resourceDescription, IOContext context, long offset,
+        long length) {
+      super(resourceDescription, context);
+      this.offset = offset;
+      this.length = length;
+    }
+
+    @Override
+    protected void readInternal(ByteBuffer buffer) throws IOException {
+      var position = getFilePointer();
+      if (position + buffer.remaining() > length) {
+        throw new EOFException("Read past EOF: " + this);
+      }
+      read(offset + position, buffer);
+    }
+
+    @Override
+    protected void seekInternal(long position) throws IOException {
+      if (position > length) {
+        throw new EOFException("Seek past EOF: " + this);
+      }
+    }
+
+    @Override
+    public long length() {
+      return length;
+    }
+
+    @Override
+    public void close() {
+      // The snapshot is read through the channel of the directory
+    }
+  }
+}
@@ -1,18 +1,37 @@
 package eu.dissco.nusearch.repository;
 
 import eu.dissco.nusearch.Profiles;
+import eu.dissco.nusearch.component.IndexSnapshotArchiver;
+import eu.dissco.nusearch.domain.IndexSnapshotManifest;
 import eu.dissco.nusearch.exception.IndexingFailedException;
 import eu.dissco.nusearch.property.IndexingProperties;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletionException;
 import lombok.AllArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.lucene.index.IndexWriter;
 import org.springframework.context.annotation.Profile;
 import org.springframework.stereotype.Repository;
+import software.amazon.awssdk.core.async.AsyncRequestBody;
+import software.amazon.awssdk.core.async.AsyncResponseTransformer;
 import software.amazon.awssdk.core.exception.SdkClientException;
 import software.amazon.awssdk.core.exception.SdkException;
 import software.amazon.awssdk.services.s3.S3AsyncClient;
 import software.amazon.awssdk.services.s3.model.NoSuchBucketException;
+import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
+import software.amazon.awssdk.services.s3.model.S3Object;
 import software.amazon.awssdk.transfer.s3.S3TransferManager;
+import software.amazon.awssdk.transfer.s3.model.CopyRequest;
+import software.amazon.awssdk.transfer.s3.model.DownloadRequest;
+import software.amazon.awssdk.transfer.s3.model.UploadFileRequest;
+import software.amazon.awssdk.transfer.s3.model.UploadRequest;
 
 @Slf4j
 @Repository
@@ -21,10 +40,15 @@ import software.amazon.awssdk.transfer.s3.S3TransferManager;
 public class S3StorageRepository implements StorageRepositoryInterface {
 
   private static final String BUCKET_NAME = "col-indexes";
+  private static final String SNAPSHOT_FILE = "index-snapshot.zip";
+  private static final String SNAPSHOT_MANIFEST_FILE = IndexSnapshotArchiver.SNAPSHOT_MANIFEST;
+  private static final String UPLOAD_SUFFIX = ".upload";
 
   private final S3AsyncClient s3Client;
   private final S3TransferManager transferManager;
   private final IndexingProperties indexingProperties;
+  private final IndexManifestRepository manifestRepository;
+  private final IndexSnapshotArchiver snapshotArchiver;
 
   public void uploadIndex(String indexLocation) throws IndexingFailedException {
     log.info("Uploading index to S3");
@@ -35,16 +59,61 @@ public class S3StorageRepository implements StorageRepositoryInterface {
       throw new IndexingFailedException(
           "Bucket does not exists, please create the bucket first: " + BUCKET_NAME);
     }
+    if (isUploaded(indexLocation)) {
+      log.info("Index with the same content as index: {} is already on S3, skipping upload",
+          indexLocation);
+      return;
+    }
 
-    var directoryUpload = transferManager.uploadDirectory(
-        b -> b.source(Paths.get(indexLocation))
-            .s3Prefix(String.valueOf(indexingProperties.getColDataset()))
-            .bucket(BUCKET_NAME)
-    );
-    var completedDirectoryUpload = directoryUpload.completionFuture().join();
-    if (!completedDirectoryUpload.failedTransfers().isEmpty()) {
-      var firstEx = completedDirectoryUpload.failedTransfers().getFirst();
-      log.error("Failed to upload index to S3 with message: {}", firstEx, firstEx.exception());
+    log.info("Uploading snapshot of index: {} to S3", indexLocation);
+    // the snapshot is uploaded next to the current one, which stays in use until it is replaced
+    var uploadKey = objectKey(SNAPSHOT_FILE + UPLOAD_SUFFIX);
+    var body = AsyncRequestBody.forBlockingOutputStream(null);
+    var upload = transferManager.upload(UploadRequest.builder()
+        .putObjectRequest(b -> b.bucket(BUCKET_NAME).key(uploadKey))
+        .requestBody(body)
+        .build());
+    IndexSnapshotManifest snapshotManifest;
+    try (var outputStream = body.outputStream()) {
+      try {
+        snapshotManifest = snapshotArchiver.write(Path.of(indexLocation), outputStream);
+      } catch (IOException | UncheckedIOException e) {
+        // closing the stream would complete the upload with a truncated snapshot
+        outputStream.cancel();
+        throw e;
+      }
+    } catch (IOException | UncheckedIOException e) {
+      upload.completionFuture().cancel(true);
+      log.error("Failed to write snapshot of index: {}", indexLocation, e);
+      throw new IndexingFailedException("Failed to write snapshot of index to S3");
+    }
+    try {
+      upload.completionFuture().join();
+      transferManager.copy(CopyRequest.builder()
+          .copyObjectRequest(b -> b.sourceBucket(BUCKET_NAME).sourceKey(uploadKey)
+              .destinationBucket(BUCKET_NAME).destinationKey(objectKey(SNAPSHOT_FILE)))
+          .build()).completionFuture().join();
+      s3Client.deleteObject(b -> b.bucket(BUCKET_NAME).key(uploadKey)).join();
+      // the offsets of the files are needed to read the snapshot in place, see openSnapshot, the
+      // ETag tells whether they belong to the snapshot which is on S3
+      var etag = s3Client.headObject(b -> b.bucket(BUCKET_NAME).key(objectKey(SNAPSHOT_FILE)))
+          .join().eTag();
+      transferManager.upload(UploadRequest.builder()
+          .putObjectRequest(b -> b.bucket(BUCKET_NAME).key(objectKey(SNAPSHOT_MANIFEST_FILE)))
+          .requestBody(AsyncRequestBody.fromBytes(
+              snapshotArchiver.writeManifest(snapshotManifest.withEtag(etag))))
+          .build()).completionFuture().join();
+      // the manifest is uploaded last, its presence marks a complete snapshot
+      var manifest = Path.of(indexLocation, IndexManifestRepository.MANIFEST_FILE);
+      if (Files.exists(manifest)) {
+        transferManager.uploadFile(UploadFileRequest.builder()
+            .source(manifest)
+            .putObjectRequest(
+                b -> b.bucket(BUCKET_NAME).key(objectKey(IndexManifestRepository.MANIFEST_FILE)))
+            .build()).completionFuture().join();
+      }
+    } catch (IOException | CompletionException e) {
+      log.error("Failed to upload index to S3 with message: {}", e.getMessage(), e.getCause());
       throw new IndexingFailedException("Failed to upload index to S3");
     }
   }
@@ -55,7 +124,17 @@ public class S3StorageRepository implements StorageRepositoryInterface {
       var directory = s3Client.listObjects(b -> b.bucket(BUCKET_NAME)
           .prefix(String.valueOf(indexingProperties.getColDataset()))).join();
       if (!directory.contents().isEmpty()) {
-        log.info("Downloading index from S3");
+        if (isLocalIndexCurrent(directory.contents(), indexLocation)) {
+          log.info("Local index matches the index on S3, skipping download");
+          return;
+        }
+        clearLocalIndex(indexLocation);
+        if (directory.contents().stream()
+            .anyMatch(object -> objectKey(SNAPSHOT_FILE).equals(object.key()))) {
+          downloadSnapshot(indexLocation);
+          return;
+        }
+        log.info("Downloading index from S3 file by file, no snapshot available");
         var directoryDownload = transferManager.downloadDirectory(
             b -> b.destination(Paths.get(indexLocation))
                 .listObjectsV2RequestTransformer(
@@ -80,4 +159,187 @@ public class S3StorageRepository implements StorageRepositoryInterface {
     }
   }
 
+  public boolean isIndexCurrent(String indexLocation) throws IndexingFailedException {
+    try {
+      var directory = s3Client.listObjects(b -> b.bucket(BUCKET_NAME)
+          .prefix(String.valueOf(indexingProperties.getColDataset()))).join();
+      return directory.contents().isEmpty()
+          || isLocalIndexCurrent(directory.contents(), indexLocation);
+    } catch (SdkException | CompletionException e) {
+      log.error("Failed to check for a new index in S3 with message: {}", e.getMessage(), e);
+      throw new IndexingFailedException("Failed to check for a new index in bucket on S3");
+    }
+  }
+
+  /**
+   * Opens the snapshot of the index on S3 as a directory which is read in place, with a cache of
+   * the fetched blocks in the cache location. Empty when there is no snapshot, when the files of
+   * the snapshot are compressed and can only be read by downloading the snapshot, or when the
+   * snapshot manifest does not describe the snapshot on S3. The snapshot is replaced before its
+   * manifest is uploaded, the offsets of an older manifest point into another snapshot.
+   */
+  public Optional<S3SnapshotDirectory> openSnapshot(Path cacheLocation, int blockSize)
+      throws IndexingFailedException {
+    var manifestKey = objectKey(SNAPSHOT_MANIFEST_FILE);
+    try {
+      var manifest = snapshotArchiver.readManifest(
+          s3Client.getObject(b -> b.bucket(BUCKET_NAME).key(manifestKey),
+              AsyncResponseTransformer.toBytes()).join().asByteArray());
+      if (!manifest.hasOffsets()) {
+        log.info("Snapshot of index: {} can not be read in place",
+            indexingProperties.getColDataset());
+        return Optional.empty();
+      }
+      var snapshotKey = objectKey(SNAPSHOT_FILE);
+      var etag = s3Client.headObject(b -> b.bucket(BUCKET_NAME).key(snapshotKey)).join().eTag();
+      if (!etag.equals(manifest.etag())) {
+        log.info("Snapshot manifest of index: {} does not describe the snapshot on S3, the "
+            + "snapshot is downloaded instead", indexingProperties.getColDataset());
+        return Optional.empty();
+      }
+      clearLocalIndex(cacheLocation.toString());
+      return Optional.of(new S3SnapshotDirectory(s3Client, BUCKET_NAME, snapshotKey,
+          manifest, cacheLocation, blockSize));
+    } catch (CompletionException e) {
+      if (e.getCause() instanceof NoSuchKeyException) {
+        log.info("No snapshot manifest found for index: {}", indexingProperties.getColDataset());
+        return Optional.empty();
+      }
+      log.error("Failed to open the index snapshot on S3", e.getCause());
+      throw new IndexingFailedException("Failed to open the index snapshot on S3");
+    } catch (IOException e) {
+      log.error("Failed to open the index snapshot on S3", e);
+      throw new IndexingFailedException("Failed to open the index snapshot on S3");
+    }
+  }
+
+  /**
+   * Replaces the index in the index location by the index in a downloaded snapshot.
+   */
+  public void installSnapshot(Path snapshotFile, String indexLocation)
+      throws IndexingFailedException {
+    clearLocalIndex(indexLocation);
+    try (var inputStream = Files.newInputStream(snapshotFile)) {
+      var snapshot = snapshotArchiver.extract(inputStream, Path.of(indexLocation));
+      log.info("Installed index snapshot of {} files into: {}", snapshot.files().size(),
+          indexLocation);
+    } catch (IOException | UncheckedIOException e) {
+      log.error("Failed to install index snapshot: {}", snapshotFile, e);
+      throw new IndexingFailedException("Failed to install index snapshot");
+    }
+  }
+
+  /**
+   * Extracts the snapshot while it is being downloaded. The transfer manager downloads ranges of
+   * the snapshot in parallel and passes them on in order.
+   */
+  private void downloadSnapshot(String indexLocation) throws IndexingFailedException {
+    log.info("Downloading index snapshot from S3");
+    var download = transferManager.download(DownloadRequest.builder()
+        .getObjectRequest(b -> b.bucket(BUCKET_NAME).key(objectKey(SNAPSHOT_FILE)))
+        .responseTransformer(AsyncResponseTransformer.toBlockingInputStream())
+        .build());
+    try (var inputStream = download.completionFuture().join().result()) {
+      var snapshot = snapshotArchiver.extract(inputStream, Path.of(indexLocation));
+      log.info("Downloaded index snapshot of {} files", snapshot.files().size());
+    } catch (IOException | UncheckedIOException | CompletionException e) {
+      log.error("Failed to download index snapshot from S3", e);
+      throw new IndexingFailedException("Failed to download index snapshot from S3");
+    }
+  }
+
+  /**
+   * Compares the manifest on S3 with the manifest of the local index. Indexes uploaded without a
+   * manifest are always downloaded.
+   */
+  private boolean isLocalIndexCurrent(List<S3Object> contents, String indexLocation) {
+    var manifestKey = objectKey(IndexManifestRepository.MANIFEST_FILE);
+    if (contents.stream().noneMatch(object -> manifestKey.equals(object.key()))) {
+      return false;
+    }
+    try {
+      var manifest = s3Client.getObject(b -> b.bucket(BUCKET_NAME).key(manifestKey),
+          AsyncResponseTransformer.toBytes()).join();
+      return manifestRepository.matches(Path.of(indexLocation), manifest.asByteArray());
+    } catch (CompletionException e) {
+      log.warn("Failed to retrieve the index manifest from S3", e.getCause());
+      return false;
+    }
+  }
+
+  /**
+   * Whether the index on S3 has the same content digest as the local index, a rebuild of the same
+   * content is then not uploaded again. The snapshot on S3 has to be complete as well: its manifest
+   * has to hold its ETag, it has to be long enough to hold the files listed by its manifest, and
+   * the index manifest it contains has to be the published one.
+   */
+  private boolean isUploaded(String indexLocation) {
+    try {
+      var manifest = getObject(IndexManifestRepository.MANIFEST_FILE);
+      if (!manifestRepository.hasSameContent(Path.of(indexLocation), manifest)) {
+        return false;
+      }
+      var snapshotManifest = snapshotArchiver.readManifest(getObject(SNAPSHOT_MANIFEST_FILE));
+      var manifestEntry = snapshotManifest.files().stream()
+          .filter(file -> IndexManifestRepository.MANIFEST_FILE.equals(file.name())
+              && file.offset() != null)
+          .findFirst();
+      if (manifestEntry.isEmpty() || !snapshotManifest.hasOffsets()) {
+        log.info("Snapshot on S3 can not be checked, uploading the index");
+        return false;
+      }
+      var snapshotKey = objectKey(SNAPSHOT_FILE);
+      var head = s3Client.headObject(b -> b.bucket(BUCKET_NAME).key(snapshotKey)).join();
+      var length = head.contentLength();
+      var end = snapshotManifest.files().stream()
+          .mapToLong(file -> file.offset() + file.length()).max().orElse(0);
+      var entry = manifestEntry.get();
+      var range = "bytes=" + entry.offset() + "-" + (entry.offset() + entry.length() - 1);
+      if (length < end || !head.eTag().equals(snapshotManifest.etag()) || !Arrays.equals(manifest, s3Client.getObject(
+          b -> b.bucket(BUCKET_NAME).key(snapshotKey).range(range),
+          AsyncResponseTransformer.toBytes()).join().asByteArray())) {
+        log.warn("Snapshot on S3 does not match its manifests, uploading the index");
+        return false;
+      }
+      return true;
+    } catch (CompletionException e) {
+      if (!(e.getCause() instanceof NoSuchKeyException)) {
+        log.warn("Failed to retrieve the index manifest from S3, uploading the index",
+            e.getCause());
+      }
+      return false;
+    } catch (IOException e) {
+      log.warn("Unreadable snapshot manifest on S3, uploading the index", e);
+      return false;
+    }
+  }
+
+  private byte[] getObject(String file) {
+    return s3Client.getObject(b -> b.bucket(BUCKET_NAME).key(objectKey(file)),
+        AsyncResponseTransformer.toBytes()).join().asByteArray();
+  }
+
+  /**
+   * Removes the files of a previous index, a stale commit with a higher generation would otherwise
+   * be opened instead of the downloaded one.
+   */
+  private void clearLocalIndex(String indexLocation) throws IndexingFailedException {
+    var path = Path.of(indexLocation);
+    if (Files.notExists(path)) {
+      return;
+    }
+    try (var files = Files.list(path)) {
+      for (var file : files.filter(file -> !IndexWriter.WRITE_LOCK_NAME.equals(
+          file.getFileName().toString())).toList()) {
+        Files.delete(file);
+      }
+    } catch (IOException e) {
+      log.error("Failed to remove the local index: {}", indexLocation, e);
+      throw new IndexingFailedException("Failed to remove the local index before downloading");
+    }
+  }
+
+  private String objectKey(String file) {
+    return indexingProperties.getColDataset() + "/" + file;
+  }
 }
@@ -0,0 +1,115 @@
+package eu.dissco.nusearch.repository;
+
+import eu.dissco.nusearch.domain.ClassificationTree;
+import eu.dissco.nusearch.domain.ColDpClassification;
+import eu.dissco.nusearch.domain.NameUsageTree;
+import eu.dissco.nusearch.utils.ClassificationCodec;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.TermQuery;
+import org.gbif.api.vocabulary.TaxonomicStatus;
+
+/**
+ * The higher taxon table of an index snapshot which is searched in place on S3. Loading the whole
+ * table, as {@link NubIndex#loadHigherTaxa} does for a local index, reads a large part of the
+ * snapshot block by block before the first request can be served. Instead the parent chain of a
+ * classification is looked up by id when a usage needs it, and the classifications of all usages
+ * in the chain are cached, so the upper levels of the tree are only read once.
+ * <p>
+ * The table belongs to a single reader and is read concurrently by all requests using that reader.
+ */
+final class SnapshotHigherTaxa implements ClassificationTree {
+
+  private final IndexSearcher searcher;
+  private final Map<String, List<ColDpClassification>> classifications =
+      new ConcurrentHashMap<>();
+
+  SnapshotHigherTaxa(IndexSearcher searcher) {
+    this.searcher = searcher;
+  }
+
+  @Override
+  public void add(String id, String parentId, String rank, TaxonomicStatus status,
+      boolean extinct, String scientificName, String authorship) {
+    throw new UnsupportedOperationException("The higher taxa of an index are read only");
+  }
+
+  @Override
+  public void complete() {
+    throw new UnsupportedOperationException("The higher taxa of an index are read only");
+  }
+
+  /**
+   * Resolves the classification from the higher taxa in the chain of the parent, which are put in
+   * a name usage tree of their own, so the classification is built the same way as for a loaded
+   * table.
+   */
+  @Override
+  public List<ColDpClassification> getClassification(String parentId) {
+    if (parentId == null || parentId.isEmpty()) {
+      return List.of();
+    }
+    var cached = classifications.get(parentId);
+    if (cached != null) {
+      return cached;
+    }
+    try {
+      var chain = new NameUsageTree(true);
+      var ids = new ArrayList<String>();
+      var visited = new HashSet<String>();
+      for (var id = parentId; id != null && !id.isEmpty() && visited.add(id); ) {
+        var document = higherTaxon(id);
+        if (document == null) {
+          break;
+        }
+        var classification = ClassificationCodec.decode(
+            document.getBinaryValue(NubIndex.FIELD_HIGHER_TAXON));
+        chain.add(classification.getColId(), document.get("pId"), classification.getRank(),
+            classification.getStatus(), classification.isExtinct(),
+            classification.getScientificName(), classification.getAuthorship());
+        ids.add(id);
+        id = document.get("pId");
+      }
+      chain.complete();
+      for (var id : ids) {
+        classifications.putIfAbsent(id, chain.getClassification(id));
+      }
+      return classifications.computeIfAbsent(parentId, id -> List.of());
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * Not supported, it would read the whole table from the snapshot.
+   */
+  @Override
+  public void forEachHigherTaxon(BiConsumer<String, ColDpClassification> consumer) {
+    throw new UnsupportedOperationException("The higher taxa of a snapshot are read on demand");
+  }
+
+  /**
+   * The number of higher taxa resolved so far.
+   */
+  @Override
+  public int size() {
+    return classifications.size();
+  }
+
+  private Document higherTaxon(String id) throws IOException {
+    var topDocs = searcher.search(new TermQuery(new Term(NubIndex.FIELD_HIGHER_TAXON_ID, id)), 1);
+    if (topDocs.scoreDocs.length == 0) {
+      return null;
+    }
+    return searcher.storedFields().document(topDocs.scoreDocs[0].doc);
+  }
+}
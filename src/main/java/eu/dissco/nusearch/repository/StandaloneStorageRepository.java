@@ -1,11 +1,12 @@
 package eu.dissco.nusearch.repository;
 
+import static eu.dissco.nusearch.Profiles.INDEXER;
 import static eu.dissco.nusearch.Profiles.STANDALONE;
 
 import org.springframework.context.annotation.Profile;
 import org.springframework.stereotype.Repository;
 
-@Profile(STANDALONE)
+@Profile({STANDALONE, INDEXER})
 @Repository
 public class StandaloneStorageRepository implements StorageRepositoryInterface {
 
@@ -20,4 +21,10 @@ public class StandaloneStorageRepository implements StorageRepositoryInterface {
     throw new UnsupportedOperationException(
         "Method not implemented for standalone mode. Standalone mode uses local storage.");
   }
+
+  @Override
+  public boolean isIndexCurrent(String indexLocation) {
+    throw new UnsupportedOperationException(
+        "Method not implemented for standalone mode. Standalone mode uses local storage.");
+  }
 }
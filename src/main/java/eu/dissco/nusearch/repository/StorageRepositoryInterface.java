@@ -8,4 +8,9 @@ public interface StorageRepositoryInterface {
 
   void downloadIndex(String indexLocation) throws IndexingFailedException;
 
+  /**
+   * Whether the index in the given location is the latest index in the storage.
+   */
+  boolean isIndexCurrent(String indexLocation) throws IndexingFailedException;
+
 }
@@ -0,0 +1,117 @@
+package eu.dissco.nusearch.repository;
+
+import eu.dissco.nusearch.repository.NubSearcherManager.NubSearcher;
+import eu.dissco.nusearch.utils.DistanceUtils;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.lucene.util.automaton.LevenshteinAutomata;
+
+/**
+ * Finds fuzzy candidates with a symmetric delete index: every canonical name is indexed under the
+ * strings left after deleting up to {@value #MAX_EDITS} of its characters. Two names within that
+ * number of edits share such a delete, so the candidates of a name are the names indexed under
+ * its own deletes, verified by their edit distance. Only the deletes of the first characters of a
+ * name are indexed, which bounds the size of the index without losing candidates.
+ * <p>
+ * The index is built for the canonical names of a searcher when the searcher is opened, before it
+ * is swapped in, and dropped together with the searcher. It takes a long per delete, at most 29
+ * per name with the default prefix of 7 characters.
+ */
+@Slf4j
+public class SymSpellCandidateGenerator implements FuzzyCandidateGenerator {
+
+  // as for lucene's FuzzyQuery
+  static final int MAX_EDITS = LevenshteinAutomata.MAXIMUM_SUPPORTED_DISTANCE;
+
+  private final CanonicalNames names;
+  private final int prefixLength;
+  /**
+   * The deletes of all names, as the hash of the delete in the upper and the id of the name in the
+   * lower half of a long, sorted. Names which share the hash of a delete are filtered out by their
+   * edit distance.
+   */
+  private final long[] entries;
+
+  private SymSpellCandidateGenerator(CanonicalNames names, int prefixLength, long[] entries) {
+    this.names = names;
+    this.prefixLength = prefixLength;
+    this.entries = entries;
+  }
+
+  /**
+   * Indexes the deletes of the given names. The deletes are counted first, so the index is
+   * allocated once at its final size.
+   */
+  public static SymSpellCandidateGenerator build(CanonicalNames names, int prefixLength) {
+    var deletes = new HashSet<String>();
+    var count = 0;
+    for (int name = 0; name < names.size(); name++) {
+      deletes.clear();
+      addDeletes(prefix(names.name(name), prefixLength), MAX_EDITS, deletes);
+      count += deletes.size();
+    }
+    var entries = new long[count];
+    var i = 0;
+    for (int name = 0; name < names.size(); name++) {
+      deletes.clear();
+      addDeletes(prefix(names.name(name), prefixLength), MAX_EDITS, deletes);
+      for (var delete : deletes) {
+        entries[i++] = (long) delete.hashCode() << 32 | name;
+      }
+    }
+    Arrays.sort(entries);
+    log.info("Indexed {} deletes of {} canonical names", count, names.size());
+    return new SymSpellCandidateGenerator(names, prefixLength, entries);
+  }
+
+  @Override
+  public List<FuzzyCandidate> candidates(NubSearcher nubSearcher, String analyzedName,
+      int maxEdits) {
+    var edits = Math.min(maxEdits, MAX_EDITS);
+    var deletes = new HashSet<String>();
+    addDeletes(prefix(analyzedName, prefixLength), edits, deletes);
+    var seen = new HashSet<Integer>();
+    var candidates = new ArrayList<FuzzyCandidate>();
+    for (var delete : deletes) {
+      var hash = delete.hashCode();
+      var i = Arrays.binarySearch(entries, (long) hash << 32);
+      for (i = i < 0 ? -i - 1 : i; i < entries.length && (int) (entries[i] >> 32) == hash; i++) {
+        var name = (int) entries[i];
+        if (seen.add(name)) {
+          var canonicalName = names.name(name);
+          // the first character has to match, as for the prefix of lucene's FuzzyQuery
+          if (!canonicalName.isEmpty() && canonicalName.charAt(0) == analyzedName.charAt(0)
+              && Math.abs(canonicalName.length() - analyzedName.length()) <= edits) {
+            var distance = DistanceUtils.editDistance(analyzedName, canonicalName);
+            if (distance <= edits) {
+              candidates.add(new FuzzyCandidate(canonicalName, distance));
+            }
+          }
+        }
+      }
+    }
+    candidates.sort(FuzzyCandidate.CLOSEST_FIRST);
+    return candidates;
+  }
+
+  /**
+   * Adds the strings left after deleting up to the given number of characters of the word. A
+   * delete always has the same number of edits left, as every delete shortens the word by one.
+   */
+  private static void addDeletes(String word, int edits, Set<String> deletes) {
+    if (!deletes.add(word) || edits == 0) {
+      return;
+    }
+    for (int i = 0; i < word.length(); i++) {
+      addDeletes(word.substring(0, i) + word.substring(i + 1), edits - 1, deletes);
+    }
+  }
+
+  private static String prefix(String name, int prefixLength) {
+    return name.length() > prefixLength ? name.substring(0, prefixLength) : name;
+  }
+}
@@ -0,0 +1,80 @@
+package eu.dissco.nusearch.repository;
+
+import java.io.IOException;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.PostingsEnum;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.BytesRefHash;
+
+/**
+ * Maps the COL id of every name usage in an opened index to its doc id, so a usage is found by a
+ * single hash probe instead of a term query. The ids are interned into a {@link BytesRefHash} and
+ * the doc ids are kept in an int array indexed by the interned id.
+ * <p>
+ * The map belongs to a single reader and is read concurrently by all requests using that reader.
+ */
+@Slf4j
+public final class UsageDocIds {
+
+  public static final int NOT_FOUND = -1;
+
+  private final BytesRefHash ids;
+  private final int[] docs;
+
+  private UsageDocIds(BytesRefHash ids, int[] docs) {
+    this.ids = ids;
+    this.docs = docs;
+  }
+
+  /**
+   * Reads the ids of all live name usage documents, when an id occurs more than once the first
+   * document is kept.
+   */
+  public static UsageDocIds load(IndexReader reader) throws IOException {
+    var ids = new BytesRefHash();
+    var docs = new int[0];
+    for (var leaf : reader.leaves()) {
+      var terms = leaf.reader().terms(NubIndex.FIELD_ID);
+      if (terms == null) {
+        continue;
+      }
+      var liveDocs = leaf.reader().getLiveDocs();
+      var termsEnum = terms.iterator();
+      PostingsEnum postings = null;
+      for (var term = termsEnum.next(); term != null; term = termsEnum.next()) {
+        postings = termsEnum.postings(postings, PostingsEnum.NONE);
+        for (int doc = postings.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS;
+            doc = postings.nextDoc()) {
+          if (liveDocs == null || liveDocs.get(doc)) {
+            var id = ids.add(term);
+            if (id >= 0) {
+              docs = ArrayUtil.grow(docs, id + 1);
+              docs[id] = leaf.docBase + doc;
+            }
+            break;
+          }
+        }
+      }
+    }
+    log.info("Mapped {} name usage ids to their documents", ids.size());
+    return new UsageDocIds(ids, docs);
+  }
+
+  /**
+   * Returns the doc id of the name usage, or {@link #NOT_FOUND}.
+   */
+  public int find(String colId) {
+    if (colId == null) {
+      return NOT_FOUND;
+    }
+    var id = ids.find(new BytesRef(colId));
+    return id < 0 ? NOT_FOUND : docs[id];
+  }
+
+  public int size() {
+    return ids.size();
+  }
+}
@@ -2,21 +2,30 @@ package eu.dissco.nusearch.service;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import eu.dissco.nusearch.component.RangedFileDownloader;
 import eu.dissco.nusearch.exception.ColAuthenticationException;
+import eu.dissco.nusearch.exception.ColDownloadException;
 import eu.dissco.nusearch.exception.ColExportRequestException;
 import eu.dissco.nusearch.property.ColDownloadProperties;
 import eu.dissco.nusearch.property.IndexingProperties;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.time.Duration;
 import java.util.Base64;
+import java.util.HexFormat;
+import java.util.Optional;
+import java.util.OptionalInt;
+import java.util.Set;
 import java.util.concurrent.ExecutionException;
 import lombok.AllArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.core.io.buffer.DataBuffer;
-import org.springframework.core.io.buffer.DataBufferUtils;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.HttpStatusCode;
@@ -26,7 +35,6 @@ import org.springframework.web.reactive.function.BodyInserter;
 import org.springframework.web.reactive.function.BodyInserters;
 import org.springframework.web.reactive.function.client.WebClient;
 import org.springframework.web.reactive.function.client.WebClientResponseException;
-import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import reactor.util.retry.Retry;
 
@@ -35,10 +43,15 @@ import reactor.util.retry.Retry;
 @AllArgsConstructor
 public class ColDpDownloadingService {
 
+  private static final String EXPORT_FORMAT = "coldp";
+  private static final Set<String> FAILED_STATUSES = Set.of("failed", "canceled", "cancelled");
+  private static final double EXPORT_STATUS_JITTER = 0.5;
+
   private final ObjectMapper mapper;
   private final WebClient webClient;
   private final IndexingProperties properties;
   private final ColDownloadProperties colDownloadProperties;
+  private final RangedFileDownloader downloader;
 
   public static boolean isRetryableServerError(Throwable throwable, boolean downloadRetry) {
     if (throwable instanceof WebClientResponseException webClientResponseException) {
@@ -50,53 +63,157 @@ public class ColDpDownloadingService {
   }
 
   public Path downloadColDpDataset() throws Exception {
-    var exportId = createExport();
-    var downloadUrl = getDownloadUrl(exportId, 0);
-    return downloadColDp(downloadUrl);
+    var export = findFinishedExport();
+    if (export.isEmpty()) {
+      var exportId = createExport();
+      export = Optional.of(awaitExport(exportId));
+    }
+    return downloadColDp(export.get());
   }
 
-  private Path downloadColDp(String downloadUrl)
-      throws Exception {
+  private Path downloadColDp(JsonNode export)
+      throws IOException, ColDownloadException {
     Path path = Paths.get(properties.getTempColDpLocation());
-    Flux<DataBuffer> flux = webClient
-        .get()
-        .uri(downloadUrl)
-        .retrieve()
-        .bodyToFlux(DataBuffer.class);
-
-    DataBufferUtils.write(flux, path).block();
-
+    downloader.download(export.get("download").asText(), path);
+    verifyDownload(export, path);
     log.info("Successfully downloaded the colDp, total fileSize: {}", Files.size(path));
     return path;
   }
 
-  private String getDownloadUrl(String exportId, int retryCount)
-      throws ColExportRequestException, ColAuthenticationException, InterruptedException {
+  /**
+   * Compares the downloaded file with the size and md5 checksum of the export, when Checklistbank
+   * provided them. A corrupt download is removed so the next run downloads it again.
+   */
+  private void verifyDownload(JsonNode export, Path path)
+      throws IOException, ColDownloadException {
+    var expectedSize = export.path("size").asLong(-1);
+    var size = Files.size(path);
+    if (expectedSize >= 0 && expectedSize != size) {
+      Files.delete(path);
+      throw new ColDownloadException("Downloaded colDp has size " + size
+          + " but the export has size " + expectedSize);
+    }
+    var expectedMd5 = export.path("md5").asText(null);
+    if (expectedMd5 != null) {
+      var md5 = md5(path);
+      if (!expectedMd5.equalsIgnoreCase(md5)) {
+        Files.delete(path);
+        throw new ColDownloadException("Downloaded colDp has md5 checksum " + md5
+            + " but the export has checksum " + expectedMd5);
+      }
+    }
+  }
+
+  private static String md5(Path path) throws IOException {
+    try (var inputStream = new DigestInputStream(Files.newInputStream(path),
+        MessageDigest.getInstance("MD5"))) {
+      inputStream.transferTo(OutputStream.nullOutputStream());
+      return HexFormat.of().formatHex(inputStream.getMessageDigest().digest());
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("MD5 is not supported by this JVM", e);
+    }
+  }
+
+  /**
+   * Looks for a finished export of the current attempt of the dataset, requested with the same
+   * options as ours. Any failure in the lookup falls back to requesting a new export.
+   */
+  private Optional<JsonNode> findFinishedExport() {
+    if (!colDownloadProperties.isReuseExport()) {
+      return Optional.empty();
+    }
+    var attempt = getDatasetAttempt();
+    if (attempt.isEmpty()) {
+      return Optional.empty();
+    }
+    try {
+      var exports = getFutureResponse(requestExport(HttpMethod.GET,
+          "/export?datasetKey=" + properties.getColDataset() + "&format=" + EXPORT_FORMAT
+              + "&status=finished", null, JsonNode.class, false));
+      for (var export : exports.path("result")) {
+        if (isReusable(export, attempt.getAsInt())) {
+          log.info("Reusing finished Checklistbank export: {} of dataset attempt: {}",
+              export.path("key").asText(), attempt.getAsInt());
+          return Optional.of(export);
+        }
+      }
+      log.info("No finished Checklistbank export of dataset attempt: {} available",
+          attempt.getAsInt());
+    } catch (ColExportRequestException | ColAuthenticationException e) {
+      log.warn("Unable to look up existing exports of Checklistbank, requesting a new export", e);
+    }
+    return Optional.empty();
+  }
+
+  /**
+   * Retrieves the current attempt of the dataset, which identifies its latest release in
+   * Checklistbank. Empty when Checklistbank could not be reached.
+   */
+  public OptionalInt getDatasetAttempt() {
+    try {
+      var dataset = getFutureResponse(requestExport(HttpMethod.GET,
+          "/dataset/" + properties.getColDataset(), null, JsonNode.class, false));
+      var attempt = dataset.path("attempt");
+      return attempt.canConvertToInt() ? OptionalInt.of(attempt.asInt()) : OptionalInt.empty();
+    } catch (ColExportRequestException | ColAuthenticationException e) {
+      log.warn("Unable to retrieve the attempt of dataset: {}", properties.getColDataset(), e);
+      return OptionalInt.empty();
+    }
+  }
+
+  private boolean isReusable(JsonNode export, int attempt) {
+    var request = export.path("request");
+    return export.path("attempt").asInt(-1) == attempt
+        && isFinished(export) && export.hasNonNull("download")
+        && EXPORT_FORMAT.equalsIgnoreCase(request.path("format").asText())
+        && request.path("synonyms").asBoolean() == colDownloadProperties.isSynonyms()
+        && request.path("extended").asBoolean() == colDownloadProperties.isExtended();
+  }
+
+  /**
+   * Polls the status of the export until it is finished. The interval between polls grows
+   * exponentially with jitter, up to the maximum retry time, until the export status timeout is
+   * reached.
+   */
+  private JsonNode awaitExport(String exportId)
+      throws ColExportRequestException, ColAuthenticationException {
     log.info(
         "Trying to retrieve download URL for export: {} May take several minutes/retries if the dataset is new",
         exportId);
-    var requestResult = requestExport(HttpMethod.GET, "/export/" + exportId, null, JsonNode.class,
-        true);
-    var response = getFutureResponse(requestResult);
-    if (!response.get("status").asText().equals("finished")) {
-      if (retryCount > colDownloadProperties.getExportStatusRetryCount()) {
-        log.error("Checklistbank export is not ready after {} retries. Export ID: {}",
-            colDownloadProperties.getExportStatusRetryCount(), exportId);
-        throw new ColExportRequestException(
+    var timeout = Duration.ofMillis(colDownloadProperties.getExportStatusTimeout());
+    var export = requestExport(HttpMethod.GET, "/export/" + exportId, null, JsonNode.class, true)
+        .flatMap(response -> checkExportStatus(exportId, response))
+        .retryWhen(Retry.backoff(Long.MAX_VALUE,
+                Duration.ofMillis(colDownloadProperties.getExportStatusRetryTime()))
+            .maxBackoff(Duration.ofMillis(colDownloadProperties.getExportStatusMaxRetryTime()))
+            .jitter(EXPORT_STATUS_JITTER)
+            .filter(ExportNotReadyException.class::isInstance)
+            .doBeforeRetry(signal -> log.info(
+                "Checklistbank export is not ready yet, status: {}. Checked {} times",
+                signal.failure().getMessage(), signal.totalRetries() + 1)))
+        .timeout(timeout, Mono.error(() -> new ColExportRequestException(
             "Failed to retrieve download URL for export: " + exportId
-                + ". Export is not ready after " + colDownloadProperties.getExportStatusRetryCount()
-                + " retries.");
-      } else {
-        log.info("Checklistbank export is not ready yet. Retrying in 500ms");
-        Thread.sleep(colDownloadProperties.getExportStatusRetryTime());
-        retryCount = retryCount + 1;
-        return getDownloadUrl(exportId, retryCount);
-      }
-    } else {
-      log.info("Checklistbank successfully created download: {}",
-          response.toPrettyString());
-      return response.get("download").asText();
+                + ". Export is not ready after " + timeout)));
+    var response = getFutureResponse(export);
+    log.info("Checklistbank successfully created download: {}", response.toPrettyString());
+    return response;
+  }
+
+  private Mono<JsonNode> checkExportStatus(String exportId, JsonNode export) {
+    if (isFinished(export)) {
+      return Mono.just(export);
+    }
+    var status = export.path("status").asText();
+    if (FAILED_STATUSES.contains(status.toLowerCase())) {
+      log.error("Checklistbank export: {} ended with status: {}", exportId, status);
+      return Mono.error(new ColExportRequestException(
+          "Checklistbank export: " + exportId + " ended with status: " + status));
     }
+    return Mono.error(new ExportNotReadyException(status));
+  }
+
+  private static boolean isFinished(JsonNode export) {
+    return "finished".equalsIgnoreCase(export.path("status").asText());
   }
 
   private String createExport() throws ColExportRequestException, ColAuthenticationException {
@@ -166,9 +283,19 @@ public class ColDpDownloadingService {
 
   private JsonNode buildRequestBody() {
     var json = mapper.createObjectNode();
-    json.put("format", "coldp");
+    json.put("format", EXPORT_FORMAT);
     json.put("synonyms", colDownloadProperties.isSynonyms());
     json.put("extended", colDownloadProperties.isExtended());
     return json;
   }
+
+  /**
+   * Signals an export which is still being prepared, the status is polled again.
+   */
+  private static class ExportNotReadyException extends RuntimeException {
+
+    private ExportNotReadyException(String status) {
+      super(status, null, false, false);
+    }
+  }
 }
@@ -1,47 +1,66 @@
 package eu.dissco.nusearch.service;
 
-import static eu.dissco.nusearch.Profiles.S3_INDEXER;
-import static eu.dissco.nusearch.Profiles.S3_RESOLVER;
-import static eu.dissco.nusearch.Profiles.STANDALONE;
 import static eu.dissco.nusearch.repository.NubIndex.FIELD_CANONICAL_NAME;
+import static eu.dissco.nusearch.repository.NubIndex.FIELD_CANONICAL_NAME_SORT;
+import static eu.dissco.nusearch.repository.NubIndex.FIELD_FINGERPRINT;
+import static eu.dissco.nusearch.repository.NubIndex.FIELD_HIGHER_TAXON;
+import static eu.dissco.nusearch.repository.NubIndex.FIELD_HIGHER_TAXON_ID;
 import static eu.dissco.nusearch.repository.NubIndex.FIELD_ID;
 import static eu.dissco.nusearch.repository.NubIndex.FIELD_RANK;
 import static eu.dissco.nusearch.repository.NubIndex.FIELD_SCIENTIFIC_NAME;
 import static eu.dissco.nusearch.repository.NubIndex.FIELD_STATUS;
+import static eu.dissco.nusearch.repository.NubIndex.SCHEMA_VERSION;
 import static eu.dissco.nusearch.repository.NubIndex.addIfNotNull;
 
-import com.univocity.parsers.tsv.TsvRoutines;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
 import eu.dissco.nusearch.domain.ColDpClassification;
 import eu.dissco.nusearch.domain.ColDpNameUsage;
 import eu.dissco.nusearch.domain.NameUsageCsvRow;
+import eu.dissco.nusearch.domain.ClassificationTree;
+import eu.dissco.nusearch.domain.ExternalNameUsageTree;
+import eu.dissco.nusearch.domain.NameUsageTree;
+import eu.dissco.nusearch.exception.IndexingFailedException;
 import eu.dissco.nusearch.property.IndexingProperties;
-import eu.dissco.nusearch.repository.StorageRepositoryInterface;
-import jakarta.annotation.PostConstruct;
+import eu.dissco.nusearch.repository.IndexFingerprints;
+import eu.dissco.nusearch.utils.ClassificationCodec;
+import eu.dissco.nusearch.utils.NameUsageTsvDecoder;
 import jakarta.annotation.PreDestroy;
-import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
-import java.util.zip.ZipFile;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 import lombok.AllArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.document.Field;
+import org.apache.lucene.document.FieldType;
+import org.apache.lucene.document.NumericDocValuesField;
 import org.apache.lucene.document.SortedDocValuesField;
 import org.apache.lucene.document.StoredField;
 import org.apache.lucene.document.StringField;
 import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexOptions;
 import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.Term;
 import org.apache.lucene.util.BytesRef;
+import org.gbif.api.exception.UnparsableException;
 import org.gbif.api.vocabulary.Rank;
 import org.gbif.api.vocabulary.TaxonomicStatus;
 import org.gbif.nameparser.NameParserGbifV1;
-import org.springframework.core.env.Environment;
 import org.springframework.stereotype.Component;
 
 @Slf4j
@@ -49,24 +68,20 @@ import org.springframework.stereotype.Component;
 @AllArgsConstructor
 public class ColDpIndexingService {
 
-  private final TsvRoutines routine;
+  /**
+   * The canonical name is a single keyword token, so frequencies, positions and norms carry no
+   * information for term, fuzzy and prefix queries.
+   */
+  private static final FieldType CANONICAL_NAME_DOCS_ONLY = docsOnlyCanonicalName();
+  private static final HashFunction FINGERPRINT = Hashing.farmHashFingerprint64();
+  private static final String COMMIT_JOB_ID = "jobId";
+  private static final String COMMIT_INDEXED_ROWS = "indexedRows";
+  private static final String COMMIT_MERGED = "merged";
+  private static final String TREE_SUFFIX = "-tree";
+
   private final IndexWriter indexWriter;
   private final IndexingProperties properties;
   private final NameParserGbifV1 nameParser;
-  private final ColDpDownloadingService colDpDownloadingService;
-  private final Environment environment;
-  private final StorageRepositoryInterface storageRepository;
-
-  private static ColDpClassification toColDpClassification(NameUsageCsvRow classification) {
-    ColDpClassification colDpClassification = new ColDpClassification();
-    colDpClassification.setColId(classification.getId());
-    colDpClassification.setScientificName(classification.getScientificName());
-    colDpClassification.setAuthorship(classification.getAuthorship());
-    colDpClassification.setRank(classification.getRank());
-    colDpClassification.setStatus(parseTaxonomicStatus(classification.getStatus()));
-    colDpClassification.setExtinct(getExtinct(classification));
-    return colDpClassification;
-  }
 
   private static Rank getRank(NameUsageCsvRow row) {
     try {
@@ -83,6 +98,14 @@ public class ColDpIndexingService {
     }
   }
 
+  private static FieldType docsOnlyCanonicalName() {
+    var fieldType = new FieldType(TextField.TYPE_STORED);
+    fieldType.setIndexOptions(IndexOptions.DOCS);
+    fieldType.setOmitNorms(true);
+    fieldType.freeze();
+    return fieldType;
+  }
+
   private static TaxonomicStatus parseTaxonomicStatus(String status) {
     TaxonomicStatus result;
     switch (status) {
@@ -93,10 +116,6 @@ public class ColDpIndexingService {
     return result;
   }
 
-  private static String setClassification(int i) {
-    return "c[" + i + "]";
-  }
-
   private static boolean getExtinct(NameUsageCsvRow row) {
     var stringValue = row.getExtinct();
     if (stringValue == null) {
@@ -106,29 +125,74 @@ public class ColDpIndexingService {
     }
   }
 
-  @PostConstruct
-  void setup() throws Exception {
-    if (environment.matchesProfiles(S3_RESOLVER)) {
-      storageRepository.downloadIndex(properties.getIndexLocation());
+  /**
+   * Fingerprint of everything a name usage document is built from, including its ancestors and the
+   * layout of the document. A change to any ancestor therefore changes the fingerprint of all its
+   * descendants.
+   */
+  private static long fingerprint(NameUsageCsvRow row, List<ColDpClassification> classification) {
+    var hasher = FINGERPRINT.newHasher();
+    hasher.putInt(SCHEMA_VERSION);
+    putNullable(hasher, row.getId());
+    putNullable(hasher, row.getParentId());
+    putNullable(hasher, row.getStatus());
+    putNullable(hasher, row.getRank());
+    putNullable(hasher, row.getScientificName());
+    putNullable(hasher, row.getAuthorship());
+    putNullable(hasher, row.getSpecificEpithet());
+    putNullable(hasher, row.getGenericName());
+    putNullable(hasher, row.getCode());
+    putNullable(hasher, row.getNameStatus());
+    putNullable(hasher, row.getExtinct());
+    for (var ancestor : classification) {
+      putClassification(hasher, ancestor);
+    }
+    return hasher.hash().asLong();
+  }
+
+  private static long fingerprint(String parentId, ColDpClassification classification) {
+    var hasher = FINGERPRINT.newHasher();
+    hasher.putInt(SCHEMA_VERSION);
+    putNullable(hasher, parentId);
+    putClassification(hasher, classification);
+    return hasher.hash().asLong();
+  }
+
+  private static void putClassification(Hasher hasher, ColDpClassification classification) {
+    putNullable(hasher, classification.getColId());
+    putNullable(hasher, classification.getScientificName());
+    putNullable(hasher, classification.getAuthorship());
+    putNullable(hasher, classification.getRank());
+    hasher.putInt(classification.getStatus() == null ? -1 : classification.getStatus().ordinal());
+    hasher.putBoolean(classification.isExtinct());
+  }
+
+  private static void putNullable(Hasher hasher, String value) {
+    // the marker and length keep null, empty and shifted values apart
+    if (value == null) {
+      hasher.putInt(-1);
     } else {
-      var tempFile = colDpDownloadingService.downloadColDpDataset();
-      log.info("Start filling cache...");
-      var nameUsageMap = populateCache(tempFile);
-      log.info("Starting indexer...");
-      processNameUsages(nameUsageMap, tempFile);
-      log.info("Finished indexing");
-      if (environment.matchesProfiles(S3_INDEXER)) {
-        storageRepository.uploadIndex(properties.getIndexLocation());
-      }
+      hasher.putInt(value.length());
+      hasher.putString(value, StandardCharsets.UTF_8);
     }
   }
 
+  private static void logProgress(long count, long start) {
+    if (count % 10000 == 0) {
+      log.info("Indexed {} rows at {} rows/s", count, rate(count, start));
+    }
+  }
+
+  private static long rate(long count, long start) {
+    var elapsed = System.nanoTime() - start;
+    return elapsed == 0 ? count : count * TimeUnit.SECONDS.toNanos(1) / elapsed;
+  }
+
   @PreDestroy
   void destroy() throws IOException {
-    if (environment.matchesProfiles(S3_INDEXER, STANDALONE)) {
-      cleanupFiles(properties.getTempColDpLocation());
+    if (properties.isDeleteIndex()) {
+      cleanUpIndex(properties.getIndexLocation());
     }
-    cleanUpIndex(properties.getIndexLocation());
   }
 
   private void cleanUpIndex(String indexLocation) throws IOException {
@@ -140,16 +204,8 @@ public class ColDpIndexingService {
     Files.delete(path);
   }
 
-  private void cleanupFiles(String tempColDpLocation) throws IOException {
-    log.info("Deleting temporary coldp download: {}", tempColDpLocation);
-    var tempFile = Path.of(tempColDpLocation);
-    if (Files.exists(tempFile)) {
-      Files.delete(tempFile);
-    }
-  }
-
   private Document parseToDocument(NameUsageCsvRow row,
-      HashSet<NameUsageCsvRow> classification) {
+      List<ColDpClassification> classification, long fingerprint) {
     ColDpNameUsage nameUsage = new ColDpNameUsage();
     nameUsage.setColId(row.getId());
     nameUsage.setColParentId(row.getParentId());
@@ -162,26 +218,27 @@ public class ColDpIndexingService {
     nameUsage.setCode(row.getCode());
     nameUsage.setNameStatus(row.getNameStatus());
     nameUsage.setExtinct(getExtinct(row));
-    nameUsage.setClassifications(
-        classification.stream().map(ColDpIndexingService::toColDpClassification).toList());
-    for (NameUsageCsvRow nameUsageCsvRow : classification) {
-      if (nameUsageCsvRow.getRank() != null) {
-        switch (nameUsageCsvRow.getRank()) {
-          case "kingdom" -> nameUsage.setKingdom(nameUsageCsvRow.getScientificName());
-          case "phylum" -> nameUsage.setPhylum(nameUsageCsvRow.getScientificName());
-          case "class" -> nameUsage.setClazz(nameUsageCsvRow.getScientificName());
-          case "order" -> nameUsage.setOrder(nameUsageCsvRow.getScientificName());
-          case "family" -> nameUsage.setFamily(nameUsageCsvRow.getScientificName());
-          case "genus" -> nameUsage.setGenus(nameUsageCsvRow.getScientificName());
-          case "subgenus" -> nameUsage.setSubgenus(nameUsageCsvRow.getScientificName());
-          case "species" -> nameUsage.setSpecies(nameUsageCsvRow.getScientificName());
-          default -> log.debug("Unknown rank: {}", nameUsageCsvRow.getRank());
+    nameUsage.setClassifications(classification);
+    for (ColDpClassification colDpClassification : classification) {
+      if (colDpClassification.getRank() != null) {
+        switch (colDpClassification.getRank()) {
+          case "kingdom" -> nameUsage.setKingdom(colDpClassification.getScientificName());
+          case "phylum" -> nameUsage.setPhylum(colDpClassification.getScientificName());
+          case "class" -> nameUsage.setClazz(colDpClassification.getScientificName());
+          case "order" -> nameUsage.setOrder(colDpClassification.getScientificName());
+          case "family" -> nameUsage.setFamily(colDpClassification.getScientificName());
+          case "genus" -> nameUsage.setGenus(colDpClassification.getScientificName());
+          case "subgenus" -> nameUsage.setSubgenus(colDpClassification.getScientificName());
+          case "species" -> nameUsage.setSpecies(colDpClassification.getScientificName());
+          default -> log.debug("Unknown rank: {}", colDpClassification.getRank());
         }
       } else {
-        log.warn("Rank is null for: {}", nameUsageCsvRow.getScientificName());
+        log.warn("Rank is null for: {}", colDpClassification.getScientificName());
       }
     }
-    return toDoc(nameUsage);
+    var doc = toDoc(nameUsage);
+    doc.add(new NumericDocValuesField(FIELD_FINGERPRINT, fingerprint));
+    return doc;
   }
 
   private Document toDoc(ColDpNameUsage nameUsage) {
@@ -193,8 +250,12 @@ public class ColDpIndexingService {
     doc.add(new StringField(FIELD_ID, nameUsage.getColId(), Field.Store.YES));
 
     // analyzed name field - this is what we search upon
-    doc.add(new TextField(FIELD_CANONICAL_NAME, canonical, Field.Store.YES));
-    doc.add(new SortedDocValuesField("canString", new BytesRef(canonical)));
+    if (properties.isOptimizeForServing()) {
+      doc.add(new Field(FIELD_CANONICAL_NAME, canonical, CANONICAL_NAME_DOCS_ONLY));
+    } else {
+      doc.add(new TextField(FIELD_CANONICAL_NAME, canonical, Field.Store.YES));
+    }
+    doc.add(new SortedDocValuesField(FIELD_CANONICAL_NAME_SORT, new BytesRef(canonical)));
 
     // store full name and classification only to return a full match object for hits
     doc.add(new StoredField(FIELD_SCIENTIFIC_NAME,
@@ -202,6 +263,7 @@ public class ColDpIndexingService {
 
     addIfNotNull(doc, "pId", nameUsage.getColParentId());
     addIfNotNull(doc, "auth", nameUsage.getAuthorship());
+    addParsedAuthorship(doc, nameUsage);
     addIfNotNull(doc, "se", nameUsage.getSpecificEpithet());
     addIfNotNull(doc, "gn", nameUsage.getGenericName());
     addIfNotNull(doc, "code", nameUsage.getCode());
@@ -216,24 +278,9 @@ public class ColDpIndexingService {
     addIfNotNull(doc, "sub", nameUsage.getSubgenus());
     addIfNotNull(doc, "s", nameUsage.getSpecies());
 
-    // higher ranks
-    for (int i = 0; i < nameUsage.getClassifications().size(); i++) {
-      doc.add(new StoredField(setClassification(i) + ".id",
-          nameUsage.getClassifications().get(i).getColId()));
-      doc.add(new StoredField(setClassification(i) + ".sn",
-          nameUsage.getClassifications().get(i).getScientificName()));
-      addIfNotNull(doc, setClassification(i) + ".auth",
-          nameUsage.getClassifications().get(i).getAuthorship());
-      addIfNotNull(doc, setClassification(i) + ".rank",
-          nameUsage.getClassifications().get(i).getRank());
-      addIfNotNull(doc, setClassification(i) + ".status",
-          nameUsage.getClassifications().get(i).getStatus().toString());
-      addIfNotNull(doc, setClassification(i) + ".e",
-          String.valueOf(nameUsage.getClassifications().get(i).isExtinct()));
-    }
-
+    // higher ranks are resolved through the parent id and the higher taxon documents
     // store rank if existing as ordinal int
-    // this lucene index is not persistent, so not risk in changing ordinal numbers
+    // the index is reused across restarts, a change of the ordinals needs a new SCHEMA_VERSION
     var rank = nameUsage.getRank();
     doc.add(new StoredField(FIELD_RANK, rank == null ? Rank.UNRANKED.ordinal() : rank.ordinal()));
 
@@ -249,67 +296,269 @@ public class ColDpIndexingService {
     return doc;
   }
 
-  private void processNameUsages(HashMap<String, NameUsageCsvRow> nameUsageMap, Path path)
+  /**
+   * Stores the parsed authorship so matching can compare the authorship of candidates without
+   * parsing their names again.
+   */
+  private void addParsedAuthorship(Document doc, ColDpNameUsage nameUsage) {
+    if (nameUsage.getAuthorship() == null || nameUsage.getAuthorship().isBlank()) {
+      return;
+    }
+    try {
+      var parsedName = nameParser.parse(
+          nameUsage.getScientificName() + " " + nameUsage.getAuthorship(), nameUsage.getRank());
+      addIfNotNull(doc, "pauth", parsedName.getAuthorship());
+      addIfNotNull(doc, "pyear", parsedName.getYear());
+      addIfNotNull(doc, "pbauth", parsedName.getBracketAuthorship());
+      addIfNotNull(doc, "pbyear", parsedName.getBracketYear());
+    } catch (UnparsableException e) {
+      log.debug("Unable to parse authorship of: {}", nameUsage.getScientificName());
+    }
+  }
+
+  /**
+   * Indexes all name usages and returns the fingerprints of the name usages in the existing index.
+   * The name usages are committed in batches, when the last commit was made by the same job the
+   * name usages it holds are skipped.
+   */
+  IndexFingerprints indexNameUsages(ClassificationTree nameUsageTree, NameUsageTsvDecoder decoder,
+      String jobId) throws IOException, IndexingFailedException, InterruptedException {
+    var committed = committedRows(jobId);
+    IndexFingerprints fingerprints;
+    if (properties.isIncrementalIndexing()) {
+      fingerprints = loadFingerprints(FIELD_ID);
+      log.info("Updating existing index with {} name usages", fingerprints.size());
+    } else {
+      fingerprints = IndexFingerprints.empty();
+      if (committed == 0) {
+        indexWriter.deleteAll();
+      }
+    }
+    if (committed > 0) {
+      log.info("Resuming indexing after {} committed name usages", committed);
+    }
+    processNameUsageFile(nameUsageTree, decoder, fingerprints, jobId, committed);
+    return fingerprints;
+  }
+
+  /**
+   * Adds the higher taxa, deletes the name usages which are no longer in the dataset and merges the
+   * index if it is optimized for serving. All changes are made visible in a single commit, so a
+   * merge which is interrupted is done again as a whole.
+   */
+  void mergeIndex(ClassificationTree nameUsageTree, IndexFingerprints usageFingerprints, String jobId)
       throws IOException {
-    log.info("Opening coldp zip file at location: {}", path);
-    try (var zis = new ZipFile(path.toFile())) {
-      var entry = zis.getEntry("NameUsage.tsv");
-      try (var in = new BufferedInputStream(zis.getInputStream(entry))) {
-        processNameUsageFile(nameUsageMap, in);
+    if (isMerged(jobId)) {
+      log.info("Index was already merged by job {}", jobId);
+    } else {
+      var incremental = properties.isIncrementalIndexing();
+      var higherTaxonFingerprints = incremental
+          ? loadFingerprints(FIELD_HIGHER_TAXON_ID) : IndexFingerprints.empty();
+      indexHigherTaxa(nameUsageTree, higherTaxonFingerprints);
+      if (incremental) {
+        deleteRemoved(FIELD_ID, usageFingerprints);
+        deleteRemoved(FIELD_HIGHER_TAXON_ID, higherTaxonFingerprints);
+      }
+      if (properties.isOptimizeForServing()) {
+        log.info("Merging index into a single segment");
+        indexWriter.forceMerge(1);
       }
+      commit(jobId, committedRows(jobId), true);
+    }
+    closeIndex();
+  }
+
+  void closeIndex() throws IOException {
+    if (indexWriter.isOpen()) {
       log.info("Finished indexing, closing index writer");
       indexWriter.close();
     }
   }
 
-  private void processNameUsageFile(HashMap<String, NameUsageCsvRow> nameUsageMap,
-      InputStream bais)
+  private IndexFingerprints loadFingerprints(String idField) throws IOException {
+    try (var reader = DirectoryReader.open(indexWriter)) {
+      return IndexFingerprints.load(reader, idField);
+    }
+  }
+
+  private long committedRows(String jobId) {
+    var commitData = commitData();
+    if (!jobId.equals(commitData.get(COMMIT_JOB_ID))) {
+      return 0;
+    }
+    return Long.parseLong(commitData.getOrDefault(COMMIT_INDEXED_ROWS, "0"));
+  }
+
+  private boolean isMerged(String jobId) {
+    var commitData = commitData();
+    return jobId.equals(commitData.get(COMMIT_JOB_ID))
+        && Boolean.parseBoolean(commitData.get(COMMIT_MERGED));
+  }
+
+  private Map<String, String> commitData() {
+    var commitData = new HashMap<String, String>();
+    var liveCommitData = indexWriter.getLiveCommitData();
+    if (liveCommitData != null) {
+      liveCommitData.forEach(entry -> commitData.put(entry.getKey(), entry.getValue()));
+    }
+    return commitData;
+  }
+
+  private void commit(String jobId, long rows, boolean merged) throws IOException {
+    indexWriter.setLiveCommitData(Map.of(
+        COMMIT_JOB_ID, jobId,
+        COMMIT_INDEXED_ROWS, String.valueOf(rows),
+        COMMIT_MERGED, String.valueOf(merged)).entrySet());
+    indexWriter.commit();
+  }
+
+  private void deleteRemoved(String idField, IndexFingerprints fingerprints) throws IOException {
+    var removed = new ArrayList<Term>();
+    fingerprints.forEachUnseen(id -> removed.add(new Term(idField, id)));
+    log.info("Deleting {} documents which are no longer in the dataset", removed.size());
+    indexWriter.deleteDocuments(removed.toArray(Term[]::new));
+  }
+
+  /**
+   * Adds a document for every usage which is part of a classification. These are loaded into
+   * memory when the index is opened, so the name usage documents only need to store their parent
+   * id instead of the full classification.
+   */
+  private void indexHigherTaxa(ClassificationTree nameUsageTree, IndexFingerprints fingerprints)
       throws IOException {
-    log.info("Processing name usages...");
-    for (var row : routine.iterate(NameUsageCsvRow.class, bais)) {
-      var parentId = row.getParentId();
-      var classification = new HashSet<NameUsageCsvRow>();
-      while (true) {
-        var parent = nameUsageMap.get(parentId);
-        if (parent != null) {
-          classification.add(parent);
-          parentId = parent.getParentId();
-        } else {
-          var document = parseToDocument(row, classification);
-          log.debug("Resulting document: {}", document);
-          indexWriter.addDocument(document);
-          break;
-        }
+    var documents = new ArrayList<Document>();
+    nameUsageTree.forEachHigherTaxon((parentId, classification) -> {
+      var fingerprint = fingerprint(parentId, classification);
+      if (fingerprints.isUnchanged(classification.getColId(), fingerprint)) {
+        return;
+      }
+      var doc = new Document();
+      doc.add(new StringField(FIELD_HIGHER_TAXON_ID, classification.getColId(), Field.Store.NO));
+      doc.add(new StoredField(FIELD_HIGHER_TAXON, ClassificationCodec.encode(classification)));
+      addIfNotNull(doc, "pId", parentId);
+      doc.add(new NumericDocValuesField(FIELD_FINGERPRINT, fingerprint));
+      documents.add(doc);
+    });
+    log.info("Indexing {} higher taxa", documents.size());
+    if (properties.isIncrementalIndexing()) {
+      for (var document : documents) {
+        indexWriter.updateDocument(
+            new Term(FIELD_HIGHER_TAXON_ID, document.get(FIELD_HIGHER_TAXON_ID)), document);
       }
+    } else {
+      indexWriter.addDocuments(documents);
     }
   }
 
-  private HashMap<String, NameUsageCsvRow> populateCache(Path path)
-      throws IOException {
-    try (var zis = new ZipFile(path.toFile())) {
-      var nameUsageMap = new HashMap<String, NameUsageCsvRow>();
-      var entry = zis.getEntry("NameUsage.tsv");
-      try (var in = new BufferedInputStream(zis.getInputStream(entry))) {
-        return populateCacheWithNameUsages(in, nameUsageMap);
+  /**
+   * Reads the name usages on the calling thread and hands them to a pool of workers which build
+   * the documents and add them to the index writer. The number of rows waiting for a worker is
+   * bounded so the reader cannot run ahead of the workers. Rows which are unchanged since the
+   * previous index are skipped, changed rows replace the document with the same id. After every
+   * batch the reader waits for the workers and commits the number of rows read so far.
+   */
+  private void processNameUsageFile(ClassificationTree nameUsageTree, NameUsageTsvDecoder decoder,
+      IndexFingerprints fingerprints, String jobId, long committed)
+      throws IOException, IndexingFailedException, InterruptedException {
+    log.info("Processing name usages with {} threads...", properties.getIndexingThreads());
+    var executor = Executors.newFixedThreadPool(properties.getIndexingThreads(),
+        Thread.ofPlatform().name("indexer-", 0).factory());
+    var permits = new Semaphore(properties.getIndexingQueueSize());
+    var failure = new AtomicReference<Exception>();
+    var indexed = new AtomicLong();
+    var unchanged = 0L;
+    var rows = 0L;
+    var start = System.nanoTime();
+    try {
+      for (var row : decoder.rows()) {
+        rows++;
+        if (rows <= committed) {
+          // indexed before the previous run stopped
+          fingerprints.markSeen(row.getId());
+          continue;
+        }
+        var classification = nameUsageTree.getClassification(row.getParentId());
+        var fingerprint = fingerprint(row, classification);
+        if (fingerprints.isUnchanged(row.getId(), fingerprint)) {
+          unchanged++;
+        } else {
+          permits.acquire();
+          if (failure.get() != null) {
+            break;
+          }
+          executor.execute(() -> {
+            try {
+              var document = parseToDocument(row, classification, fingerprint);
+              log.debug("Resulting document: {}", document);
+              if (properties.isIncrementalIndexing()) {
+                indexWriter.updateDocument(new Term(FIELD_ID, row.getId()), document);
+              } else {
+                indexWriter.addDocument(document);
+              }
+              logProgress(indexed.incrementAndGet(), start);
+            } catch (Exception e) {
+              if (failure.compareAndSet(null, e)) {
+                log.error("Failed to index name usage: {}", row.getId(), e);
+              }
+            } finally {
+              permits.release();
+            }
+          });
+        }
+        if (rows % properties.getCommitBatchSize() == 0) {
+          // wait until no row is left with the workers
+          permits.acquire(properties.getIndexingQueueSize());
+          permits.release(properties.getIndexingQueueSize());
+          if (failure.get() != null) {
+            break;
+          }
+          commit(jobId, rows, false);
+          log.info("Committed {} rows", rows);
+        }
       }
+    } finally {
+      executor.shutdown();
+      while (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+        log.info("Waiting for indexing threads to finish, indexed {} rows", indexed.get());
+      }
+    }
+    if (failure.get() != null) {
+      throw new IndexingFailedException(
+          "Failed to index name usages: " + failure.get().getMessage());
     }
+    commit(jobId, rows, false);
+    log.info("Indexed {} rows at {} rows/s, skipped {} unchanged rows", indexed.get(),
+        rate(indexed.get(), start), unchanged);
   }
 
-  private HashMap<String, NameUsageCsvRow> populateCacheWithNameUsages(
-      InputStream bais, HashMap<String, NameUsageCsvRow> nameUsageMap) {
+  /**
+   * Reads all name usages into a name usage tree. In external memory mode the tree is kept in
+   * sorted runs on disk next to the scratch name usage file, so only the memory budget is used on
+   * the heap. The caller closes the tree to remove these runs.
+   */
+  ClassificationTree buildNameUsageTree(NameUsageTsvDecoder decoder) throws IOException {
+    ClassificationTree nameUsageTree;
+    if (properties.isExternalMemoryIndexing()) {
+      var directory = Path.of(properties.getScratchNameUsageLocation() + TREE_SUFFIX);
+      log.info("Building the name usage tree in: {} with a memory budget of {} MB", directory,
+          properties.getExternalMemoryBudgetMb());
+      nameUsageTree = new ExternalNameUsageTree(directory,
+          properties.getExternalMemoryBudgetMb() * 1024L * 1024L);
+    } else {
+      nameUsageTree = new NameUsageTree();
+    }
     var count = 0;
-    for (var row : routine.iterate(NameUsageCsvRow.class, bais)) {
+    for (var row : decoder.rows()) {
       count += 1;
-      if (nameUsageMap.containsKey(row.getId())) {
-        log.warn("Duplicate key: {}", row.getId());
-      } else {
-        nameUsageMap.put(row.getId(), row);
-      }
+      nameUsageTree.add(row.getId(), row.getParentId(), row.getRank(),
+          parseTaxonomicStatus(row.getStatus()), getExtinct(row), row.getScientificName(),
+          row.getAuthorship());
       if (count % 10000 == 0) {
         log.info("Processed {} rows", count);
       }
     }
-    log.info("Total rows read is: {}", nameUsageMap.size());
-    return nameUsageMap;
+    nameUsageTree.complete();
+    log.info("Total rows read is: {}", nameUsageTree.size());
+    return nameUsageTree;
   }
 }
@@ -0,0 +1,167 @@
+package eu.dissco.nusearch.service;
+
+import static eu.dissco.nusearch.Profiles.STANDALONE;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import eu.dissco.nusearch.configuration.LuceneConfiguration;
+import eu.dissco.nusearch.property.IndexingProperties;
+import eu.dissco.nusearch.repository.IndexManifestRepository;
+import eu.dissco.nusearch.repository.IndexingCheckpointRepository;
+import eu.dissco.nusearch.repository.NubSearcherManager;
+import eu.dissco.nusearch.repository.StorageRepositoryInterface;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.io.FileUtils;
+import org.apache.lucene.index.ConcurrentMergeScheduler;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.store.FSDirectory;
+import org.gbif.nameparser.NameParserGbifV1;
+import org.springframework.beans.BeanUtils;
+import org.springframework.context.annotation.Profile;
+import org.springframework.core.env.Environment;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Checks Checklistbank for a new release of the dataset and rebuilds the index of the standalone
+ * profile in the background. The new index is built next to the index which is being searched,
+ * with a limited number of threads, and swapped in once it is opened and warmed. The previous
+ * index is deleted once the last request using it has finished.
+ * <p>
+ * A rebuild is not resumed, a rebuild which fails or is interrupted by a restart is started again
+ * at the next check. After a restart the index which was swapped in last is moved back into the
+ * configured location, see {@link NubSearcherManager#restoreReleasedIndex}, and reused by the
+ * {@link IndexingJob} when it is built from the latest release.
+ */
+@Slf4j
+@Component
+@Profile(STANDALONE)
+@RequiredArgsConstructor
+public class IndexRebuildService {
+
+  static final String REBUILD_TIMER = "nusearch.index.rebuild";
+  static final String SWAP_TIMER = "nusearch.index.swap";
+  private static final String CHECKPOINT_SUFFIX = "-rebuild";
+
+  private final ColDpDownloadingService colDpDownloadingService;
+  private final IndexManifestRepository manifestRepository;
+  private final StorageRepositoryInterface storageRepository;
+  private final NubSearcherManager searcherManager;
+  private final NameParserGbifV1 nameParser;
+  private final ObjectMapper mapper;
+  private final IndexingProperties properties;
+  private final Environment environment;
+  private final MeterRegistry meterRegistry;
+
+  @Scheduled(initialDelayString = "${indexing.rebuild-poll-interval:86400000}",
+      fixedDelayString = "${indexing.rebuild-poll-interval:86400000}")
+  public void checkForNewRelease() {
+    if (!properties.isRebuildIndex() || properties.hasColDpArchive()) {
+      return;
+    }
+    Path nextLocation = null;
+    try {
+      var attempt = colDpDownloadingService.getDatasetAttempt();
+      if (attempt.isEmpty()) {
+        log.warn("Unable to check dataset: {} for a new release", properties.getColDataset());
+        return;
+      }
+      var indexLocation = searcherManager.getIndexLocation();
+      var manifest = manifestRepository.load(indexLocation).orElse(null);
+      if (manifest != null && manifest.attempt() == attempt.getAsInt()) {
+        log.debug("Index: {} is built from the latest release of dataset: {}", indexLocation,
+            properties.getColDataset());
+        return;
+      }
+      nextLocation = NubSearcherManager.nextIndexLocation(Path.of(properties.getIndexLocation()));
+      log.info("Dataset: {} has a new release: {}, rebuilding the index into: {}",
+          properties.getColDataset(), attempt.getAsInt(), nextLocation);
+      rebuild(nextLocation);
+      swap(nextLocation);
+    } catch (Exception e) {
+      log.error("Failed to rebuild the index, the current index stays in use", e);
+      removeFailedIndex(nextLocation);
+    }
+  }
+
+  private void rebuild(Path nextLocation) throws Exception {
+    var sample = Timer.start(meterRegistry);
+    var outcome = "failure";
+    try {
+      var generation = generationProperties(nextLocation);
+      Files.deleteIfExists(Path.of(generation.getCheckpointLocation()));
+      var indexingService = createIndexingService(generation);
+      try {
+        createIndexingJob(indexingService, generation).execute();
+      } finally {
+        indexingService.closeIndex();
+      }
+      outcome = "success";
+    } finally {
+      var duration = sample.stop(meterRegistry.timer(REBUILD_TIMER, "outcome", outcome));
+      log.info("Rebuild of the index into: {} finished with outcome: {} in {} s", nextLocation,
+          outcome, duration / 1_000_000_000);
+    }
+  }
+
+  private void swap(Path nextLocation) throws IOException {
+    var sample = Timer.start(meterRegistry);
+    searcherManager.swap(nextLocation);
+    sample.stop(meterRegistry.timer(SWAP_TIMER));
+    log.info("Swapped in rebuilt index: {}", nextLocation);
+  }
+
+  /**
+   * The settings of the background build: the index and its checkpoint are written to locations
+   * of their own and the number of indexing threads is limited.
+   */
+  private IndexingProperties generationProperties(Path nextLocation) {
+    var generation = new IndexingProperties();
+    BeanUtils.copyProperties(properties, generation);
+    generation.setIndexLocation(nextLocation.toString());
+    generation.setCheckpointLocation(properties.getCheckpointLocation() + CHECKPOINT_SUFFIX);
+    generation.setIndexingThreads(properties.getRebuildThreads());
+    generation.setIncrementalIndexing(false);
+    generation.setReuseIndex(false);
+    generation.setDeleteIndex(false);
+    return generation;
+  }
+
+  /**
+   * Builds into the next location with an index writer of its own, which merges segments with as
+   * many threads as the build uses.
+   */
+  ColDpIndexingService createIndexingService(IndexingProperties generation) throws IOException {
+    var indexWriterConfig = LuceneConfiguration.indexWriterConfig(generation);
+    var mergeScheduler = new ConcurrentMergeScheduler();
+    mergeScheduler.setMaxMergesAndThreads(generation.getIndexingThreads() + 5,
+        generation.getIndexingThreads());
+    indexWriterConfig.setMergeScheduler(mergeScheduler);
+    var indexWriter = new IndexWriter(
+        FSDirectory.open(Path.of(generation.getIndexLocation())), indexWriterConfig);
+    return new ColDpIndexingService(indexWriter, generation, nameParser);
+  }
+
+  IndexingJob createIndexingJob(ColDpIndexingService indexingService,
+      IndexingProperties generation) {
+    return new IndexingJob(indexingService, colDpDownloadingService,
+        new IndexingCheckpointRepository(mapper, generation),
+        new IndexManifestRepository(mapper, generation), storageRepository, generation,
+        environment);
+  }
+
+  private void removeFailedIndex(Path nextLocation) {
+    try {
+      if (nextLocation != null && !nextLocation.equals(searcherManager.getIndexLocation())) {
+        FileUtils.deleteDirectory(nextLocation.toFile());
+      }
+    } catch (IOException | RuntimeException e) {
+      log.warn("Failed to remove the rebuilt index: {}", nextLocation, e);
+    }
+  }
+}
@@ -0,0 +1,77 @@
+package eu.dissco.nusearch.service;
+
+import static eu.dissco.nusearch.Profiles.S3_RESOLVER;
+
+import eu.dissco.nusearch.exception.IndexingFailedException;
+import eu.dissco.nusearch.property.IndexingProperties;
+import eu.dissco.nusearch.property.S3Properties;
+import eu.dissco.nusearch.repository.FuzzyCandidateGenerator;
+import eu.dissco.nusearch.repository.NubSearcherManager;
+import eu.dissco.nusearch.repository.S3StorageRepository;
+import java.io.IOException;
+import java.nio.file.Path;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Service;
+
+/**
+ * Lets the s3-resolver serve requests before the index has been downloaded. The snapshot on S3 is
+ * searched in place, blocks are fetched when a query needs them while the rest of the snapshot is
+ * downloaded in the background. Once the download is complete the snapshot is extracted into the
+ * index location and swapped in, after which the index is searched from local disk.
+ */
+@Slf4j
+@Service
+@Profile(S3_RESOLVER)
+@RequiredArgsConstructor
+public class IndexStreamingService {
+
+  private static final String STREAM_SUFFIX = "-stream";
+
+  private final S3StorageRepository storageRepository;
+  private final IndexingProperties properties;
+  private final S3Properties s3Properties;
+
+  /**
+   * Opens the local index when it is the latest index on S3. Otherwise the snapshot on S3 is
+   * opened in place, or downloaded first when it can not be read in place.
+   */
+  public NubSearcherManager openSearcherManager() throws IOException, IndexingFailedException {
+    var indexLocation = Path.of(properties.getIndexLocation()).toAbsolutePath();
+    if (storageRepository.isIndexCurrent(indexLocation.toString())) {
+      log.info("Local index matches the index on S3, searching the local index");
+      return new NubSearcherManager(indexLocation, properties.getWarmupQueries(),
+          FuzzyCandidateGenerator.of(properties));
+    }
+    var cacheLocation = indexLocation.resolveSibling(indexLocation.getFileName() + STREAM_SUFFIX);
+    var directory = storageRepository.openSnapshot(cacheLocation,
+        s3Properties.getBlockSizeKb() * 1024).orElse(null);
+    if (directory == null) {
+      storageRepository.downloadIndex(indexLocation.toString());
+      return new NubSearcherManager(indexLocation, properties.getWarmupQueries(),
+          FuzzyCandidateGenerator.of(properties));
+    }
+    log.info("Searching the index snapshot on S3 while it is downloaded");
+    var searcherManager = new NubSearcherManager(directory, cacheLocation,
+        properties.getWarmupQueries(), FuzzyCandidateGenerator.of(properties));
+    directory.prefetch(s3Properties.getPrefetchConnections())
+        .thenAcceptAsync(snapshot -> install(searcherManager, snapshot, indexLocation))
+        .exceptionally(e -> {
+          log.error("Failed to download the index snapshot, it is searched on S3 until the next "
+              + "index release", e);
+          return null;
+        });
+    return searcherManager;
+  }
+
+  private void install(NubSearcherManager searcherManager, Path snapshot, Path indexLocation) {
+    try {
+      storageRepository.installSnapshot(snapshot, indexLocation.toString());
+      searcherManager.swap(indexLocation);
+      log.info("Swapped the index snapshot on S3 for the downloaded index: {}", indexLocation);
+    } catch (IndexingFailedException | IOException e) {
+      log.error("Failed to install the downloaded index snapshot: {}", snapshot, e);
+    }
+  }
+}
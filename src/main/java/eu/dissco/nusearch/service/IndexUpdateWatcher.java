@@ -0,0 +1,74 @@
+package eu.dissco.nusearch.service;
+
+import static eu.dissco.nusearch.Profiles.S3_RESOLVER;
+
+import eu.dissco.nusearch.exception.IndexingFailedException;
+import eu.dissco.nusearch.property.IndexingProperties;
+import eu.dissco.nusearch.repository.NubSearcherManager;
+import eu.dissco.nusearch.repository.StorageRepositoryInterface;
+import java.io.IOException;
+import java.nio.file.Path;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.io.FileUtils;
+import org.springframework.context.annotation.Profile;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Polls S3 for a new release of the index. A new release is downloaded next to the index which is
+ * being searched and swapped in once it is opened and warmed, the resolver keeps serving requests
+ * from the current index in the meantime. When the download or the swap fails the current index
+ * stays in use and the next poll tries again. After a restart the index which was swapped in last
+ * is moved back into the configured location, see
+ * {@link NubSearcherManager#restoreReleasedIndex}, and only downloaded again when it is outdated.
+ */
+@Slf4j
+@Component
+@Profile(S3_RESOLVER)
+@RequiredArgsConstructor
+public class IndexUpdateWatcher {
+
+  private final StorageRepositoryInterface storageRepository;
+  private final NubSearcherManager searcherManager;
+  private final IndexingProperties properties;
+
+  @Scheduled(initialDelayString = "${indexing.index-poll-interval:600000}",
+      fixedDelayString = "${indexing.index-poll-interval:600000}")
+  public void checkForNewIndex() {
+    if (!properties.isHotSwapIndex()) {
+      return;
+    }
+    Path nextLocation = null;
+    try {
+      if (searcherManager.isStreaming()) {
+        log.debug("Index snapshot is still being downloaded, skipping the check for a new index");
+        return;
+      }
+      var indexLocation = searcherManager.getIndexLocation();
+      if (storageRepository.isIndexCurrent(indexLocation.toString())) {
+        log.debug("Index: {} is the latest index on S3", indexLocation);
+        return;
+      }
+      nextLocation = NubSearcherManager.nextIndexLocation(
+          Path.of(properties.getIndexLocation()));
+      log.info("New index available on S3, downloading it into: {}", nextLocation);
+      storageRepository.downloadIndex(nextLocation.toString());
+      searcherManager.swap(nextLocation);
+      log.info("Swapped in new index: {}", nextLocation);
+    } catch (IndexingFailedException | IOException | RuntimeException e) {
+      log.error("Failed to swap in the new index, the current index stays in use", e);
+      removeFailedIndex(nextLocation);
+    }
+  }
+
+  private void removeFailedIndex(Path nextLocation) {
+    try {
+      if (nextLocation != null && !nextLocation.equals(searcherManager.getIndexLocation())) {
+        FileUtils.deleteDirectory(nextLocation.toFile());
+      }
+    } catch (IOException | RuntimeException e) {
+      log.warn("Failed to remove the downloaded index: {}", nextLocation, e);
+    }
+  }
+}
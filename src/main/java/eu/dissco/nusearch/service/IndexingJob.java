@@ -0,0 +1,245 @@
+package eu.dissco.nusearch.service;
+
+import static eu.dissco.nusearch.Profiles.INDEXER;
+import static eu.dissco.nusearch.Profiles.S3_INDEXER;
+import static eu.dissco.nusearch.Profiles.S3_RESOLVER;
+import static eu.dissco.nusearch.Profiles.STANDALONE;
+import static eu.dissco.nusearch.domain.IndexingPhase.CACHE;
+import static eu.dissco.nusearch.domain.IndexingPhase.DOWNLOAD;
+import static eu.dissco.nusearch.domain.IndexingPhase.INDEX;
+import static eu.dissco.nusearch.domain.IndexingPhase.MERGE;
+import static eu.dissco.nusearch.domain.IndexingPhase.UPLOAD;
+
+import com.google.common.hash.Hashing;
+import com.google.common.io.MoreFiles;
+import eu.dissco.nusearch.domain.IndexManifest;
+import eu.dissco.nusearch.domain.IndexingCheckpoint;
+import eu.dissco.nusearch.exception.IndexingFailedException;
+import eu.dissco.nusearch.property.IndexingProperties;
+import eu.dissco.nusearch.repository.IndexManifestRepository;
+import eu.dissco.nusearch.repository.IndexingCheckpointRepository;
+import eu.dissco.nusearch.repository.NubIndex;
+import eu.dissco.nusearch.repository.StorageRepositoryInterface;
+import eu.dissco.nusearch.utils.MappedTsvFile;
+import eu.dissco.nusearch.utils.NameUsageTsvDecoder;
+import jakarta.annotation.PostConstruct;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Objects;
+import java.util.UUID;
+import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+/**
+ * Builds the index in named phases: download, cache, index, merge and upload. After every phase a
+ * checkpoint is saved, a rerun for the same dataset resumes after the last completed phase and
+ * within the index phase after the last committed batch of name usages.
+ * <p>
+ * A finished build writes a manifest next to the index. When a later run finds a valid index built
+ * from the current attempt of the dataset, the index is reused instead of rebuilt.
+ * <p>
+ * When a local ColDP archive is configured it is indexed instead of the dataset in Checklistbank,
+ * without any request to Checklistbank. The index is then reused when it was built from an archive
+ * with the same SHA-256 hash.
+ * <p>
+ * The s3-indexer and indexer profiles run the job once the application has started. The standalone
+ * profile runs it while the context starts, as the index is needed before it can be searched.
+ */
+@Slf4j
+@Component
+@AllArgsConstructor
+public class IndexingJob implements ApplicationRunner {
+
+  private static final String NAME_USAGE_FILE = "NameUsage.tsv";
+
+  private final ColDpIndexingService indexingService;
+  private final ColDpDownloadingService colDpDownloadingService;
+  private final IndexingCheckpointRepository checkpointRepository;
+  private final IndexManifestRepository manifestRepository;
+  private final StorageRepositoryInterface storageRepository;
+  private final IndexingProperties properties;
+  private final Environment environment;
+
+  @PostConstruct
+  void setup() throws Exception {
+    if (environment.matchesProfiles(S3_RESOLVER)) {
+      // a streamed index is opened from S3 by the searcher manager instead
+      if (!properties.isStreamIndex()) {
+        storageRepository.downloadIndex(properties.getIndexLocation());
+      }
+    } else if (environment.matchesProfiles(STANDALONE)) {
+      execute();
+    }
+  }
+
+  @Override
+  public void run(ApplicationArguments args) throws Exception {
+    if (environment.matchesProfiles(S3_INDEXER, INDEXER)) {
+      execute();
+    }
+  }
+
+  public void execute() throws Exception {
+    var archiveChecksum = archiveChecksum();
+    var checkpoint = checkpointRepository.load()
+        .filter(previous -> previous.colDataset() == properties.getColDataset()
+            && Objects.equals(previous.archiveChecksum(), archiveChecksum))
+        .orElse(null);
+    if (checkpoint != null) {
+      log.info("Resuming index build {} after phase {}", checkpoint.jobId(),
+          checkpoint.completedPhase());
+    }
+    if (checkpoint == null && isIndexReusable(archiveChecksum)) {
+      indexingService.closeIndex();
+      upload();
+      return;
+    }
+    if (checkpoint == null || !checkpoint.isCompleted(MERGE)) {
+      manifestRepository.delete();
+      checkpoint = download(checkpoint, archiveChecksum);
+      checkpoint = buildIndex(checkpoint);
+    }
+    indexingService.closeIndex();
+    manifestRepository.save(checkpoint.attempt(), checkpoint.archiveChecksum());
+    upload();
+    log.info("Finished index build {}", checkpoint.jobId());
+    checkpointRepository.delete();
+    cleanupFile(properties.getTempColDpLocation());
+    cleanupFile(properties.getScratchNameUsageLocation());
+  }
+
+  /**
+   * The SHA-256 hash of the configured local ColDP archive, null when the dataset is downloaded
+   * from Checklistbank.
+   */
+  private String archiveChecksum() throws IOException {
+    if (!properties.hasColDpArchive()) {
+      return null;
+    }
+    var archive = Path.of(properties.getColDpArchive());
+    var checksum = MoreFiles.asByteSource(archive).hash(Hashing.sha256()).toString();
+    log.info("Indexing local ColDP archive: {} with SHA-256: {}", archive, checksum);
+    return checksum;
+  }
+
+  /**
+   * Whether the existing index was built with the current settings from the current attempt of
+   * the dataset, or from the same local archive. When Checklistbank cannot be reached the index of
+   * the dataset is reused as is.
+   */
+  private boolean isIndexReusable(String archiveChecksum) {
+    if (!properties.isReuseIndex()) {
+      return false;
+    }
+    var manifest = manifestRepository.load().orElse(null);
+    if (manifest == null) {
+      return false;
+    }
+    if (!IndexManifestRepository.hasCurrentSchema(manifest)) {
+      log.info("Existing index has schema version: {}, expected: {}, rebuilding",
+          manifest.schemaVersion(), NubIndex.SCHEMA_VERSION);
+      return false;
+    }
+    if (manifest.colDataset() != properties.getColDataset()
+        || manifest.optimizedForServing() != properties.isOptimizeForServing()) {
+      log.info("Existing index was built for dataset: {} with other settings, rebuilding",
+          manifest.colDataset());
+      return false;
+    }
+    if (archiveChecksum != null) {
+      if (!archiveChecksum.equals(manifest.archiveChecksum())) {
+        log.info("Existing index was built from another ColDP archive, rebuilding");
+        return false;
+      }
+    } else if (!isCurrentAttempt(manifest)) {
+      return false;
+    }
+    if (!manifestRepository.isValid(manifest)) {
+      log.warn("Existing index does not match its manifest, rebuilding");
+      return false;
+    }
+    log.info("Reusing index of dataset: {} attempt: {} built at: {}", manifest.colDataset(),
+        manifest.attempt(), manifest.builtAt());
+    return true;
+  }
+
+  private boolean isCurrentAttempt(IndexManifest manifest) {
+    var attempt = colDpDownloadingService.getDatasetAttempt();
+    if (attempt.isPresent() && attempt.getAsInt() != manifest.attempt()) {
+      log.info("Existing index was built from attempt: {}, dataset is at attempt: {}",
+          manifest.attempt(), attempt.getAsInt());
+      return false;
+    }
+    if (attempt.isEmpty()) {
+      log.warn("Unable to check the attempt of dataset: {}, reusing the existing index",
+          properties.getColDataset());
+    }
+    return true;
+  }
+
+  private void upload() throws IndexingFailedException {
+    if (environment.matchesProfiles(S3_INDEXER)) {
+      log.info("Phase {}", UPLOAD);
+      storageRepository.uploadIndex(properties.getIndexLocation());
+    }
+  }
+
+  /**
+   * Downloads the dataset, unless the checkpoint holds a dataset which is still on disk. A new
+   * download starts a new job, as the dataset might have changed. A local archive is not
+   * downloaded, it is indexed in place.
+   */
+  private IndexingCheckpoint download(IndexingCheckpoint checkpoint, String archiveChecksum)
+      throws Exception {
+    if (checkpoint != null && checkpoint.isCompleted(DOWNLOAD)
+        && Files.exists(Path.of(checkpoint.dataset()))) {
+      log.info("Reusing downloaded dataset: {}", checkpoint.dataset());
+      return checkpoint;
+    }
+    if (archiveChecksum != null) {
+      return save(new IndexingCheckpoint(UUID.randomUUID().toString(),
+          properties.getColDataset(), -1, DOWNLOAD, properties.getColDpArchive(),
+          archiveChecksum));
+    }
+    log.info("Phase {}", DOWNLOAD);
+    var attempt = colDpDownloadingService.getDatasetAttempt().orElse(-1);
+    var dataset = colDpDownloadingService.downloadColDpDataset();
+    return save(new IndexingCheckpoint(UUID.randomUUID().toString(), properties.getColDataset(),
+        attempt, DOWNLOAD, dataset.toString(), null));
+  }
+
+  private IndexingCheckpoint buildIndex(IndexingCheckpoint checkpoint) throws Exception {
+    var scratchFile = Path.of(properties.getScratchNameUsageLocation());
+    try (var nameUsages = checkpoint.isCompleted(CACHE) && Files.exists(scratchFile)
+        ? MappedTsvFile.map(scratchFile)
+        : MappedTsvFile.inflate(Path.of(checkpoint.dataset()), NAME_USAGE_FILE, scratchFile)) {
+      var decoder = NameUsageTsvDecoder.open(nameUsages, properties.getMaxCharsPerColumn());
+      log.info("Phase {}", CACHE);
+      try (var nameUsageTree = indexingService.buildNameUsageTree(decoder)) {
+        checkpoint = save(checkpoint.complete(CACHE));
+        log.info("Phase {}", INDEX);
+        var fingerprints = indexingService.indexNameUsages(nameUsageTree, decoder,
+            checkpoint.jobId());
+        checkpoint = save(checkpoint.complete(INDEX));
+        log.info("Phase {}", MERGE);
+        indexingService.mergeIndex(nameUsageTree, fingerprints, checkpoint.jobId());
+        return save(checkpoint.complete(MERGE));
+      }
+    }
+  }
+
+  private IndexingCheckpoint save(IndexingCheckpoint checkpoint) throws IOException {
+    checkpointRepository.save(checkpoint);
+    return checkpoint;
+  }
+
+  private void cleanupFile(String location) throws IOException {
+    log.info("Deleting temporary file: {}", location);
+    Files.deleteIfExists(Path.of(location));
+  }
+}
@@ -38,6 +38,7 @@ import eu.dissco.nusearch.repository.NubIndex;
 import eu.dissco.nusearch.utils.CleanupUtils;
 import eu.dissco.nusearch.utils.NameNRank;
 import eu.dissco.nusearch.utils.RankUtils;
+import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.HashSet;
 import java.util.List;
@@ -386,7 +387,12 @@ public class NubMatchingService {
     } else {
       NameNRank nr = NameNRank.build(scientificName, authorship, genericName, specificEpithet,
           infraSpecificEpithet, rank, classification);
-      match = matchInternal(nr.name, nr.rank, classification, exclude, strict, verbose);
+      // the match is completed from the release of the index it was scored on
+      match = nubIndex.withSearcher(() -> {
+        var scored = matchInternal(nr.name, nr.rank, classification, exclude, strict, verbose);
+        materialize(scored);
+        return scored;
+      });
       watch.stop();
       LOG.debug("{} Match of {} >{}< to {} [{}] in {}", match.getMatchType(), nr.rank, nr.name,
           match.getColId(), match.getScientificName(), watch);
@@ -395,6 +401,24 @@ public class NubMatchingService {
     return match;
   }
 
+  /**
+   * Candidates are scored on the few fields read from the index, only the selected match and its
+   * alternatives are read in full.
+   */
+  private void materialize(ColDpNameUsageMatch match) {
+    var candidates = new ArrayList<ColDpNameUsageMatch>();
+    if (match.isCandidate()) {
+      candidates.add(match);
+    }
+    if (match.getAlternatives() != null) {
+      match.getAlternatives().stream().filter(ColDpNameUsageMatch::isCandidate)
+          .forEach(candidates::add);
+    }
+    if (!candidates.isEmpty()) {
+      nubIndex.materialize(candidates);
+    }
+  }
+
   /**
    * Real method doing the work
    */
@@ -886,46 +910,46 @@ public class NubMatchingService {
 
   // -12 to 8
   private int authorSimilarity(@Nullable ParsedName pn, ColDpNameUsageMatch m) {
+    if (pn == null || !hasAuthorship(pn)) {
+      // nothing to compare with, the authorship of the candidate does not matter
+      return 0;
+    }
+    var mpa = m.getParsedAuthorship();
+    var mAuthorship = mpa == null ? null : mpa.authorship();
+    var mYear = mpa == null ? null : mpa.year();
+    var mBracketAuthorship = mpa == null ? null : mpa.bracketAuthorship();
+    var mBracketYear = mpa == null ? null : mpa.bracketYear();
     int similarity = 0;
-    if (pn != null) {
-      try {
-        ParsedName mpn = nameParserGbifV1.parse(m.getScientificName() + " " + m.getAuthorship(),
-            m.getRank());
-        // authorship comparison was requested!
-        Equality recomb = authComp.compare(pn.getAuthorship(), pn.getYear(), mpn.getAuthorship(),
-            mpn.getYear());
-        Equality bracket = authComp.compare(pn.getBracketAuthorship(), pn.getBracketYear(),
-            mpn.getBracketAuthorship(), mpn.getBracketYear());
-        if (bracket == Equality.UNKNOWN) {
-          // dont have 2 bracket authors to compare. Try with combination authors as brackets are sometimes forgotten or wrong
-          if (pn.getBracketAuthorship() != null) {
-            bracket = authComp.compare(pn.getBracketAuthorship(), pn.getBracketYear(),
-                mpn.getAuthorship(), mpn.getYear());
-          } else if (mpn.getBracketAuthorship() != null) {
-            bracket = authComp.compare(pn.getAuthorship(), pn.getYear(),
-                mpn.getBracketAuthorship(),
-                mpn.getBracketYear());
-          }
-          if (bracket == Equality.EQUAL) {
-            similarity -= 1;
-          } else if (bracket == Equality.DIFFERENT) {
-            similarity += 1;
-          }
-        }
-
-        similarity += equality2Similarity(recomb, 3);
-        similarity += equality2Similarity(bracket, 1);
-
-      } catch (UnparsableException e) {
-        if (e.type.isParsable()) {
-          LOG.warn("Failed to parse name: {}", m.getScientificName());
-        }
+    // authorship comparison was requested!
+    Equality recomb = authComp.compare(pn.getAuthorship(), pn.getYear(), mAuthorship, mYear);
+    Equality bracket = authComp.compare(pn.getBracketAuthorship(), pn.getBracketYear(),
+        mBracketAuthorship, mBracketYear);
+    if (bracket == Equality.UNKNOWN) {
+      // dont have 2 bracket authors to compare. Try with combination authors as brackets are sometimes forgotten or wrong
+      if (pn.getBracketAuthorship() != null) {
+        bracket = authComp.compare(pn.getBracketAuthorship(), pn.getBracketYear(), mAuthorship,
+            mYear);
+      } else if (mBracketAuthorship != null) {
+        bracket = authComp.compare(pn.getAuthorship(), pn.getYear(), mBracketAuthorship,
+            mBracketYear);
+      }
+      if (bracket == Equality.EQUAL) {
+        similarity -= 1;
+      } else if (bracket == Equality.DIFFERENT) {
+        similarity += 1;
       }
     }
 
+    similarity += equality2Similarity(recomb, 3);
+    similarity += equality2Similarity(bracket, 1);
     return similarity;
   }
 
+  private static boolean hasAuthorship(ParsedName pn) {
+    return pn.getAuthorship() != null || pn.getYear() != null
+        || pn.getBracketAuthorship() != null || pn.getBracketYear() != null;
+  }
+
   private int equality2Similarity(Equality eq, int factor) {
     return switch (eq) {
       case EQUAL -> 2 * factor;
@@ -0,0 +1,127 @@
+package eu.dissco.nusearch.utils;
+
+import eu.dissco.nusearch.domain.ColDpClassification;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Map;
+import java.util.stream.Collectors;
+import org.apache.lucene.store.ByteArrayDataInput;
+import org.apache.lucene.store.ByteBuffersDataOutput;
+import org.apache.lucene.util.BytesRef;
+import org.gbif.api.vocabulary.Rank;
+import org.gbif.api.vocabulary.TaxonomicStatus;
+
+/**
+ * Encodes a single entry of a classification, i.e. one higher taxon, into a binary value for a
+ * stored field.
+ * <p>
+ * The value holds the id, a flags byte, the scientific name and authorship when present, the rank
+ * and the status. Strings are length prefixed UTF-8. Ranks which match a GBIF rank are written as
+ * the vint ordinal offset by {@link #RANK_OFFSET}, any other rank is written verbatim. The status
+ * is written as the vint ordinal plus one, zero marks a missing status.
+ */
+public class ClassificationCodec {
+
+  private static final int EXTINCT = 1;
+  private static final int HAS_SCIENTIFIC_NAME = 1 << 1;
+  private static final int HAS_AUTHORSHIP = 1 << 2;
+  private static final int NO_RANK = 0;
+  private static final int VERBATIM_RANK = 1;
+  private static final int RANK_OFFSET = 2;
+  private static final Rank[] RANKS = Rank.values();
+  private static final TaxonomicStatus[] STATUSES = TaxonomicStatus.values();
+  // ColDP ranks are the lower case GBIF rank names with spaces instead of underscores
+  private static final Map<String, Rank> RANKS_BY_NAME = Arrays.stream(RANKS)
+      .collect(Collectors.toUnmodifiableMap(ClassificationCodec::toColDpRank, r -> r));
+
+  private ClassificationCodec() {
+    // Utility class
+  }
+
+  public static BytesRef encode(ColDpClassification classification) {
+    var out = new ByteBuffersDataOutput();
+    try {
+      writeClassification(out, classification);
+    } catch (IOException e) {
+      // not thrown b/c we're writing to memory...
+      throw new UncheckedIOException(e);
+    }
+    return new BytesRef(out.toArrayCopy());
+  }
+
+  public static ColDpClassification decode(BytesRef bytes) {
+    var in = new ByteArrayDataInput(bytes.bytes, bytes.offset, bytes.length);
+    try {
+      return readClassification(in);
+    } catch (IOException e) {
+      // not thrown b/c we're reading from memory...
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  private static void writeClassification(ByteBuffersDataOutput out,
+      ColDpClassification classification) throws IOException {
+    out.writeString(classification.getColId());
+    var flags = 0;
+    if (classification.isExtinct()) {
+      flags |= EXTINCT;
+    }
+    if (classification.getScientificName() != null) {
+      flags |= HAS_SCIENTIFIC_NAME;
+    }
+    if (classification.getAuthorship() != null) {
+      flags |= HAS_AUTHORSHIP;
+    }
+    out.writeByte((byte) flags);
+    if (classification.getScientificName() != null) {
+      out.writeString(classification.getScientificName());
+    }
+    if (classification.getAuthorship() != null) {
+      out.writeString(classification.getAuthorship());
+    }
+    writeRank(out, classification.getRank());
+    var status = classification.getStatus();
+    out.writeVInt(status == null ? 0 : status.ordinal() + 1);
+  }
+
+  private static ColDpClassification readClassification(ByteArrayDataInput in)
+      throws IOException {
+    var colId = in.readString();
+    var flags = in.readByte();
+    var scientificName = (flags & HAS_SCIENTIFIC_NAME) != 0 ? in.readString() : null;
+    var authorship = (flags & HAS_AUTHORSHIP) != 0 ? in.readString() : null;
+    var rank = readRank(in);
+    var status = in.readVInt();
+    return new ColDpClassification(colId, scientificName, authorship, rank,
+        status == 0 ? null : STATUSES[status - 1], (flags & EXTINCT) != 0);
+  }
+
+  private static void writeRank(ByteBuffersDataOutput out, String rank) throws IOException {
+    if (rank == null) {
+      out.writeVInt(NO_RANK);
+      return;
+    }
+    var gbifRank = RANKS_BY_NAME.get(rank);
+    if (gbifRank != null) {
+      out.writeVInt(gbifRank.ordinal() + RANK_OFFSET);
+    } else {
+      out.writeVInt(VERBATIM_RANK);
+      out.writeString(rank);
+    }
+  }
+
+  private static String readRank(ByteArrayDataInput in) throws IOException {
+    var code = in.readVInt();
+    return switch (code) {
+      case NO_RANK -> null;
+      case VERBATIM_RANK -> in.readString();
+      default -> toColDpRank(RANKS[code - RANK_OFFSET]);
+    };
+  }
+
+  private static String toColDpRank(Rank rank) {
+    return rank.name().toLowerCase(Locale.ROOT).replace('_', ' ');
+  }
+}
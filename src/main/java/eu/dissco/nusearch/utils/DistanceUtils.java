@@ -23,4 +23,35 @@ public class DistanceUtils {
     double sim = edits > length || dist > 1.0d ? 0 : 100d * (1d - dist);
     return Math.round(sim);
   }
+
+  /**
+   * The optimal string alignment distance: the insertions, deletions, substitutions and
+   * transpositions of adjacent characters needed to turn one string into the other, where no
+   * substring is edited twice. This is the distance lucene's FuzzyQuery matches terms on.
+   */
+  public static int editDistance(String s1, String s2) {
+    var previous2 = new int[s2.length() + 1];
+    var previous = new int[s2.length() + 1];
+    var current = new int[s2.length() + 1];
+    for (int j = 0; j <= s2.length(); j++) {
+      previous[j] = j;
+    }
+    for (int i = 1; i <= s1.length(); i++) {
+      current[0] = i;
+      for (int j = 1; j <= s2.length(); j++) {
+        var cost = s1.charAt(i - 1) == s2.charAt(j - 1) ? 0 : 1;
+        current[j] = Math.min(Math.min(current[j - 1] + 1, previous[j] + 1),
+            previous[j - 1] + cost);
+        if (i > 1 && j > 1 && s1.charAt(i - 1) == s2.charAt(j - 2)
+            && s1.charAt(i - 2) == s2.charAt(j - 1)) {
+          current[j] = Math.min(current[j], previous2[j - 2] + 1);
+        }
+      }
+      var rotated = previous2;
+      previous2 = previous;
+      previous = current;
+      current = rotated;
+    }
+    return previous[s2.length()];
+  }
 }
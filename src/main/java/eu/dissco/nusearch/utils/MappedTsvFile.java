@@ -0,0 +1,129 @@
+package eu.dissco.nusearch.utils;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.ZipFile;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * A file from the ColDP archive which is inflated once into a local scratch file and memory mapped,
+ * so every pass over it reads from the OS page cache instead of decompressing the archive again.
+ * <p>
+ * A single mapping cannot exceed 2GB, so larger files are mapped in consecutive regions.
+ */
+@Slf4j
+public class MappedTsvFile implements Closeable {
+
+  private static final int REGION_SHIFT = 30;
+  private static final long MAX_REGION_SIZE = 1L << REGION_SHIFT;
+  private static final long REGION_MASK = MAX_REGION_SIZE - 1;
+
+  @Getter
+  private final Path path;
+  private final long size;
+  private List<ByteBuffer> regions;
+
+  private MappedTsvFile(Path path, long size, List<ByteBuffer> regions) {
+    this.path = path;
+    this.size = size;
+    this.regions = regions;
+  }
+
+  /**
+   * Inflates the entry of the zip file into the scratch file, replacing any existing file, and
+   * maps it into memory.
+   */
+  public static MappedTsvFile inflate(Path zipFile, String entryName, Path scratchFile)
+      throws IOException {
+    log.info("Inflating {} from {} into {}", entryName, zipFile, scratchFile);
+    try (var zip = new ZipFile(zipFile.toFile())) {
+      var entry = zip.getEntry(entryName);
+      if (entry == null) {
+        throw new IOException("No entry " + entryName + " in " + zipFile);
+      }
+      try (var in = zip.getInputStream(entry)) {
+        Files.copy(in, scratchFile, StandardCopyOption.REPLACE_EXISTING);
+      }
+    }
+    return map(scratchFile);
+  }
+
+  public static MappedTsvFile map(Path file) throws IOException {
+    try (var channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      var size = channel.size();
+      var regions = new ArrayList<ByteBuffer>();
+      for (long position = 0; position < size; position += MAX_REGION_SIZE) {
+        regions.add(channel.map(MapMode.READ_ONLY, position,
+            Math.min(MAX_REGION_SIZE, size - position)));
+      }
+      log.info("Mapped {} bytes of {} in {} regions", size, file, regions.size());
+      return new MappedTsvFile(file, size, regions);
+    }
+  }
+
+  public long size() {
+    return size;
+  }
+
+  /**
+   * Returns the byte at the absolute position in the file.
+   */
+  public byte get(long position) {
+    return regions.get((int) (position >>> REGION_SHIFT)).get((int) (position & REGION_MASK));
+  }
+
+  /**
+   * Copies the bytes starting at the absolute position in the file into the target array, starting
+   * at the offset.
+   */
+  public void get(long position, byte[] target, int offset, int length) {
+    var copied = 0;
+    while (copied < length) {
+      var region = regions.get((int) ((position + copied) >>> REGION_SHIFT));
+      var regionOffset = (int) ((position + copied) & REGION_MASK);
+      var count = Math.min(length - copied, region.capacity() - regionOffset);
+      region.get(regionOffset, target, offset + copied, count);
+      copied += count;
+    }
+  }
+
+  /**
+   * Returns the big endian int at the absolute position in the file.
+   */
+  public int getInt(long position) {
+    var value = 0;
+    for (int i = 0; i < Integer.BYTES; i++) {
+      value = value << 8 | get(position + i) & 0xFF;
+    }
+    return value;
+  }
+
+  /**
+   * Returns the big endian long at the absolute position in the file.
+   */
+  public long getLong(long position) {
+    var value = 0L;
+    for (int i = 0; i < Long.BYTES; i++) {
+      value = value << 8 | get(position + i) & 0xFF;
+    }
+    return value;
+  }
+
+  /**
+   * Releases the mapping. The memory is only unmapped once the buffers are garbage collected.
+   */
+  @Override
+  public void close() {
+    regions = null;
+  }
+}
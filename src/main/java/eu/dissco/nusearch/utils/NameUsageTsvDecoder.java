@@ -0,0 +1,387 @@
+package eu.dissco.nusearch.utils;
+
+import eu.dissco.nusearch.domain.NameUsageCsvRow;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Decodes the rows of a memory mapped ColDP NameUsage.tsv into {@link NameUsageCsvRow}s without
+ * reflection.
+ * <p>
+ * The position of every column is resolved once from the header. For each row only the columns
+ * which are needed are copied out of the mapping and decoded. Values are decoded the same way as
+ * the univocity TSV parser with its default settings: surrounding whitespace is trimmed, empty
+ * values become null, the escape sequences \t, \n, \r and \\ are unescaped and empty lines are
+ * skipped.
+ * <p>
+ * The rows can be split into newline aligned chunks which are decoded independently, the decoder
+ * holds no state after reading the header and can be shared between threads.
+ */
+@Slf4j
+public class NameUsageTsvDecoder {
+
+  private static final byte TAB = '\t';
+  private static final byte NEW_LINE = '\n';
+  private static final byte CARRIAGE_RETURN = '\r';
+  private static final byte ESCAPE = '\\';
+  private static final byte[] BYTE_ORDER_MARK = {(byte) 0xEF, (byte) 0xBB, (byte) 0xBF};
+
+  private static final int ID = 0;
+  private static final int PARENT_ID = 1;
+  private static final int BASIONYM_ID = 2;
+  private static final int STATUS = 3;
+  private static final int RANK = 4;
+  private static final int SCIENTIFIC_NAME = 5;
+  private static final int AUTHORSHIP = 6;
+  private static final int SPECIFIC_EPITHET = 7;
+  private static final int GENERIC_NAME = 8;
+  private static final int CODE = 9;
+  private static final int NAME_STATUS = 10;
+  private static final int EXTINCT = 11;
+  private static final Map<String, Integer> FIELDS = Map.ofEntries(
+      Map.entry("col:ID", ID),
+      Map.entry("col:parentID", PARENT_ID),
+      Map.entry("col:basionymID", BASIONYM_ID),
+      Map.entry("col:status", STATUS),
+      Map.entry("col:rank", RANK),
+      Map.entry("col:scientificName", SCIENTIFIC_NAME),
+      Map.entry("col:authorship", AUTHORSHIP),
+      Map.entry("col:specificEpithet", SPECIFIC_EPITHET),
+      Map.entry("col:genericName", GENERIC_NAME),
+      Map.entry("col:code", CODE),
+      Map.entry("col:nameStatus", NAME_STATUS),
+      Map.entry("col:extinct", EXTINCT));
+
+  private final MappedTsvFile file;
+  private final int maxCharsPerColumn;
+  // field of every column in the file, -1 for columns which are not needed
+  private final int[] columnFields;
+  private final long dataStart;
+
+  private NameUsageTsvDecoder(MappedTsvFile file, int maxCharsPerColumn, int[] columnFields,
+      long dataStart) {
+    this.file = file;
+    this.maxCharsPerColumn = maxCharsPerColumn;
+    this.columnFields = columnFields;
+    this.dataStart = dataStart;
+  }
+
+  /**
+   * Reads the header of the file and resolves the position of every known column.
+   */
+  public static NameUsageTsvDecoder open(MappedTsvFile file, int maxCharsPerColumn) {
+    var start = hasByteOrderMark(file) ? BYTE_ORDER_MARK.length : 0L;
+    var end = lineEnd(file, start);
+    var header = new String(copy(file, start, end), StandardCharsets.UTF_8).strip();
+    var columns = header.split("\t", -1);
+    var columnFields = new int[columns.length];
+    for (int i = 0; i < columns.length; i++) {
+      columnFields[i] = FIELDS.getOrDefault(columns[i].strip(), -1);
+    }
+    log.debug("Resolved columns {} to fields {}", columns, columnFields);
+    return new NameUsageTsvDecoder(file, maxCharsPerColumn, columnFields,
+        Math.min(end + 1, file.size()));
+  }
+
+  private static boolean hasByteOrderMark(MappedTsvFile file) {
+    if (file.size() < BYTE_ORDER_MARK.length) {
+      return false;
+    }
+    for (int i = 0; i < BYTE_ORDER_MARK.length; i++) {
+      if (file.get(i) != BYTE_ORDER_MARK[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static long lineEnd(MappedTsvFile file, long position) {
+    var size = file.size();
+    while (position < size && file.get(position) != NEW_LINE) {
+      position++;
+    }
+    return position;
+  }
+
+  private static byte[] copy(MappedTsvFile file, long start, long end) {
+    var bytes = new byte[(int) (end - start)];
+    file.get(start, bytes, 0, bytes.length);
+    return bytes;
+  }
+
+  private static boolean isWhitespace(byte b) {
+    // bytes of multibyte UTF-8 characters are negative and never whitespace
+    return b >= 0 && b <= ' ';
+  }
+
+  /**
+   * Returns a single chunk holding all rows of the file.
+   */
+  public Chunk all() {
+    return new Chunk(dataStart, file.size());
+  }
+
+  /**
+   * Splits the rows of the file in at most the given number of chunks. Every chunk starts at the
+   * beginning of a line, so chunks can be decoded independently.
+   */
+  public List<Chunk> split(int chunks) {
+    var size = file.size();
+    var result = new ArrayList<Chunk>(chunks);
+    var start = dataStart;
+    for (int i = 1; i <= chunks && start < size; i++) {
+      var end = i == chunks ? size
+          : Math.max(start, dataStart + (size - dataStart) * i / chunks);
+      end = end == size ? size : Math.min(lineEnd(file, end) + 1, size);
+      if (end > start) {
+        result.add(new Chunk(start, end));
+      }
+      start = end;
+    }
+    return result;
+  }
+
+  /**
+   * Returns the rows of the whole file, in the order of the file. Each iteration decodes the file
+   * again.
+   */
+  public Iterable<NameUsageCsvRow> rows() {
+    return rows(all());
+  }
+
+  /**
+   * Returns the rows of the chunk, in the order of the file. Each iteration decodes the chunk
+   * again.
+   */
+  public Iterable<NameUsageCsvRow> rows(Chunk chunk) {
+    return () -> new RowIterator(chunk);
+  }
+
+  /**
+   * Decodes the rows of the chunk on the calling thread, in the order of the file.
+   */
+  public void decode(Chunk chunk, Consumer<NameUsageCsvRow> consumer) {
+    rows(chunk).forEach(consumer);
+  }
+
+  /**
+   * Decodes the rows in the given number of chunks, each on its own thread. The consumer is called
+   * concurrently and the rows arrive in no particular order.
+   */
+  public void decodeInParallel(int threads, Consumer<NameUsageCsvRow> consumer)
+      throws InterruptedException, ExecutionException {
+    try (var executor = Executors.newFixedThreadPool(threads,
+        Thread.ofPlatform().name("tsv-decoder-", 0).factory())) {
+      var futures = new ArrayList<Future<?>>();
+      for (var chunk : split(threads)) {
+        futures.add(executor.submit(() -> decode(chunk, consumer)));
+      }
+      for (var future : futures) {
+        future.get();
+      }
+    }
+  }
+
+  private static int indexOf(byte[] bytes, int from, int to, byte b) {
+    for (int i = from; i < to; i++) {
+      if (bytes[i] == b) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Unescapes the buffer in place, starting at the first escape character. Escape characters
+   * which do not start a known sequence are kept as is.
+   */
+  private static int unescape(byte[] buffer, int from, int length) {
+    var target = from;
+    for (int i = from; i < length; i++) {
+      var b = buffer[i];
+      if (b == ESCAPE && i + 1 < length) {
+        var replacement = switch (buffer[i + 1]) {
+          case 't' -> TAB;
+          case 'n' -> NEW_LINE;
+          case 'r' -> CARRIAGE_RETURN;
+          case ESCAPE -> ESCAPE;
+          default -> (byte) 0;
+        };
+        if (replacement != 0) {
+          buffer[target++] = replacement;
+          i++;
+          continue;
+        }
+      }
+      buffer[target++] = b;
+    }
+    return target;
+  }
+
+  private static NameUsageCsvRow toRow(String[] values) {
+    var row = new NameUsageCsvRow();
+    row.setId(values[ID]);
+    row.setParentId(values[PARENT_ID]);
+    row.setBasionymId(values[BASIONYM_ID]);
+    row.setStatus(values[STATUS]);
+    row.setRank(values[RANK]);
+    row.setScientificName(values[SCIENTIFIC_NAME]);
+    row.setAuthorship(values[AUTHORSHIP]);
+    row.setSpecificEpithet(values[SPECIFIC_EPITHET]);
+    row.setGenericName(values[GENERIC_NAME]);
+    row.setCode(values[CODE]);
+    row.setNameStatus(values[NAME_STATUS]);
+    row.setExtinct(values[EXTINCT]);
+    return row;
+  }
+
+  /**
+   * Copies the chunk out of the mapping in blocks and decodes the lines straight from the block.
+   */
+  private final class RowIterator implements Iterator<NameUsageCsvRow> {
+
+    private static final int BLOCK_SIZE = 1 << 16;
+
+    private final long end;
+    private final String[] values = new String[FIELDS.size()];
+    private byte[] block = new byte[BLOCK_SIZE];
+    private byte[] unescaped = new byte[256];
+    // position in the file of the first byte of the block
+    private long blockPosition;
+    private int blockLength;
+    // offset in the block of the next line
+    private int offset;
+    private NameUsageCsvRow next;
+
+    private RowIterator(Chunk chunk) {
+      this.blockPosition = chunk.start();
+      this.end = chunk.end();
+    }
+
+    @Override
+    public boolean hasNext() {
+      while (next == null && blockPosition + offset < end) {
+        next = decodeLine();
+      }
+      return next != null;
+    }
+
+    @Override
+    public NameUsageCsvRow next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      var row = next;
+      next = null;
+      return row;
+    }
+
+    /**
+     * Decodes the line at the current offset and moves to the next line. Returns null for lines
+     * without any value.
+     */
+    private NameUsageCsvRow decodeLine() {
+      var lineEnd = indexOf(block, offset, blockLength, NEW_LINE);
+      while (lineEnd < 0 && blockPosition + blockLength < end) {
+        var scanned = blockLength - offset;
+        fill();
+        lineEnd = indexOf(block, scanned, blockLength, NEW_LINE);
+      }
+      if (lineEnd < 0) {
+        // the last line of the chunk has no line separator
+        lineEnd = blockLength;
+      }
+      var column = 0;
+      var hasValue = false;
+      var fieldStart = offset;
+      for (int i = offset; i <= lineEnd; i++) {
+        if (i == lineEnd || block[i] == TAB) {
+          if (column < columnFields.length && columnFields[column] >= 0) {
+            var value = decodeValue(fieldStart, i);
+            values[columnFields[column]] = value;
+            hasValue |= value != null;
+          } else if (!hasValue && hasContent(fieldStart, i)) {
+            hasValue = true;
+          }
+          column++;
+          fieldStart = i + 1;
+        }
+      }
+      offset = lineEnd + 1;
+      var row = hasValue ? toRow(values) : null;
+      Arrays.fill(values, null);
+      return row;
+    }
+
+    /**
+     * Moves the unread part of the block to the front, growing the block if a single line fills
+     * it, and copies the next bytes of the chunk behind it.
+     */
+    private void fill() {
+      var remaining = blockLength - offset;
+      if (remaining == block.length) {
+        block = Arrays.copyOf(block, block.length * 2);
+      } else {
+        System.arraycopy(block, offset, block, 0, remaining);
+      }
+      blockPosition += offset;
+      offset = 0;
+      var length = (int) Math.min(block.length - remaining, end - blockPosition - remaining);
+      file.get(blockPosition + remaining, block, remaining, length);
+      blockLength = remaining + length;
+    }
+
+    private boolean hasContent(int start, int end) {
+      for (int i = start; i < end; i++) {
+        if (!isWhitespace(block[i])) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    private String decodeValue(int start, int end) {
+      if (end - start > maxCharsPerColumn) {
+        throw new IllegalStateException("Column of " + (end - start)
+            + " bytes exceeds the maximum of " + maxCharsPerColumn);
+      }
+      while (start < end && isWhitespace(block[start])) {
+        start++;
+      }
+      while (end > start && isWhitespace(block[end - 1])) {
+        end--;
+      }
+      if (start == end) {
+        return null;
+      }
+      var length = end - start;
+      var escape = indexOf(block, start, end, ESCAPE);
+      if (escape < 0) {
+        return new String(block, start, length, StandardCharsets.UTF_8);
+      }
+      if (unescaped.length < length) {
+        unescaped = new byte[Math.max(length, unescaped.length * 2)];
+      }
+      System.arraycopy(block, start, unescaped, 0, length);
+      length = unescape(unescaped, escape - start, length);
+      return new String(unescaped, 0, length, StandardCharsets.UTF_8);
+    }
+  }
+
+  /**
+   * A range of complete lines in the file, from the start position up to the exclusive end.
+   */
+  public record Chunk(long start, long end) {
+
+  }
+}
@@ -65,80 +65,31 @@ public class TestUtils {
   }
 
   private static ColDpClassification givenClassificationUnranked() {
-    var colDpClassification = new ColDpClassification();
-    colDpClassification.setColId("5T6MX");
-    colDpClassification.setScientificName("Biota");
-    colDpClassification.setAuthorship(null);
-    colDpClassification.setRank("unranked");
-    colDpClassification.setStatus(ACCEPTED);
-    colDpClassification.setExtinct(false);
-    return colDpClassification;
+    return new ColDpClassification("5T6MX", "Biota", null, "unranked", ACCEPTED, false);
   }
 
   private static ColDpClassification givenClassificationGenus() {
-    var colDpClassification = new ColDpClassification();
-    colDpClassification.setColId("8VZKC");
-    colDpClassification.setScientificName("Myrosmodes");
-    colDpClassification.setAuthorship("Rchb.f.");
-    colDpClassification.setRank("genus");
-    colDpClassification.setStatus(ACCEPTED);
-    colDpClassification.setExtinct(false);
-    return colDpClassification;
+    return new ColDpClassification("8VZKC", "Myrosmodes", "Rchb.f.", "genus", ACCEPTED, false);
   }
 
   private static ColDpClassification givenClassificationFamily() {
-    var colDpClassification = new ColDpClassification();
-    colDpClassification.setColId("DPL");
-    colDpClassification.setScientificName("Orchidaceae");
-    colDpClassification.setAuthorship(null);
-    colDpClassification.setRank("family");
-    colDpClassification.setStatus(ACCEPTED);
-    colDpClassification.setExtinct(false);
-    return colDpClassification;
+    return new ColDpClassification("DPL", "Orchidaceae", null, "family", ACCEPTED, false);
   }
 
   private static ColDpClassification givenClassificationOrder() {
-    var colDpClassification = new ColDpClassification();
-    colDpClassification.setColId("SP");
-    colDpClassification.setScientificName("Asparagales");
-    colDpClassification.setAuthorship(null);
-    colDpClassification.setRank("order");
-    colDpClassification.setStatus(ACCEPTED);
-    colDpClassification.setExtinct(false);
-    return colDpClassification;
+    return new ColDpClassification("SP", "Asparagales", null, "order", ACCEPTED, false);
   }
 
   private static ColDpClassification givenClassificationClass() {
-    var colDpClassification = new ColDpClassification();
-    colDpClassification.setColId("L2L");
-    colDpClassification.setScientificName("Liliopsida");
-    colDpClassification.setAuthorship(null);
-    colDpClassification.setRank("class");
-    colDpClassification.setStatus(ACCEPTED);
-    colDpClassification.setExtinct(false);
-    return colDpClassification;
+    return new ColDpClassification("L2L", "Liliopsida", null, "class", ACCEPTED, false);
   }
 
   private static ColDpClassification givenClassificationPhylum() {
-    var colDpClassification = new ColDpClassification();
-    colDpClassification.setColId("TP");
-    colDpClassification.setScientificName("Tracheophyta");
-    colDpClassification.setAuthorship(null);
-    colDpClassification.setRank("phylum");
-    colDpClassification.setStatus(ACCEPTED);
-    colDpClassification.setExtinct(false);
-    return colDpClassification;
+    return new ColDpClassification("TP", "Tracheophyta", null, "phylum", ACCEPTED, false);
   }
 
   private static ColDpClassification givenClassificationKingdom() {
-    var colDpClassification = new ColDpClassification();
-    colDpClassification.setColId("P");
-    colDpClassification.setScientificName("Plantae");
-    colDpClassification.setAuthorship(null);
-    colDpClassification.setRank("kingdom");
-    colDpClassification.setStatus(ACCEPTED);
-    colDpClassification.setExtinct(false);
-    return colDpClassification;
+    return new ColDpClassification("P", "Plantae", null, "kingdom", ACCEPTED, false);
   }
 
   public static ColNameUsageMatch2 createColNameUsageMatch2() {
@@ -0,0 +1,159 @@
+package eu.dissco.nusearch.benchmark;
+
+import eu.dissco.nusearch.configuration.LuceneConfiguration;
+import eu.dissco.nusearch.property.IndexingProperties;
+import eu.dissco.nusearch.repository.FuzzyCandidateGenerator;
+import eu.dissco.nusearch.repository.FuzzyCandidateGenerator.FuzzyCandidate;
+import eu.dissco.nusearch.repository.LuceneFuzzyCandidateGenerator;
+import eu.dissco.nusearch.repository.NubIndex;
+import eu.dissco.nusearch.repository.NubSearcherManager;
+import eu.dissco.nusearch.repository.NubSearcherManager.NubSearcher;
+import eu.dissco.nusearch.repository.SymSpellCandidateGenerator;
+import eu.dissco.nusearch.service.TestIndexBuilder;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.io.FileUtils;
+import org.apache.lucene.index.MultiTerms;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares the latency of finding the fuzzy candidates of misspelled canonical names with lucene's
+ * FuzzyQuery and with the symmetric delete index, both on the index built from the test dataset.
+ * The recall of both generators, the share of misspellings for which the original name is a
+ * candidate, is printed at setup.
+ * <p>
+ * Run with: {@code mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=eu.dissco.nusearch.benchmark.FuzzyCandidateBenchmark}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FuzzyCandidateBenchmark {
+
+  private Path indexLocation;
+  private NubSearcherManager searcherManager;
+  private NubSearcher nubSearcher;
+  private FuzzyCandidateGenerator lucene;
+  private FuzzyCandidateGenerator symSpell;
+  private String[] names;
+  private String[] misspellings;
+  private int next;
+
+  public static void main(String[] args) throws RunnerException {
+    new Runner(new OptionsBuilder()
+        .include(FuzzyCandidateBenchmark.class.getSimpleName())
+        .build()).run();
+  }
+
+  @Setup
+  public void setup() throws Exception {
+    indexLocation = Files.createTempDirectory("nusearch-benchmark");
+    var properties = new IndexingProperties();
+    properties.setIndexLocation(indexLocation.toString());
+    TestIndexBuilder.buildIndex(properties);
+    searcherManager = new LuceneConfiguration(properties).configureSearcherManager();
+    nubSearcher = searcherManager.acquire();
+    lucene = new LuceneFuzzyCandidateGenerator();
+    symSpell = SymSpellCandidateGenerator.build(nubSearcher.canonicalNames(),
+        properties.getSymSpellPrefixLength());
+    misspell(canonicalNames(), 1000, new Random(42));
+    System.out.printf("Recall of %d misspellings, lucene: %.3f, sym-spell: %.3f%n",
+        misspellings.length, recall(lucene), recall(symSpell));
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    searcherManager.release(nubSearcher);
+    searcherManager.close();
+    FileUtils.deleteDirectory(indexLocation.toFile());
+  }
+
+  @Benchmark
+  public List<FuzzyCandidate> lucene() throws IOException {
+    return candidates(lucene, nextMisspelling());
+  }
+
+  @Benchmark
+  public List<FuzzyCandidate> symSpell() throws IOException {
+    return candidates(symSpell, nextMisspelling());
+  }
+
+  private List<FuzzyCandidate> candidates(FuzzyCandidateGenerator generator, String misspelling)
+      throws IOException {
+    // the edits allowed by NubIndex
+    return generator.candidates(nubSearcher, misspelling, misspelling.length() > 10 ? 2 : 1);
+  }
+
+  private double recall(FuzzyCandidateGenerator generator) throws IOException {
+    var recalled = 0;
+    for (int i = 0; i < misspellings.length; i++) {
+      var name = names[i];
+      if (candidates(generator, misspellings[i]).stream()
+          .anyMatch(candidate -> candidate.canonicalName().equals(name))) {
+        recalled++;
+      }
+    }
+    return (double) recalled / misspellings.length;
+  }
+
+  private List<String> canonicalNames() throws IOException {
+    var canonicalNames = new ArrayList<String>();
+    var terms = MultiTerms.getTerms(nubSearcher.searcher().getIndexReader(),
+        NubIndex.FIELD_CANONICAL_NAME);
+    var termsEnum = terms.iterator();
+    for (var term = termsEnum.next(); term != null; term = termsEnum.next()) {
+      if (term.length >= 4) {
+        canonicalNames.add(term.utf8ToString());
+      }
+    }
+    return canonicalNames;
+  }
+
+  /**
+   * Misspells random names with a single substitution, deletion, insertion or transposition, after
+   * the first character which both generators require to match.
+   */
+  private void misspell(List<String> canonicalNames, int count, Random random) {
+    names = new String[count];
+    misspellings = new String[count];
+    for (int i = 0; i < count; i++) {
+      var name = canonicalNames.get(random.nextInt(canonicalNames.size()));
+      var position = 1 + random.nextInt(name.length() - 2);
+      var letter = (char) ('a' + random.nextInt(26));
+      names[i] = name;
+      misspellings[i] = switch (random.nextInt(4)) {
+        case 0 -> name.substring(0, position) + letter + name.substring(position + 1);
+        case 1 -> name.substring(0, position) + name.substring(position + 1);
+        case 2 -> name.substring(0, position) + letter + name.substring(position);
+        default -> name.substring(0, position) + name.charAt(position + 1)
+            + name.charAt(position) + name.substring(position + 2);
+      };
+    }
+  }
+
+  private String nextMisspelling() {
+    next = next == misspellings.length - 1 ? 0 : next + 1;
+    return misspellings[next];
+  }
+}
@@ -0,0 +1,94 @@
+package eu.dissco.nusearch.benchmark;
+
+import eu.dissco.nusearch.component.ScientificNameAnalyzer;
+import eu.dissco.nusearch.configuration.LuceneConfiguration;
+import eu.dissco.nusearch.domain.ColDpNameUsageMatch;
+import eu.dissco.nusearch.property.IndexingProperties;
+import eu.dissco.nusearch.repository.NubIndex;
+import eu.dissco.nusearch.repository.NubSearcherManager;
+import eu.dissco.nusearch.service.TestIndexBuilder;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares the query latency of the default index with the index optimized for serving, both built
+ * from the test dataset.
+ * <p>
+ * Run with: {@code mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=eu.dissco.nusearch.benchmark.NubIndexBenchmark}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class NubIndexBenchmark {
+
+  @Param({"false", "true"})
+  private boolean optimizeForServing;
+
+  private Path indexLocation;
+  private NubSearcherManager searcherManager;
+  private NubIndex index;
+
+  public static void main(String[] args) throws RunnerException {
+    new Runner(new OptionsBuilder()
+        .include(NubIndexBenchmark.class.getSimpleName())
+        .build()).run();
+  }
+
+  @Setup
+  public void setup() throws Exception {
+    indexLocation = Files.createTempDirectory("nusearch-benchmark");
+    var properties = new IndexingProperties();
+    properties.setIndexLocation(indexLocation.toString());
+    properties.setOptimizeForServing(optimizeForServing);
+    TestIndexBuilder.buildIndex(properties);
+    searcherManager = new LuceneConfiguration(properties).configureSearcherManager();
+    index = new NubIndex(searcherManager, new ScientificNameAnalyzer(), properties,
+        new SimpleMeterRegistry());
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    searcherManager.close();
+    FileUtils.deleteDirectory(indexLocation.toFile());
+  }
+
+  @Benchmark
+  public List<ColDpNameUsageMatch> matchByName() {
+    return index.matchByName("Lamenia vitrea", false, 50);
+  }
+
+  @Benchmark
+  public List<ColDpNameUsageMatch> matchByNameFuzzy() {
+    return index.matchByName("Lameni vitre", true, 50);
+  }
+
+  @Benchmark
+  public List<ColDpNameUsageMatch> autocomplete() {
+    return index.autocomplete("La", 10);
+  }
+
+}
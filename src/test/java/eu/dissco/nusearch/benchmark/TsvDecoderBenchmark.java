@@ -0,0 +1,102 @@
+package eu.dissco.nusearch.benchmark;
+
+import com.univocity.parsers.common.processor.BeanListProcessor;
+import com.univocity.parsers.tsv.TsvParserSettings;
+import com.univocity.parsers.tsv.TsvRoutines;
+import eu.dissco.nusearch.domain.NameUsageCsvRow;
+import eu.dissco.nusearch.property.IndexingProperties;
+import eu.dissco.nusearch.service.TestIndexBuilder;
+import eu.dissco.nusearch.utils.MappedTsvFile;
+import eu.dissco.nusearch.utils.NameUsageTsvDecoder;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares reading all rows of the NameUsage.tsv of the test dataset with the univocity bean
+ * processor and with the column index decoder, sequentially and in parallel chunks.
+ * <p>
+ * Run with: {@code mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=eu.dissco.nusearch.benchmark.TsvDecoderBenchmark}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TsvDecoderBenchmark {
+
+  private Path scratchFile;
+  private MappedTsvFile nameUsages;
+  private TsvRoutines routines;
+  private NameUsageTsvDecoder decoder;
+  private int threads;
+
+  public static void main(String[] args) throws RunnerException {
+    new Runner(new OptionsBuilder()
+        .include(TsvDecoderBenchmark.class.getSimpleName())
+        .build()).run();
+  }
+
+  @Setup
+  public void setup() throws IOException {
+    var properties = new IndexingProperties();
+    scratchFile = Files.createTempFile("NameUsage", ".tsv");
+    nameUsages = MappedTsvFile.inflate(TestIndexBuilder.TEST_DATASET, "NameUsage.tsv",
+        scratchFile);
+    var settings = new TsvParserSettings();
+    settings.setProcessor(new BeanListProcessor<>(NameUsageCsvRow.class));
+    settings.setMaxCharsPerColumn(properties.getMaxCharsPerColumn());
+    settings.setLineSeparatorDetectionEnabled(true);
+    routines = new TsvRoutines(settings);
+    decoder = NameUsageTsvDecoder.open(nameUsages, properties.getMaxCharsPerColumn());
+    threads = Runtime.getRuntime().availableProcessors();
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    nameUsages.close();
+    Files.deleteIfExists(scratchFile);
+  }
+
+  @Benchmark
+  public void beanProcessor(Blackhole blackhole) throws IOException {
+    try (var in = Files.newInputStream(scratchFile)) {
+      for (var row : routines.iterate(NameUsageCsvRow.class, in)) {
+        blackhole.consume(row);
+      }
+    }
+  }
+
+  @Benchmark
+  public void decoder(Blackhole blackhole) {
+    for (var row : decoder.rows()) {
+      blackhole.consume(row);
+    }
+  }
+
+  @Benchmark
+  public void decoderInParallel(Blackhole blackhole)
+      throws InterruptedException, ExecutionException {
+    decoder.decodeInParallel(threads, blackhole::consume);
+  }
+
+}
@@ -0,0 +1,105 @@
+package eu.dissco.nusearch.benchmark;
+
+import eu.dissco.nusearch.configuration.LuceneConfiguration;
+import eu.dissco.nusearch.property.IndexingProperties;
+import eu.dissco.nusearch.repository.NubIndex;
+import eu.dissco.nusearch.repository.NubSearcherManager;
+import eu.dissco.nusearch.repository.NubSearcherManager.NubSearcher;
+import eu.dissco.nusearch.service.TestIndexBuilder;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.io.FileUtils;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.TermQuery;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares the throughput of finding the document of a COL id with a term query and with the doc
+ * ids loaded with the searcher, both on the index built from the test dataset. The ids are looked
+ * up in random order.
+ * <p>
+ * Run with: {@code mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=eu.dissco.nusearch.benchmark.UsageIdLookupBenchmark}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class UsageIdLookupBenchmark {
+
+  private Path indexLocation;
+  private NubSearcherManager searcherManager;
+  private NubSearcher nubSearcher;
+  private String[] ids;
+  private int next;
+
+  public static void main(String[] args) throws RunnerException {
+    new Runner(new OptionsBuilder()
+        .include(UsageIdLookupBenchmark.class.getSimpleName())
+        .build()).run();
+  }
+
+  @Setup
+  public void setup() throws Exception {
+    indexLocation = Files.createTempDirectory("nusearch-benchmark");
+    var properties = new IndexingProperties();
+    properties.setIndexLocation(indexLocation.toString());
+    TestIndexBuilder.buildIndex(properties);
+    searcherManager = new LuceneConfiguration(properties).configureSearcherManager();
+    nubSearcher = searcherManager.acquire();
+    var storedFields = nubSearcher.searcher().storedFields();
+    var allIds = new ArrayList<String>();
+    for (int doc = 0; doc < nubSearcher.searcher().getIndexReader().maxDoc(); doc++) {
+      var id = storedFields.document(doc).get(NubIndex.FIELD_ID);
+      if (id != null) {
+        allIds.add(id);
+      }
+    }
+    Collections.shuffle(allIds, new Random(42));
+    ids = allIds.toArray(String[]::new);
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    searcherManager.release(nubSearcher);
+    searcherManager.close();
+    FileUtils.deleteDirectory(indexLocation.toFile());
+  }
+
+  @Benchmark
+  public int termQuery() throws IOException {
+    var docs = nubSearcher.searcher()
+        .search(new TermQuery(new Term(NubIndex.FIELD_ID, nextId())), 1);
+    return docs.scoreDocs[0].doc;
+  }
+
+  @Benchmark
+  public int usageDocIds() {
+    return nubSearcher.usageDocIds().find(nextId());
+  }
+
+  private String nextId() {
+    next = next == ids.length - 1 ? 0 : next + 1;
+    return ids[next];
+  }
+}
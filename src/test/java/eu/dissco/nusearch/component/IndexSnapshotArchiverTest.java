@@ -0,0 +1,151 @@
+package eu.dissco.nusearch.component;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import eu.dissco.nusearch.domain.IndexSnapshotManifest;
+import eu.dissco.nusearch.domain.IndexSnapshotManifest.SnapshotFile;
+import eu.dissco.nusearch.exception.IndexingFailedException;
+import eu.dissco.nusearch.repository.IndexManifestRepository;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field.Store;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.store.FSDirectory;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class IndexSnapshotArchiverTest {
+
+  private final IndexSnapshotArchiver archiver = new IndexSnapshotArchiver(new ObjectMapper());
+
+  @TempDir
+  private Path indexLocation;
+  @TempDir
+  private Path extractLocation;
+
+  @BeforeEach
+  void setup() throws IOException {
+    try (var directory = FSDirectory.open(indexLocation);
+        var writer = new IndexWriter(directory, new IndexWriterConfig(new StandardAnalyzer()))) {
+      for (var id : new String[]{"7Q8L8", "73SWK", "6MB3T"}) {
+        var document = new Document();
+        document.add(new StringField("id", id, Store.YES));
+        writer.addDocument(document);
+      }
+    }
+    Files.writeString(indexLocation.resolve(IndexManifestRepository.MANIFEST_FILE), "{}");
+  }
+
+  @Test
+  void testRoundTrip() throws Exception {
+    // Given
+    var snapshot = new ByteArrayOutputStream();
+    archiver.write(indexLocation, snapshot);
+
+    // When
+    var manifest = archiver.extract(new ByteArrayInputStream(snapshot.toByteArray()),
+        extractLocation);
+
+    // Then
+    assertThat(manifest.files()).extracting(SnapshotFile::name)
+        .contains(IndexManifestRepository.MANIFEST_FILE)
+        .doesNotContain(IndexWriter.WRITE_LOCK_NAME);
+    for (var file : manifest.files()) {
+      assertThat(extractLocation.resolve(file.name())).hasSameBinaryContentAs(
+          indexLocation.resolve(file.name()));
+    }
+    try (var reader = DirectoryReader.open(FSDirectory.open(extractLocation))) {
+      assertThat(reader.numDocs()).isEqualTo(3);
+    }
+  }
+
+  @Test
+  void testOffsets() throws Exception {
+    // Given
+    var snapshot = new ByteArrayOutputStream();
+
+    // When
+    var manifest = archiver.write(indexLocation, snapshot);
+
+    // Then
+    var content = snapshot.toByteArray();
+    assertThat(manifest.hasOffsets()).isTrue();
+    for (var file : manifest.files()) {
+      var offset = Math.toIntExact(file.offset());
+      assertThat(Arrays.copyOfRange(content, offset, offset + Math.toIntExact(file.length())))
+          .isEqualTo(Files.readAllBytes(indexLocation.resolve(file.name())));
+    }
+    assertThat(archiver.readManifest(archiver.writeManifest(manifest))).isEqualTo(manifest);
+  }
+
+  @Test
+  void testCorruptFileRejected() throws Exception {
+    // Given
+    var snapshot = new ByteArrayOutputStream();
+    archiver.write(indexLocation, snapshot);
+    var manifest = archiver.extract(new ByteArrayInputStream(snapshot.toByteArray()),
+        extractLocation);
+    var file = manifest.files().getFirst();
+    var content = Files.readAllBytes(extractLocation.resolve(file.name()));
+    content[0] ^= 1;
+    Files.write(extractLocation.resolve(file.name()), content);
+
+    // When / Then
+    assertThrows(IndexingFailedException.class, () -> archiver.verify(extractLocation, manifest));
+  }
+
+  @Test
+  void testMissingManifest() throws IOException {
+    // Given
+    var snapshot = new ByteArrayOutputStream();
+    try (var zip = new ZipOutputStream(snapshot)) {
+      zip.putNextEntry(new ZipEntry("segments_1"));
+      zip.write(new byte[]{1, 2, 3});
+      zip.closeEntry();
+    }
+
+    // When / Then
+    assertThrows(IndexingFailedException.class,
+        () -> archiver.extract(new ByteArrayInputStream(snapshot.toByteArray()), extractLocation));
+  }
+
+  @Test
+  void testInvalidFileName() throws IOException {
+    // Given
+    var snapshot = new ByteArrayOutputStream();
+    try (var zip = new ZipOutputStream(snapshot)) {
+      zip.putNextEntry(new ZipEntry("../segments_1"));
+      zip.write(new byte[]{1, 2, 3});
+      zip.closeEntry();
+    }
+
+    // When / Then
+    assertThrows(IOException.class,
+        () -> archiver.extract(new ByteArrayInputStream(snapshot.toByteArray()), extractLocation));
+    assertThat(extractLocation.resolveSibling("segments_1")).doesNotExist();
+  }
+
+  @Test
+  void testMissingFile() {
+    // Given
+    var manifest = new IndexSnapshotManifest(List.of(new SnapshotFile("_0.cfs", 10, 42, null)));
+
+    // When / Then
+    assertThrows(IndexingFailedException.class, () -> archiver.verify(extractLocation, manifest));
+  }
+}
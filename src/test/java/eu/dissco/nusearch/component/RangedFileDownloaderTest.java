@@ -0,0 +1,162 @@
+package eu.dissco.nusearch.component;
+
+import static eu.dissco.nusearch.TestUtils.MAPPER;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import eu.dissco.nusearch.domain.DownloadProgress;
+import eu.dissco.nusearch.domain.DownloadProgress.DownloadRange;
+import eu.dissco.nusearch.property.ColDownloadProperties;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okhttp3.mockwebserver.SocketPolicy;
+import okio.Buffer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.web.reactive.function.client.WebClient;
+
+class RangedFileDownloaderTest {
+
+  private static final String ETAG = "\"6877d4ef\"";
+  private static final byte[] CONTENT = new byte[256 * 1024];
+
+  static {
+    new Random(42).nextBytes(CONTENT);
+  }
+
+  private final ColDownloadProperties properties = new ColDownloadProperties();
+  private MockWebServer mockServer;
+  private RangedFileDownloader downloader;
+  private String url;
+
+  @TempDir
+  private Path downloadLocation;
+
+  @BeforeEach
+  void setup() throws IOException {
+    mockServer = new MockWebServer();
+    mockServer.start();
+    url = mockServer.url("/job/export.zip").toString();
+    properties.setDownloadRetryTime(10);
+    downloader = new RangedFileDownloader(WebClient.create(), MAPPER, properties);
+  }
+
+  @AfterEach
+  void destroy() throws IOException {
+    mockServer.shutdown();
+  }
+
+  @Test
+  void testParallelDownload() throws Exception {
+    // Given
+    var target = downloadLocation.resolve("coldp.zip");
+    mockServer.setDispatcher(new RangeDispatcher(true));
+
+    // When
+    downloader.download(url, target);
+
+    // Then
+    assertThat(Files.readAllBytes(target)).isEqualTo(CONTENT);
+    assertThat(RangedFileDownloader.progressFile(target)).doesNotExist();
+    assertThat(mockServer.getRequestCount()).isEqualTo(5);
+  }
+
+  @Test
+  void testResumeDownload() throws Exception {
+    // Given
+    var target = downloadLocation.resolve("coldp.zip");
+    var half = CONTENT.length / 2;
+    var partial = Arrays.copyOf(CONTENT, CONTENT.length);
+    Arrays.fill(partial, half, partial.length, (byte) 0);
+    Files.write(target, partial);
+    MAPPER.writeValue(RangedFileDownloader.progressFile(target).toFile(),
+        new DownloadProgress(url, ETAG, CONTENT.length,
+            List.of(new DownloadRange(0, CONTENT.length - 1, half))));
+    mockServer.setDispatcher(new RangeDispatcher(true));
+
+    // When
+    downloader.download(url, target);
+
+    // Then
+    assertThat(Files.readAllBytes(target)).isEqualTo(CONTENT);
+    assertThat(mockServer.takeRequest().getMethod()).isEqualTo("HEAD");
+    assertThat(mockServer.takeRequest().getHeader("Range"))
+        .isEqualTo("bytes=" + half + "-" + (CONTENT.length - 1));
+    assertThat(mockServer.getRequestCount()).isEqualTo(2);
+  }
+
+  @Test
+  void testRangesNotAccepted() throws Exception {
+    // Given
+    var target = downloadLocation.resolve("coldp.zip");
+    mockServer.setDispatcher(new RangeDispatcher(false));
+
+    // When
+    downloader.download(url, target);
+
+    // Then
+    assertThat(Files.readAllBytes(target)).isEqualTo(CONTENT);
+    assertThat(mockServer.getRequestCount()).isEqualTo(2);
+  }
+
+  @Test
+  void testRetryAfterDisconnect() throws Exception {
+    // Given
+    var target = downloadLocation.resolve("coldp.zip");
+    var dispatcher = new RangeDispatcher(true);
+    dispatcher.disconnectOnce.set(true);
+    mockServer.setDispatcher(dispatcher);
+
+    // When
+    downloader.download(url, target);
+
+    // Then
+    assertThat(Files.readAllBytes(target)).isEqualTo(CONTENT);
+    assertThat(mockServer.getRequestCount()).isGreaterThan(5);
+  }
+
+  private static class RangeDispatcher extends Dispatcher {
+
+    private final boolean acceptRanges;
+    private final AtomicBoolean disconnectOnce = new AtomicBoolean();
+
+    private RangeDispatcher(boolean acceptRanges) {
+      this.acceptRanges = acceptRanges;
+    }
+
+    @Override
+    public MockResponse dispatch(RecordedRequest request) {
+      if ("HEAD".equals(request.getMethod())) {
+        var response = new MockResponse()
+            .setHeader("Content-Length", CONTENT.length)
+            .setHeader("ETag", ETAG);
+        return acceptRanges ? response.setHeader("Accept-Ranges", "bytes") : response;
+      }
+      var range = request.getHeader("Range");
+      if (!acceptRanges || range == null) {
+        return new MockResponse().setBody(new Buffer().write(CONTENT));
+      }
+      var bounds = range.substring("bytes=".length()).split("-");
+      var start = Integer.parseInt(bounds[0]);
+      var end = Integer.parseInt(bounds[1]);
+      var response = new MockResponse()
+          .setResponseCode(206)
+          .setHeader("Content-Range", "bytes " + start + "-" + end + "/" + CONTENT.length)
+          .setBody(new Buffer().write(CONTENT, start, end - start + 1));
+      if (disconnectOnce.getAndSet(false)) {
+        response.setSocketPolicy(SocketPolicy.DISCONNECT_DURING_RESPONSE_BODY);
+      }
+      return response;
+    }
+  }
+}
@@ -0,0 +1,185 @@
+package eu.dissco.nusearch.domain;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.gbif.api.vocabulary.TaxonomicStatus.ACCEPTED;
+import static org.gbif.api.vocabulary.TaxonomicStatus.SYNONYM;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.HashMap;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class ExternalNameUsageTreeTest {
+
+  // every record is spilled into a run of its own
+  private static final long MEMORY_BUDGET = 1;
+
+  @TempDir
+  private Path scratchLocation;
+
+  private Path directory;
+  private ExternalNameUsageTree tree;
+
+  @BeforeEach
+  void setup() throws IOException {
+    directory = scratchLocation.resolve("NameUsage.tsv-tree");
+    tree = new ExternalNameUsageTree(directory, MEMORY_BUDGET);
+  }
+
+  @AfterEach
+  void destroy() throws IOException {
+    tree.close();
+  }
+
+  @Test
+  void testClassification() throws IOException {
+    // Given
+    tree.add("3", "2", "genus", ACCEPTED, false, "Lamenia", "Stål, 1859");
+    tree.add("1", null, "kingdom", ACCEPTED, false, "Animalia", null);
+    tree.add("2", "1", "family", ACCEPTED, true, "Cixiidae", "Spinola, 1839");
+    tree.add("4", "3", "species", ACCEPTED, false, "Lamenia vitrea", "(Muir, 1913)");
+    tree.add("5", "4", "species", SYNONYM, false, "Oliarus vitreus", "Muir, 1913");
+
+    // When
+    tree.complete();
+    var result = tree.getClassification("4");
+
+    // Then
+    assertThat(tree.size()).isEqualTo(5);
+    assertThat(result).extracting(ColDpClassification::getColId)
+        .containsExactly("1", "2", "3", "4");
+    assertThat(result.get(1)).isEqualTo(
+        new ColDpClassification("2", "Cixiidae", "Spinola, 1839", "family", ACCEPTED, true));
+    assertThat(tree.getClassification("5")).isEmpty();
+  }
+
+  @Test
+  void testClassificationSharesPrefix() throws IOException {
+    // Given
+    tree.add("1", null, "kingdom", ACCEPTED, false, "Animalia", null);
+    tree.add("2", "1", "genus", ACCEPTED, false, "Lamenia", null);
+    tree.add("3", "2", "species", ACCEPTED, false, "Lamenia vitrea", null);
+    tree.add("4", "3", "species", SYNONYM, false, "Oliarus vitreus", null);
+
+    // When
+    tree.complete();
+
+    // Then
+    assertThat(tree.getClassification("3").get(1)).isSameAs(tree.getClassification("2").get(1));
+    assertThat(tree.getClassification("3").get(0)).isSameAs(tree.getClassification("1").get(0));
+  }
+
+  @Test
+  void testMissingParent() throws IOException {
+    // Given
+    tree.add("2", "1", "genus", ACCEPTED, false, "Lamenia", null);
+    tree.add("3", "2", "species", ACCEPTED, false, "Lamenia vitrea", null);
+
+    // When
+    tree.complete();
+
+    // Then
+    assertThat(tree.getClassification("1")).isEmpty();
+    assertThat(tree.getClassification("2")).extracting(ColDpClassification::getColId)
+        .containsExactly("2");
+    assertThat(tree.getClassification("")).isEmpty();
+    assertThat(tree.getClassification(null)).isEmpty();
+  }
+
+  @Test
+  void testDuplicateKeepsFirst() throws IOException {
+    // Given
+    tree.add("1", null, "kingdom", ACCEPTED, false, "Animalia", null);
+    tree.add("1", null, "kingdom", ACCEPTED, false, "Plantae", null);
+    tree.add("2", "1", "genus", ACCEPTED, false, "Lamenia", null);
+
+    // When
+    tree.complete();
+
+    // Then
+    assertThat(tree.size()).isEqualTo(2);
+    assertThat(tree.getClassification("1").get(0).getScientificName()).isEqualTo("Animalia");
+  }
+
+  @Test
+  void testCycle() throws IOException {
+    // Given
+    tree.add("1", "2", "genus", ACCEPTED, false, "Lamenia", null);
+    tree.add("2", "1", "genus", SYNONYM, false, "Lamenius", null);
+
+    // When
+    tree.complete();
+
+    // Then
+    assertThat(tree.getClassification("1")).hasSize(2);
+    assertThat(tree.getClassification("2")).hasSize(1);
+  }
+
+  @Test
+  void testForEachHigherTaxon() throws IOException {
+    // Given
+    tree.add("1", null, "kingdom", ACCEPTED, false, "Animalia", null);
+    tree.add("2", "1", "genus", ACCEPTED, false, "Lamenia", null);
+    tree.add("3", "2", "species", ACCEPTED, false, "Lamenia vitrea", null);
+    tree.complete();
+    var higherTaxa = new HashMap<String, String>();
+
+    // When
+    tree.forEachHigherTaxon((parentId, classification) ->
+        higherTaxa.put(classification.getColId(), parentId));
+
+    // Then
+    assertThat(higherTaxa).containsOnlyKeys("1", "2").containsEntry("1", null)
+        .containsEntry("2", "1");
+  }
+
+  @Test
+  void testMergesInPasses() throws IOException {
+    // Given
+    var inHeap = new NameUsageTree();
+    for (int i = 999; i >= 0; i--) {
+      var parentId = i == 0 ? null : String.valueOf(i / 10);
+      tree.add(String.valueOf(i), parentId, "genus", ACCEPTED, false, "Lamenia " + i, null);
+      inHeap.add(String.valueOf(i), parentId, "genus", ACCEPTED, false, "Lamenia " + i, null);
+    }
+    inHeap.complete();
+
+    // When
+    tree.complete();
+
+    // Then
+    assertThat(tree.size()).isEqualTo(inHeap.size());
+    assertThat(tree.getClassification("998")).isEqualTo(inHeap.getClassification("998"));
+    assertThat(tree.getClassification("99")).extracting(ColDpClassification::getColId)
+        .containsExactly("0", "9", "99");
+    assertThat(directory.toFile().list()).containsExactlyInAnyOrder("parents", "offsets");
+  }
+
+  @Test
+  void testCloseRemovesRuns() throws IOException {
+    // Given
+    tree.add("1", null, "kingdom", ACCEPTED, false, "Animalia", null);
+    tree.complete();
+
+    // When
+    tree.close();
+
+    // Then
+    assertThat(directory).doesNotExist();
+  }
+
+  @Test
+  void testAddAfterComplete() throws IOException {
+    // Given
+    tree.complete();
+
+    // When / Then
+    assertThrows(IllegalStateException.class,
+        () -> tree.add("1", null, "kingdom", ACCEPTED, false, "Animalia", null));
+  }
+
+}
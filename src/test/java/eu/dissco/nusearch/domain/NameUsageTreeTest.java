@@ -0,0 +1,150 @@
+package eu.dissco.nusearch.domain;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.gbif.api.vocabulary.TaxonomicStatus.ACCEPTED;
+import static org.gbif.api.vocabulary.TaxonomicStatus.SYNONYM;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.HashMap;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class NameUsageTreeTest {
+
+  private NameUsageTree tree;
+
+  @BeforeEach
+  void setup() {
+    tree = new NameUsageTree();
+  }
+
+  @Test
+  void testClassification() {
+    // Given
+    tree.add("3", "2", "genus", ACCEPTED, false, "Lamenia", "Stål, 1859");
+    tree.add("1", null, "kingdom", ACCEPTED, false, "Animalia", null);
+    tree.add("2", "1", "family", ACCEPTED, true, "Cixiidae", "Spinola, 1839");
+    tree.add("4", "3", "species", ACCEPTED, false, "Lamenia vitrea", "(Muir, 1913)");
+    tree.add("5", "4", "species", SYNONYM, false, "Oliarus vitreus", "Muir, 1913");
+
+    // When
+    tree.complete();
+    var result = tree.getClassification("4");
+
+    // Then
+    assertThat(tree.size()).isEqualTo(5);
+    assertThat(result).extracting(ColDpClassification::getColId)
+        .containsExactly("1", "2", "3", "4");
+    assertThat(result.get(1).getScientificName()).isEqualTo("Cixiidae");
+    assertThat(result.get(1).getAuthorship()).isEqualTo("Spinola, 1839");
+    assertThat(result.get(1).getRank()).isEqualTo("family");
+    assertThat(result.get(1).getStatus()).isEqualTo(ACCEPTED);
+    assertThat(result.get(1).isExtinct()).isTrue();
+  }
+
+  @Test
+  void testClassificationSharesPrefix() {
+    // Given
+    tree.add("1", null, "kingdom", ACCEPTED, false, "Animalia", null);
+    tree.add("2", "1", "genus", ACCEPTED, false, "Lamenia", null);
+    tree.add("3", "2", "species", ACCEPTED, false, "Lamenia vitrea", null);
+    tree.add("4", "3", "species", SYNONYM, false, "Oliarus vitreus", null);
+
+    // When
+    tree.complete();
+
+    // Then
+    assertThat(tree.getClassification("3").get(1)).isSameAs(tree.getClassification("2").get(1));
+    assertThat(tree.getClassification("3").get(0)).isSameAs(tree.getClassification("1").get(0));
+  }
+
+  @Test
+  void testMissingParent() {
+    // Given
+    tree.add("2", "1", "genus", ACCEPTED, false, "Lamenia", null);
+    tree.add("3", "2", "species", ACCEPTED, false, "Lamenia vitrea", null);
+
+    // When
+    tree.complete();
+
+    // Then
+    assertThat(tree.getClassification("1")).isEmpty();
+    assertThat(tree.getClassification("2")).extracting(ColDpClassification::getColId)
+        .containsExactly("2");
+    assertThat(tree.getClassification("")).isEmpty();
+    assertThat(tree.getClassification(null)).isEmpty();
+  }
+
+  @Test
+  void testDuplicateKeepsFirst() {
+    // Given
+    tree.add("1", null, "kingdom", ACCEPTED, false, "Animalia", null);
+    tree.add("1", null, "kingdom", ACCEPTED, false, "Plantae", null);
+    tree.add("2", "1", "genus", ACCEPTED, false, "Lamenia", null);
+
+    // When
+    tree.complete();
+
+    // Then
+    assertThat(tree.size()).isEqualTo(2);
+    assertThat(tree.getClassification("1").get(0).getScientificName()).isEqualTo("Animalia");
+  }
+
+  @Test
+  void testCycle() {
+    // Given
+    tree.add("1", "2", "genus", ACCEPTED, false, "Lamenia", null);
+    tree.add("2", "1", "genus", SYNONYM, false, "Lamenius", null);
+
+    // When
+    tree.complete();
+
+    // Then
+    assertThat(tree.getClassification("1")).hasSize(2);
+    assertThat(tree.getClassification("2")).hasSize(1);
+  }
+
+  @Test
+  void testForEachHigherTaxon() {
+    // Given
+    tree.add("1", null, "kingdom", ACCEPTED, false, "Animalia", null);
+    tree.add("2", "1", "genus", ACCEPTED, false, "Lamenia", null);
+    tree.add("3", "2", "species", ACCEPTED, false, "Lamenia vitrea", null);
+    tree.complete();
+    var higherTaxa = new HashMap<String, String>();
+
+    // When
+    tree.forEachHigherTaxon((parentId, classification) ->
+        higherTaxa.put(classification.getColId(), parentId));
+
+    // Then
+    assertThat(higherTaxa).containsOnlyKeys("1", "2").containsEntry("1", null)
+        .containsEntry("2", "1");
+  }
+
+  @Test
+  void testResolveAllUsages() {
+    // Given
+    tree = new NameUsageTree(true);
+    tree.add("1", null, "kingdom", ACCEPTED, false, "Animalia", null);
+    tree.add("2", "1", "genus", ACCEPTED, false, "Lamenia", null);
+
+    // When
+    tree.complete();
+
+    // Then
+    assertThat(tree.getClassification("2")).extracting(ColDpClassification::getColId)
+        .containsExactly("1", "2");
+  }
+
+  @Test
+  void testAddAfterComplete() {
+    // Given
+    tree.complete();
+
+    // When / Then
+    assertThrows(IllegalStateException.class,
+        () -> tree.add("1", null, "kingdom", ACCEPTED, false, "Animalia", null));
+  }
+
+}
@@ -0,0 +1,68 @@
+package eu.dissco.nusearch.repository;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.util.Arrays;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field.Store;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.store.ByteBuffersDirectory;
+import org.junit.jupiter.api.Test;
+
+class CanonicalNamesTest {
+
+  @Test
+  void testLoad() throws IOException {
+    // Given
+    try (var directory = new ByteBuffersDirectory();
+        var writer = new IndexWriter(directory, new IndexWriterConfig(new StandardAnalyzer()))) {
+      writer.addDocument(givenUsage("2214", "lamenia vitrea"));
+      writer.addDocument(givenUsage("x3MB", "lamenia"));
+      writer.commit();
+      writer.addDocument(givenUsage("3LXRD", "cixiidae"));
+      writer.addDocument(givenUsage("5T6MX", "lamenia vitrea"));
+      writer.deleteDocuments(new Term(NubIndex.FIELD_ID, "x3MB"));
+      writer.addDocument(givenUsage("7Q9CK", "lamenia vitrea"));
+      writer.commit();
+
+      try (var reader = DirectoryReader.open(directory)) {
+        // When
+        var canonicalNames = CanonicalNames.load(reader);
+
+        // Then
+        assertThat(reader.leaves()).hasSize(2);
+        assertThat(canonicalNames.size()).isEqualTo(3);
+        assertThat(ids(reader, canonicalNames.find("lamenia vitrea", 10)))
+            .containsExactly("2214", "5T6MX", "7Q9CK");
+        assertThat(ids(reader, canonicalNames.find("lamenia vitrea", 2)))
+            .containsExactly("2214", "5T6MX");
+        assertThat(ids(reader, canonicalNames.find("cixiidae", 10))).containsExactly("3LXRD");
+        assertThat(canonicalNames.find("lamenia", 10)).isEmpty();
+        assertThat(canonicalNames.find("unknown", 10)).isEmpty();
+      }
+    }
+  }
+
+  private static String[] ids(DirectoryReader reader, int[] docIds) {
+    return Arrays.stream(docIds).mapToObj(docId -> {
+      try {
+        return reader.storedFields().document(docId).get(NubIndex.FIELD_ID);
+      } catch (IOException e) {
+        throw new IllegalStateException(e);
+      }
+    }).toArray(String[]::new);
+  }
+
+  private static Document givenUsage(String id, String canonicalName) {
+    var document = new Document();
+    document.add(new StringField(NubIndex.FIELD_ID, id, Store.YES));
+    document.add(new StringField(NubIndex.FIELD_CANONICAL_NAME, canonicalName, Store.YES));
+    return document;
+  }
+}
@@ -0,0 +1,113 @@
+package eu.dissco.nusearch.repository;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import eu.dissco.nusearch.configuration.LuceneConfiguration;
+import eu.dissco.nusearch.property.IndexingProperties;
+import eu.dissco.nusearch.repository.FuzzyCandidateGenerator.FuzzyCandidate;
+import eu.dissco.nusearch.repository.NubSearcherManager.NubSearcher;
+import eu.dissco.nusearch.service.TestIndexBuilder;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Compares the recall of the fuzzy candidate generators on misspellings of the canonical names in
+ * the test index, a misspelling is recalled when the name it was made from is a candidate.
+ */
+class FuzzyCandidateGeneratorIT {
+
+  @TempDir
+  private static Path indexLocation;
+
+  private NubSearcherManager searcherManager;
+  private NubSearcher nubSearcher;
+
+  @BeforeAll
+  static void buildIndex() throws Exception {
+    // Index is built from colDP 1011, Fulgoromorpha Lists
+    var properties = new IndexingProperties();
+    properties.setIndexLocation(indexLocation.toString());
+    TestIndexBuilder.buildIndex(properties);
+  }
+
+  @BeforeEach
+  void setup() throws IOException {
+    var properties = new IndexingProperties();
+    properties.setIndexLocation(indexLocation.toString());
+    searcherManager = new LuceneConfiguration(properties).configureSearcherManager();
+    nubSearcher = searcherManager.acquire();
+  }
+
+  @AfterEach
+  void tearDown() throws IOException {
+    searcherManager.release(nubSearcher);
+    searcherManager.close();
+  }
+
+  @Test
+  void testRecall() throws IOException {
+    // Given
+    var lucene = new LuceneFuzzyCandidateGenerator();
+    var symSpell = SymSpellCandidateGenerator.build(nubSearcher.canonicalNames(), 7);
+    var misspellings = misspellings(nubSearcher.canonicalNames(), 1000, new Random(42));
+
+    // When
+    var luceneRecalled = 0;
+    var symSpellRecalled = 0;
+    for (var misspelling : misspellings) {
+      var maxEdits = misspelling.misspelled().length() > 10 ? 2 : 1;
+      var luceneCandidates = names(lucene.candidates(nubSearcher, misspelling.misspelled(),
+          maxEdits));
+      var symSpellCandidates = names(symSpell.candidates(nubSearcher, misspelling.misspelled(),
+          maxEdits));
+      luceneRecalled += luceneCandidates.contains(misspelling.name()) ? 1 : 0;
+      symSpellRecalled += symSpellCandidates.contains(misspelling.name()) ? 1 : 0;
+
+      // Then
+      assertThat(symSpellCandidates).containsAll(luceneCandidates);
+    }
+    assertThat(symSpellRecalled).isEqualTo(misspellings.size())
+        .isGreaterThanOrEqualTo(luceneRecalled);
+  }
+
+  private static List<String> names(List<FuzzyCandidate> candidates) {
+    return candidates.stream().map(FuzzyCandidate::canonicalName).toList();
+  }
+
+  /**
+   * Misspells names with a single substitution, deletion, insertion or transposition, after the
+   * first character which both generators require to match.
+   */
+  static List<Misspelling> misspellings(CanonicalNames names, int count, Random random) {
+    var misspellings = new ArrayList<Misspelling>(count);
+    while (misspellings.size() < count) {
+      var name = names.name(random.nextInt(names.size()));
+      if (name.length() < 4) {
+        continue;
+      }
+      var position = 1 + random.nextInt(name.length() - 2);
+      var letter = (char) ('a' + random.nextInt(26));
+      var misspelled = switch (random.nextInt(4)) {
+        case 0 -> name.substring(0, position) + letter + name.substring(position + 1);
+        case 1 -> name.substring(0, position) + name.substring(position + 1);
+        case 2 -> name.substring(0, position) + letter + name.substring(position);
+        default -> name.substring(0, position) + name.charAt(position + 1)
+            + name.charAt(position) + name.substring(position + 2);
+      };
+      misspellings.add(new Misspelling(name, misspelled));
+    }
+    return misspellings;
+  }
+
+  record Misspelling(String name, String misspelled) {
+
+  }
+}
@@ -0,0 +1,188 @@
+package eu.dissco.nusearch.repository;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import eu.dissco.nusearch.domain.IndexManifest;
+import eu.dissco.nusearch.property.IndexingProperties;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field.Store;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.store.FSDirectory;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class IndexManifestRepositoryTest {
+
+  private final ObjectMapper mapper = new ObjectMapper().findAndRegisterModules();
+  private final IndexingProperties properties = new IndexingProperties();
+  private IndexManifestRepository repository;
+
+  @TempDir
+  private Path indexLocation;
+  @TempDir
+  private Path rebuildLocation;
+
+  @BeforeEach
+  void setup() throws IOException {
+    properties.setColDataset(1011);
+    properties.setIndexLocation(indexLocation.toString());
+    repository = new IndexManifestRepository(mapper, properties);
+    addDocument("7Q8L8");
+  }
+
+  @Test
+  void testSaveAndLoad() throws IOException {
+    // When
+    var manifest = repository.save(4);
+
+    // Then
+    assertThat(repository.load()).contains(manifest);
+    assertThat(manifest.colDataset()).isEqualTo(1011);
+    assertThat(manifest.schemaVersion()).isEqualTo(NubIndex.SCHEMA_VERSION);
+    assertThat(manifest.attempt()).isEqualTo(4);
+    assertThat(repository.isValid(manifest)).isTrue();
+  }
+
+  @Test
+  void testReopenedIndexValid() throws IOException {
+    // Given
+    var manifest = repository.save(4);
+
+    // When
+    try (var directory = FSDirectory.open(indexLocation);
+        var ignored = new IndexWriter(directory, new IndexWriterConfig(new StandardAnalyzer()))) {
+      // Opening and closing the writer without changes does not create a new commit
+    }
+
+    // Then
+    assertThat(repository.isValid(manifest)).isTrue();
+  }
+
+  @Test
+  void testChangedIndexInvalid() throws IOException {
+    // Given
+    var manifest = repository.save(4);
+
+    // When
+    addDocument("73SWK");
+
+    // Then
+    assertThat(repository.isValid(manifest)).isFalse();
+  }
+
+  @Test
+  void testHasValidIndex() throws IOException {
+    // Given
+    assertThat(repository.hasValidIndex(indexLocation)).isFalse();
+    repository.save(4);
+    assertThat(repository.hasValidIndex(indexLocation)).isTrue();
+
+    // When
+    addDocument("73SWK");
+
+    // Then
+    assertThat(repository.hasValidIndex(indexLocation)).isFalse();
+  }
+
+  @Test
+  void testOtherSchemaInvalid() throws IOException {
+    // Given
+    var manifest = repository.save(4);
+    var manifestPath = indexLocation.resolve(IndexManifestRepository.MANIFEST_FILE);
+
+    // When
+    mapper.writeValue(manifestPath.toFile(), new IndexManifest(manifest.colDataset(),
+        NubIndex.SCHEMA_VERSION - 1, manifest.attempt(), manifest.optimizedForServing(),
+        manifest.builtAt(), manifest.checksum(), manifest.archiveChecksum(),
+        manifest.contentDigest()));
+
+    // Then
+    assertThat(repository.hasValidIndex(indexLocation)).isFalse();
+    assertThat(repository.matches(Files.readAllBytes(manifestPath))).isFalse();
+  }
+
+  @Test
+  void testMissingFileInvalid() throws IOException {
+    // Given
+    var manifest = repository.save(4);
+
+    // When
+    try (var files = Files.list(indexLocation)) {
+      Files.delete(files.filter(file -> file.getFileName().toString().endsWith(".si"))
+          .findFirst().orElseThrow());
+    }
+
+    // Then
+    assertThat(repository.isValid(manifest)).isFalse();
+  }
+
+  @Test
+  void testMatches() throws IOException {
+    // Given
+    repository.save(4);
+    var manifestFile = Files.readAllBytes(indexLocation.resolve(
+        IndexManifestRepository.MANIFEST_FILE));
+
+    // When / Then
+    assertThat(repository.matches(manifestFile)).isTrue();
+    assertThat(repository.matches("{}".getBytes())).isFalse();
+  }
+
+  @Test
+  void testSameContentRebuilt() throws IOException {
+    // Given
+    var manifest = repository.save(4);
+    var rebuildProperties = new IndexingProperties();
+    rebuildProperties.setColDataset(1011);
+    rebuildProperties.setIndexLocation(rebuildLocation.toString());
+    var rebuildRepository = new IndexManifestRepository(mapper, rebuildProperties);
+    try (var directory = FSDirectory.open(rebuildLocation);
+        var writer = new IndexWriter(directory, new IndexWriterConfig(new StandardAnalyzer()))) {
+      var document = new Document();
+      document.add(new StringField("id", "7Q8L8", Store.YES));
+      writer.addDocument(document);
+    }
+
+    // When
+    var rebuilt = rebuildRepository.save(5);
+
+    // Then
+    assertThat(rebuilt.checksum()).isNotEqualTo(manifest.checksum());
+    assertThat(rebuilt.contentDigest()).isEqualTo(manifest.contentDigest());
+    assertThat(repository.hasSameContent(indexLocation, mapper.writeValueAsBytes(rebuilt)))
+        .isTrue();
+    assertThat(repository.matches(mapper.writeValueAsBytes(rebuilt))).isTrue();
+  }
+
+  @Test
+  void testChangedContent() throws IOException {
+    // Given
+    var manifest = repository.save(4);
+    addDocument("73SWK");
+
+    // When
+    var changed = repository.save(4);
+
+    // Then
+    assertThat(changed.contentDigest()).isNotEqualTo(manifest.contentDigest());
+    assertThat(repository.hasSameContent(indexLocation, mapper.writeValueAsBytes(manifest)))
+        .isFalse();
+  }
+
+  private void addDocument(String id) throws IOException {
+    try (var directory = FSDirectory.open(indexLocation);
+        var writer = new IndexWriter(directory, new IndexWriterConfig(new StandardAnalyzer()))) {
+      var document = new Document();
+      document.add(new StringField("id", id, Store.YES));
+      writer.addDocument(document);
+    }
+  }
+}
@@ -1,6 +1,7 @@
 package eu.dissco.nusearch.repository;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
 import static org.gbif.api.vocabulary.Rank.SPECIES;
 import static org.gbif.api.vocabulary.TaxonomicStatus.ACCEPTED;
 import static org.junit.Assert.assertThrows;
@@ -9,21 +10,43 @@ import eu.dissco.nusearch.component.ScientificNameAnalyzer;
 import eu.dissco.nusearch.configuration.LuceneConfiguration;
 import eu.dissco.nusearch.domain.ColDpNameUsageMatch;
 import eu.dissco.nusearch.property.IndexingProperties;
+import eu.dissco.nusearch.property.IndexingProperties.FuzzyCandidates;
+import eu.dissco.nusearch.service.TestIndexBuilder;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import java.io.IOException;
-import org.apache.lucene.search.IndexSearcher;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+import org.apache.commons.io.FileUtils;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.Term;
 import org.apache.lucene.store.AlreadyClosedException;
+import org.apache.lucene.store.FSDirectory;
+import org.gbif.api.model.checklistbank.NameUsageMatch;
+import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
 import org.mockito.junit.jupiter.MockitoExtension;
 
 @ExtendWith(MockitoExtension.class)
 class NubIndexIT {
 
+  @TempDir
+  private static Path indexLocation;
   private final ScientificNameAnalyzer analyzer = new ScientificNameAnalyzer();
   private NubIndex index;
+  private SimpleMeterRegistry meterRegistry;
 
-  private IndexSearcher indexSearcher;
+  private NubSearcherManager searcherManager;
 
   private static void validateResult(ColDpNameUsageMatch result) {
     assertThat(result.getCanonicalName()).isEqualTo("Lamenia vitrea");
@@ -34,13 +57,38 @@ class NubIndexIT {
     assertThat(result.getClassifications()).hasSize(7);
   }
 
+  @BeforeAll
+  static void buildIndex() throws Exception {
+    // Index is built from colDP 1011, Fulgoromorpha Lists
+    var properties = new IndexingProperties();
+    properties.setIndexLocation(indexLocation.toString());
+    TestIndexBuilder.buildIndex(properties);
+  }
+
   @BeforeEach
   void setup() throws IOException {
+    openIndex(indexLocation);
+  }
+
+  private void swap(Path location) {
+    try {
+      searcherManager.swap(location);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  private void openIndex(Path location) throws IOException {
+    openIndex(location, FuzzyCandidates.LUCENE);
+  }
+
+  private void openIndex(Path location, FuzzyCandidates fuzzyCandidates) throws IOException {
     var properties = new IndexingProperties();
-    // Index at this location is prefilled and based on colDP 1011, Fulgoromorpha Lists
-    properties.setIndexLocation("src/test/resources/index");
-    indexSearcher = new LuceneConfiguration(properties).configureIndexSearcher();
-    index = new NubIndex(indexSearcher, analyzer);
+    properties.setIndexLocation(location.toString());
+    properties.setFuzzyCandidates(fuzzyCandidates);
+    searcherManager = new LuceneConfiguration(properties).configureSearcherManager();
+    meterRegistry = new SimpleMeterRegistry();
+    index = new NubIndex(searcherManager, analyzer, properties, meterRegistry);
   }
 
   @Test
@@ -54,6 +102,18 @@ class NubIndexIT {
     validateResult(result);
   }
 
+  @Test
+  void testClassificationShared() {
+    // Given
+    var first = index.matchByUsageId("2214");
+
+    // When
+    var result = index.matchByUsageId("2214");
+
+    // Then
+    assertThat(result.getClassifications()).isSameAs(first.getClassifications());
+  }
+
   @Test
   void testMatchByName() {
     // Given
@@ -62,7 +122,53 @@ class NubIndexIT {
     var result = index.matchByName("Lamenia vitrea", false, 1).get(0);
 
     // Then
+    assertThat(result.isCandidate()).isTrue();
+    assertThat(result.getAuthorship()).isNull();
+    assertThat(result.getCanonicalName()).isEqualTo("Lamenia vitrea");
+    assertThat(result.getClassifications()).hasSize(7);
+  }
+
+  @Test
+  void testMaterialize() {
+    // Given
+    var result = index.matchByName("Lamenia vitrea", false, 1).get(0);
+
+    // When
+    index.materialize(List.of(result));
+
+    // Then
+    assertThat(result.isCandidate()).isFalse();
+    assertThat(result).usingRecursiveComparison().ignoringFields("confidence", "matchType")
+        .isEqualTo(index.matchByUsageId("2214"));
+    validateResult(result);
+  }
+
+  @Test
+  void testMaterializeAfterSwap(@TempDir Path location) throws IOException {
+    // Given
+    var currentLocation = location.resolve("index");
+    var nextLocation = location.resolve("next");
+    FileUtils.copyDirectory(indexLocation.toFile(), currentLocation.toFile());
+    FileUtils.copyDirectory(indexLocation.toFile(), nextLocation.toFile());
+    try (var writer = new IndexWriter(FSDirectory.open(nextLocation),
+        new IndexWriterConfig(analyzer))) {
+      writer.deleteDocuments(new Term(NubIndex.FIELD_ID, "2214"));
+    }
+    searcherManager.close();
+    openIndex(currentLocation);
+
+    // When
+    var result = index.withSearcher(() -> {
+      var candidate = index.matchByName("Lamenia vitrea", false, 1).get(0);
+      swap(nextLocation);
+      index.materialize(List.of(candidate));
+      return candidate;
+    });
+
+    // Then
+    assertThat(result.isCandidate()).isFalse();
     validateResult(result);
+    assertThat(index.matchByUsageId("2214")).isNull();
   }
 
   @Test
@@ -71,15 +177,80 @@ class NubIndexIT {
 
     // When
     var result = index.matchByName("Lameni vitre", true, 1).get(0);
+    index.materialize(List.of(result));
 
     // Then
     validateResult(result);
   }
 
+  @Test
+  void testMatchByNameFuzzySymSpell() throws IOException {
+    // Given
+    searcherManager.close();
+    openIndex(indexLocation, FuzzyCandidates.SYM_SPELL);
+
+    // When
+    var result = index.matchByName("Lameni vitre", true, 1).get(0);
+    index.materialize(List.of(result));
+
+    // Then
+    validateResult(result);
+  }
+
+  @Test
+  void testMatchByNameFuzzyExact() {
+    // Given
+
+    // When
+    var result = index.matchByName("Dictyophara", true, 10);
+
+    // Then
+    assertThat(result).extracting(ColDpNameUsageMatch::getCanonicalName,
+        ColDpNameUsageMatch::getMatchType).containsExactly(
+        tuple("Dictyophara", NameUsageMatch.MatchType.EXACT),
+        tuple("Dictyophara", NameUsageMatch.MatchType.EXACT),
+        tuple("Dictyopharina", NameUsageMatch.MatchType.FUZZY));
+    assertThat(index.matchByName("Dictyophara", true, 2)).extracting(
+        ColDpNameUsageMatch::getMatchType).containsOnly(NameUsageMatch.MatchType.EXACT);
+  }
+
+  @Test
+  void testUsageCached() {
+    // Given
+    var first = index.matchByUsageId("2214");
+    first.setConfidence(42);
+
+    // When
+    var result = index.matchByUsageId("2214");
+    var candidate = index.matchByName("Lamenia vitrea", false, 1).get(0);
+
+    // Then
+    assertThat(result).isNotSameAs(first);
+    assertThat(result.getConfidence()).isEqualTo(100);
+    validateResult(result);
+    assertThat(candidate.isCandidate()).isFalse();
+    validateResult(candidate);
+    assertThat(meterRegistry.get("cache.gets").tag("result", "hit").functionCounter().count())
+        .isEqualTo(2);
+  }
+
+  @Test
+  void testUsagesRemovedWithReader() throws IOException {
+    // Given
+    index.matchByUsageId("2214");
+    assertThat(meterRegistry.get("cache.size").gauge().value()).isEqualTo(1);
+
+    // When
+    searcherManager.close();
+
+    // Then
+    assertThat(meterRegistry.get("cache.size").gauge().value()).isZero();
+  }
+
   @Test
   void testMatchByNameIOException() throws IOException {
     // Given
-    indexSearcher.getTopReaderContext().reader().close();
+    searcherManager.close();
 
     // When
     assertThrows(AlreadyClosedException.class, () -> index.matchByName("Lameni vitre", true, 1));
@@ -98,5 +269,82 @@ class NubIndexIT {
     assertThat(result.get(0).getCanonicalName()).isEqualTo("Aafrita");
   }
 
+  @Test
+  void testOptimizedForServing(@TempDir Path optimizedLocation) throws Exception {
+    // Given
+    var properties = new IndexingProperties();
+    properties.setIndexLocation(optimizedLocation.toString());
+    properties.setOptimizeForServing(true);
+    TestIndexBuilder.buildIndex(properties);
+    openIndex(optimizedLocation);
+
+    // When
+    var autocomplete = index.autocomplete("A", 10);
+    var result = index.matchByName("Lameni vitre", true, 1).get(0);
+    index.materialize(List.of(result));
+
+    // Then
+    assertThat(indexReader().leaves()).hasSize(1);
+    assertThat(autocomplete).hasSize(10);
+    assertThat(autocomplete.get(0).getCanonicalName()).isEqualTo("Aafrita");
+    validateResult(result);
+  }
+
+  @Test
+  void testIncrementalIndexing(@TempDir Path location) throws Exception {
+    // Given
+    var properties = new IndexingProperties();
+    properties.setIndexLocation(location.resolve("index").toString());
+    TestIndexBuilder.buildIndex(properties);
+    properties.setIncrementalIndexing(true);
+    var dataset = givenChangedDataset(location.resolve("changed.zip"));
+
+    // When
+    TestIndexBuilder.buildIndex(properties, dataset);
+    openIndex(location.resolve("index"));
+
+    // Then
+    assertThat(index.matchByUsageId("2187")).isNull();
+    assertThat(index.matchByUsageId("x3MB").getAuthorship()).isEqualTo("Stål, 1859");
+    var result = index.matchByUsageId("2214");
+    validateResult(result);
+    assertThat(result.getClassifications().get(6).getAuthorship()).isEqualTo("Stål, 1859");
+    var reader = indexReader();
+    assertThat(reader.numDocs()).isEqualTo(25435 + 7570);
+    // only the genus, its higher taxon document, its descendants and the removed species
+    assertThat(reader.numDeletedDocs()).isBetween(1, 100);
+  }
+
+  private IndexReader indexReader() throws IOException {
+    var nubSearcher = searcherManager.acquire();
+    try {
+      return nubSearcher.searcher().getIndexReader();
+    } finally {
+      searcherManager.release(nubSearcher);
+    }
+  }
+
+  /**
+   * Copies the test dataset, adding an authorship to the genus Lamenia and removing one of its
+   * species.
+   */
+  private static Path givenChangedDataset(Path target) throws IOException {
+    try (var source = new ZipFile(TestIndexBuilder.TEST_DATASET.toFile());
+        var out = new ZipOutputStream(Files.newOutputStream(target))) {
+      var lines = new String(source.getInputStream(source.getEntry("NameUsage.tsv"))
+          .readAllBytes(), StandardCharsets.UTF_8).split("\n");
+      out.putNextEntry(new ZipEntry("NameUsage.tsv"));
+      for (var line : lines) {
+        if (line.startsWith("x3MB\t")) {
+          line = line + "Stål, 1859";
+        }
+        if (!line.startsWith("2187\t")) {
+          out.write((line + "\n").getBytes(StandardCharsets.UTF_8));
+        }
+      }
+      out.closeEntry();
+    }
+    return target;
+  }
 
 }
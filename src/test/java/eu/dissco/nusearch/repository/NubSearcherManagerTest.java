@@ -0,0 +1,146 @@
+package eu.dissco.nusearch.repository;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field.Store;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.store.FSDirectory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class NubSearcherManagerTest {
+
+  @TempDir
+  private Path location;
+  private Path currentIndex;
+  private Path nextIndex;
+  private NubSearcherManager searcherManager;
+
+  @BeforeEach
+  void setup() throws IOException {
+    currentIndex = givenIndex("index", "Lamenia vitrea");
+    nextIndex = givenIndex("index-1", "Lamenia vitrea", "Lamenia caliginea");
+    searcherManager = new NubSearcherManager(currentIndex, 10,
+        canonicalNames -> new LuceneFuzzyCandidateGenerator());
+  }
+
+  @AfterEach
+  void destroy() throws IOException {
+    searcherManager.close();
+  }
+
+  @Test
+  void testSwap() throws IOException {
+    // Given
+    var inFlight = searcherManager.acquire();
+
+    // When
+    searcherManager.swap(nextIndex);
+
+    // Then
+    var next = searcherManager.acquire();
+    assertThat(next.location()).isEqualTo(nextIndex);
+    assertThat(count(next)).isEqualTo(2);
+    assertThat(count(inFlight)).isEqualTo(1);
+    searcherManager.release(next);
+    assertThat(currentIndex).exists();
+    searcherManager.release(inFlight);
+    assertThat(currentIndex).doesNotExist();
+  }
+
+  @Test
+  void testSwapFailed() throws IOException {
+    // Given
+    var emptyIndex = Files.createDirectory(location.resolve("index-2"));
+
+    // When
+    assertThrows(IOException.class, () -> searcherManager.swap(emptyIndex));
+
+    // Then
+    assertThat(searcherManager.getIndexLocation()).isEqualTo(currentIndex);
+    assertThat(currentIndex).exists();
+  }
+
+  @Test
+  void testCloseKeepsIndex() throws IOException {
+    // When
+    searcherManager.close();
+
+    // Then
+    assertThat(currentIndex).exists();
+  }
+
+  @Test
+  void testRestoreReleasedIndex() throws IOException {
+    // Given
+    var indexLocation = givenIndex("restored", "Lamenia vitrea");
+    var released = givenIndex("restored-1734000000000", "Lamenia vitrea", "Lamenia caliginea");
+    var older = givenIndex("restored-1733000000000", "Lamenia vitrea");
+    var invalid = givenIndex("restored-1735000000000", "Lamenia caliginea");
+    var other = Files.createDirectory(location.resolve("restored-backup"));
+
+    // When
+    NubSearcherManager.restoreReleasedIndex(indexLocation, path -> !path.equals(invalid));
+
+    // Then
+    try (var directory = FSDirectory.open(indexLocation);
+        var reader = DirectoryReader.open(directory)) {
+      assertThat(reader.numDocs()).isEqualTo(2);
+    }
+    assertThat(released).doesNotExist();
+    assertThat(older).doesNotExist();
+    assertThat(invalid).doesNotExist();
+    assertThat(other).exists();
+  }
+
+  @Test
+  void testRestoreWithoutReleasedIndex() throws IOException {
+    // Given
+    var indexLocation = givenIndex("restored", "Lamenia vitrea");
+    var invalid = givenIndex("restored-1735000000000", "Lamenia caliginea");
+
+    // When
+    NubSearcherManager.restoreReleasedIndex(indexLocation, path -> false);
+
+    // Then
+    try (var directory = FSDirectory.open(indexLocation);
+        var reader = DirectoryReader.open(directory)) {
+      assertThat(reader.numDocs()).isEqualTo(1);
+    }
+    assertThat(invalid).doesNotExist();
+  }
+
+  private static int count(NubSearcherManager.NubSearcher nubSearcher) throws IOException {
+    return nubSearcher.searcher().count(
+        new TermQuery(new Term(NubIndex.FIELD_CANONICAL_NAME, "lamenia vitrea")))
+        + nubSearcher.searcher().count(
+        new TermQuery(new Term(NubIndex.FIELD_CANONICAL_NAME, "lamenia caliginea")));
+  }
+
+  private Path givenIndex(String name, String... canonicalNames) throws IOException {
+    var indexLocation = location.resolve(name);
+    try (var directory = FSDirectory.open(indexLocation);
+        var writer = new IndexWriter(directory, new IndexWriterConfig(new StandardAnalyzer()))) {
+      for (var canonicalName : canonicalNames) {
+        var document = new Document();
+        document.add(new StringField(NubIndex.FIELD_CANONICAL_NAME, canonicalName.toLowerCase(),
+            Store.YES));
+        writer.addDocument(document);
+      }
+    }
+    return indexLocation;
+  }
+}
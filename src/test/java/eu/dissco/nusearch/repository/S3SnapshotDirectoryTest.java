@@ -0,0 +1,183 @@
+package eu.dissco.nusearch.repository;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.lenient;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import eu.dissco.nusearch.component.IndexSnapshotArchiver;
+import eu.dissco.nusearch.domain.IndexSnapshotManifest;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field.Store;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.store.IOContext;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import software.amazon.awssdk.core.ResponseBytes;
+import software.amazon.awssdk.core.async.AsyncResponseTransformer;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+import software.amazon.awssdk.services.s3.model.HeadObjectRequest;
+import software.amazon.awssdk.services.s3.model.HeadObjectResponse;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+
+@ExtendWith(MockitoExtension.class)
+class S3SnapshotDirectoryTest {
+
+  private static final String BUCKET = "nusearch-index";
+  private static final String KEY = "col/index-snapshot.zip";
+  private static final int BLOCK_SIZE = 512;
+
+  @Mock
+  private S3AsyncClient s3Client;
+
+  @TempDir
+  private Path indexLocation;
+  @TempDir
+  private Path cacheLocation;
+
+  private final AtomicInteger requests = new AtomicInteger();
+  private final AtomicInteger failures = new AtomicInteger();
+  private byte[] snapshot;
+  private S3SnapshotDirectory directory;
+
+  @BeforeEach
+  void setup() throws IOException {
+    try (var index = FSDirectory.open(indexLocation);
+        var writer = new IndexWriter(index, new IndexWriterConfig(new StandardAnalyzer()))) {
+      for (int i = 0; i < 500; i++) {
+        var document = new Document();
+        document.add(new StringField(NubIndex.FIELD_CANONICAL_NAME, "lamenia vitrea " + i,
+            Store.YES));
+        writer.addDocument(document);
+      }
+    }
+    var archive = new ByteArrayOutputStream();
+    var manifest = new IndexSnapshotArchiver(new ObjectMapper()).write(indexLocation, archive);
+    snapshot = archive.toByteArray();
+    givenSnapshot();
+    directory = new S3SnapshotDirectory(s3Client, BUCKET, KEY, manifest, cacheLocation,
+        BLOCK_SIZE);
+  }
+
+  @AfterEach
+  void destroy() throws IOException {
+    directory.close();
+  }
+
+  @Test
+  void testSearchInPlace() throws IOException {
+    // When
+    int hits;
+    try (var reader = DirectoryReader.open(directory)) {
+      hits = new IndexSearcher(reader).count(
+          new TermQuery(new Term(NubIndex.FIELD_CANONICAL_NAME, "lamenia vitrea 42")));
+    }
+
+    // Then
+    assertThat(hits).isEqualTo(1);
+    assertThat(directory.getCachedBlocks()).isPositive().isEqualTo(requests.get());
+  }
+
+  @Test
+  void testPrefetch() throws Exception {
+    // When
+    var cacheFile = directory.prefetch(4).get();
+
+    // Then
+    assertThat(cacheFile).hasBinaryContent(snapshot);
+    assertThat(directory.getCachedBlocks()).isEqualTo(directory.getBlockCount());
+    assertThat(requests.get()).isEqualTo(directory.getBlockCount());
+  }
+
+  @Test
+  void testFailedBlockFetchedAgain() throws IOException {
+    // Given
+    failures.set(1);
+    var name = directory.listAll()[0];
+
+    // When
+    try (var input = directory.openInput(name, IOContext.READONCE)) {
+      assertThrows(IOException.class, input::readByte);
+    }
+    try (var input = directory.openInput(name, IOContext.READONCE)) {
+      input.readByte();
+    }
+
+    // Then
+    assertThat(requests.get()).isEqualTo(2);
+    assertThat(directory.getCachedBlocks()).isEqualTo(1);
+  }
+
+  @Test
+  void testReadOnly() {
+    // When / Then
+    assertThrows(AccessDeniedException.class,
+        () -> directory.createOutput("_1.cfs", IOContext.DEFAULT));
+    assertThrows(AccessDeniedException.class, () -> directory.deleteFile("segments_1"));
+  }
+
+  @Test
+  void testNoOffsets() {
+    // Given
+    var manifest = new IndexSnapshotManifest(
+        List.of(new IndexSnapshotManifest.SnapshotFile("_0.cfs", 10, 42, null)));
+
+    // When / Then
+    assertThrows(IllegalArgumentException.class,
+        () -> new S3SnapshotDirectory(s3Client, BUCKET, KEY, manifest, cacheLocation, BLOCK_SIZE));
+  }
+
+  @SuppressWarnings("unchecked")
+  private void givenSnapshot() {
+    given(s3Client.headObject(any(Consumer.class))).willAnswer(invocation -> {
+      var request = HeadObjectRequest.builder();
+      invocation.<Consumer<HeadObjectRequest.Builder>>getArgument(0).accept(request);
+      assertThat(request.build().key()).isEqualTo(KEY);
+      return CompletableFuture.completedFuture(HeadObjectResponse.builder().eTag("\"6d9a5b\"")
+          .contentLength((long) snapshot.length).build());
+    });
+    lenient().when(s3Client.getObject(any(Consumer.class), any(AsyncResponseTransformer.class)))
+        .thenAnswer(invocation -> {
+          var builder = GetObjectRequest.builder();
+          invocation.<Consumer<GetObjectRequest.Builder>>getArgument(0).accept(builder);
+          var request = builder.build();
+          requests.incrementAndGet();
+          if (failures.getAndUpdate(failures -> Math.max(0, failures - 1)) > 0) {
+            return CompletableFuture.failedFuture(
+                S3Exception.builder().statusCode(503).message("Slow Down").build());
+          }
+          assertThat(request.ifMatch()).isEqualTo("\"6d9a5b\"");
+          var range = request.range().substring("bytes=".length()).split("-");
+          var content = Arrays.copyOfRange(snapshot, Integer.parseInt(range[0]),
+              Integer.parseInt(range[1]) + 1);
+          return CompletableFuture.completedFuture(
+              ResponseBytes.fromByteArray(GetObjectResponse.builder().build(), content));
+        });
+  }
+}
@@ -0,0 +1,507 @@
+package eu.dissco.nusearch.repository;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import eu.dissco.nusearch.component.IndexSnapshotArchiver;
+import eu.dissco.nusearch.component.ScientificNameAnalyzer;
+import eu.dissco.nusearch.domain.ColDpNameUsageMatch;
+import eu.dissco.nusearch.domain.IndexSnapshotManifest;
+import eu.dissco.nusearch.exception.IndexingFailedException;
+import eu.dissco.nusearch.property.IndexingProperties;
+import eu.dissco.nusearch.property.IndexingProperties.FuzzyCandidates;
+import eu.dissco.nusearch.service.TestIndexBuilder;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okio.Buffer;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field.Store;
+import org.apache.lucene.document.StoredField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.store.FSDirectory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
+import software.amazon.awssdk.transfer.s3.S3TransferManager;
+
+/**
+ * Uploads and downloads index snapshots through the CRT client against a local S3 stand-in, which
+ * keeps the objects in memory.
+ */
+class S3StorageRepositoryIT {
+
+  private static final long PART_SIZE = 5L * 1024 * 1024;
+
+  private final ObjectMapper mapper = new ObjectMapper().findAndRegisterModules();
+  private final LocalS3 localS3 = new LocalS3();
+  private MockWebServer mockServer;
+  private S3AsyncClient s3Client;
+  private S3TransferManager transferManager;
+
+  @TempDir
+  private Path indexLocation;
+  @TempDir
+  private Path downloadLocation;
+  @TempDir
+  private Path cacheLocation;
+  @TempDir
+  private Path nubIndexLocation;
+
+  @BeforeEach
+  void setup() throws IOException {
+    mockServer = new MockWebServer();
+    mockServer.setDispatcher(localS3);
+    mockServer.start();
+    s3Client = S3AsyncClient.crtBuilder()
+        .credentialsProvider(StaticCredentialsProvider.create(
+            AwsBasicCredentials.create("access", "secret")))
+        .region(Region.EU_WEST_2)
+        .endpointOverride(URI.create(mockServer.url("/").toString()))
+        .forcePathStyle(true)
+        .minimumPartSizeInBytes(PART_SIZE)
+        .build();
+    transferManager = S3TransferManager.builder().s3Client(s3Client).build();
+    givenIndex();
+  }
+
+  @AfterEach
+  void destroy() throws IOException {
+    transferManager.close();
+    s3Client.close();
+    mockServer.shutdown();
+  }
+
+  @Test
+  void testSnapshotRoundTrip() throws Exception {
+    // Given
+    repository(indexLocation).uploadIndex(indexLocation.toString());
+
+    // When
+    repository(downloadLocation).downloadIndex(downloadLocation.toString());
+
+    // Then
+    assertThat(localS3.objects).containsKeys("col-indexes/1011/index-snapshot.zip",
+        "col-indexes/1011/index-manifest.json");
+    assertThat(localS3.completedUploads).isPositive();
+    assertThat(localS3.snapshotRangeRequests).isGreaterThan(1);
+    try (var reader = DirectoryReader.open(FSDirectory.open(downloadLocation))) {
+      assertThat(reader.numDocs()).isEqualTo(2);
+      assertThat(reader.storedFields().document(0).getBinaryValue("payload").length)
+          .isEqualTo(12 * 1024 * 1024);
+    }
+    assertThat(downloadLocation.resolve(IndexManifestRepository.MANIFEST_FILE))
+        .hasSameBinaryContentAs(indexLocation.resolve(IndexManifestRepository.MANIFEST_FILE));
+  }
+
+  @Test
+  void testCurrentIndexNotDownloaded() throws Exception {
+    // Given
+    var repository = repository(indexLocation);
+    repository.uploadIndex(indexLocation.toString());
+    localS3.snapshotRangeRequests = 0;
+
+    // When
+    repository.downloadIndex(indexLocation.toString());
+
+    // Then
+    assertThat(localS3.snapshotRangeRequests).isZero();
+  }
+
+  @Test
+  void testStreamSnapshot() throws Exception {
+    // Given
+    repository(indexLocation).uploadIndex(indexLocation.toString());
+    var repository = repository(downloadLocation);
+
+    // When
+    try (var directory = repository.openSnapshot(cacheLocation, 1024 * 1024).orElseThrow()) {
+      try (var reader = DirectoryReader.open(directory)) {
+        assertThat(reader.numDocs()).isEqualTo(2);
+      }
+      assertThat(directory.getCachedBlocks()).isLessThan(directory.getBlockCount());
+      var snapshot = directory.prefetch(4).get();
+      repository.installSnapshot(snapshot, downloadLocation.toString());
+    }
+
+    // Then
+    try (var reader = DirectoryReader.open(FSDirectory.open(downloadLocation))) {
+      assertThat(reader.numDocs()).isEqualTo(2);
+    }
+    assertThat(repository.isIndexCurrent(downloadLocation.toString())).isTrue();
+  }
+
+  @Test
+  void testReplacedSnapshotNotStreamed() throws Exception {
+    // Given
+    repository(indexLocation).uploadIndex(indexLocation.toString());
+    var snapshotManifest = localS3.objects.get("col-indexes/1011/snapshot-manifest.json");
+    givenRebuiltIndex();
+    repository(indexLocation).uploadIndex(indexLocation.toString());
+    // the new snapshot is in place, its manifest has not been uploaded yet
+    localS3.objects.put("col-indexes/1011/snapshot-manifest.json", snapshotManifest);
+
+    // When
+    var directory = repository(downloadLocation).openSnapshot(cacheLocation, 1024 * 1024);
+
+    // Then
+    assertThat(directory).isEmpty();
+  }
+
+  @Test
+  void testQuerySnapshotWithoutLoadingLookups() throws Exception {
+    // Given
+    var properties = new IndexingProperties();
+    properties.setIndexLocation(nubIndexLocation.toString());
+    properties.setFuzzyCandidates(FuzzyCandidates.SYM_SPELL);
+    TestIndexBuilder.buildIndex(properties);
+    repository(nubIndexLocation).uploadIndex(nubIndexLocation.toString());
+    var directory = repository(downloadLocation).openSnapshot(cacheLocation, 16 * 1024)
+        .orElseThrow();
+    localS3.latency = 30;
+    List<ColDpNameUsageMatch> expected;
+    try (var searcherManager = new NubSearcherManager(nubIndexLocation, 0,
+        FuzzyCandidateGenerator.of(properties))) {
+      expected = match(searcherManager, properties);
+    }
+
+    // When
+    List<ColDpNameUsageMatch> result;
+    int cachedBlocks;
+    try (var searcherManager = new NubSearcherManager(directory, cacheLocation, 0,
+        FuzzyCandidateGenerator.of(properties))) {
+      result = match(searcherManager, properties);
+      cachedBlocks = directory.getCachedBlocks();
+    }
+
+    // Then
+    assertThat(result).isNotEmpty().usingRecursiveComparison().isEqualTo(expected);
+    assertThat(result.get(0).getClassifications()).isNotEmpty();
+    assertThat(cachedBlocks).isLessThan(directory.getBlockCount() / 5);
+  }
+
+  private static List<ColDpNameUsageMatch> match(NubSearcherManager searcherManager,
+      IndexingProperties properties) {
+    var nubIndex = new NubIndex(searcherManager, new ScientificNameAnalyzer(), properties,
+        new SimpleMeterRegistry());
+    var matches = nubIndex.matchByName("Lamenia vitreo", true, 3);
+    nubIndex.materialize(matches);
+    return matches;
+  }
+
+  @Test
+  void testSameContentNotUploaded() throws Exception {
+    // Given
+    var repository = repository(indexLocation);
+    repository.uploadIndex(indexLocation.toString());
+    var snapshot = localS3.objects.get("col-indexes/1011/index-snapshot.zip");
+
+    // When
+    repository.uploadIndex(indexLocation.toString());
+
+    // Then
+    assertThat(localS3.objects.get("col-indexes/1011/index-snapshot.zip")).isSameAs(snapshot);
+  }
+
+  @Test
+  void testTruncatedSnapshotUploadedAgain() throws Exception {
+    // Given
+    var repository = repository(indexLocation);
+    repository.uploadIndex(indexLocation.toString());
+    var snapshot = localS3.objects.get("col-indexes/1011/index-snapshot.zip");
+    localS3.objects.put("col-indexes/1011/index-snapshot.zip",
+        Arrays.copyOf(snapshot, snapshot.length / 2));
+
+    // When
+    repository.uploadIndex(indexLocation.toString());
+
+    // Then
+    assertThat(localS3.objects.get("col-indexes/1011/index-snapshot.zip")).hasSameSizeAs(snapshot);
+  }
+
+  @Test
+  void testFailedSnapshotNotPublished() throws Exception {
+    // Given
+    repository(indexLocation).uploadIndex(indexLocation.toString());
+    var snapshot = localS3.objects.get("col-indexes/1011/index-snapshot.zip");
+    var manifest = localS3.objects.get("col-indexes/1011/index-manifest.json");
+    givenRebuiltIndex();
+    var failingArchiver = new IndexSnapshotArchiver(mapper) {
+      @Override
+      public IndexSnapshotManifest write(Path location, OutputStream outputStream)
+          throws IOException {
+        outputStream.write(new byte[(int) PART_SIZE + 1024]);
+        throw new IOException("No space left on device");
+      }
+    };
+
+    // When
+    assertThrows(IndexingFailedException.class,
+        () -> repository(indexLocation, failingArchiver).uploadIndex(indexLocation.toString()));
+
+    // Then
+    assertThat(localS3.objects.get("col-indexes/1011/index-snapshot.zip")).isSameAs(snapshot);
+    assertThat(localS3.objects.get("col-indexes/1011/index-manifest.json")).isSameAs(manifest);
+    assertThat(localS3.objects).doesNotContainKey("col-indexes/1011/index-snapshot.zip.upload");
+  }
+
+  @Test
+  void testCorruptSnapshotRejected() throws Exception {
+    // Given
+    repository(indexLocation).uploadIndex(indexLocation.toString());
+    var snapshot = localS3.objects.get("col-indexes/1011/index-snapshot.zip");
+    snapshot[snapshot.length / 2] ^= 1;
+
+    // When / Then
+    assertThrows(IndexingFailedException.class,
+        () -> repository(downloadLocation).downloadIndex(downloadLocation.toString()));
+  }
+
+  private S3StorageRepository repository(Path location) {
+    return repository(location, new IndexSnapshotArchiver(mapper));
+  }
+
+  private S3StorageRepository repository(Path location, IndexSnapshotArchiver archiver) {
+    var properties = new IndexingProperties();
+    properties.setColDataset(1011);
+    properties.setIndexLocation(location.toString());
+    return new S3StorageRepository(s3Client, transferManager, properties,
+        new IndexManifestRepository(mapper, properties), archiver);
+  }
+
+  /**
+   * Adds a document to the index, so it no longer has the content of the uploaded index.
+   */
+  private void givenRebuiltIndex() throws IOException {
+    try (var directory = FSDirectory.open(indexLocation);
+        var writer = new IndexWriter(directory, new IndexWriterConfig(new StandardAnalyzer()))) {
+      var document = new Document();
+      document.add(new StringField("id", "3LXRD", Store.YES));
+      writer.addDocument(document);
+    }
+    var properties = new IndexingProperties();
+    properties.setColDataset(1011);
+    properties.setIndexLocation(indexLocation.toString());
+    new IndexManifestRepository(mapper, properties).save(5);
+  }
+
+  /**
+   * Builds an index with an incompressible stored field, so its snapshot spans several parts.
+   */
+  private void givenIndex() throws IOException {
+    var payload = new byte[12 * 1024 * 1024];
+    new Random(42).nextBytes(payload);
+    try (var directory = FSDirectory.open(indexLocation);
+        var writer = new IndexWriter(directory, new IndexWriterConfig(new StandardAnalyzer()))) {
+      var document = new Document();
+      document.add(new StringField("id", "7Q8L8", Store.YES));
+      document.add(new StoredField("payload", payload));
+      writer.addDocument(document);
+      var other = new Document();
+      other.add(new StringField("id", "73SWK", Store.YES));
+      writer.addDocument(other);
+    }
+    var properties = new IndexingProperties();
+    properties.setColDataset(1011);
+    properties.setIndexLocation(indexLocation.toString());
+    new IndexManifestRepository(mapper, properties).save(4);
+  }
+
+  /**
+   * The part of the S3 API used by the repository: bucket checks, listing, single and multipart
+   * uploads, copies, deletes and (ranged) downloads. Request bodies sent with aws-chunked encoding
+   * are decoded.
+   */
+  private static class LocalS3 extends Dispatcher {
+
+    private static final String COPY_SOURCE = "x-amz-copy-source";
+
+    private final Map<String, byte[]> objects = new ConcurrentHashMap<>();
+    private final Map<String, Map<Integer, byte[]>> uploads = new ConcurrentHashMap<>();
+    private volatile int completedUploads;
+    private volatile int snapshotRangeRequests;
+    private volatile long latency;
+
+    @Override
+    public MockResponse dispatch(RecordedRequest request) {
+      var url = request.getRequestUrl();
+      var segments = url.pathSegments();
+      var bucket = segments.getFirst();
+      var key = String.join("/", segments.subList(1, segments.size()));
+      var query = url.queryParameterNames();
+      if (key.isEmpty()) {
+        return "GET".equals(request.getMethod()) ? list(bucket, url.queryParameter("prefix"))
+            : new MockResponse();
+      }
+      var objectKey = bucket + "/" + key;
+      return switch (request.getMethod()) {
+        case "POST" -> query.contains("uploads") ? initiate(bucket, key)
+            : complete(objectKey, url.queryParameter("uploadId"));
+        case "PUT" -> query.contains("partNumber")
+            ? part(url.queryParameter("uploadId"),
+            Integer.parseInt(url.queryParameter("partNumber")), request)
+            : put(objectKey, request);
+        case "DELETE" -> {
+          objects.remove(objectKey);
+          yield new MockResponse().setResponseCode(204);
+        }
+        default -> get(objectKey, request);
+      };
+    }
+
+    private MockResponse list(String bucket, String prefix) {
+      var xml = new StringBuilder("<ListBucketResult><Name>").append(bucket)
+          .append("</Name><IsTruncated>false</IsTruncated>");
+      new TreeMap<>(objects).forEach((objectKey, content) -> {
+        var key = objectKey.substring(bucket.length() + 1);
+        if (objectKey.startsWith(bucket + "/") && (prefix == null || key.startsWith(prefix))) {
+          xml.append("<Contents><Key>").append(key).append("</Key><Size>")
+              .append(content.length).append("</Size></Contents>");
+        }
+      });
+      return xml(xml.append("</ListBucketResult>").toString());
+    }
+
+    private MockResponse initiate(String bucket, String key) {
+      var uploadId = UUID.randomUUID().toString();
+      uploads.put(uploadId, Collections.synchronizedMap(new TreeMap<>()));
+      return xml("<InitiateMultipartUploadResult><Bucket>" + bucket + "</Bucket><Key>" + key
+          + "</Key><UploadId>" + uploadId + "</UploadId></InitiateMultipartUploadResult>");
+    }
+
+    private MockResponse part(String uploadId, int partNumber, RecordedRequest request) {
+      var etag = "\"" + uploadId + "-" + partNumber + "\"";
+      if (request.getHeader(COPY_SOURCE) != null) {
+        var range = request.getHeader(COPY_SOURCE + "-range");
+        var bounds = range.substring("bytes=".length()).split("-");
+        var start = Integer.parseInt(bounds[0]);
+        uploads.get(uploadId).put(partNumber, Arrays.copyOfRange(copySource(request), start,
+            Integer.parseInt(bounds[1]) + 1));
+        return xml("<CopyPartResult><ETag>" + etag + "</ETag></CopyPartResult>");
+      }
+      uploads.get(uploadId).put(partNumber, body(request));
+      return new MockResponse().setHeader("ETag", etag);
+    }
+
+    private MockResponse complete(String objectKey, String uploadId) {
+      var content = new ByteArrayOutputStream();
+      uploads.remove(uploadId).values().forEach(content::writeBytes);
+      objects.put(objectKey, content.toByteArray());
+      completedUploads++;
+      return xml("<CompleteMultipartUploadResult><ETag>\"" + uploadId
+          + "\"</ETag></CompleteMultipartUploadResult>");
+    }
+
+    private MockResponse put(String objectKey, RecordedRequest request) {
+      if (request.getHeader(COPY_SOURCE) != null) {
+        var content = copySource(request);
+        objects.put(objectKey, content);
+        return xml("<CopyObjectResult><ETag>" + etag(content) + "</ETag></CopyObjectResult>");
+      }
+      var content = body(request);
+      objects.put(objectKey, content);
+      return new MockResponse().setHeader("ETag", etag(content));
+    }
+
+    private MockResponse get(String objectKey, RecordedRequest request) {
+      var content = objects.get(objectKey);
+      if (content == null) {
+        return xml("<Error><Code>NoSuchKey</Code></Error>").setResponseCode(404);
+      }
+      var etag = etag(content);
+      if ("HEAD".equals(request.getMethod())) {
+        return new MockResponse().setHeader("ETag", etag)
+            .setHeader("Content-Length", content.length);
+      }
+      var range = request.getHeader("Range");
+      if (range == null) {
+        return new MockResponse().setHeader("ETag", etag).setBody(new Buffer().write(content));
+      }
+      if (objectKey.endsWith(".zip")) {
+        snapshotRangeRequests++;
+      }
+      var bounds = range.substring("bytes=".length()).split("-");
+      var start = Integer.parseInt(bounds[0]);
+      var end = Math.min(Integer.parseInt(bounds[1]), content.length - 1);
+      return new MockResponse().setResponseCode(206)
+          .setHeadersDelay(latency, TimeUnit.MILLISECONDS)
+          .setHeader("ETag", etag)
+          .setHeader("Content-Range", "bytes " + start + "-" + end + "/" + content.length)
+          .setBody(new Buffer().write(content, start, end - start + 1));
+    }
+
+    private byte[] copySource(RecordedRequest request) {
+      var source = URLDecoder.decode(request.getHeader(COPY_SOURCE), StandardCharsets.UTF_8);
+      return objects.get(source.startsWith("/") ? source.substring(1) : source);
+    }
+
+    private static String etag(byte[] content) {
+      return "\"" + Integer.toHexString(Arrays.hashCode(content)) + "\"";
+    }
+
+    private static MockResponse xml(String body) {
+      return new MockResponse().setHeader("Content-Type", "application/xml").setBody(body);
+    }
+
+    /**
+     * Decodes aws-chunked bodies: chunks prefixed by their hexadecimal size, followed by an empty
+     * chunk and the trailing checksum headers.
+     */
+    private static byte[] body(RecordedRequest request) {
+      var body = request.getBody().readByteArray();
+      if (request.getHeader("x-amz-decoded-content-length") == null) {
+        return body;
+      }
+      var decoded = new ByteArrayOutputStream();
+      var position = 0;
+      while (true) {
+        var lineEnd = indexOfLineEnd(body, position);
+        var header = new String(body, position, lineEnd - position, StandardCharsets.US_ASCII);
+        var size = Integer.parseInt(header.split(";")[0].trim(), 16);
+        if (size == 0) {
+          return decoded.toByteArray();
+        }
+        decoded.write(body, lineEnd + 2, size);
+        position = lineEnd + 2 + size + 2;
+      }
+    }
+
+    private static int indexOfLineEnd(byte[] body, int from) {
+      for (int i = from; i < body.length - 1; i++) {
+        if (body[i] == '\r' && body[i + 1] == '\n') {
+          return i;
+        }
+      }
+      throw new IllegalStateException("Malformed aws-chunked body");
+    }
+  }
+}
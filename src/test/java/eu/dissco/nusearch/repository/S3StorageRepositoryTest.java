@@ -1,14 +1,24 @@
 package eu.dissco.nusearch.repository;
 
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.Assert.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.then;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 
+import eu.dissco.nusearch.component.IndexSnapshotArchiver;
+import eu.dissco.nusearch.domain.IndexSnapshotManifest;
+import eu.dissco.nusearch.domain.IndexSnapshotManifest.SnapshotFile;
 import eu.dissco.nusearch.exception.IndexingFailedException;
 import eu.dissco.nusearch.property.IndexingProperties;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
@@ -16,23 +26,33 @@ import java.util.function.Consumer;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import software.amazon.awssdk.core.ResponseBytes;
+import software.amazon.awssdk.core.async.AsyncResponseTransformer;
 import software.amazon.awssdk.services.s3.S3AsyncClient;
+import software.amazon.awssdk.services.s3.model.CopyObjectResponse;
+import software.amazon.awssdk.services.s3.model.DeleteObjectResponse;
 import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+import software.amazon.awssdk.services.s3.model.HeadObjectResponse;
 import software.amazon.awssdk.services.s3.model.ListObjectsResponse;
 import software.amazon.awssdk.services.s3.model.NoSuchBucketException;
-import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
+import software.amazon.awssdk.services.s3.model.PutObjectResponse;
 import software.amazon.awssdk.services.s3.model.S3Object;
 import software.amazon.awssdk.transfer.s3.S3TransferManager;
+import software.amazon.awssdk.transfer.s3.model.CompletedCopy;
 import software.amazon.awssdk.transfer.s3.model.CompletedDirectoryDownload;
-import software.amazon.awssdk.transfer.s3.model.CompletedDirectoryUpload;
+import software.amazon.awssdk.transfer.s3.model.CompletedUpload;
+import software.amazon.awssdk.transfer.s3.model.Copy;
+import software.amazon.awssdk.transfer.s3.model.CopyRequest;
 import software.amazon.awssdk.transfer.s3.model.DirectoryDownload;
-import software.amazon.awssdk.transfer.s3.model.DirectoryUpload;
 import software.amazon.awssdk.transfer.s3.model.DownloadFileRequest;
 import software.amazon.awssdk.transfer.s3.model.FailedFileDownload;
-import software.amazon.awssdk.transfer.s3.model.FailedFileUpload;
-import software.amazon.awssdk.transfer.s3.model.UploadFileRequest;
+import software.amazon.awssdk.transfer.s3.model.Upload;
+import software.amazon.awssdk.transfer.s3.model.UploadRequest;
 
 @ExtendWith(MockitoExtension.class)
 class S3StorageRepositoryTest {
@@ -45,40 +65,81 @@ class S3StorageRepositoryTest {
 
   @Mock
   private IndexingProperties indexingProperties;
+  @Mock
+  private IndexManifestRepository manifestRepository;
+  @Mock
+  private IndexSnapshotArchiver snapshotArchiver;
   private S3StorageRepository s3StorageRepository;
 
+  @TempDir
+  private Path downloadLocation;
+
   @BeforeEach
   void setup() {
-    s3StorageRepository = new S3StorageRepository(s3Client, transferManager, indexingProperties);
+    s3StorageRepository = new S3StorageRepository(s3Client, transferManager, indexingProperties,
+        manifestRepository, snapshotArchiver);
+  }
+
+  @Test
+  void testUploadIndex() throws IOException {
+    // Given
+    String indexLocation = "src/test/resources/index";
+    var upload = mock(Upload.class);
+    givenUpload(upload);
+    given(upload.completionFuture()).willReturn(CompletableFuture.completedFuture(
+        CompletedUpload.builder().response(PutObjectResponse.builder().build()).build()));
+    var snapshotManifest = new IndexSnapshotManifest(List.of());
+    given(snapshotArchiver.write(eq(Path.of(indexLocation)), any())).willReturn(snapshotManifest);
+    given(snapshotArchiver.writeManifest(any())).willReturn("{\"files\":[]}".getBytes());
+    given(s3Client.headObject(any(Consumer.class))).willReturn(CompletableFuture.completedFuture(
+        HeadObjectResponse.builder().eTag("\"6d9a5b\"").build()));
+    var copy = mock(Copy.class);
+    given(transferManager.copy(any(CopyRequest.class))).willReturn(copy);
+    given(copy.completionFuture()).willReturn(CompletableFuture.completedFuture(
+        CompletedCopy.builder().response(CopyObjectResponse.builder().build()).build()));
+    given(s3Client.deleteObject(any(Consumer.class))).willReturn(
+        CompletableFuture.completedFuture(DeleteObjectResponse.builder().build()));
+
+    // When / Then
+    assertDoesNotThrow(() -> s3StorageRepository.uploadIndex(indexLocation));
+    then(snapshotArchiver).should().write(eq(Path.of(indexLocation)), any());
+    // the snapshot and its manifest
+    then(transferManager).should(times(2)).upload(any(UploadRequest.class));
+    // the snapshot is published once it is uploaded completely
+    then(transferManager).should().copy(any(CopyRequest.class));
+    then(snapshotArchiver).should().writeManifest(snapshotManifest.withEtag("\"6d9a5b\""));
   }
 
   @Test
-  void testUploadIndex() {
+  void testUploadIndexSameContent() throws IOException {
     // Given
     String indexLocation = "src/test/resources/index";
-    var dirUpload = mock(DirectoryUpload.class);
-    given(transferManager.uploadDirectory(any(Consumer.class))).willReturn(dirUpload);
-    given(dirUpload.completionFuture()).willReturn(CompletableFuture.completedFuture(
-        CompletedDirectoryUpload.builder().failedTransfers(List.of()).build()));
+    var manifest = "{\"colDataset\":1011,\"contentDigest\":\"4f2a\"}".getBytes();
+    given(s3Client.getObject(any(Consumer.class), any(AsyncResponseTransformer.class)))
+        .willReturn(CompletableFuture.completedFuture(
+            ResponseBytes.fromByteArray(GetObjectResponse.builder().build(), manifest)));
+    given(manifestRepository.hasSameContent(Path.of(indexLocation), manifest)).willReturn(true);
+    given(snapshotArchiver.readManifest(manifest)).willReturn(new IndexSnapshotManifest(List.of(
+        new SnapshotFile("segments_1", 100, 1, 40L),
+        new SnapshotFile(IndexManifestRepository.MANIFEST_FILE, manifest.length, 2, 200L)),
+        "\"6d9a5b\""));
+    given(s3Client.headObject(any(Consumer.class))).willReturn(CompletableFuture.completedFuture(
+        HeadObjectResponse.builder().eTag("\"6d9a5b\"").contentLength(500L).build()));
 
     // When / Then
     assertDoesNotThrow(() -> s3StorageRepository.uploadIndex(indexLocation));
+    then(transferManager).shouldHaveNoInteractions();
+    then(snapshotArchiver).should(never()).write(any(), any());
   }
 
   @Test
   void testUploadIndexFailed() {
     // Given
     String indexLocation = "src/test/resources/index";
-    var dirUpload = mock(DirectoryUpload.class);
-    given(transferManager.uploadDirectory(any(Consumer.class))).willReturn(dirUpload);
-    given(dirUpload.completionFuture()).willReturn(CompletableFuture.completedFuture(
-        CompletedDirectoryUpload.builder().failedTransfers(
-            List.of(FailedFileUpload.builder()
-                .exception(new IOException())
-                .request(
-                    UploadFileRequest.builder().putObjectRequest(PutObjectRequest.builder().build())
-                        .source(Paths.get(indexLocation).toFile()).build())
-                .build())).build()));
+    var upload = mock(Upload.class);
+    givenUpload(upload);
+    given(upload.completionFuture()).willReturn(
+        CompletableFuture.failedFuture(new IOException("Connection reset")));
 
     // When/Then
     assertThrows(IndexingFailedException.class,
@@ -97,9 +158,10 @@ class S3StorageRepositoryTest {
   }
 
   @Test
-  void testDownloadIndex() {
+  void testDownloadIndex() throws IOException {
     // Given
-    String indexLocation = "src/test/resources/index";
+    var staleCommit = Files.createFile(downloadLocation.resolve("segments_9"));
+    String indexLocation = downloadLocation.toString();
     given(s3Client.listObjects(any(Consumer.class))).willReturn(CompletableFuture.completedFuture(
         ListObjectsResponse.builder().contents(
                 List.of(S3Object.builder().key("a").build(),
@@ -114,6 +176,65 @@ class S3StorageRepositoryTest {
 
     // When / Then
     assertDoesNotThrow(() -> s3StorageRepository.downloadIndex(indexLocation));
+    assertThat(staleCommit).doesNotExist();
+  }
+
+  @Test
+  void testLocalIndexCurrent() {
+    // Given
+    String indexLocation = downloadLocation.toString();
+    var manifest = "{\"colDataset\":1011}".getBytes();
+    given(indexingProperties.getColDataset()).willReturn(1011);
+    given(s3Client.listObjects(any(Consumer.class))).willReturn(CompletableFuture.completedFuture(
+        ListObjectsResponse.builder().contents(
+                List.of(S3Object.builder().key("1011/segments_1").build(),
+                    S3Object.builder().key("1011/index-manifest.json").build()))
+            .build()));
+    given(s3Client.getObject(any(Consumer.class), any(AsyncResponseTransformer.class)))
+        .willReturn(CompletableFuture.completedFuture(
+            ResponseBytes.fromByteArray(GetObjectResponse.builder().build(), manifest)));
+    given(manifestRepository.matches(downloadLocation, manifest)).willReturn(true);
+
+    // When
+    assertDoesNotThrow(() -> s3StorageRepository.downloadIndex(indexLocation));
+
+    // Then
+    then(transferManager).shouldHaveNoInteractions();
+  }
+
+  @Test
+  void testIsIndexCurrentNewIndex() throws IndexingFailedException {
+    // Given
+    var manifest = "{\"colDataset\":1011}".getBytes();
+    given(indexingProperties.getColDataset()).willReturn(1011);
+    given(s3Client.listObjects(any(Consumer.class))).willReturn(CompletableFuture.completedFuture(
+        ListObjectsResponse.builder().contents(
+                List.of(S3Object.builder().key("1011/index-snapshot.zip").build(),
+                    S3Object.builder().key("1011/index-manifest.json").build()))
+            .build()));
+    given(s3Client.getObject(any(Consumer.class), any(AsyncResponseTransformer.class)))
+        .willReturn(CompletableFuture.completedFuture(
+            ResponseBytes.fromByteArray(GetObjectResponse.builder().build(), manifest)));
+    given(manifestRepository.matches(downloadLocation, manifest)).willReturn(false);
+
+    // When
+    var result = s3StorageRepository.isIndexCurrent(downloadLocation.toString());
+
+    // Then
+    assertThat(result).isFalse();
+  }
+
+  @Test
+  void testIsIndexCurrentNoIndex() throws IndexingFailedException {
+    // Given
+    given(s3Client.listObjects(any(Consumer.class))).willReturn(CompletableFuture.completedFuture(
+        ListObjectsResponse.builder().build()));
+
+    // When
+    var result = s3StorageRepository.isIndexCurrent(downloadLocation.toString());
+
+    // Then
+    assertThat(result).isTrue();
   }
 
   @Test
@@ -131,7 +252,7 @@ class S3StorageRepositoryTest {
   @Test
   void testDownloadIndexFailed() {
     // Given
-    String indexLocation = "src/test/resources/index";
+    String indexLocation = downloadLocation.toString();
     given(s3Client.listObjects(any(Consumer.class))).willReturn(CompletableFuture.completedFuture(
         ListObjectsResponse.builder().contents(
                 List.of(S3Object.builder().key("a").build(),
@@ -153,5 +274,15 @@ class S3StorageRepositoryTest {
         () -> s3StorageRepository.downloadIndex(indexLocation));
   }
 
-
+  private void givenUpload(Upload upload) {
+    given(s3Client.getObject(any(Consumer.class), any(AsyncResponseTransformer.class)))
+        .willReturn(CompletableFuture.failedFuture(NoSuchKeyException.builder().build()));
+    given(transferManager.upload(any(UploadRequest.class))).willAnswer(invocation -> {
+      // drain the body, as the snapshot is only written once the body is subscribed to
+      UploadRequest request = invocation.getArgument(0);
+      request.requestBody().subscribe(buffer -> {
+      });
+      return upload;
+    });
+  }
 }
@@ -0,0 +1,65 @@
+package eu.dissco.nusearch.repository;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import eu.dissco.nusearch.repository.FuzzyCandidateGenerator.FuzzyCandidate;
+import eu.dissco.nusearch.repository.NubSearcherManager.NubSearcher;
+import java.io.IOException;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field.Store;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.store.ByteBuffersDirectory;
+import org.junit.jupiter.api.Test;
+
+class SymSpellCandidateGeneratorTest {
+
+  @Test
+  void testCandidates() throws IOException {
+    // Given
+    try (var directory = givenIndex("lamenia vitrea", "lamenia vitreola", "lamenia", "kamenia",
+        "cixiidae");
+        var reader = DirectoryReader.open(directory)) {
+      var nubSearcher = givenSearcher(reader);
+      var generator = nubSearcher.fuzzyCandidates();
+
+      // When
+      var result = generator.candidates(nubSearcher, "lameni vitre", 2);
+
+      // Then
+      assertThat(result).containsExactly(new FuzzyCandidate("lamenia vitrea", 2));
+      assertThat(generator.candidates(nubSearcher, "lamenia vitera", 1))
+          .containsExactly(new FuzzyCandidate("lamenia vitrea", 1));
+      assertThat(generator.candidates(nubSearcher, "lamenia vitreo", 2))
+          .containsExactly(new FuzzyCandidate("lamenia vitrea", 1),
+              new FuzzyCandidate("lamenia vitreola", 2));
+      assertThat(generator.candidates(nubSearcher, "lamenix", 1))
+          .containsExactly(new FuzzyCandidate("lamenia", 1));
+      assertThat(generator.candidates(nubSearcher, "cixiidea", 1))
+          .containsExactly(new FuzzyCandidate("cixiidae", 1));
+      assertThat(generator.candidates(nubSearcher, "unknown", 2)).isEmpty();
+    }
+  }
+
+  private static NubSearcher givenSearcher(DirectoryReader reader) throws IOException {
+    var canonicalNames = CanonicalNames.load(reader);
+    return new NubSearcher(new IndexSearcher(reader), null, null, canonicalNames,
+        SymSpellCandidateGenerator.build(canonicalNames, 7), null);
+  }
+
+  private static ByteBuffersDirectory givenIndex(String... canonicalNames) throws IOException {
+    var directory = new ByteBuffersDirectory();
+    try (var writer = new IndexWriter(directory, new IndexWriterConfig(new StandardAnalyzer()))) {
+      for (var canonicalName : canonicalNames) {
+        var document = new Document();
+        document.add(new StringField(NubIndex.FIELD_CANONICAL_NAME, canonicalName, Store.YES));
+        writer.addDocument(document);
+      }
+    }
+    return directory;
+  }
+}
@@ -0,0 +1,62 @@
+package eu.dissco.nusearch.repository;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field.Store;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.store.ByteBuffersDirectory;
+import org.junit.jupiter.api.Test;
+
+class UsageDocIdsTest {
+
+  @Test
+  void testLoad() throws IOException {
+    // Given
+    try (var directory = new ByteBuffersDirectory();
+        var writer = new IndexWriter(directory, new IndexWriterConfig(new StandardAnalyzer()))) {
+      writer.addDocument(givenUsage("2214", "Lamenia vitrea"));
+      writer.addDocument(givenUsage("x3MB", "Lamenia"));
+      writer.commit();
+      writer.addDocument(givenUsage("3LXRD", "Cixiidae"));
+      writer.updateDocument(new Term(NubIndex.FIELD_ID, "2214"),
+          givenUsage("2214", "Lamenia vitrea updated"));
+      var higherTaxon = new Document();
+      higherTaxon.add(new StringField(NubIndex.FIELD_HIGHER_TAXON_ID, "x3MB", Store.NO));
+      writer.addDocument(higherTaxon);
+      writer.commit();
+
+      try (var reader = DirectoryReader.open(directory)) {
+        // When
+        var usageDocIds = UsageDocIds.load(reader);
+
+        // Then
+        assertThat(reader.leaves()).hasSize(2);
+        assertThat(usageDocIds.size()).isEqualTo(3);
+        assertThat(canonicalName(reader, usageDocIds.find("2214")))
+            .isEqualTo("Lamenia vitrea updated");
+        assertThat(canonicalName(reader, usageDocIds.find("3LXRD"))).isEqualTo("Cixiidae");
+        assertThat(canonicalName(reader, usageDocIds.find("x3MB"))).isEqualTo("Lamenia");
+        assertThat(usageDocIds.find("unknown")).isEqualTo(UsageDocIds.NOT_FOUND);
+        assertThat(usageDocIds.find(null)).isEqualTo(UsageDocIds.NOT_FOUND);
+      }
+    }
+  }
+
+  private static String canonicalName(DirectoryReader reader, int docId) throws IOException {
+    return reader.storedFields().document(docId).get(NubIndex.FIELD_CANONICAL_NAME);
+  }
+
+  private static Document givenUsage(String id, String canonicalName) {
+    var document = new Document();
+    document.add(new StringField(NubIndex.FIELD_ID, id, Store.YES));
+    document.add(new StringField(NubIndex.FIELD_CANONICAL_NAME, canonicalName, Store.YES));
+    return document;
+  }
+}
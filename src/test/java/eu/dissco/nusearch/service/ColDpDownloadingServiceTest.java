@@ -3,11 +3,16 @@ package eu.dissco.nusearch.service;
 import static eu.dissco.nusearch.TestUtils.MAPPER;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.Assert.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.willAnswer;
 
-import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import eu.dissco.nusearch.component.RangedFileDownloader;
 import eu.dissco.nusearch.exception.ColAuthenticationException;
+import eu.dissco.nusearch.exception.ColDownloadException;
 import eu.dissco.nusearch.exception.ColExportRequestException;
 import eu.dissco.nusearch.property.ColDownloadProperties;
 import eu.dissco.nusearch.property.IndexingProperties;
@@ -16,9 +21,7 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import okhttp3.mockwebserver.MockResponse;
 import okhttp3.mockwebserver.MockWebServer;
-import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.AfterEach;
-import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -30,33 +33,29 @@ import org.springframework.web.reactive.function.client.WebClient;
 @ExtendWith(MockitoExtension.class)
 class ColDpDownloadingServiceTest {
 
-  private static MockWebServer mockHandleServer;
+  private MockWebServer mockHandleServer;
   private final ObjectMapper mapper = new ObjectMapper();
   private final ColDownloadProperties colDownloadProperties = new ColDownloadProperties();
   @Mock
   private IndexingProperties properties;
+  @Mock
+  private RangedFileDownloader downloader;
   private ColDpDownloadingService service;
 
-  @BeforeAll
-  static void init() throws IOException {
+  @BeforeEach
+  void setup() throws IOException {
     mockHandleServer = new MockWebServer();
     mockHandleServer.start();
-  }
-
-  @AfterAll
-  static void destroy() throws IOException {
-    mockHandleServer.shutdown();
-  }
-
-  @BeforeEach
-  void setup() {
+    colDownloadProperties.setReuseExport(false);
     WebClient webClient = WebClient.create(
         String.format("http://%s:%s", mockHandleServer.getHostName(), mockHandleServer.getPort()));
-    service = new ColDpDownloadingService(mapper, webClient, properties, colDownloadProperties);
+    service = new ColDpDownloadingService(mapper, webClient, properties, colDownloadProperties,
+        downloader);
   }
 
   @AfterEach
   void cleanup() throws IOException {
+    mockHandleServer.shutdown();
     var path = Path.of("src/test/resources/download.zip");
     if (Files.exists(path)) {
       Files.deleteIfExists(path);
@@ -75,9 +74,7 @@ class ColDpDownloadingServiceTest {
         .setResponseCode(HttpStatus.OK.value())
         .setBody(MAPPER.writeValueAsString(responseBody))
         .addHeader("Content-Type", "application/json"));
-    mockHandleServer.enqueue(new MockResponse()
-        .setResponseCode(HttpStatus.OK.value()));
-
+    givenDownload();
     given(properties.getTempColDpLocation()).willReturn(pathLocation);
 
     // When
@@ -136,9 +133,7 @@ class ColDpDownloadingServiceTest {
         .setResponseCode(HttpStatus.OK.value())
         .setBody(mapper.writeValueAsString(positiveResponseBody))
         .addHeader("Content-Type", "application/json"));
-    mockHandleServer.enqueue(new MockResponse()
-        .setResponseCode(HttpStatus.OK.value()));
-
+    givenDownload();
     given(properties.getTempColDpLocation()).willReturn(pathLocation);
 
     // When
@@ -148,16 +143,56 @@ class ColDpDownloadingServiceTest {
     assertThat(response).isEqualTo(Path.of(pathLocation));
   }
 
+  @Test
+  void testChecksumMismatch() throws Exception {
+    // Given
+    var pathLocation = "src/test/resources/download.zip";
+    var responseBody = givenDownloadResponseBody();
+    responseBody.put("size", 4);
+    responseBody.put("md5", "d41d8cd98f00b204e9800998ecf8427e");
+    mockHandleServer.enqueue(new MockResponse()
+        .setResponseCode(HttpStatus.CREATED.value())
+        .setBody("\"6877d4ef-cc87-42f0-b922-f54133185840\""));
+    mockHandleServer.enqueue(new MockResponse()
+        .setResponseCode(HttpStatus.OK.value())
+        .setBody(mapper.writeValueAsString(responseBody))
+        .addHeader("Content-Type", "application/json"));
+    givenDownload();
+    given(properties.getTempColDpLocation()).willReturn(pathLocation);
+
+    // When/Then
+    assertThrows(ColDownloadException.class, () -> service.downloadColDpDataset());
+    assertThat(Path.of(pathLocation)).doesNotExist();
+  }
+
   @Test
   void testExportFails() throws Exception {
     // Given
-    colDownloadProperties.setExportStatusRetryCount(3);
-    colDownloadProperties.setExportStatusRetryTime(10);
     var negativeResponseBody = givenDownloadResponseBody("failed");
     mockHandleServer.enqueue(new MockResponse()
         .setResponseCode(HttpStatus.CREATED.value())
         .setBody("\"6877d4ef-cc87-42f0-b922-f54133185840\""));
-    for (int i = 0; i < 5; i++) {
+    mockHandleServer.enqueue(new MockResponse()
+        .setResponseCode(HttpStatus.OK.value())
+        .setBody(mapper.writeValueAsString(negativeResponseBody))
+        .addHeader("Content-Type", "application/json"));
+
+    // When/Then
+    assertThrows(ColExportRequestException.class, () -> service.downloadColDpDataset());
+    assertThat(mockHandleServer.getRequestCount()).isEqualTo(2);
+  }
+
+  @Test
+  void testExportTimeout() throws Exception {
+    // Given
+    colDownloadProperties.setExportStatusRetryTime(10);
+    colDownloadProperties.setExportStatusMaxRetryTime(20);
+    colDownloadProperties.setExportStatusTimeout(200);
+    var negativeResponseBody = givenDownloadResponseBody("running");
+    mockHandleServer.enqueue(new MockResponse()
+        .setResponseCode(HttpStatus.CREATED.value())
+        .setBody("\"6877d4ef-cc87-42f0-b922-f54133185840\""));
+    for (int i = 0; i < 100; i++) {
       mockHandleServer.enqueue(new MockResponse()
           .setResponseCode(HttpStatus.OK.value())
           .setBody(mapper.writeValueAsString(negativeResponseBody))
@@ -166,13 +201,99 @@ class ColDpDownloadingServiceTest {
 
     // When/Then
     assertThrows(ColExportRequestException.class, () -> service.downloadColDpDataset());
+    assertThat(mockHandleServer.getRequestCount()).isGreaterThan(2);
+  }
+
+  @Test
+  void testReuseFinishedExport() throws Exception {
+    // Given
+    var pathLocation = "src/test/resources/download.zip";
+    colDownloadProperties.setReuseExport(true);
+    given(properties.getColDataset()).willReturn(1011);
+    givenDataset(4);
+    var otherAttempt = givenExport(3);
+    var export = givenExport(4);
+    mockHandleServer.enqueue(new MockResponse()
+        .setResponseCode(HttpStatus.OK.value())
+        .setBody(mapper.writeValueAsString(
+            mapper.createObjectNode().set("result", mapper.createArrayNode()
+                .add(otherAttempt).add(export))))
+        .addHeader("Content-Type", "application/json"));
+    givenDownload();
+    given(properties.getTempColDpLocation()).willReturn(pathLocation);
+
+    // When
+    var response = service.downloadColDpDataset();
+
+    // Then
+    assertThat(response).isEqualTo(Path.of(pathLocation));
+    assertThat(mockHandleServer.takeRequest().getPath()).isEqualTo("/dataset/1011");
+    assertThat(mockHandleServer.takeRequest().getPath())
+        .isEqualTo("/export?datasetKey=1011&format=coldp&status=finished");
+    assertThat(mockHandleServer.getRequestCount()).isEqualTo(2);
+  }
+
+  @Test
+  void testNoReusableExport() throws Exception {
+    // Given
+    var pathLocation = "src/test/resources/download.zip";
+    colDownloadProperties.setReuseExport(true);
+    given(properties.getColDataset()).willReturn(1011);
+    givenDataset(5);
+    mockHandleServer.enqueue(new MockResponse()
+        .setResponseCode(HttpStatus.OK.value())
+        .setBody(mapper.writeValueAsString(
+            mapper.createObjectNode().set("result", mapper.createArrayNode().add(givenExport(4)))))
+        .addHeader("Content-Type", "application/json"));
+    mockHandleServer.enqueue(new MockResponse()
+        .setResponseCode(HttpStatus.CREATED.value())
+        .setBody("\"6877d4ef-cc87-42f0-b922-f54133185840\""));
+    mockHandleServer.enqueue(new MockResponse()
+        .setResponseCode(HttpStatus.OK.value())
+        .setBody(mapper.writeValueAsString(givenDownloadResponseBody()))
+        .addHeader("Content-Type", "application/json"));
+    givenDownload();
+    given(properties.getTempColDpLocation()).willReturn(pathLocation);
+
+    // When
+    var response = service.downloadColDpDataset();
+
+    // Then
+    assertThat(response).isEqualTo(Path.of(pathLocation));
+    assertThat(mockHandleServer.getRequestCount()).isEqualTo(4);
+  }
+
+  private void givenDataset(int attempt) throws Exception {
+    mockHandleServer.enqueue(new MockResponse()
+        .setResponseCode(HttpStatus.OK.value())
+        .setBody(mapper.writeValueAsString(mapper.createObjectNode()
+            .put("key", 1011)
+            .put("attempt", attempt)))
+        .addHeader("Content-Type", "application/json"));
+  }
+
+  private ObjectNode givenExport(int attempt) {
+    var export = givenDownloadResponseBody();
+    export.put("key", "6877d4ef-cc87-42f0-b922-f54133185840");
+    export.put("attempt", attempt);
+    export.putObject("request")
+        .put("format", "COLDP")
+        .put("synonyms", true)
+        .put("extended", true);
+    return export;
+  }
+
+  private void givenDownload() throws Exception {
+    willAnswer(invocation -> Files.write(invocation.getArgument(1), new byte[]{1, 2, 3, 4}))
+        .given(downloader).download(eq(givenDownloadResponseBody().get("download").asText()),
+            any());
   }
 
-  private JsonNode givenDownloadResponseBody() {
+  private ObjectNode givenDownloadResponseBody() {
     return givenDownloadResponseBody("finished");
   }
 
-  private JsonNode givenDownloadResponseBody(String status) {
+  private ObjectNode givenDownloadResponseBody(String status) {
     var node = mapper.createObjectNode();
     node.put("download",
         String.format("http://%s:%s/%s", mockHandleServer.getHostName(), mockHandleServer.getPort(),
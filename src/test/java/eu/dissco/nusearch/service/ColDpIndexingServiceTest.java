@@ -1,28 +1,44 @@
 package eu.dissco.nusearch.service;
 
-import com.univocity.parsers.tsv.TsvRoutines;
-import eu.dissco.nusearch.Profiles;
-import eu.dissco.nusearch.configuration.TsvReader;
+import com.google.common.collect.Iterables;
+import eu.dissco.nusearch.domain.NameUsageTree;
+import eu.dissco.nusearch.exception.IndexingFailedException;
 import eu.dissco.nusearch.property.IndexingProperties;
-import eu.dissco.nusearch.repository.StorageRepositoryInterface;
+import eu.dissco.nusearch.utils.MappedTsvFile;
+import eu.dissco.nusearch.utils.NameUsageTsvDecoder;
+import org.apache.lucene.document.Document;
 import org.apache.lucene.index.IndexWriter;
+import org.gbif.api.model.checklistbank.ParsedName;
 import org.gbif.nameparser.NameParserGbifV1;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
-import org.springframework.core.env.Environment;
 
+import java.io.IOException;
 import java.nio.file.Path;
+import java.util.Map;
 
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
 import static org.mockito.BDDMockito.given;
 import static org.mockito.BDDMockito.then;
+import static org.mockito.BDDMockito.willThrow;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 
 @ExtendWith(MockitoExtension.class)
 class ColDpIndexingServiceTest {
 
-  private final TsvRoutines tsvRoutines = new TsvReader(new IndexingProperties()).createTsvReader();
+  private static final String JOB_ID = "3a1d6f1e-5c0b-4a57-9f4e-0c2b1f7d8e90";
+
   @Mock
   private IndexWriter indexWriter;
   @Mock
@@ -30,52 +46,193 @@ class ColDpIndexingServiceTest {
   @Mock
   private NameParserGbifV1 nameParserGbifV1;
   @Mock
-  private ColDpDownloadingService colDpDownloadingService;
-  @Mock
-  private Environment environment;
-  @Mock
-  private StorageRepositoryInterface storageRepository;
+  private ParsedName parsedName;
+
+  @TempDir
+  private Path scratchLocation;
 
+  private MappedTsvFile nameUsages;
+  private NameUsageTsvDecoder decoder;
   private ColDpIndexingService service;
 
   @BeforeEach
-  void setup() {
-    service = new ColDpIndexingService(tsvRoutines, indexWriter, properties, nameParserGbifV1,
-        colDpDownloadingService, environment, storageRepository);
+  void setup() throws IOException {
+    service = new ColDpIndexingService(indexWriter, properties, nameParserGbifV1);
+    nameUsages = MappedTsvFile.inflate(Path.of("src/test/resources/test.zip"), "NameUsage.tsv",
+        scratchLocation.resolve("NameUsage.tsv"));
+    decoder = NameUsageTsvDecoder.open(nameUsages, 196608);
+  }
+
+  @AfterEach
+  void tearDown() {
+    nameUsages.close();
   }
 
   @Test
   void testFullIndexing() throws Exception {
     // Given
-    given(colDpDownloadingService.downloadColDpDataset()).willReturn(Path.of("src/test/resources/test.zip"));
+    givenIndexingThreads();
+    given(indexWriter.isOpen()).willReturn(true);
 
-    // When / Then
-    service.setup();
+    // When
+    buildIndex();
+
+    // Then
+    then(indexWriter).should().deleteAll();
+    then(indexWriter).should(times(25436)).addDocument(any());
+    then(indexWriter).should()
+        .addDocuments(argThat(documents -> Iterables.size(documents) == 7570));
+    then(indexWriter).should().close();
+  }
+
+  @Test
+  void testExternalMemoryIndexing() throws Exception {
+    // Given
+    givenIndexingThreads();
+    given(properties.isExternalMemoryIndexing()).willReturn(true);
+    given(properties.getExternalMemoryBudgetMb()).willReturn(1);
+    given(properties.getScratchNameUsageLocation())
+        .willReturn(scratchLocation.resolve("NameUsage.tsv").toString());
+    given(indexWriter.isOpen()).willReturn(true);
+
+    // When
+    try (var tree = service.buildNameUsageTree(decoder)) {
+      var fingerprints = service.indexNameUsages(tree, decoder, JOB_ID);
+      service.mergeIndex(tree, fingerprints, JOB_ID);
+    }
+
+    // Then
+    then(indexWriter).should(times(25436)).addDocument(any());
+    then(indexWriter).should()
+        .addDocuments(argThat(documents -> Iterables.size(documents) == 7570));
+    assertThat(scratchLocation.resolve("NameUsage.tsv-tree")).doesNotExist();
+  }
+
+  @Test
+  void testOptimizeForServing() throws Exception {
+    // Given
+    givenIndexingThreads();
+    given(properties.isOptimizeForServing()).willReturn(true);
+    given(indexWriter.isOpen()).willReturn(true);
+
+    // When
+    buildIndex();
+
+    // Then
+    then(indexWriter).should().forceMerge(1);
+    then(indexWriter).should().close();
+  }
+
+  @Test
+  void testParsedAuthorshipIndexed() throws Exception {
+    // Given
+    givenIndexingThreads();
+    given(parsedName.getBracketAuthorship()).willReturn("Muir");
+    given(parsedName.getBracketYear()).willReturn("1913");
+    var captor = ArgumentCaptor.forClass(Document.class);
+
+    // When
+    buildIndex();
+
+    // Then
+    then(indexWriter).should(times(25436)).addDocument(captor.capture());
+    var document = captor.getAllValues().stream()
+        .filter(doc -> "2214".equals(doc.get("id")))
+        .findFirst().orElseThrow();
+    assertThat(document.get("pbauth")).isEqualTo("Muir");
+    assertThat(document.get("pbyear")).isEqualTo("1913");
+    assertThat(document.get("pauth")).isNull();
+  }
+
+  @Test
+  void testCommitBatches() throws Exception {
+    // Given
+    givenIndexingThreads();
+    given(properties.getCommitBatchSize()).willReturn(10000);
+    var tree = service.buildNameUsageTree(decoder);
+
+    // When
+    service.indexNameUsages(tree, decoder, JOB_ID);
+
+    // Then
+    then(indexWriter).should(times(3)).setLiveCommitData(any());
+    then(indexWriter).should(times(3)).commit();
+  }
+
+  @Test
+  void testResumeFromCommit() throws Exception {
+    // Given
+    givenIndexingThreads();
+    given(indexWriter.getLiveCommitData()).willReturn(
+        Map.of("jobId", JOB_ID, "indexedRows", "25000", "merged", "false").entrySet());
+    var tree = service.buildNameUsageTree(decoder);
+
+    // When
+    service.indexNameUsages(tree, decoder, JOB_ID);
+
+    // Then
+    then(indexWriter).should(never()).deleteAll();
+    then(indexWriter).should(times(436)).addDocument(any());
   }
 
   @Test
-  void testS3Indexing() throws Exception {
+  void testCommitOfOtherJobIgnored() throws Exception {
     // Given
-    given(environment.matchesProfiles(Profiles.S3_RESOLVER)).willReturn(false);
-    given(colDpDownloadingService.downloadColDpDataset()).willReturn(Path.of("src/test/resources/test.zip"));
-    given(environment.matchesProfiles(Profiles.S3_INDEXER)).willReturn(true);
+    givenIndexingThreads();
+    given(indexWriter.getLiveCommitData()).willReturn(
+        Map.of("jobId", "other", "indexedRows", "25000", "merged", "true").entrySet());
+    given(indexWriter.isOpen()).willReturn(true);
 
     // When
-    service.setup();
+    buildIndex();
 
     // Then
-    then(storageRepository).should().uploadIndex(properties.getIndexLocation());
+    then(indexWriter).should().deleteAll();
+    then(indexWriter).should(times(25436)).addDocument(any());
+    then(indexWriter).should().addDocuments(any());
   }
 
   @Test
-  void testS3Resolver() throws Exception {
+  void testAlreadyMerged() throws Exception {
     // Given
-    given(environment.matchesProfiles(Profiles.S3_RESOLVER)).willReturn(true);
+    given(indexWriter.getLiveCommitData()).willReturn(
+        Map.of("jobId", JOB_ID, "indexedRows", "25436", "merged", "true").entrySet());
+    given(indexWriter.isOpen()).willReturn(true);
 
     // When
-    service.setup();
+    service.mergeIndex(new NameUsageTree(), null, JOB_ID);
 
     // Then
-    then(storageRepository).should().downloadIndex(properties.getIndexLocation());
+    then(indexWriter).should(never()).addDocuments(any());
+    then(indexWriter).should(never()).commit();
+    then(indexWriter).should().close();
+  }
+
+  @Test
+  void testIndexingFailed() throws Exception {
+    // Given
+    givenIndexingThreads();
+    willThrow(IOException.class).given(indexWriter).addDocument(any());
+    var tree = service.buildNameUsageTree(decoder);
+
+    // When / Then
+    assertThrows(IndexingFailedException.class,
+        () -> service.indexNameUsages(tree, decoder, JOB_ID));
+    then(indexWriter).should(never()).commit();
+    then(indexWriter).should(never()).close();
+  }
+
+  private void buildIndex() throws Exception {
+    var tree = service.buildNameUsageTree(decoder);
+    var fingerprints = service.indexNameUsages(tree, decoder, JOB_ID);
+    service.mergeIndex(tree, fingerprints, JOB_ID);
+  }
+
+  private void givenIndexingThreads() throws Exception {
+    given(properties.getIndexingThreads()).willReturn(4);
+    given(properties.getIndexingQueueSize()).willReturn(100);
+    lenient().when(properties.getCommitBatchSize()).thenReturn(100000);
+    // Parsing is skipped for usages without authorship, a failing run might not reach one
+    lenient().when(nameParserGbifV1.parse(any(), any())).thenReturn(parsedName);
   }
 }
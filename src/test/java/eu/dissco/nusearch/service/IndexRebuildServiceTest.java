@@ -0,0 +1,196 @@
+package eu.dissco.nusearch.service;
+
+import static eu.dissco.nusearch.repository.NubIndex.SCHEMA_VERSION;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.then;
+import static org.mockito.BDDMockito.willAnswer;
+import static org.mockito.BDDMockito.willReturn;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import eu.dissco.nusearch.configuration.LuceneConfiguration;
+import eu.dissco.nusearch.domain.IndexManifest;
+import eu.dissco.nusearch.exception.IndexingFailedException;
+import eu.dissco.nusearch.property.IndexingProperties;
+import eu.dissco.nusearch.repository.IndexManifestRepository;
+import eu.dissco.nusearch.repository.NubSearcherManager;
+import eu.dissco.nusearch.repository.StorageRepositoryInterface;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.Optional;
+import java.util.OptionalInt;
+import org.gbif.nameparser.NameParserGbifV1;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.core.env.Environment;
+
+@ExtendWith(MockitoExtension.class)
+class IndexRebuildServiceTest {
+
+  @Mock
+  private ColDpDownloadingService colDpDownloadingService;
+  @Mock
+  private IndexManifestRepository manifestRepository;
+  @Mock
+  private StorageRepositoryInterface storageRepository;
+  @Mock
+  private NubSearcherManager searcherManager;
+  @Mock
+  private NameParserGbifV1 nameParser;
+  @Mock
+  private Environment environment;
+  @Mock
+  private ColDpIndexingService indexingService;
+  @Mock
+  private IndexingJob indexingJob;
+
+  @TempDir
+  private Path location;
+
+  private Path indexLocation;
+  private IndexingProperties properties;
+  private SimpleMeterRegistry meterRegistry;
+  private IndexRebuildService service;
+
+  @BeforeEach
+  void setup() {
+    indexLocation = location.resolve("index");
+    properties = new IndexingProperties();
+    properties.setColDataset(1011);
+    properties.setIndexLocation(indexLocation.toString());
+    properties.setCheckpointLocation(location.resolve("checkpoint.json").toString());
+    meterRegistry = new SimpleMeterRegistry();
+    service = spy(new IndexRebuildService(colDpDownloadingService, manifestRepository,
+        storageRepository, searcherManager, nameParser, new ObjectMapper(), properties,
+        environment, meterRegistry));
+  }
+
+  @Test
+  void testCurrentRelease() throws Exception {
+    // Given
+    given(colDpDownloadingService.getDatasetAttempt()).willReturn(OptionalInt.of(4));
+    given(searcherManager.getIndexLocation()).willReturn(indexLocation);
+    given(manifestRepository.load(indexLocation)).willReturn(Optional.of(givenManifest(4)));
+
+    // When
+    service.checkForNewRelease();
+
+    // Then
+    then(service).should(never()).createIndexingService(any());
+    then(searcherManager).should(never()).swap(any());
+  }
+
+  @Test
+  void testNewRelease() throws Exception {
+    // Given
+    given(colDpDownloadingService.getDatasetAttempt()).willReturn(OptionalInt.of(5));
+    given(searcherManager.getIndexLocation()).willReturn(indexLocation);
+    given(manifestRepository.load(indexLocation)).willReturn(Optional.of(givenManifest(4)));
+    var generation = ArgumentCaptor.forClass(IndexingProperties.class);
+    willReturn(indexingService).given(service).createIndexingService(generation.capture());
+    willReturn(indexingJob).given(service).createIndexingJob(any(), any());
+
+    // When
+    service.checkForNewRelease();
+
+    // Then
+    then(indexingJob).should().execute();
+    then(indexingService).should().closeIndex();
+    var nextLocation = Path.of(generation.getValue().getIndexLocation());
+    then(searcherManager).should().swap(nextLocation);
+    assertThat(nextLocation.getFileName().toString()).matches("index-\\d+");
+    assertThat(generation.getValue().getIndexingThreads()).isEqualTo(1);
+    assertThat(generation.getValue().getCheckpointLocation())
+        .isNotEqualTo(properties.getCheckpointLocation());
+    assertThat(meterRegistry.get(IndexRebuildService.REBUILD_TIMER).tag("outcome", "success")
+        .timer().count()).isEqualTo(1);
+    assertThat(meterRegistry.get(IndexRebuildService.SWAP_TIMER).timer().count()).isEqualTo(1);
+  }
+
+  @Test
+  void testRebuildFailed() throws Exception {
+    // Given
+    given(colDpDownloadingService.getDatasetAttempt()).willReturn(OptionalInt.of(5));
+    given(searcherManager.getIndexLocation()).willReturn(indexLocation);
+    given(manifestRepository.load(indexLocation)).willReturn(Optional.empty());
+    var generation = ArgumentCaptor.forClass(IndexingProperties.class);
+    willAnswer(invocation -> {
+      Files.createDirectories(Path.of(invocation.<IndexingProperties>getArgument(0)
+          .getIndexLocation()));
+      return indexingService;
+    }).given(service).createIndexingService(generation.capture());
+    willReturn(indexingJob).given(service).createIndexingJob(any(), any());
+    willAnswer(invocation -> {
+      throw new IndexingFailedException("Failed to download the ColDP dataset");
+    }).given(indexingJob).execute();
+
+    // When
+    service.checkForNewRelease();
+
+    // Then
+    then(indexingService).should().closeIndex();
+    then(searcherManager).should(never()).swap(any());
+    assertThat(Path.of(generation.getValue().getIndexLocation())).doesNotExist();
+    assertThat(meterRegistry.get(IndexRebuildService.REBUILD_TIMER).tag("outcome", "failure")
+        .timer().count()).isEqualTo(1);
+  }
+
+  @Test
+  void testAttemptUnavailable() throws IOException {
+    // Given
+    given(colDpDownloadingService.getDatasetAttempt()).willReturn(OptionalInt.empty());
+
+    // When
+    service.checkForNewRelease();
+
+    // Then
+    then(service).should(never()).createIndexingService(any());
+    then(searcherManager).shouldHaveNoInteractions();
+  }
+
+  @Test
+  void testRebuiltIndexRestored() throws Exception {
+    // Given
+    var rebuilt = NubSearcherManager.nextIndexLocation(indexLocation);
+    var generation = new IndexingProperties();
+    generation.setIndexLocation(rebuilt.toString());
+    TestIndexBuilder.buildIndex(generation);
+    var manifestRepository = new IndexManifestRepository(new ObjectMapper()
+        .findAndRegisterModules(), properties);
+
+    // When
+    new LuceneConfiguration(properties).cofigureIndexWriter(manifestRepository).close();
+
+    // Then
+    assertThat(rebuilt).doesNotExist();
+    assertThat(manifestRepository.hasValidIndex(indexLocation)).isTrue();
+  }
+
+  @Test
+  void testRebuildDisabled() {
+    // Given
+    properties.setRebuildIndex(false);
+
+    // When
+    service.checkForNewRelease();
+
+    // Then
+    then(colDpDownloadingService).shouldHaveNoInteractions();
+  }
+
+  private static IndexManifest givenManifest(int attempt) {
+    return new IndexManifest(1011, SCHEMA_VERSION, attempt, false, Instant.parse("2024-12-01T10:15:30Z"),
+        "9e0c2b1d", null, null);
+  }
+}
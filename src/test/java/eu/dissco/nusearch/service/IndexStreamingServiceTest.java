@@ -0,0 +1,95 @@
+package eu.dissco.nusearch.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.then;
+import static org.mockito.BDDMockito.willAnswer;
+
+import eu.dissco.nusearch.property.IndexingProperties;
+import eu.dissco.nusearch.property.S3Properties;
+import eu.dissco.nusearch.repository.NubIndex;
+import eu.dissco.nusearch.repository.S3StorageRepository;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Optional;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field.Store;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.store.FSDirectory;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+@ExtendWith(MockitoExtension.class)
+class IndexStreamingServiceTest {
+
+  @Mock
+  private S3StorageRepository storageRepository;
+
+  @TempDir
+  private Path location;
+
+  private Path indexLocation;
+  private IndexStreamingService service;
+
+  @BeforeEach
+  void setup() {
+    indexLocation = location.resolve("index");
+    var properties = new IndexingProperties();
+    properties.setIndexLocation(indexLocation.toString());
+    service = new IndexStreamingService(storageRepository, properties, new S3Properties());
+  }
+
+  @Test
+  void testIndexCurrent() throws Exception {
+    // Given
+    givenIndex();
+    given(storageRepository.isIndexCurrent(indexLocation.toString())).willReturn(true);
+
+    // When
+    try (var searcherManager = service.openSearcherManager()) {
+
+      // Then
+      assertThat(searcherManager.getIndexLocation()).isEqualTo(indexLocation);
+      assertThat(searcherManager.isStreaming()).isFalse();
+    }
+    then(storageRepository).shouldHaveNoMoreInteractions();
+  }
+
+  @Test
+  void testNoSnapshotDownloaded() throws Exception {
+    // Given
+    given(storageRepository.isIndexCurrent(indexLocation.toString())).willReturn(false);
+    given(storageRepository.openSnapshot(any(), anyInt())).willReturn(Optional.empty());
+    willAnswer(invocation -> {
+      givenIndex();
+      return null;
+    }).given(storageRepository).downloadIndex(indexLocation.toString());
+
+    // When
+    try (var searcherManager = service.openSearcherManager()) {
+
+      // Then
+      assertThat(searcherManager.getIndexLocation()).isEqualTo(indexLocation);
+    }
+    then(storageRepository).should()
+        .openSnapshot(location.resolve("index-stream"), 1024 * 1024);
+  }
+
+  private void givenIndex() throws IOException {
+    try (var directory = FSDirectory.open(indexLocation);
+        var writer = new IndexWriter(directory, new IndexWriterConfig(new StandardAnalyzer()))) {
+      var document = new Document();
+      document.add(new StringField(NubIndex.FIELD_CANONICAL_NAME, "lamenia vitrea", Store.YES));
+      writer.addDocument(document);
+    }
+  }
+}
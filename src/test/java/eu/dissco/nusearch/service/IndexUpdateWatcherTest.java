@@ -0,0 +1,143 @@
+package eu.dissco.nusearch.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.then;
+import static org.mockito.BDDMockito.willAnswer;
+import static org.mockito.BDDMockito.willThrow;
+import static org.mockito.Mockito.never;
+
+import eu.dissco.nusearch.exception.IndexingFailedException;
+import eu.dissco.nusearch.property.IndexingProperties;
+import eu.dissco.nusearch.repository.NubSearcherManager;
+import eu.dissco.nusearch.repository.StorageRepositoryInterface;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+@ExtendWith(MockitoExtension.class)
+class IndexUpdateWatcherTest {
+
+  @Mock
+  private StorageRepositoryInterface storageRepository;
+  @Mock
+  private NubSearcherManager searcherManager;
+
+  @TempDir
+  private Path location;
+
+  private Path indexLocation;
+  private IndexingProperties properties;
+  private IndexUpdateWatcher watcher;
+
+  @BeforeEach
+  void setup() {
+    indexLocation = location.resolve("index");
+    properties = new IndexingProperties();
+    properties.setIndexLocation(indexLocation.toString());
+    watcher = new IndexUpdateWatcher(storageRepository, searcherManager, properties);
+  }
+
+  @Test
+  void testIndexCurrent() throws Exception {
+    // Given
+    given(searcherManager.getIndexLocation()).willReturn(indexLocation);
+    given(storageRepository.isIndexCurrent(indexLocation.toString())).willReturn(true);
+
+    // When
+    watcher.checkForNewIndex();
+
+    // Then
+    then(storageRepository).should().isIndexCurrent(indexLocation.toString());
+    then(storageRepository).shouldHaveNoMoreInteractions();
+    then(searcherManager).should().isStreaming();
+    then(searcherManager).should().getIndexLocation();
+    then(searcherManager).shouldHaveNoMoreInteractions();
+  }
+
+  @Test
+  void testStreaming() throws Exception {
+    // Given
+    given(searcherManager.isStreaming()).willReturn(true);
+
+    // When
+    watcher.checkForNewIndex();
+
+    // Then
+    then(storageRepository).shouldHaveNoInteractions();
+    then(searcherManager).should(never()).swap(any());
+  }
+
+  @Test
+  void testNewIndex() throws Exception {
+    // Given
+    given(searcherManager.getIndexLocation()).willReturn(indexLocation);
+    given(storageRepository.isIndexCurrent(indexLocation.toString())).willReturn(false);
+    var captor = ArgumentCaptor.forClass(Path.class);
+
+    // When
+    watcher.checkForNewIndex();
+
+    // Then
+    then(searcherManager).should().swap(captor.capture());
+    then(storageRepository).should().downloadIndex(captor.getValue().toString());
+    assertThat(captor.getValue().getParent()).isEqualTo(location);
+    assertThat(captor.getValue().getFileName().toString()).matches("index-\\d+");
+  }
+
+  @Test
+  void testDownloadFailed() throws Exception {
+    // Given
+    given(searcherManager.getIndexLocation()).willReturn(indexLocation);
+    given(storageRepository.isIndexCurrent(indexLocation.toString())).willReturn(false);
+    var nextLocation = ArgumentCaptor.forClass(String.class);
+    willAnswer(invocation -> {
+      Files.createDirectories(Path.of(invocation.<String>getArgument(0)).resolve("segments_1"));
+      throw new IndexingFailedException("Failed to download index snapshot from S3");
+    }).given(storageRepository).downloadIndex(nextLocation.capture());
+
+    // When
+    watcher.checkForNewIndex();
+
+    // Then
+    then(searcherManager).should(never()).swap(any());
+    assertThat(Path.of(nextLocation.getValue())).doesNotExist();
+  }
+
+  @Test
+  void testSwapFailed() throws Exception {
+    // Given
+    given(searcherManager.getIndexLocation()).willReturn(indexLocation);
+    given(storageRepository.isIndexCurrent(indexLocation.toString())).willReturn(false);
+    var nextLocation = ArgumentCaptor.forClass(String.class);
+    willAnswer(invocation -> Files.createDirectories(Path.of(invocation.<String>getArgument(0))))
+        .given(storageRepository).downloadIndex(nextLocation.capture());
+    willThrow(IOException.class).given(searcherManager).swap(any());
+
+    // When
+    watcher.checkForNewIndex();
+
+    // Then
+    assertThat(Path.of(nextLocation.getValue())).doesNotExist();
+  }
+
+  @Test
+  void testHotSwapDisabled() throws Exception {
+    // Given
+    properties.setHotSwapIndex(false);
+
+    // When
+    watcher.checkForNewIndex();
+
+    // Then
+    then(storageRepository).shouldHaveNoInteractions();
+  }
+}
@@ -0,0 +1,318 @@
+package eu.dissco.nusearch.service;
+
+import static eu.dissco.nusearch.domain.IndexingPhase.CACHE;
+import static eu.dissco.nusearch.domain.IndexingPhase.DOWNLOAD;
+import static eu.dissco.nusearch.domain.IndexingPhase.INDEX;
+import static eu.dissco.nusearch.domain.IndexingPhase.MERGE;
+import static eu.dissco.nusearch.repository.NubIndex.SCHEMA_VERSION;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.then;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+
+import com.google.common.hash.Hashing;
+import com.google.common.io.MoreFiles;
+import eu.dissco.nusearch.Profiles;
+import eu.dissco.nusearch.domain.IndexManifest;
+import eu.dissco.nusearch.domain.IndexingCheckpoint;
+import eu.dissco.nusearch.property.IndexingProperties;
+import eu.dissco.nusearch.repository.IndexManifestRepository;
+import eu.dissco.nusearch.repository.IndexingCheckpointRepository;
+import eu.dissco.nusearch.repository.StorageRepositoryInterface;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.Optional;
+import java.util.OptionalInt;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.core.env.Environment;
+
+@ExtendWith(MockitoExtension.class)
+class IndexingJobTest {
+
+  private static final Path TEST_DATASET = Path.of("src/test/resources/test.zip");
+  private static final String JOB_ID = "3a1d6f1e-5c0b-4a57-9f4e-0c2b1f7d8e90";
+
+  @Mock
+  private ColDpIndexingService indexingService;
+  @Mock
+  private ColDpDownloadingService colDpDownloadingService;
+  @Mock
+  private IndexingCheckpointRepository checkpointRepository;
+  @Mock
+  private IndexManifestRepository manifestRepository;
+  @Mock
+  private StorageRepositoryInterface storageRepository;
+  @Mock
+  private Environment environment;
+  @Mock
+  private ApplicationArguments arguments;
+
+  @TempDir
+  private Path scratchLocation;
+
+  private IndexingProperties properties;
+  private IndexingJob indexingJob;
+
+  @BeforeEach
+  void setup() {
+    properties = new IndexingProperties();
+    properties.setColDataset(1011);
+    properties.setScratchNameUsageLocation(scratchLocation.resolve("NameUsage.tsv").toString());
+    properties.setTempColDpLocation(scratchLocation.resolve("coldp.zip").toString());
+    indexingJob = new IndexingJob(indexingService, colDpDownloadingService, checkpointRepository,
+        manifestRepository, storageRepository, properties, environment);
+  }
+
+  @Test
+  void testS3Indexing() throws Exception {
+    // Given
+    given(environment.matchesProfiles(Profiles.S3_INDEXER, Profiles.INDEXER)).willReturn(true);
+    given(environment.matchesProfiles(Profiles.S3_INDEXER)).willReturn(true);
+    given(checkpointRepository.load()).willReturn(Optional.empty());
+    given(colDpDownloadingService.getDatasetAttempt()).willReturn(OptionalInt.of(4));
+    given(colDpDownloadingService.downloadColDpDataset()).willReturn(TEST_DATASET);
+    var captor = ArgumentCaptor.forClass(IndexingCheckpoint.class);
+
+    // When
+    indexingJob.run(arguments);
+
+    // Then
+    then(checkpointRepository).should(times(4)).save(captor.capture());
+    assertThat(captor.getAllValues()).extracting(IndexingCheckpoint::completedPhase)
+        .containsExactly(DOWNLOAD, CACHE, INDEX, MERGE);
+    var jobId = captor.getValue().jobId();
+    then(indexingService).should().indexNameUsages(any(), any(), eq(jobId));
+    then(indexingService).should().mergeIndex(any(), any(), eq(jobId));
+    then(manifestRepository).should().delete();
+    then(manifestRepository).should().save(4, null);
+    then(storageRepository).should().uploadIndex(properties.getIndexLocation());
+    then(checkpointRepository).should().delete();
+    assertThat(Path.of(properties.getScratchNameUsageLocation())).doesNotExist();
+  }
+
+  @Test
+  void testReuseIndex() throws Exception {
+    // Given
+    var manifest = givenManifest(4);
+    given(checkpointRepository.load()).willReturn(Optional.empty());
+    given(manifestRepository.load()).willReturn(Optional.of(manifest));
+    given(colDpDownloadingService.getDatasetAttempt()).willReturn(OptionalInt.of(4));
+    given(manifestRepository.isValid(manifest)).willReturn(true);
+
+    // When
+    indexingJob.execute();
+
+    // Then
+    then(colDpDownloadingService).should(never()).downloadColDpDataset();
+    then(indexingService).should(never()).buildNameUsageTree(any());
+    then(indexingService).should().closeIndex();
+    then(manifestRepository).should(never()).save(anyInt(), any());
+  }
+
+  @Test
+  void testRebuildNewAttempt() throws Exception {
+    // Given
+    given(checkpointRepository.load()).willReturn(Optional.empty());
+    given(manifestRepository.load()).willReturn(Optional.of(givenManifest(3)));
+    given(colDpDownloadingService.getDatasetAttempt()).willReturn(OptionalInt.of(4));
+    given(colDpDownloadingService.downloadColDpDataset()).willReturn(TEST_DATASET);
+
+    // When
+    indexingJob.execute();
+
+    // Then
+    then(manifestRepository).should(never()).isValid(any());
+    then(indexingService).should().mergeIndex(any(), any(), any());
+    then(manifestRepository).should().save(4, null);
+  }
+
+  @Test
+  void testRebuildOtherSchema() throws Exception {
+    // Given
+    var manifest = new IndexManifest(1011, SCHEMA_VERSION - 1, 4, false,
+        Instant.parse("2026-10-01T10:00:00Z"), "5d1f0c3e", null, null);
+    given(checkpointRepository.load()).willReturn(Optional.empty());
+    given(manifestRepository.load()).willReturn(Optional.of(manifest));
+    given(colDpDownloadingService.downloadColDpDataset()).willReturn(TEST_DATASET);
+    given(colDpDownloadingService.getDatasetAttempt()).willReturn(OptionalInt.of(4));
+
+    // When
+    indexingJob.execute();
+
+    // Then
+    then(manifestRepository).should(never()).isValid(any());
+    then(indexingService).should().mergeIndex(any(), any(), any());
+    then(manifestRepository).should().save(4, null);
+  }
+
+  @Test
+  void testRebuildInvalidIndex() throws Exception {
+    // Given
+    var manifest = givenManifest(4);
+    given(checkpointRepository.load()).willReturn(Optional.empty());
+    given(manifestRepository.load()).willReturn(Optional.of(manifest));
+    given(colDpDownloadingService.getDatasetAttempt()).willReturn(OptionalInt.empty());
+    given(colDpDownloadingService.downloadColDpDataset()).willReturn(TEST_DATASET);
+
+    // When
+    indexingJob.execute();
+
+    // Then
+    then(colDpDownloadingService).should().downloadColDpDataset();
+    then(manifestRepository).should().save(-1, null);
+  }
+
+  @Test
+  void testS3Resolver() throws Exception {
+    // Given
+    given(environment.matchesProfiles(Profiles.S3_RESOLVER)).willReturn(true);
+
+    // When
+    indexingJob.setup();
+
+    // Then
+    then(storageRepository).should().downloadIndex(properties.getIndexLocation());
+    then(colDpDownloadingService).shouldHaveNoInteractions();
+  }
+
+  @Test
+  void testS3ResolverStreamIndex() throws Exception {
+    // Given
+    properties.setStreamIndex(true);
+    given(environment.matchesProfiles(Profiles.S3_RESOLVER)).willReturn(true);
+
+    // When
+    indexingJob.setup();
+
+    // Then
+    then(storageRepository).shouldHaveNoInteractions();
+    then(colDpDownloadingService).shouldHaveNoInteractions();
+  }
+
+  @Test
+  void testResumeIndex() throws Exception {
+    // Given
+    given(checkpointRepository.load()).willReturn(Optional.of(
+        new IndexingCheckpoint(JOB_ID, 1011, 4, CACHE, TEST_DATASET.toString(), null)));
+
+    // When
+    indexingJob.execute();
+
+    // Then
+    then(colDpDownloadingService).shouldHaveNoInteractions();
+    then(indexingService).should().indexNameUsages(any(), any(), eq(JOB_ID));
+    then(indexingService).should().mergeIndex(any(), any(), eq(JOB_ID));
+    then(storageRepository).shouldHaveNoInteractions();
+  }
+
+  @Test
+  void testResumeUpload() throws Exception {
+    // Given
+    given(environment.matchesProfiles(Profiles.S3_INDEXER)).willReturn(true);
+    given(checkpointRepository.load()).willReturn(Optional.of(
+        new IndexingCheckpoint(JOB_ID, 1011, 4, MERGE, TEST_DATASET.toString(), null)));
+
+    // When
+    indexingJob.execute();
+
+    // Then
+    then(colDpDownloadingService).shouldHaveNoInteractions();
+    then(indexingService).should(never()).indexNameUsages(any(), any(), any());
+    then(indexingService).should().closeIndex();
+    then(storageRepository).should().uploadIndex(properties.getIndexLocation());
+  }
+
+  @Test
+  void testDownloadMissing() throws Exception {
+    // Given
+    var dataset = Files.copy(TEST_DATASET, scratchLocation.resolve("coldp.zip"));
+    var removed = scratchLocation.resolve("old.zip").toString();
+    given(checkpointRepository.load()).willReturn(Optional.of(
+        new IndexingCheckpoint(JOB_ID, 1011, 4, INDEX, removed, null)));
+    given(colDpDownloadingService.downloadColDpDataset()).willReturn(dataset);
+
+    // When
+    indexingJob.execute();
+
+    // Then
+    then(indexingService).should(never()).indexNameUsages(any(), any(), eq(JOB_ID));
+    then(indexingService).should().mergeIndex(any(), any(), any());
+    assertThat(dataset).doesNotExist();
+  }
+
+  @Test
+  void testCheckpointOfOtherDataset() throws Exception {
+    // Given
+    given(checkpointRepository.load()).willReturn(Optional.of(
+        new IndexingCheckpoint(JOB_ID, 2014, 4, MERGE, TEST_DATASET.toString(), null)));
+    given(colDpDownloadingService.downloadColDpDataset()).willReturn(TEST_DATASET);
+
+    // When
+    indexingJob.execute();
+
+    // Then
+    then(colDpDownloadingService).should().downloadColDpDataset();
+    then(indexingService).should(never()).indexNameUsages(any(), any(), eq(JOB_ID));
+  }
+
+  @Test
+  void testLocalArchive() throws Exception {
+    // Given
+    properties.setColDpArchive(TEST_DATASET.toString());
+    given(checkpointRepository.load()).willReturn(Optional.empty());
+    given(manifestRepository.load()).willReturn(Optional.of(givenManifest(4)));
+    var captor = ArgumentCaptor.forClass(IndexingCheckpoint.class);
+
+    // When
+    indexingJob.execute();
+
+    // Then
+    then(colDpDownloadingService).shouldHaveNoInteractions();
+    then(checkpointRepository).should(times(4)).save(captor.capture());
+    assertThat(captor.getAllValues().getFirst().dataset()).isEqualTo(TEST_DATASET.toString());
+    then(indexingService).should().mergeIndex(any(), any(), any());
+    then(manifestRepository).should().save(-1, archiveChecksum());
+    assertThat(TEST_DATASET).exists();
+  }
+
+  @Test
+  void testReuseLocalArchive() throws Exception {
+    // Given
+    properties.setColDpArchive(TEST_DATASET.toString());
+    var manifest = new IndexManifest(1011, SCHEMA_VERSION, -1, false, Instant.parse("2026-10-01T10:00:00Z"),
+        "5d1f0c3e", archiveChecksum(), null);
+    given(checkpointRepository.load()).willReturn(Optional.empty());
+    given(manifestRepository.load()).willReturn(Optional.of(manifest));
+    given(manifestRepository.isValid(manifest)).willReturn(true);
+
+    // When
+    indexingJob.execute();
+
+    // Then
+    then(colDpDownloadingService).shouldHaveNoInteractions();
+    then(indexingService).should(never()).buildNameUsageTree(any());
+    then(manifestRepository).should(never()).save(anyInt(), any());
+  }
+
+  private static String archiveChecksum() throws IOException {
+    return MoreFiles.asByteSource(TEST_DATASET).hash(Hashing.sha256()).toString();
+  }
+
+  private IndexManifest givenManifest(int attempt) {
+    return new IndexManifest(1011, SCHEMA_VERSION, attempt, false, Instant.parse("2026-10-01T10:00:00Z"),
+        "5d1f0c3e", null, null);
+  }
+}
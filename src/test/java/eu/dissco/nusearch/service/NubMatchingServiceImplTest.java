@@ -23,13 +23,67 @@ import static org.gbif.api.vocabulary.Rank.SUBGENUS;
 import static org.gbif.api.vocabulary.Rank.SUBSPECIES;
 import static org.gbif.api.vocabulary.Rank.UNRANKED;
 import static org.gbif.api.vocabulary.Rank.VARIETY;
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.BDDMockito.given;
 
+import eu.dissco.nusearch.component.ScientificNameSimilarity;
+import eu.dissco.nusearch.domain.ColDpNameUsageMatch;
+import eu.dissco.nusearch.repository.NubIndex;
+import eu.dissco.nusearch.service.NubMatchingService.MatchingMode;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import org.gbif.api.model.checklistbank.NameUsageMatch;
+import org.gbif.api.model.checklistbank.NameUsageMatch.MatchType;
+import org.gbif.api.vocabulary.NameType;
 import org.gbif.api.vocabulary.Rank;
+import org.gbif.api.vocabulary.TaxonomicStatus;
+import org.gbif.nameparser.NameParserGbifV1;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
 
+@ExtendWith(MockitoExtension.class)
 class NubMatchingServiceImplTest {
 
+  @Mock
+  private NubIndex nubIndex;
+
+  private static ColDpNameUsageMatch givenMatch(String colId, String canonicalName,
+      String kingdom, MatchType matchType) {
+    var match = new ColDpNameUsageMatch();
+    match.setColId(colId);
+    match.setCanonicalName(canonicalName);
+    match.setScientificName(canonicalName);
+    match.setRank(SPECIES);
+    match.setTaxonomicStatus(TaxonomicStatus.ACCEPTED);
+    match.setKingdom(kingdom);
+    match.setMatchType(matchType);
+    return match;
+  }
+
+  @Test
+  void testFuzzyVariantInKingdom() {
+    // Given
+    var service = new NubMatchingService(nubIndex, new HigherTaxaComparator(),
+        new ScientificNameSimilarity(), new NameParserGbifV1());
+    var classification = new NameUsageMatch();
+    classification.setKingdom("Animalia");
+    given(nubIndex.matchByName("Lamenia vitrea", true, 50)).willReturn(new ArrayList<>(List.of(
+        givenMatch("homonym", "Lamenia vitrea", "Plantae", MatchType.EXACT),
+        givenMatch("variant", "Lamenia vitreo", "Animalia", MatchType.FUZZY))));
+
+    // When
+    var result = service.match(NameType.SCIENTIFIC, null, "Lamenia vitrea", SPECIES,
+        classification, Set.of(), MatchingMode.FUZZY, false);
+
+    // Then
+    assertThat(result.getColId()).isEqualTo("variant");
+    assertThat(result.getMatchType()).isEqualTo(MatchType.FUZZY);
+  }
+
   @Test
   void rankSimilarity() {
     assertEquals(6, NubMatchingService.rankSimilarity(FAMILY, FAMILY));
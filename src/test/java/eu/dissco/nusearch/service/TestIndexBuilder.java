@@ -0,0 +1,57 @@
+package eu.dissco.nusearch.service;
+
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import eu.dissco.nusearch.configuration.LuceneConfiguration;
+import eu.dissco.nusearch.property.IndexingProperties;
+import eu.dissco.nusearch.repository.IndexManifestRepository;
+import eu.dissco.nusearch.repository.IndexingCheckpointRepository;
+import eu.dissco.nusearch.repository.StorageRepositoryInterface;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.apache.commons.io.FileUtils;
+import org.gbif.nameparser.NameParserGbifV1;
+import org.springframework.core.env.Environment;
+
+/**
+ * Builds a lucene index at the index location of the given properties, by default from the test
+ * ColDP dataset 1011, Fulgoromorpha Lists.
+ */
+public class TestIndexBuilder {
+
+  public static final Path TEST_DATASET = Path.of("src/test/resources/test.zip");
+
+  private TestIndexBuilder() {
+    // Utility class
+  }
+
+  public static void buildIndex(IndexingProperties properties) throws Exception {
+    buildIndex(properties, TEST_DATASET);
+  }
+
+  public static void buildIndex(IndexingProperties properties, Path dataset) throws Exception {
+    var scratchDirectory = Files.createTempDirectory("nusearch-scratch");
+    properties.setScratchNameUsageLocation(scratchDirectory.resolve("NameUsage.tsv").toString());
+    properties.setTempColDpLocation(scratchDirectory.resolve("coldp.zip").toString());
+    properties.setCheckpointLocation(scratchDirectory.resolve("checkpoint.json").toString());
+    properties.setReuseIndex(false);
+    var downloadingService = mock(ColDpDownloadingService.class);
+    given(downloadingService.downloadColDpDataset()).willReturn(dataset);
+    var mapper = new ObjectMapper().findAndRegisterModules();
+    var manifestRepository = new IndexManifestRepository(mapper, properties);
+    var indexingService = new ColDpIndexingService(
+        new LuceneConfiguration(properties).cofigureIndexWriter(manifestRepository), properties,
+        new NameParserGbifV1());
+    var indexingJob = new IndexingJob(indexingService, downloadingService,
+        new IndexingCheckpointRepository(mapper, properties), manifestRepository,
+        mock(StorageRepositoryInterface.class), properties, mock(Environment.class));
+    try {
+      indexingJob.execute();
+    } finally {
+      FileUtils.deleteDirectory(scratchDirectory.toFile());
+    }
+  }
+
+}
@@ -0,0 +1,53 @@
+package eu.dissco.nusearch.utils;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.gbif.api.vocabulary.TaxonomicStatus.ACCEPTED;
+import static org.gbif.api.vocabulary.TaxonomicStatus.DOUBTFUL;
+
+import eu.dissco.nusearch.domain.ColDpClassification;
+import java.util.stream.Stream;
+import org.apache.lucene.util.BytesRef;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+
+class ClassificationCodecTest {
+
+  private static Stream<ColDpClassification> classifications() {
+    return Stream.of(
+        new ColDpClassification("5T6MX", "Biota", null, "unranked", ACCEPTED, false),
+        new ColDpClassification("N", "Animalia", null, "kingdom", ACCEPTED, false),
+        new ColDpClassification("x3MB", "Lamenia", "Stål, 1859", "genus", DOUBTFUL, true),
+        new ColDpClassification("B6", "Ænigma", "Muir, 1913", "infraspecific name", null, false),
+        new ColDpClassification("C7", null, null, "some unknown rank", ACCEPTED, false),
+        new ColDpClassification("D8", "Cixiidae", null, null, ACCEPTED, false));
+  }
+
+  @ParameterizedTest
+  @MethodSource("classifications")
+  void testRoundTrip(ColDpClassification classification) {
+    // Given
+
+    // When
+    var result = ClassificationCodec.decode(ClassificationCodec.encode(classification));
+
+    // Then
+    assertThat(result).isEqualTo(classification);
+  }
+
+  @Test
+  void testDecodeWithOffset() {
+    // Given
+    var encoded = ClassificationCodec.encode(
+        new ColDpClassification("N", "Animalia", null, "kingdom", ACCEPTED, false));
+    var padded = new byte[encoded.length + 4];
+    System.arraycopy(encoded.bytes, encoded.offset, padded, 2, encoded.length);
+
+    // When
+    var result = ClassificationCodec.decode(new BytesRef(padded, 2, encoded.length));
+
+    // Then
+    assertThat(result.getScientificName()).isEqualTo("Animalia");
+  }
+
+}
@@ -46,4 +46,15 @@ class DistanceUtilsTest {
     assertEquals(0d, DistanceUtils.convertEditDistanceToSimilarity(10, "1234567", "123456789"),
         delta);
   }
+
+  @Test
+  void testEditDistance() {
+    assertEquals(0, DistanceUtils.editDistance("lamenia vitrea", "lamenia vitrea"));
+    assertEquals(2, DistanceUtils.editDistance("lameni vitre", "lamenia vitrea"));
+    assertEquals(1, DistanceUtils.editDistance("lamenia vitera", "lamenia vitrea"));
+    assertEquals(1, DistanceUtils.editDistance("lamenia vitrae", "lamenia vitrea"));
+    assertEquals(3, DistanceUtils.editDistance("ca", "abc"));
+    assertEquals(7, DistanceUtils.editDistance("", "lamenia"));
+    assertEquals(7, DistanceUtils.editDistance("lamenia", ""));
+  }
 }
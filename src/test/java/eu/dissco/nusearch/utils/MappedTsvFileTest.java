@@ -0,0 +1,64 @@
+package eu.dissco.nusearch.utils;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.ZipFile;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class MappedTsvFileTest {
+
+  private static final Path TEST_DATASET = Path.of("src/test/resources/test.zip");
+
+  @TempDir
+  private Path scratchLocation;
+
+  @Test
+  void testInflate() throws IOException {
+    // Given
+    byte[] expected;
+    try (var zip = new ZipFile(TEST_DATASET.toFile())) {
+      expected = zip.getInputStream(zip.getEntry("NameUsage.tsv")).readAllBytes();
+    }
+
+    // When
+    try (var file = MappedTsvFile.inflate(TEST_DATASET, "NameUsage.tsv",
+        scratchLocation.resolve("NameUsage.tsv"))) {
+
+      // Then
+      assertThat(file.size()).isEqualTo(expected.length);
+      var actual = new byte[expected.length];
+      file.get(0, actual, 0, actual.length);
+      assertThat(actual).isEqualTo(expected);
+      assertThat(file.get(0)).isEqualTo(expected[0]);
+    }
+  }
+
+  @Test
+  void testEmptyFile() throws IOException {
+    // Given
+    var path = Files.createFile(scratchLocation.resolve("empty.tsv"));
+
+    // When
+    try (var file = MappedTsvFile.map(path)) {
+
+      // Then
+      assertThat(file.size()).isZero();
+    }
+  }
+
+  @Test
+  void testMissingEntry() {
+    // Given
+    var scratchFile = scratchLocation.resolve("Missing.tsv");
+
+    // When / Then
+    assertThrows(IOException.class,
+        () -> MappedTsvFile.inflate(TEST_DATASET, "Missing.tsv", scratchFile));
+  }
+
+}
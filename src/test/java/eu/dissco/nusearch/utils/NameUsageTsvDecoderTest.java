@@ -0,0 +1,174 @@
+package eu.dissco.nusearch.utils;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.univocity.parsers.common.processor.BeanListProcessor;
+import com.univocity.parsers.tsv.TsvParserSettings;
+import com.univocity.parsers.tsv.TsvRoutines;
+import eu.dissco.nusearch.domain.NameUsageCsvRow;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+class NameUsageTsvDecoderTest {
+
+  private static final Path TEST_DATASET = Path.of("src/test/resources/test.zip");
+  private static final int MAX_CHARS_PER_COLUMN = 196608;
+
+  @TempDir
+  private Path scratchLocation;
+
+  private static List<NameUsageCsvRow> parseWithBeans(MappedTsvFile file) throws IOException {
+    var settings = new TsvParserSettings();
+    settings.setProcessor(new BeanListProcessor<>(NameUsageCsvRow.class));
+    settings.setMaxCharsPerColumn(MAX_CHARS_PER_COLUMN);
+    settings.setLineSeparatorDetectionEnabled(true);
+    var rows = new ArrayList<NameUsageCsvRow>();
+    try (var in = Files.newInputStream(file.getPath())) {
+      new TsvRoutines(settings).iterate(NameUsageCsvRow.class, in).forEach(rows::add);
+    }
+    return rows;
+  }
+
+  private static List<NameUsageCsvRow> decode(NameUsageTsvDecoder decoder) {
+    var rows = new ArrayList<NameUsageCsvRow>();
+    decoder.rows().forEach(rows::add);
+    return rows;
+  }
+
+  private MappedTsvFile givenFile(String content) throws IOException {
+    var path = scratchLocation.resolve("NameUsage.tsv");
+    Files.writeString(path, content, StandardCharsets.UTF_8);
+    return MappedTsvFile.map(path);
+  }
+
+  @Test
+  void testDecodeTestDataset() throws IOException {
+    // Given
+    try (var file = MappedTsvFile.inflate(TEST_DATASET, "NameUsage.tsv",
+        scratchLocation.resolve("NameUsage.tsv"))) {
+      var expected = parseWithBeans(file);
+
+      // When
+      var result = decode(NameUsageTsvDecoder.open(file, MAX_CHARS_PER_COLUMN));
+
+      // Then
+      assertThat(result).hasSize(25436).isEqualTo(expected);
+    }
+  }
+
+  @Test
+  void testDecodeEdgeCases() throws IOException {
+    // Given
+    var content = "\uFEFFcol:ID\tcol:unknown\tcol:parentID\tcol:scientificName\tcol:authorship\r\n"
+        + "1\tx\t\t  Lamenia \tStål, 1859\r\n"
+        + "\r\n"
+        + "\n"
+        + "2\t\t1\tLamenia\\tvitrea\tA\\\\B\\q\r\n"
+        + "3\t\t1\tLamenia\\nalba\n"
+        + "\tonly unknown\t\t\t\n"
+        + "4\t\t1\tÆnigma\tMuir\textra\tcolumns";
+    try (var file = givenFile(content)) {
+      var expected = parseWithBeans(file);
+
+      // When
+      var result = decode(NameUsageTsvDecoder.open(file, MAX_CHARS_PER_COLUMN));
+
+      // Then
+      assertThat(result).isEqualTo(expected);
+      assertThat(result).extracting(NameUsageCsvRow::getScientificName)
+          .containsExactly("Lamenia", "Lamenia\tvitrea", "Lamenia\nalba", null, "Ænigma");
+      assertThat(result.get(1).getAuthorship()).isEqualTo("A\\B\\q");
+    }
+  }
+
+  @ParameterizedTest
+  @ValueSource(ints = {1, 2, 3, 7, 64})
+  void testDecodeChunks(int chunks) throws IOException {
+    // Given
+    try (var file = MappedTsvFile.inflate(TEST_DATASET, "NameUsage.tsv",
+        scratchLocation.resolve("NameUsage.tsv"))) {
+      var decoder = NameUsageTsvDecoder.open(file, MAX_CHARS_PER_COLUMN);
+      var expected = decode(decoder);
+
+      // When
+      var result = new ArrayList<NameUsageCsvRow>();
+      for (var chunk : decoder.split(chunks)) {
+        decoder.decode(chunk, result::add);
+      }
+
+      // Then
+      assertThat(decoder.split(chunks)).hasSizeLessThanOrEqualTo(chunks);
+      assertThat(result).isEqualTo(expected);
+    }
+  }
+
+  @Test
+  void testDecodeInParallel() throws Exception {
+    // Given
+    try (var file = MappedTsvFile.inflate(TEST_DATASET, "NameUsage.tsv",
+        scratchLocation.resolve("NameUsage.tsv"))) {
+      var decoder = NameUsageTsvDecoder.open(file, MAX_CHARS_PER_COLUMN);
+      var expected = new ArrayList<>(decode(decoder));
+      var result = Collections.synchronizedList(new ArrayList<NameUsageCsvRow>());
+
+      // When
+      decoder.decodeInParallel(4, result::add);
+
+      // Then
+      expected.sort(Comparator.comparing(NameUsageCsvRow::getId));
+      result.sort(Comparator.comparing(NameUsageCsvRow::getId));
+      assertThat(result).isEqualTo(expected);
+    }
+  }
+
+  @Test
+  void testEmptyFile() throws IOException {
+    // Given
+    try (var file = givenFile("")) {
+
+      // When
+      var result = decode(NameUsageTsvDecoder.open(file, MAX_CHARS_PER_COLUMN));
+
+      // Then
+      assertThat(result).isEmpty();
+    }
+  }
+
+  @Test
+  void testLongLine() throws IOException {
+    // Given
+    var name = "Lamenia ".repeat(20000).strip();
+    try (var file = givenFile("col:ID\tcol:scientificName\n1\t" + name + "\n2\tLamenia\n")) {
+
+      // When
+      var result = decode(NameUsageTsvDecoder.open(file, MAX_CHARS_PER_COLUMN));
+
+      // Then
+      assertThat(result).extracting(NameUsageCsvRow::getScientificName)
+          .containsExactly(name, "Lamenia");
+    }
+  }
+
+  @Test
+  void testColumnTooLong() throws IOException {
+    // Given
+    try (var file = givenFile("col:ID\tcol:scientificName\n1\tLamenia vitrea\n")) {
+      var decoder = NameUsageTsvDecoder.open(file, 8);
+
+      // When / Then
+      assertThrows(IllegalStateException.class, () -> decode(decoder));
+    }
+  }
+
+}